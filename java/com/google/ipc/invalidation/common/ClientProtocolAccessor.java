@@ -28,7 +28,9 @@ import com.google.protos.ipc.invalidation.ClientProtocol.ClientConfigP;
 import com.google.protos.ipc.invalidation.ClientProtocol.ClientHeader;
 import com.google.protos.ipc.invalidation.ClientProtocol.ClientToServerMessage;
 import com.google.protos.ipc.invalidation.ClientProtocol.ClientVersion;
+import com.google.protos.ipc.invalidation.ClientProtocol.CompressedBodyP;
 import com.google.protos.ipc.invalidation.ClientProtocol.ConfigChangeMessage;
+import com.google.protos.ipc.invalidation.ClientProtocol.DigestPrefixP;
 import com.google.protos.ipc.invalidation.ClientProtocol.ErrorMessage;
 import com.google.protos.ipc.invalidation.ClientProtocol.InfoMessage;
 import com.google.protos.ipc.invalidation.ClientProtocol.InfoRequestMessage;
@@ -45,6 +47,7 @@ import com.google.protos.ipc.invalidation.ClientProtocol.RegistrationP;
 import com.google.protos.ipc.invalidation.ClientProtocol.RegistrationStatus;
 import com.google.protos.ipc.invalidation.ClientProtocol.RegistrationStatusMessage;
 import com.google.protos.ipc.invalidation.ClientProtocol.RegistrationSubtree;
+import com.google.protos.ipc.invalidation.ClientProtocol.RegistrationSubtreeSummary;
 import com.google.protos.ipc.invalidation.ClientProtocol.RegistrationSummary;
 import com.google.protos.ipc.invalidation.ClientProtocol.RegistrationSyncMessage;
 import com.google.protos.ipc.invalidation.ClientProtocol.RegistrationSyncRequestMessage;
@@ -69,8 +72,8 @@ public class ClientProtocolAccessor {
         "client_name"
       ));
     
-    public static final Descriptor CLIENT_TYPE = new Descriptor("client_type");
-    public static final Descriptor CLIENT_NAME = new Descriptor("client_name");
+    public static final Descriptor CLIENT_TYPE = new Descriptor("client_type", 1);
+    public static final Descriptor CLIENT_NAME = new Descriptor("client_name", 2);
     
     /** Returns whether {@code field} is present in {@code message}. */
     @Override
@@ -79,11 +82,19 @@ public class ClientProtocolAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       ApplicationClientIdP message = (ApplicationClientIdP) rawMessage;
-      if (field == CLIENT_TYPE) {
-        return message.hasClientType();
-      }
-      if (field == CLIENT_NAME) {
-        return message.hasClientName();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == CLIENT_TYPE) {
+            return message.hasClientType();
+          }
+          break;
+        case 2:
+          if (field == CLIENT_NAME) {
+            return message.hasClientName();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -95,11 +106,19 @@ public class ClientProtocolAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       ApplicationClientIdP message = (ApplicationClientIdP) rawMessage;
-      if (field == CLIENT_TYPE) {
-        return message.getClientType();
-      }
-      if (field == CLIENT_NAME) {
-        return message.getClientName();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == CLIENT_TYPE) {
+            return message.getClientType();
+          }
+          break;
+        case 2:
+          if (field == CLIENT_NAME) {
+            return message.getClientName();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -127,22 +146,28 @@ public class ClientProtocolAccessor {
         "protocol_handler_config",
         "channel_supports_offline_delivery",
         "offline_heartbeat_threshold_ms",
-        "allow_suppression"
+        "allow_suppression",
+        "digest_serialization_type",
+        "use_compact_registration_store",
+        "parallel_digest_threads"
       ));
     
-    public static final Descriptor VERSION = new Descriptor("version");
-    public static final Descriptor NETWORK_TIMEOUT_DELAY_MS = new Descriptor("network_timeout_delay_ms");
-    public static final Descriptor WRITE_RETRY_DELAY_MS = new Descriptor("write_retry_delay_ms");
-    public static final Descriptor HEARTBEAT_INTERVAL_MS = new Descriptor("heartbeat_interval_ms");
-    public static final Descriptor PERF_COUNTER_DELAY_MS = new Descriptor("perf_counter_delay_ms");
-    public static final Descriptor MAX_EXPONENTIAL_BACKOFF_FACTOR = new Descriptor("max_exponential_backoff_factor");
-    public static final Descriptor SMEAR_PERCENT = new Descriptor("smear_percent");
-    public static final Descriptor IS_TRANSIENT = new Descriptor("is_transient");
-    public static final Descriptor INITIAL_PERSISTENT_HEARTBEAT_DELAY_MS = new Descriptor("initial_persistent_heartbeat_delay_ms");
-    public static final Descriptor PROTOCOL_HANDLER_CONFIG = new Descriptor("protocol_handler_config");
-    public static final Descriptor CHANNEL_SUPPORTS_OFFLINE_DELIVERY = new Descriptor("channel_supports_offline_delivery");
-    public static final Descriptor OFFLINE_HEARTBEAT_THRESHOLD_MS = new Descriptor("offline_heartbeat_threshold_ms");
-    public static final Descriptor ALLOW_SUPPRESSION = new Descriptor("allow_suppression");
+    public static final Descriptor VERSION = new Descriptor("version", 1);
+    public static final Descriptor NETWORK_TIMEOUT_DELAY_MS = new Descriptor("network_timeout_delay_ms", 2);
+    public static final Descriptor WRITE_RETRY_DELAY_MS = new Descriptor("write_retry_delay_ms", 3);
+    public static final Descriptor HEARTBEAT_INTERVAL_MS = new Descriptor("heartbeat_interval_ms", 4);
+    public static final Descriptor PERF_COUNTER_DELAY_MS = new Descriptor("perf_counter_delay_ms", 5);
+    public static final Descriptor MAX_EXPONENTIAL_BACKOFF_FACTOR = new Descriptor("max_exponential_backoff_factor", 6);
+    public static final Descriptor SMEAR_PERCENT = new Descriptor("smear_percent", 7);
+    public static final Descriptor IS_TRANSIENT = new Descriptor("is_transient", 8);
+    public static final Descriptor INITIAL_PERSISTENT_HEARTBEAT_DELAY_MS = new Descriptor("initial_persistent_heartbeat_delay_ms", 9);
+    public static final Descriptor PROTOCOL_HANDLER_CONFIG = new Descriptor("protocol_handler_config", 10);
+    public static final Descriptor CHANNEL_SUPPORTS_OFFLINE_DELIVERY = new Descriptor("channel_supports_offline_delivery", 11);
+    public static final Descriptor OFFLINE_HEARTBEAT_THRESHOLD_MS = new Descriptor("offline_heartbeat_threshold_ms", 12);
+    public static final Descriptor ALLOW_SUPPRESSION = new Descriptor("allow_suppression", 13);
+    public static final Descriptor DIGEST_SERIALIZATION_TYPE = new Descriptor("digest_serialization_type", 14);
+    public static final Descriptor USE_COMPACT_REGISTRATION_STORE = new Descriptor("use_compact_registration_store", 15);
+    public static final Descriptor PARALLEL_DIGEST_THREADS = new Descriptor("parallel_digest_threads", 16);
     
     /** Returns whether {@code field} is present in {@code message}. */
     @Override
@@ -151,44 +176,89 @@ public class ClientProtocolAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       ClientConfigP message = (ClientConfigP) rawMessage;
-      if (field == VERSION) {
-        return message.hasVersion();
-      }
-      if (field == NETWORK_TIMEOUT_DELAY_MS) {
-        return message.hasNetworkTimeoutDelayMs();
-      }
-      if (field == WRITE_RETRY_DELAY_MS) {
-        return message.hasWriteRetryDelayMs();
-      }
-      if (field == HEARTBEAT_INTERVAL_MS) {
-        return message.hasHeartbeatIntervalMs();
-      }
-      if (field == PERF_COUNTER_DELAY_MS) {
-        return message.hasPerfCounterDelayMs();
-      }
-      if (field == MAX_EXPONENTIAL_BACKOFF_FACTOR) {
-        return message.hasMaxExponentialBackoffFactor();
-      }
-      if (field == SMEAR_PERCENT) {
-        return message.hasSmearPercent();
-      }
-      if (field == IS_TRANSIENT) {
-        return message.hasIsTransient();
-      }
-      if (field == INITIAL_PERSISTENT_HEARTBEAT_DELAY_MS) {
-        return message.hasInitialPersistentHeartbeatDelayMs();
-      }
-      if (field == PROTOCOL_HANDLER_CONFIG) {
-        return message.hasProtocolHandlerConfig();
-      }
-      if (field == CHANNEL_SUPPORTS_OFFLINE_DELIVERY) {
-        return message.hasChannelSupportsOfflineDelivery();
-      }
-      if (field == OFFLINE_HEARTBEAT_THRESHOLD_MS) {
-        return message.hasOfflineHeartbeatThresholdMs();
-      }
-      if (field == ALLOW_SUPPRESSION) {
-        return message.hasAllowSuppression();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == VERSION) {
+            return message.hasVersion();
+          }
+          break;
+        case 2:
+          if (field == NETWORK_TIMEOUT_DELAY_MS) {
+            return message.hasNetworkTimeoutDelayMs();
+          }
+          break;
+        case 3:
+          if (field == WRITE_RETRY_DELAY_MS) {
+            return message.hasWriteRetryDelayMs();
+          }
+          break;
+        case 4:
+          if (field == HEARTBEAT_INTERVAL_MS) {
+            return message.hasHeartbeatIntervalMs();
+          }
+          break;
+        case 5:
+          if (field == PERF_COUNTER_DELAY_MS) {
+            return message.hasPerfCounterDelayMs();
+          }
+          break;
+        case 6:
+          if (field == MAX_EXPONENTIAL_BACKOFF_FACTOR) {
+            return message.hasMaxExponentialBackoffFactor();
+          }
+          break;
+        case 7:
+          if (field == SMEAR_PERCENT) {
+            return message.hasSmearPercent();
+          }
+          break;
+        case 8:
+          if (field == IS_TRANSIENT) {
+            return message.hasIsTransient();
+          }
+          break;
+        case 9:
+          if (field == INITIAL_PERSISTENT_HEARTBEAT_DELAY_MS) {
+            return message.hasInitialPersistentHeartbeatDelayMs();
+          }
+          break;
+        case 10:
+          if (field == PROTOCOL_HANDLER_CONFIG) {
+            return message.hasProtocolHandlerConfig();
+          }
+          break;
+        case 11:
+          if (field == CHANNEL_SUPPORTS_OFFLINE_DELIVERY) {
+            return message.hasChannelSupportsOfflineDelivery();
+          }
+          break;
+        case 12:
+          if (field == OFFLINE_HEARTBEAT_THRESHOLD_MS) {
+            return message.hasOfflineHeartbeatThresholdMs();
+          }
+          break;
+        case 13:
+          if (field == ALLOW_SUPPRESSION) {
+            return message.hasAllowSuppression();
+          }
+          break;
+        case 14:
+          if (field == DIGEST_SERIALIZATION_TYPE) {
+            return message.hasDigestSerializationType();
+          }
+          break;
+        case 15:
+          if (field == USE_COMPACT_REGISTRATION_STORE) {
+            return message.hasUseCompactRegistrationStore();
+          }
+          break;
+        case 16:
+          if (field == PARALLEL_DIGEST_THREADS) {
+            return message.hasParallelDigestThreads();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -200,44 +270,89 @@ public class ClientProtocolAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       ClientConfigP message = (ClientConfigP) rawMessage;
-      if (field == VERSION) {
-        return message.getVersion();
-      }
-      if (field == NETWORK_TIMEOUT_DELAY_MS) {
-        return message.getNetworkTimeoutDelayMs();
-      }
-      if (field == WRITE_RETRY_DELAY_MS) {
-        return message.getWriteRetryDelayMs();
-      }
-      if (field == HEARTBEAT_INTERVAL_MS) {
-        return message.getHeartbeatIntervalMs();
-      }
-      if (field == PERF_COUNTER_DELAY_MS) {
-        return message.getPerfCounterDelayMs();
-      }
-      if (field == MAX_EXPONENTIAL_BACKOFF_FACTOR) {
-        return message.getMaxExponentialBackoffFactor();
-      }
-      if (field == SMEAR_PERCENT) {
-        return message.getSmearPercent();
-      }
-      if (field == IS_TRANSIENT) {
-        return message.getIsTransient();
-      }
-      if (field == INITIAL_PERSISTENT_HEARTBEAT_DELAY_MS) {
-        return message.getInitialPersistentHeartbeatDelayMs();
-      }
-      if (field == PROTOCOL_HANDLER_CONFIG) {
-        return message.getProtocolHandlerConfig();
-      }
-      if (field == CHANNEL_SUPPORTS_OFFLINE_DELIVERY) {
-        return message.getChannelSupportsOfflineDelivery();
-      }
-      if (field == OFFLINE_HEARTBEAT_THRESHOLD_MS) {
-        return message.getOfflineHeartbeatThresholdMs();
-      }
-      if (field == ALLOW_SUPPRESSION) {
-        return message.getAllowSuppression();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == VERSION) {
+            return message.getVersion();
+          }
+          break;
+        case 2:
+          if (field == NETWORK_TIMEOUT_DELAY_MS) {
+            return message.getNetworkTimeoutDelayMs();
+          }
+          break;
+        case 3:
+          if (field == WRITE_RETRY_DELAY_MS) {
+            return message.getWriteRetryDelayMs();
+          }
+          break;
+        case 4:
+          if (field == HEARTBEAT_INTERVAL_MS) {
+            return message.getHeartbeatIntervalMs();
+          }
+          break;
+        case 5:
+          if (field == PERF_COUNTER_DELAY_MS) {
+            return message.getPerfCounterDelayMs();
+          }
+          break;
+        case 6:
+          if (field == MAX_EXPONENTIAL_BACKOFF_FACTOR) {
+            return message.getMaxExponentialBackoffFactor();
+          }
+          break;
+        case 7:
+          if (field == SMEAR_PERCENT) {
+            return message.getSmearPercent();
+          }
+          break;
+        case 8:
+          if (field == IS_TRANSIENT) {
+            return message.getIsTransient();
+          }
+          break;
+        case 9:
+          if (field == INITIAL_PERSISTENT_HEARTBEAT_DELAY_MS) {
+            return message.getInitialPersistentHeartbeatDelayMs();
+          }
+          break;
+        case 10:
+          if (field == PROTOCOL_HANDLER_CONFIG) {
+            return message.getProtocolHandlerConfig();
+          }
+          break;
+        case 11:
+          if (field == CHANNEL_SUPPORTS_OFFLINE_DELIVERY) {
+            return message.getChannelSupportsOfflineDelivery();
+          }
+          break;
+        case 12:
+          if (field == OFFLINE_HEARTBEAT_THRESHOLD_MS) {
+            return message.getOfflineHeartbeatThresholdMs();
+          }
+          break;
+        case 13:
+          if (field == ALLOW_SUPPRESSION) {
+            return message.getAllowSuppression();
+          }
+          break;
+        case 14:
+          if (field == DIGEST_SERIALIZATION_TYPE) {
+            return message.getDigestSerializationType();
+          }
+          break;
+        case 15:
+          if (field == USE_COMPACT_REGISTRATION_STORE) {
+            return message.getUseCompactRegistrationStore();
+          }
+          break;
+        case 16:
+          if (field == PARALLEL_DIGEST_THREADS) {
+            return message.getParallelDigestThreads();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -259,16 +374,18 @@ public class ClientProtocolAccessor {
         "client_time_ms",
         "max_known_server_time_ms",
         "message_id",
-        "client_type"
+        "client_type",
+        "accepted_compression"
       ));
     
-    public static final Descriptor PROTOCOL_VERSION = new Descriptor("protocol_version");
-    public static final Descriptor CLIENT_TOKEN = new Descriptor("client_token");
-    public static final Descriptor REGISTRATION_SUMMARY = new Descriptor("registration_summary");
-    public static final Descriptor CLIENT_TIME_MS = new Descriptor("client_time_ms");
-    public static final Descriptor MAX_KNOWN_SERVER_TIME_MS = new Descriptor("max_known_server_time_ms");
-    public static final Descriptor MESSAGE_ID = new Descriptor("message_id");
-    public static final Descriptor CLIENT_TYPE = new Descriptor("client_type");
+    public static final Descriptor PROTOCOL_VERSION = new Descriptor("protocol_version", 1);
+    public static final Descriptor CLIENT_TOKEN = new Descriptor("client_token", 2);
+    public static final Descriptor REGISTRATION_SUMMARY = new Descriptor("registration_summary", 3);
+    public static final Descriptor CLIENT_TIME_MS = new Descriptor("client_time_ms", 4);
+    public static final Descriptor MAX_KNOWN_SERVER_TIME_MS = new Descriptor("max_known_server_time_ms", 5);
+    public static final Descriptor MESSAGE_ID = new Descriptor("message_id", 6);
+    public static final Descriptor CLIENT_TYPE = new Descriptor("client_type", 7);
+    public static final Descriptor ACCEPTED_COMPRESSION = new Descriptor("accepted_compression", 8);
     
     /** Returns whether {@code field} is present in {@code message}. */
     @Override
@@ -277,26 +394,49 @@ public class ClientProtocolAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       ClientHeader message = (ClientHeader) rawMessage;
-      if (field == PROTOCOL_VERSION) {
-        return message.hasProtocolVersion();
-      }
-      if (field == CLIENT_TOKEN) {
-        return message.hasClientToken();
-      }
-      if (field == REGISTRATION_SUMMARY) {
-        return message.hasRegistrationSummary();
-      }
-      if (field == CLIENT_TIME_MS) {
-        return message.hasClientTimeMs();
-      }
-      if (field == MAX_KNOWN_SERVER_TIME_MS) {
-        return message.hasMaxKnownServerTimeMs();
-      }
-      if (field == MESSAGE_ID) {
-        return message.hasMessageId();
-      }
-      if (field == CLIENT_TYPE) {
-        return message.hasClientType();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == PROTOCOL_VERSION) {
+            return message.hasProtocolVersion();
+          }
+          break;
+        case 2:
+          if (field == CLIENT_TOKEN) {
+            return message.hasClientToken();
+          }
+          break;
+        case 3:
+          if (field == REGISTRATION_SUMMARY) {
+            return message.hasRegistrationSummary();
+          }
+          break;
+        case 4:
+          if (field == CLIENT_TIME_MS) {
+            return message.hasClientTimeMs();
+          }
+          break;
+        case 5:
+          if (field == MAX_KNOWN_SERVER_TIME_MS) {
+            return message.hasMaxKnownServerTimeMs();
+          }
+          break;
+        case 6:
+          if (field == MESSAGE_ID) {
+            return message.hasMessageId();
+          }
+          break;
+        case 7:
+          if (field == CLIENT_TYPE) {
+            return message.hasClientType();
+          }
+          break;
+        case 8:
+          if (field == ACCEPTED_COMPRESSION) {
+            return message.getAcceptedCompressionCount() > 0;
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -308,26 +448,49 @@ public class ClientProtocolAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       ClientHeader message = (ClientHeader) rawMessage;
-      if (field == PROTOCOL_VERSION) {
-        return message.getProtocolVersion();
-      }
-      if (field == CLIENT_TOKEN) {
-        return message.getClientToken();
-      }
-      if (field == REGISTRATION_SUMMARY) {
-        return message.getRegistrationSummary();
-      }
-      if (field == CLIENT_TIME_MS) {
-        return message.getClientTimeMs();
-      }
-      if (field == MAX_KNOWN_SERVER_TIME_MS) {
-        return message.getMaxKnownServerTimeMs();
-      }
-      if (field == MESSAGE_ID) {
-        return message.getMessageId();
-      }
-      if (field == CLIENT_TYPE) {
-        return message.getClientType();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == PROTOCOL_VERSION) {
+            return message.getProtocolVersion();
+          }
+          break;
+        case 2:
+          if (field == CLIENT_TOKEN) {
+            return message.getClientToken();
+          }
+          break;
+        case 3:
+          if (field == REGISTRATION_SUMMARY) {
+            return message.getRegistrationSummary();
+          }
+          break;
+        case 4:
+          if (field == CLIENT_TIME_MS) {
+            return message.getClientTimeMs();
+          }
+          break;
+        case 5:
+          if (field == MAX_KNOWN_SERVER_TIME_MS) {
+            return message.getMaxKnownServerTimeMs();
+          }
+          break;
+        case 6:
+          if (field == MESSAGE_ID) {
+            return message.getMessageId();
+          }
+          break;
+        case 7:
+          if (field == CLIENT_TYPE) {
+            return message.getClientType();
+          }
+          break;
+        case 8:
+          if (field == ACCEPTED_COMPRESSION) {
+            return message.getAcceptedCompressionList();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -348,15 +511,17 @@ public class ClientProtocolAccessor {
         "registration_message",
         "registration_sync_message",
         "invalidation_ack_message",
-        "info_message"
+        "info_message",
+        "compressed_body"
       ));
     
-    public static final Descriptor HEADER = new Descriptor("header");
-    public static final Descriptor INITIALIZE_MESSAGE = new Descriptor("initialize_message");
-    public static final Descriptor REGISTRATION_MESSAGE = new Descriptor("registration_message");
-    public static final Descriptor REGISTRATION_SYNC_MESSAGE = new Descriptor("registration_sync_message");
-    public static final Descriptor INVALIDATION_ACK_MESSAGE = new Descriptor("invalidation_ack_message");
-    public static final Descriptor INFO_MESSAGE = new Descriptor("info_message");
+    public static final Descriptor HEADER = new Descriptor("header", 1);
+    public static final Descriptor INITIALIZE_MESSAGE = new Descriptor("initialize_message", 2);
+    public static final Descriptor REGISTRATION_MESSAGE = new Descriptor("registration_message", 3);
+    public static final Descriptor REGISTRATION_SYNC_MESSAGE = new Descriptor("registration_sync_message", 4);
+    public static final Descriptor INVALIDATION_ACK_MESSAGE = new Descriptor("invalidation_ack_message", 5);
+    public static final Descriptor INFO_MESSAGE = new Descriptor("info_message", 6);
+    public static final Descriptor COMPRESSED_BODY = new Descriptor("compressed_body", 7);
     
     /** Returns whether {@code field} is present in {@code message}. */
     @Override
@@ -365,23 +530,44 @@ public class ClientProtocolAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       ClientToServerMessage message = (ClientToServerMessage) rawMessage;
-      if (field == HEADER) {
-        return message.hasHeader();
-      }
-      if (field == INITIALIZE_MESSAGE) {
-        return message.hasInitializeMessage();
-      }
-      if (field == REGISTRATION_MESSAGE) {
-        return message.hasRegistrationMessage();
-      }
-      if (field == REGISTRATION_SYNC_MESSAGE) {
-        return message.hasRegistrationSyncMessage();
-      }
-      if (field == INVALIDATION_ACK_MESSAGE) {
-        return message.hasInvalidationAckMessage();
-      }
-      if (field == INFO_MESSAGE) {
-        return message.hasInfoMessage();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == HEADER) {
+            return message.hasHeader();
+          }
+          break;
+        case 2:
+          if (field == INITIALIZE_MESSAGE) {
+            return message.hasInitializeMessage();
+          }
+          break;
+        case 3:
+          if (field == REGISTRATION_MESSAGE) {
+            return message.hasRegistrationMessage();
+          }
+          break;
+        case 4:
+          if (field == REGISTRATION_SYNC_MESSAGE) {
+            return message.hasRegistrationSyncMessage();
+          }
+          break;
+        case 5:
+          if (field == INVALIDATION_ACK_MESSAGE) {
+            return message.hasInvalidationAckMessage();
+          }
+          break;
+        case 6:
+          if (field == INFO_MESSAGE) {
+            return message.hasInfoMessage();
+          }
+          break;
+        case 7:
+          if (field == COMPRESSED_BODY) {
+            return message.hasCompressedBody();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -393,23 +579,44 @@ public class ClientProtocolAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       ClientToServerMessage message = (ClientToServerMessage) rawMessage;
-      if (field == HEADER) {
-        return message.getHeader();
-      }
-      if (field == INITIALIZE_MESSAGE) {
-        return message.getInitializeMessage();
-      }
-      if (field == REGISTRATION_MESSAGE) {
-        return message.getRegistrationMessage();
-      }
-      if (field == REGISTRATION_SYNC_MESSAGE) {
-        return message.getRegistrationSyncMessage();
-      }
-      if (field == INVALIDATION_ACK_MESSAGE) {
-        return message.getInvalidationAckMessage();
-      }
-      if (field == INFO_MESSAGE) {
-        return message.getInfoMessage();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == HEADER) {
+            return message.getHeader();
+          }
+          break;
+        case 2:
+          if (field == INITIALIZE_MESSAGE) {
+            return message.getInitializeMessage();
+          }
+          break;
+        case 3:
+          if (field == REGISTRATION_MESSAGE) {
+            return message.getRegistrationMessage();
+          }
+          break;
+        case 4:
+          if (field == REGISTRATION_SYNC_MESSAGE) {
+            return message.getRegistrationSyncMessage();
+          }
+          break;
+        case 5:
+          if (field == INVALIDATION_ACK_MESSAGE) {
+            return message.getInvalidationAckMessage();
+          }
+          break;
+        case 6:
+          if (field == INFO_MESSAGE) {
+            return message.getInfoMessage();
+          }
+          break;
+        case 7:
+          if (field == COMPRESSED_BODY) {
+            return message.getCompressedBody();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -431,10 +638,10 @@ public class ClientProtocolAccessor {
         "application_info"
       ));
     
-    public static final Descriptor VERSION = new Descriptor("version");
-    public static final Descriptor PLATFORM = new Descriptor("platform");
-    public static final Descriptor LANGUAGE = new Descriptor("language");
-    public static final Descriptor APPLICATION_INFO = new Descriptor("application_info");
+    public static final Descriptor VERSION = new Descriptor("version", 1);
+    public static final Descriptor PLATFORM = new Descriptor("platform", 2);
+    public static final Descriptor LANGUAGE = new Descriptor("language", 3);
+    public static final Descriptor APPLICATION_INFO = new Descriptor("application_info", 4);
     
     /** Returns whether {@code field} is present in {@code message}. */
     @Override
@@ -443,17 +650,29 @@ public class ClientProtocolAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       ClientVersion message = (ClientVersion) rawMessage;
-      if (field == VERSION) {
-        return message.hasVersion();
-      }
-      if (field == PLATFORM) {
-        return message.hasPlatform();
-      }
-      if (field == LANGUAGE) {
-        return message.hasLanguage();
-      }
-      if (field == APPLICATION_INFO) {
-        return message.hasApplicationInfo();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == VERSION) {
+            return message.hasVersion();
+          }
+          break;
+        case 2:
+          if (field == PLATFORM) {
+            return message.hasPlatform();
+          }
+          break;
+        case 3:
+          if (field == LANGUAGE) {
+            return message.hasLanguage();
+          }
+          break;
+        case 4:
+          if (field == APPLICATION_INFO) {
+            return message.hasApplicationInfo();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -465,17 +684,107 @@ public class ClientProtocolAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       ClientVersion message = (ClientVersion) rawMessage;
-      if (field == VERSION) {
-        return message.getVersion();
-      }
-      if (field == PLATFORM) {
-        return message.getPlatform();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == VERSION) {
+            return message.getVersion();
+          }
+          break;
+        case 2:
+          if (field == PLATFORM) {
+            return message.getPlatform();
+          }
+          break;
+        case 3:
+          if (field == LANGUAGE) {
+            return message.getLanguage();
+          }
+          break;
+        case 4:
+          if (field == APPLICATION_INFO) {
+            return message.getApplicationInfo();
+          }
+          break;
+        default:
+          break;
       }
-      if (field == LANGUAGE) {
-        return message.getLanguage();
+      throw new IllegalArgumentException("Bad descriptor: " + field);
+    }
+    
+    @Override
+    public Set<String> getAllFieldNames() {
+      return ALL_FIELD_NAMES;
+    }
+  }
+  public static final ClientVersionAccessor CLIENT_VERSION_ACCESSOR = new ClientVersionAccessor();
+  
+  /** Class to access fields in {@link CompressedBodyP} protos. */
+  public static class CompressedBodyPAccessor implements Accessor {
+    private static final Set<String> ALL_FIELD_NAMES = new HashSet<String>(
+      Arrays.<String>asList(
+        "compression",
+        "uncompressed_size",
+        "data"
+      ));
+    
+    public static final Descriptor COMPRESSION = new Descriptor("compression", 1);
+    public static final Descriptor UNCOMPRESSED_SIZE = new Descriptor("uncompressed_size", 2);
+    public static final Descriptor DATA = new Descriptor("data", 3);
+    
+    /** Returns whether {@code field} is present in {@code message}. */
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean hasField(MessageLite rawMessage, Descriptor field) {
+      Preconditions.checkNotNull(rawMessage);
+      Preconditions.checkNotNull(field);
+      CompressedBodyP message = (CompressedBodyP) rawMessage;
+      switch (field.getNumber()) {
+        case 1:
+          if (field == COMPRESSION) {
+            return message.hasCompression();
+          }
+          break;
+        case 2:
+          if (field == UNCOMPRESSED_SIZE) {
+            return message.hasUncompressedSize();
+          }
+          break;
+        case 3:
+          if (field == DATA) {
+            return message.hasData();
+          }
+          break;
+        default:
+          break;
       }
-      if (field == APPLICATION_INFO) {
-        return message.getApplicationInfo();
+      throw new IllegalArgumentException("Bad descriptor: " + field);
+    }
+    
+    /** Returns the {@code field} from {@code message}. */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Object getField(MessageLite rawMessage, Descriptor field) {
+      Preconditions.checkNotNull(rawMessage);
+      Preconditions.checkNotNull(field);
+      CompressedBodyP message = (CompressedBodyP) rawMessage;
+      switch (field.getNumber()) {
+        case 1:
+          if (field == COMPRESSION) {
+            return message.getCompression();
+          }
+          break;
+        case 2:
+          if (field == UNCOMPRESSED_SIZE) {
+            return message.getUncompressedSize();
+          }
+          break;
+        case 3:
+          if (field == DATA) {
+            return message.getData();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -485,7 +794,7 @@ public class ClientProtocolAccessor {
       return ALL_FIELD_NAMES;
     }
   }
-  public static final ClientVersionAccessor CLIENT_VERSION_ACCESSOR = new ClientVersionAccessor();
+  public static final CompressedBodyPAccessor COMPRESSED_BODY_P_ACCESSOR = new CompressedBodyPAccessor();
   
   /** Class to access fields in {@link ConfigChangeMessage} protos. */
   public static class ConfigChangeMessageAccessor implements Accessor {
@@ -494,7 +803,7 @@ public class ClientProtocolAccessor {
         "next_message_delay_ms"
       ));
     
-    public static final Descriptor NEXT_MESSAGE_DELAY_MS = new Descriptor("next_message_delay_ms");
+    public static final Descriptor NEXT_MESSAGE_DELAY_MS = new Descriptor("next_message_delay_ms", 1);
     
     /** Returns whether {@code field} is present in {@code message}. */
     @Override
@@ -503,8 +812,14 @@ public class ClientProtocolAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       ConfigChangeMessage message = (ConfigChangeMessage) rawMessage;
-      if (field == NEXT_MESSAGE_DELAY_MS) {
-        return message.hasNextMessageDelayMs();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == NEXT_MESSAGE_DELAY_MS) {
+            return message.hasNextMessageDelayMs();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -516,8 +831,14 @@ public class ClientProtocolAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       ConfigChangeMessage message = (ConfigChangeMessage) rawMessage;
-      if (field == NEXT_MESSAGE_DELAY_MS) {
-        return message.getNextMessageDelayMs();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == NEXT_MESSAGE_DELAY_MS) {
+            return message.getNextMessageDelayMs();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -529,6 +850,72 @@ public class ClientProtocolAccessor {
   }
   public static final ConfigChangeMessageAccessor CONFIG_CHANGE_MESSAGE_ACCESSOR = new ConfigChangeMessageAccessor();
   
+  /** Class to access fields in {@link DigestPrefixP} protos. */
+  public static class DigestPrefixPAccessor implements Accessor {
+    private static final Set<String> ALL_FIELD_NAMES = new HashSet<String>(
+      Arrays.<String>asList(
+        "digest_prefix",
+        "prefix_length"
+      ));
+    
+    public static final Descriptor DIGEST_PREFIX = new Descriptor("digest_prefix", 1);
+    public static final Descriptor PREFIX_LENGTH = new Descriptor("prefix_length", 2);
+    
+    /** Returns whether {@code field} is present in {@code message}. */
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean hasField(MessageLite rawMessage, Descriptor field) {
+      Preconditions.checkNotNull(rawMessage);
+      Preconditions.checkNotNull(field);
+      DigestPrefixP message = (DigestPrefixP) rawMessage;
+      switch (field.getNumber()) {
+        case 1:
+          if (field == DIGEST_PREFIX) {
+            return message.hasDigestPrefix();
+          }
+          break;
+        case 2:
+          if (field == PREFIX_LENGTH) {
+            return message.hasPrefixLength();
+          }
+          break;
+        default:
+          break;
+      }
+      throw new IllegalArgumentException("Bad descriptor: " + field);
+    }
+    
+    /** Returns the {@code field} from {@code message}. */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Object getField(MessageLite rawMessage, Descriptor field) {
+      Preconditions.checkNotNull(rawMessage);
+      Preconditions.checkNotNull(field);
+      DigestPrefixP message = (DigestPrefixP) rawMessage;
+      switch (field.getNumber()) {
+        case 1:
+          if (field == DIGEST_PREFIX) {
+            return message.getDigestPrefix();
+          }
+          break;
+        case 2:
+          if (field == PREFIX_LENGTH) {
+            return message.getPrefixLength();
+          }
+          break;
+        default:
+          break;
+      }
+      throw new IllegalArgumentException("Bad descriptor: " + field);
+    }
+    
+    @Override
+    public Set<String> getAllFieldNames() {
+      return ALL_FIELD_NAMES;
+    }
+  }
+  public static final DigestPrefixPAccessor DIGEST_PREFIX_P_ACCESSOR = new DigestPrefixPAccessor();
+  
   /** Class to access fields in {@link ErrorMessage} protos. */
   public static class ErrorMessageAccessor implements Accessor {
     private static final Set<String> ALL_FIELD_NAMES = new HashSet<String>(
@@ -537,8 +924,8 @@ public class ClientProtocolAccessor {
         "description"
       ));
     
-    public static final Descriptor CODE = new Descriptor("code");
-    public static final Descriptor DESCRIPTION = new Descriptor("description");
+    public static final Descriptor CODE = new Descriptor("code", 1);
+    public static final Descriptor DESCRIPTION = new Descriptor("description", 2);
     
     /** Returns whether {@code field} is present in {@code message}. */
     @Override
@@ -547,11 +934,19 @@ public class ClientProtocolAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       ErrorMessage message = (ErrorMessage) rawMessage;
-      if (field == CODE) {
-        return message.hasCode();
-      }
-      if (field == DESCRIPTION) {
-        return message.hasDescription();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == CODE) {
+            return message.hasCode();
+          }
+          break;
+        case 2:
+          if (field == DESCRIPTION) {
+            return message.hasDescription();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -563,11 +958,19 @@ public class ClientProtocolAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       ErrorMessage message = (ErrorMessage) rawMessage;
-      if (field == CODE) {
-        return message.getCode();
-      }
-      if (field == DESCRIPTION) {
-        return message.getDescription();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == CODE) {
+            return message.getCode();
+          }
+          break;
+        case 2:
+          if (field == DESCRIPTION) {
+            return message.getDescription();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -590,11 +993,11 @@ public class ClientProtocolAccessor {
         "client_config"
       ));
     
-    public static final Descriptor CLIENT_VERSION = new Descriptor("client_version");
-    public static final Descriptor CONFIG_PARAMETER = new Descriptor("config_parameter");
-    public static final Descriptor PERFORMANCE_COUNTER = new Descriptor("performance_counter");
-    public static final Descriptor SERVER_REGISTRATION_SUMMARY_REQUESTED = new Descriptor("server_registration_summary_requested");
-    public static final Descriptor CLIENT_CONFIG = new Descriptor("client_config");
+    public static final Descriptor CLIENT_VERSION = new Descriptor("client_version", 1);
+    public static final Descriptor CONFIG_PARAMETER = new Descriptor("config_parameter", 2);
+    public static final Descriptor PERFORMANCE_COUNTER = new Descriptor("performance_counter", 3);
+    public static final Descriptor SERVER_REGISTRATION_SUMMARY_REQUESTED = new Descriptor("server_registration_summary_requested", 4);
+    public static final Descriptor CLIENT_CONFIG = new Descriptor("client_config", 5);
     
     /** Returns whether {@code field} is present in {@code message}. */
     @Override
@@ -603,20 +1006,34 @@ public class ClientProtocolAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       InfoMessage message = (InfoMessage) rawMessage;
-      if (field == CLIENT_VERSION) {
-        return message.hasClientVersion();
-      }
-      if (field == CONFIG_PARAMETER) {
-        return message.getConfigParameterCount() > 0;
-      }
-      if (field == PERFORMANCE_COUNTER) {
-        return message.getPerformanceCounterCount() > 0;
-      }
-      if (field == SERVER_REGISTRATION_SUMMARY_REQUESTED) {
-        return message.hasServerRegistrationSummaryRequested();
-      }
-      if (field == CLIENT_CONFIG) {
-        return message.hasClientConfig();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == CLIENT_VERSION) {
+            return message.hasClientVersion();
+          }
+          break;
+        case 2:
+          if (field == CONFIG_PARAMETER) {
+            return message.getConfigParameterCount() > 0;
+          }
+          break;
+        case 3:
+          if (field == PERFORMANCE_COUNTER) {
+            return message.getPerformanceCounterCount() > 0;
+          }
+          break;
+        case 4:
+          if (field == SERVER_REGISTRATION_SUMMARY_REQUESTED) {
+            return message.hasServerRegistrationSummaryRequested();
+          }
+          break;
+        case 5:
+          if (field == CLIENT_CONFIG) {
+            return message.hasClientConfig();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -628,20 +1045,34 @@ public class ClientProtocolAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       InfoMessage message = (InfoMessage) rawMessage;
-      if (field == CLIENT_VERSION) {
-        return message.getClientVersion();
-      }
-      if (field == CONFIG_PARAMETER) {
-        return message.getConfigParameterList();
-      }
-      if (field == PERFORMANCE_COUNTER) {
-        return message.getPerformanceCounterList();
-      }
-      if (field == SERVER_REGISTRATION_SUMMARY_REQUESTED) {
-        return message.getServerRegistrationSummaryRequested();
-      }
-      if (field == CLIENT_CONFIG) {
-        return message.getClientConfig();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == CLIENT_VERSION) {
+            return message.getClientVersion();
+          }
+          break;
+        case 2:
+          if (field == CONFIG_PARAMETER) {
+            return message.getConfigParameterList();
+          }
+          break;
+        case 3:
+          if (field == PERFORMANCE_COUNTER) {
+            return message.getPerformanceCounterList();
+          }
+          break;
+        case 4:
+          if (field == SERVER_REGISTRATION_SUMMARY_REQUESTED) {
+            return message.getServerRegistrationSummaryRequested();
+          }
+          break;
+        case 5:
+          if (field == CLIENT_CONFIG) {
+            return message.getClientConfig();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -660,7 +1091,7 @@ public class ClientProtocolAccessor {
         "info_type"
       ));
     
-    public static final Descriptor INFO_TYPE = new Descriptor("info_type");
+    public static final Descriptor INFO_TYPE = new Descriptor("info_type", 1);
     
     /** Returns whether {@code field} is present in {@code message}. */
     @Override
@@ -669,8 +1100,14 @@ public class ClientProtocolAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       InfoRequestMessage message = (InfoRequestMessage) rawMessage;
-      if (field == INFO_TYPE) {
-        return message.getInfoTypeCount() > 0;
+      switch (field.getNumber()) {
+        case 1:
+          if (field == INFO_TYPE) {
+            return message.getInfoTypeCount() > 0;
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -682,8 +1119,14 @@ public class ClientProtocolAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       InfoRequestMessage message = (InfoRequestMessage) rawMessage;
-      if (field == INFO_TYPE) {
-        return message.getInfoTypeList();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == INFO_TYPE) {
+            return message.getInfoTypeList();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -705,10 +1148,10 @@ public class ClientProtocolAccessor {
         "digest_serialization_type"
       ));
     
-    public static final Descriptor CLIENT_TYPE = new Descriptor("client_type");
-    public static final Descriptor NONCE = new Descriptor("nonce");
-    public static final Descriptor APPLICATION_CLIENT_ID = new Descriptor("application_client_id");
-    public static final Descriptor DIGEST_SERIALIZATION_TYPE = new Descriptor("digest_serialization_type");
+    public static final Descriptor CLIENT_TYPE = new Descriptor("client_type", 1);
+    public static final Descriptor NONCE = new Descriptor("nonce", 2);
+    public static final Descriptor APPLICATION_CLIENT_ID = new Descriptor("application_client_id", 3);
+    public static final Descriptor DIGEST_SERIALIZATION_TYPE = new Descriptor("digest_serialization_type", 4);
     
     /** Returns whether {@code field} is present in {@code message}. */
     @Override
@@ -717,17 +1160,29 @@ public class ClientProtocolAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       InitializeMessage message = (InitializeMessage) rawMessage;
-      if (field == CLIENT_TYPE) {
-        return message.hasClientType();
-      }
-      if (field == NONCE) {
-        return message.hasNonce();
-      }
-      if (field == APPLICATION_CLIENT_ID) {
-        return message.hasApplicationClientId();
-      }
-      if (field == DIGEST_SERIALIZATION_TYPE) {
-        return message.hasDigestSerializationType();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == CLIENT_TYPE) {
+            return message.hasClientType();
+          }
+          break;
+        case 2:
+          if (field == NONCE) {
+            return message.hasNonce();
+          }
+          break;
+        case 3:
+          if (field == APPLICATION_CLIENT_ID) {
+            return message.hasApplicationClientId();
+          }
+          break;
+        case 4:
+          if (field == DIGEST_SERIALIZATION_TYPE) {
+            return message.hasDigestSerializationType();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -739,17 +1194,29 @@ public class ClientProtocolAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       InitializeMessage message = (InitializeMessage) rawMessage;
-      if (field == CLIENT_TYPE) {
-        return message.getClientType();
-      }
-      if (field == NONCE) {
-        return message.getNonce();
-      }
-      if (field == APPLICATION_CLIENT_ID) {
-        return message.getApplicationClientId();
-      }
-      if (field == DIGEST_SERIALIZATION_TYPE) {
-        return message.getDigestSerializationType();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == CLIENT_TYPE) {
+            return message.getClientType();
+          }
+          break;
+        case 2:
+          if (field == NONCE) {
+            return message.getNonce();
+          }
+          break;
+        case 3:
+          if (field == APPLICATION_CLIENT_ID) {
+            return message.getApplicationClientId();
+          }
+          break;
+        case 4:
+          if (field == DIGEST_SERIALIZATION_TYPE) {
+            return message.getDigestSerializationType();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -768,7 +1235,7 @@ public class ClientProtocolAccessor {
         "invalidation"
       ));
     
-    public static final Descriptor INVALIDATION = new Descriptor("invalidation");
+    public static final Descriptor INVALIDATION = new Descriptor("invalidation", 1);
     
     /** Returns whether {@code field} is present in {@code message}. */
     @Override
@@ -777,8 +1244,14 @@ public class ClientProtocolAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       InvalidationMessage message = (InvalidationMessage) rawMessage;
-      if (field == INVALIDATION) {
-        return message.getInvalidationCount() > 0;
+      switch (field.getNumber()) {
+        case 1:
+          if (field == INVALIDATION) {
+            return message.getInvalidationCount() > 0;
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -790,8 +1263,14 @@ public class ClientProtocolAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       InvalidationMessage message = (InvalidationMessage) rawMessage;
-      if (field == INVALIDATION) {
-        return message.getInvalidationList();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == INVALIDATION) {
+            return message.getInvalidationList();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -815,12 +1294,12 @@ public class ClientProtocolAccessor {
         "bridge_arrival_time_ms_deprecated"
       ));
     
-    public static final Descriptor OBJECT_ID = new Descriptor("object_id");
-    public static final Descriptor IS_KNOWN_VERSION = new Descriptor("is_known_version");
-    public static final Descriptor VERSION = new Descriptor("version");
-    public static final Descriptor IS_TRICKLE_RESTART = new Descriptor("is_trickle_restart");
-    public static final Descriptor PAYLOAD = new Descriptor("payload");
-    public static final Descriptor BRIDGE_ARRIVAL_TIME_MS_DEPRECATED = new Descriptor("bridge_arrival_time_ms_deprecated");
+    public static final Descriptor OBJECT_ID = new Descriptor("object_id", 1);
+    public static final Descriptor IS_KNOWN_VERSION = new Descriptor("is_known_version", 2);
+    public static final Descriptor VERSION = new Descriptor("version", 3);
+    public static final Descriptor IS_TRICKLE_RESTART = new Descriptor("is_trickle_restart", 6);
+    public static final Descriptor PAYLOAD = new Descriptor("payload", 4);
+    public static final Descriptor BRIDGE_ARRIVAL_TIME_MS_DEPRECATED = new Descriptor("bridge_arrival_time_ms_deprecated", 5);
     
     /** Returns whether {@code field} is present in {@code message}. */
     @Override
@@ -829,23 +1308,39 @@ public class ClientProtocolAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       InvalidationP message = (InvalidationP) rawMessage;
-      if (field == OBJECT_ID) {
-        return message.hasObjectId();
-      }
-      if (field == IS_KNOWN_VERSION) {
-        return message.hasIsKnownVersion();
-      }
-      if (field == VERSION) {
-        return message.hasVersion();
-      }
-      if (field == IS_TRICKLE_RESTART) {
-        return message.hasIsTrickleRestart();
-      }
-      if (field == PAYLOAD) {
-        return message.hasPayload();
-      }
-      if (field == BRIDGE_ARRIVAL_TIME_MS_DEPRECATED) {
-        return message.hasBridgeArrivalTimeMsDeprecated();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == OBJECT_ID) {
+            return message.hasObjectId();
+          }
+          break;
+        case 2:
+          if (field == IS_KNOWN_VERSION) {
+            return message.hasIsKnownVersion();
+          }
+          break;
+        case 3:
+          if (field == VERSION) {
+            return message.hasVersion();
+          }
+          break;
+        case 6:
+          if (field == IS_TRICKLE_RESTART) {
+            return message.hasIsTrickleRestart();
+          }
+          break;
+        case 4:
+          if (field == PAYLOAD) {
+            return message.hasPayload();
+          }
+          break;
+        case 5:
+          if (field == BRIDGE_ARRIVAL_TIME_MS_DEPRECATED) {
+            return message.hasBridgeArrivalTimeMsDeprecated();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -857,23 +1352,39 @@ public class ClientProtocolAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       InvalidationP message = (InvalidationP) rawMessage;
-      if (field == OBJECT_ID) {
-        return message.getObjectId();
-      }
-      if (field == IS_KNOWN_VERSION) {
-        return message.getIsKnownVersion();
-      }
-      if (field == VERSION) {
-        return message.getVersion();
-      }
-      if (field == IS_TRICKLE_RESTART) {
-        return message.getIsTrickleRestart();
-      }
-      if (field == PAYLOAD) {
-        return message.getPayload();
-      }
-      if (field == BRIDGE_ARRIVAL_TIME_MS_DEPRECATED) {
-        return message.getBridgeArrivalTimeMsDeprecated();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == OBJECT_ID) {
+            return message.getObjectId();
+          }
+          break;
+        case 2:
+          if (field == IS_KNOWN_VERSION) {
+            return message.getIsKnownVersion();
+          }
+          break;
+        case 3:
+          if (field == VERSION) {
+            return message.getVersion();
+          }
+          break;
+        case 6:
+          if (field == IS_TRICKLE_RESTART) {
+            return message.getIsTrickleRestart();
+          }
+          break;
+        case 4:
+          if (field == PAYLOAD) {
+            return message.getPayload();
+          }
+          break;
+        case 5:
+          if (field == BRIDGE_ARRIVAL_TIME_MS_DEPRECATED) {
+            return message.getBridgeArrivalTimeMsDeprecated();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -893,8 +1404,8 @@ public class ClientProtocolAccessor {
         "name"
       ));
     
-    public static final Descriptor SOURCE = new Descriptor("source");
-    public static final Descriptor NAME = new Descriptor("name");
+    public static final Descriptor SOURCE = new Descriptor("source", 1);
+    public static final Descriptor NAME = new Descriptor("name", 2);
     
     /** Returns whether {@code field} is present in {@code message}. */
     @Override
@@ -903,11 +1414,19 @@ public class ClientProtocolAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       ObjectIdP message = (ObjectIdP) rawMessage;
-      if (field == SOURCE) {
-        return message.hasSource();
-      }
-      if (field == NAME) {
-        return message.hasName();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == SOURCE) {
+            return message.hasSource();
+          }
+          break;
+        case 2:
+          if (field == NAME) {
+            return message.hasName();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -919,11 +1438,19 @@ public class ClientProtocolAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       ObjectIdP message = (ObjectIdP) rawMessage;
-      if (field == SOURCE) {
-        return message.getSource();
-      }
-      if (field == NAME) {
-        return message.getName();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == SOURCE) {
+            return message.getSource();
+          }
+          break;
+        case 2:
+          if (field == NAME) {
+            return message.getName();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -943,8 +1470,8 @@ public class ClientProtocolAccessor {
         "value"
       ));
     
-    public static final Descriptor NAME = new Descriptor("name");
-    public static final Descriptor VALUE = new Descriptor("value");
+    public static final Descriptor NAME = new Descriptor("name", 1);
+    public static final Descriptor VALUE = new Descriptor("value", 2);
     
     /** Returns whether {@code field} is present in {@code message}. */
     @Override
@@ -953,11 +1480,19 @@ public class ClientProtocolAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       PropertyRecord message = (PropertyRecord) rawMessage;
-      if (field == NAME) {
-        return message.hasName();
-      }
-      if (field == VALUE) {
-        return message.hasValue();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == NAME) {
+            return message.hasName();
+          }
+          break;
+        case 2:
+          if (field == VALUE) {
+            return message.hasValue();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -969,11 +1504,19 @@ public class ClientProtocolAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       PropertyRecord message = (PropertyRecord) rawMessage;
-      if (field == NAME) {
-        return message.getName();
-      }
-      if (field == VALUE) {
-        return message.getValue();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == NAME) {
+            return message.getName();
+          }
+          break;
+        case 2:
+          if (field == VALUE) {
+            return message.getValue();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -990,11 +1533,25 @@ public class ClientProtocolAccessor {
     private static final Set<String> ALL_FIELD_NAMES = new HashSet<String>(
       Arrays.<String>asList(
         "batching_delay_ms",
-        "rate_limit"
+        "rate_limit",
+        "max_message_size_bytes",
+        "min_batching_delay_ms",
+        "max_batching_delay_ms",
+        "outgoing_message_validation_period",
+        "urgent_batching_delay_ms",
+        "max_messages_in_flight",
+        "min_compressed_body_size_bytes"
       ));
     
-    public static final Descriptor BATCHING_DELAY_MS = new Descriptor("batching_delay_ms");
-    public static final Descriptor RATE_LIMIT = new Descriptor("rate_limit");
+    public static final Descriptor BATCHING_DELAY_MS = new Descriptor("batching_delay_ms", 1);
+    public static final Descriptor RATE_LIMIT = new Descriptor("rate_limit", 2);
+    public static final Descriptor MAX_MESSAGE_SIZE_BYTES = new Descriptor("max_message_size_bytes", 3);
+    public static final Descriptor MIN_BATCHING_DELAY_MS = new Descriptor("min_batching_delay_ms", 4);
+    public static final Descriptor MAX_BATCHING_DELAY_MS = new Descriptor("max_batching_delay_ms", 5);
+    public static final Descriptor OUTGOING_MESSAGE_VALIDATION_PERIOD = new Descriptor("outgoing_message_validation_period", 6);
+    public static final Descriptor URGENT_BATCHING_DELAY_MS = new Descriptor("urgent_batching_delay_ms", 7);
+    public static final Descriptor MAX_MESSAGES_IN_FLIGHT = new Descriptor("max_messages_in_flight", 8);
+    public static final Descriptor MIN_COMPRESSED_BODY_SIZE_BYTES = new Descriptor("min_compressed_body_size_bytes", 9);
     
     /** Returns whether {@code field} is present in {@code message}. */
     @Override
@@ -1003,11 +1560,54 @@ public class ClientProtocolAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       ProtocolHandlerConfigP message = (ProtocolHandlerConfigP) rawMessage;
-      if (field == BATCHING_DELAY_MS) {
-        return message.hasBatchingDelayMs();
-      }
-      if (field == RATE_LIMIT) {
-        return message.getRateLimitCount() > 0;
+      switch (field.getNumber()) {
+        case 1:
+          if (field == BATCHING_DELAY_MS) {
+            return message.hasBatchingDelayMs();
+          }
+          break;
+        case 2:
+          if (field == RATE_LIMIT) {
+            return message.getRateLimitCount() > 0;
+          }
+          break;
+        case 3:
+          if (field == MAX_MESSAGE_SIZE_BYTES) {
+            return message.hasMaxMessageSizeBytes();
+          }
+          break;
+        case 4:
+          if (field == MIN_BATCHING_DELAY_MS) {
+            return message.hasMinBatchingDelayMs();
+          }
+          break;
+        case 5:
+          if (field == MAX_BATCHING_DELAY_MS) {
+            return message.hasMaxBatchingDelayMs();
+          }
+          break;
+        case 6:
+          if (field == OUTGOING_MESSAGE_VALIDATION_PERIOD) {
+            return message.hasOutgoingMessageValidationPeriod();
+          }
+          break;
+        case 7:
+          if (field == URGENT_BATCHING_DELAY_MS) {
+            return message.hasUrgentBatchingDelayMs();
+          }
+          break;
+        case 8:
+          if (field == MAX_MESSAGES_IN_FLIGHT) {
+            return message.hasMaxMessagesInFlight();
+          }
+          break;
+        case 9:
+          if (field == MIN_COMPRESSED_BODY_SIZE_BYTES) {
+            return message.hasMinCompressedBodySizeBytes();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -1019,11 +1619,54 @@ public class ClientProtocolAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       ProtocolHandlerConfigP message = (ProtocolHandlerConfigP) rawMessage;
-      if (field == BATCHING_DELAY_MS) {
-        return message.getBatchingDelayMs();
-      }
-      if (field == RATE_LIMIT) {
-        return message.getRateLimitList();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == BATCHING_DELAY_MS) {
+            return message.getBatchingDelayMs();
+          }
+          break;
+        case 2:
+          if (field == RATE_LIMIT) {
+            return message.getRateLimitList();
+          }
+          break;
+        case 3:
+          if (field == MAX_MESSAGE_SIZE_BYTES) {
+            return message.getMaxMessageSizeBytes();
+          }
+          break;
+        case 4:
+          if (field == MIN_BATCHING_DELAY_MS) {
+            return message.getMinBatchingDelayMs();
+          }
+          break;
+        case 5:
+          if (field == MAX_BATCHING_DELAY_MS) {
+            return message.getMaxBatchingDelayMs();
+          }
+          break;
+        case 6:
+          if (field == OUTGOING_MESSAGE_VALIDATION_PERIOD) {
+            return message.getOutgoingMessageValidationPeriod();
+          }
+          break;
+        case 7:
+          if (field == URGENT_BATCHING_DELAY_MS) {
+            return message.getUrgentBatchingDelayMs();
+          }
+          break;
+        case 8:
+          if (field == MAX_MESSAGES_IN_FLIGHT) {
+            return message.getMaxMessagesInFlight();
+          }
+          break;
+        case 9:
+          if (field == MIN_COMPRESSED_BODY_SIZE_BYTES) {
+            return message.getMinCompressedBodySizeBytes();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -1042,7 +1685,7 @@ public class ClientProtocolAccessor {
         "version"
       ));
     
-    public static final Descriptor VERSION = new Descriptor("version");
+    public static final Descriptor VERSION = new Descriptor("version", 1);
     
     /** Returns whether {@code field} is present in {@code message}. */
     @Override
@@ -1051,8 +1694,14 @@ public class ClientProtocolAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       ProtocolVersion message = (ProtocolVersion) rawMessage;
-      if (field == VERSION) {
-        return message.hasVersion();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == VERSION) {
+            return message.hasVersion();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -1064,8 +1713,14 @@ public class ClientProtocolAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       ProtocolVersion message = (ProtocolVersion) rawMessage;
-      if (field == VERSION) {
-        return message.getVersion();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == VERSION) {
+            return message.getVersion();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -1085,8 +1740,8 @@ public class ClientProtocolAccessor {
         "count"
       ));
     
-    public static final Descriptor WINDOW_MS = new Descriptor("window_ms");
-    public static final Descriptor COUNT = new Descriptor("count");
+    public static final Descriptor WINDOW_MS = new Descriptor("window_ms", 1);
+    public static final Descriptor COUNT = new Descriptor("count", 2);
     
     /** Returns whether {@code field} is present in {@code message}. */
     @Override
@@ -1095,11 +1750,19 @@ public class ClientProtocolAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       RateLimitP message = (RateLimitP) rawMessage;
-      if (field == WINDOW_MS) {
-        return message.hasWindowMs();
-      }
-      if (field == COUNT) {
-        return message.hasCount();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == WINDOW_MS) {
+            return message.hasWindowMs();
+          }
+          break;
+        case 2:
+          if (field == COUNT) {
+            return message.hasCount();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -1111,11 +1774,19 @@ public class ClientProtocolAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       RateLimitP message = (RateLimitP) rawMessage;
-      if (field == WINDOW_MS) {
-        return message.getWindowMs();
-      }
-      if (field == COUNT) {
-        return message.getCount();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == WINDOW_MS) {
+            return message.getWindowMs();
+          }
+          break;
+        case 2:
+          if (field == COUNT) {
+            return message.getCount();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -1134,7 +1805,7 @@ public class ClientProtocolAccessor {
         "registration"
       ));
     
-    public static final Descriptor REGISTRATION = new Descriptor("registration");
+    public static final Descriptor REGISTRATION = new Descriptor("registration", 1);
     
     /** Returns whether {@code field} is present in {@code message}. */
     @Override
@@ -1143,8 +1814,14 @@ public class ClientProtocolAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       RegistrationMessage message = (RegistrationMessage) rawMessage;
-      if (field == REGISTRATION) {
-        return message.getRegistrationCount() > 0;
+      switch (field.getNumber()) {
+        case 1:
+          if (field == REGISTRATION) {
+            return message.getRegistrationCount() > 0;
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -1156,8 +1833,14 @@ public class ClientProtocolAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       RegistrationMessage message = (RegistrationMessage) rawMessage;
-      if (field == REGISTRATION) {
-        return message.getRegistrationList();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == REGISTRATION) {
+            return message.getRegistrationList();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -1177,8 +1860,8 @@ public class ClientProtocolAccessor {
         "op_type"
       ));
     
-    public static final Descriptor OBJECT_ID = new Descriptor("object_id");
-    public static final Descriptor OP_TYPE = new Descriptor("op_type");
+    public static final Descriptor OBJECT_ID = new Descriptor("object_id", 1);
+    public static final Descriptor OP_TYPE = new Descriptor("op_type", 2);
     
     /** Returns whether {@code field} is present in {@code message}. */
     @Override
@@ -1187,11 +1870,19 @@ public class ClientProtocolAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       RegistrationP message = (RegistrationP) rawMessage;
-      if (field == OBJECT_ID) {
-        return message.hasObjectId();
-      }
-      if (field == OP_TYPE) {
-        return message.hasOpType();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == OBJECT_ID) {
+            return message.hasObjectId();
+          }
+          break;
+        case 2:
+          if (field == OP_TYPE) {
+            return message.hasOpType();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -1203,11 +1894,19 @@ public class ClientProtocolAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       RegistrationP message = (RegistrationP) rawMessage;
-      if (field == OBJECT_ID) {
-        return message.getObjectId();
-      }
-      if (field == OP_TYPE) {
-        return message.getOpType();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == OBJECT_ID) {
+            return message.getObjectId();
+          }
+          break;
+        case 2:
+          if (field == OP_TYPE) {
+            return message.getOpType();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -1227,8 +1926,8 @@ public class ClientProtocolAccessor {
         "status"
       ));
     
-    public static final Descriptor REGISTRATION = new Descriptor("registration");
-    public static final Descriptor STATUS = new Descriptor("status");
+    public static final Descriptor REGISTRATION = new Descriptor("registration", 1);
+    public static final Descriptor STATUS = new Descriptor("status", 2);
     
     /** Returns whether {@code field} is present in {@code message}. */
     @Override
@@ -1237,11 +1936,19 @@ public class ClientProtocolAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       RegistrationStatus message = (RegistrationStatus) rawMessage;
-      if (field == REGISTRATION) {
-        return message.hasRegistration();
-      }
-      if (field == STATUS) {
-        return message.hasStatus();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == REGISTRATION) {
+            return message.hasRegistration();
+          }
+          break;
+        case 2:
+          if (field == STATUS) {
+            return message.hasStatus();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -1253,11 +1960,19 @@ public class ClientProtocolAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       RegistrationStatus message = (RegistrationStatus) rawMessage;
-      if (field == REGISTRATION) {
-        return message.getRegistration();
-      }
-      if (field == STATUS) {
-        return message.getStatus();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == REGISTRATION) {
+            return message.getRegistration();
+          }
+          break;
+        case 2:
+          if (field == STATUS) {
+            return message.getStatus();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -1276,7 +1991,7 @@ public class ClientProtocolAccessor {
         "registration_status"
       ));
     
-    public static final Descriptor REGISTRATION_STATUS = new Descriptor("registration_status");
+    public static final Descriptor REGISTRATION_STATUS = new Descriptor("registration_status", 1);
     
     /** Returns whether {@code field} is present in {@code message}. */
     @Override
@@ -1285,8 +2000,14 @@ public class ClientProtocolAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       RegistrationStatusMessage message = (RegistrationStatusMessage) rawMessage;
-      if (field == REGISTRATION_STATUS) {
-        return message.getRegistrationStatusCount() > 0;
+      switch (field.getNumber()) {
+        case 1:
+          if (field == REGISTRATION_STATUS) {
+            return message.getRegistrationStatusCount() > 0;
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -1298,8 +2019,14 @@ public class ClientProtocolAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       RegistrationStatusMessage message = (RegistrationStatusMessage) rawMessage;
-      if (field == REGISTRATION_STATUS) {
-        return message.getRegistrationStatusList();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == REGISTRATION_STATUS) {
+            return message.getRegistrationStatusList();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -1315,10 +2042,12 @@ public class ClientProtocolAccessor {
   public static class RegistrationSubtreeAccessor implements Accessor {
     private static final Set<String> ALL_FIELD_NAMES = new HashSet<String>(
       Arrays.<String>asList(
-        "registered_object"
+        "registered_object",
+        "prefix"
       ));
     
-    public static final Descriptor REGISTERED_OBJECT = new Descriptor("registered_object");
+    public static final Descriptor REGISTERED_OBJECT = new Descriptor("registered_object", 1);
+    public static final Descriptor PREFIX = new Descriptor("prefix", 2);
     
     /** Returns whether {@code field} is present in {@code message}. */
     @Override
@@ -1327,8 +2056,19 @@ public class ClientProtocolAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       RegistrationSubtree message = (RegistrationSubtree) rawMessage;
-      if (field == REGISTERED_OBJECT) {
-        return message.getRegisteredObjectCount() > 0;
+      switch (field.getNumber()) {
+        case 1:
+          if (field == REGISTERED_OBJECT) {
+            return message.getRegisteredObjectCount() > 0;
+          }
+          break;
+        case 2:
+          if (field == PREFIX) {
+            return message.hasPrefix();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -1340,8 +2080,19 @@ public class ClientProtocolAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       RegistrationSubtree message = (RegistrationSubtree) rawMessage;
-      if (field == REGISTERED_OBJECT) {
-        return message.getRegisteredObjectList();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == REGISTERED_OBJECT) {
+            return message.getRegisteredObjectList();
+          }
+          break;
+        case 2:
+          if (field == PREFIX) {
+            return message.getPrefix();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -1353,6 +2104,72 @@ public class ClientProtocolAccessor {
   }
   public static final RegistrationSubtreeAccessor REGISTRATION_SUBTREE_ACCESSOR = new RegistrationSubtreeAccessor();
   
+  /** Class to access fields in {@link RegistrationSubtreeSummary} protos. */
+  public static class RegistrationSubtreeSummaryAccessor implements Accessor {
+    private static final Set<String> ALL_FIELD_NAMES = new HashSet<String>(
+      Arrays.<String>asList(
+        "prefix",
+        "summary"
+      ));
+    
+    public static final Descriptor PREFIX = new Descriptor("prefix", 1);
+    public static final Descriptor SUMMARY = new Descriptor("summary", 2);
+    
+    /** Returns whether {@code field} is present in {@code message}. */
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean hasField(MessageLite rawMessage, Descriptor field) {
+      Preconditions.checkNotNull(rawMessage);
+      Preconditions.checkNotNull(field);
+      RegistrationSubtreeSummary message = (RegistrationSubtreeSummary) rawMessage;
+      switch (field.getNumber()) {
+        case 1:
+          if (field == PREFIX) {
+            return message.hasPrefix();
+          }
+          break;
+        case 2:
+          if (field == SUMMARY) {
+            return message.hasSummary();
+          }
+          break;
+        default:
+          break;
+      }
+      throw new IllegalArgumentException("Bad descriptor: " + field);
+    }
+    
+    /** Returns the {@code field} from {@code message}. */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Object getField(MessageLite rawMessage, Descriptor field) {
+      Preconditions.checkNotNull(rawMessage);
+      Preconditions.checkNotNull(field);
+      RegistrationSubtreeSummary message = (RegistrationSubtreeSummary) rawMessage;
+      switch (field.getNumber()) {
+        case 1:
+          if (field == PREFIX) {
+            return message.getPrefix();
+          }
+          break;
+        case 2:
+          if (field == SUMMARY) {
+            return message.getSummary();
+          }
+          break;
+        default:
+          break;
+      }
+      throw new IllegalArgumentException("Bad descriptor: " + field);
+    }
+    
+    @Override
+    public Set<String> getAllFieldNames() {
+      return ALL_FIELD_NAMES;
+    }
+  }
+  public static final RegistrationSubtreeSummaryAccessor REGISTRATION_SUBTREE_SUMMARY_ACCESSOR = new RegistrationSubtreeSummaryAccessor();
+  
   /** Class to access fields in {@link RegistrationSummary} protos. */
   public static class RegistrationSummaryAccessor implements Accessor {
     private static final Set<String> ALL_FIELD_NAMES = new HashSet<String>(
@@ -1361,8 +2178,8 @@ public class ClientProtocolAccessor {
         "registration_digest"
       ));
     
-    public static final Descriptor NUM_REGISTRATIONS = new Descriptor("num_registrations");
-    public static final Descriptor REGISTRATION_DIGEST = new Descriptor("registration_digest");
+    public static final Descriptor NUM_REGISTRATIONS = new Descriptor("num_registrations", 1);
+    public static final Descriptor REGISTRATION_DIGEST = new Descriptor("registration_digest", 2);
     
     /** Returns whether {@code field} is present in {@code message}. */
     @Override
@@ -1371,11 +2188,19 @@ public class ClientProtocolAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       RegistrationSummary message = (RegistrationSummary) rawMessage;
-      if (field == NUM_REGISTRATIONS) {
-        return message.hasNumRegistrations();
-      }
-      if (field == REGISTRATION_DIGEST) {
-        return message.hasRegistrationDigest();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == NUM_REGISTRATIONS) {
+            return message.hasNumRegistrations();
+          }
+          break;
+        case 2:
+          if (field == REGISTRATION_DIGEST) {
+            return message.hasRegistrationDigest();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -1387,11 +2212,19 @@ public class ClientProtocolAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       RegistrationSummary message = (RegistrationSummary) rawMessage;
-      if (field == NUM_REGISTRATIONS) {
-        return message.getNumRegistrations();
-      }
-      if (field == REGISTRATION_DIGEST) {
-        return message.getRegistrationDigest();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == NUM_REGISTRATIONS) {
+            return message.getNumRegistrations();
+          }
+          break;
+        case 2:
+          if (field == REGISTRATION_DIGEST) {
+            return message.getRegistrationDigest();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -1407,10 +2240,12 @@ public class ClientProtocolAccessor {
   public static class RegistrationSyncMessageAccessor implements Accessor {
     private static final Set<String> ALL_FIELD_NAMES = new HashSet<String>(
       Arrays.<String>asList(
-        "subtree"
+        "subtree",
+        "subtree_summary"
       ));
     
-    public static final Descriptor SUBTREE = new Descriptor("subtree");
+    public static final Descriptor SUBTREE = new Descriptor("subtree", 1);
+    public static final Descriptor SUBTREE_SUMMARY = new Descriptor("subtree_summary", 2);
     
     /** Returns whether {@code field} is present in {@code message}. */
     @Override
@@ -1419,8 +2254,19 @@ public class ClientProtocolAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       RegistrationSyncMessage message = (RegistrationSyncMessage) rawMessage;
-      if (field == SUBTREE) {
-        return message.getSubtreeCount() > 0;
+      switch (field.getNumber()) {
+        case 1:
+          if (field == SUBTREE) {
+            return message.getSubtreeCount() > 0;
+          }
+          break;
+        case 2:
+          if (field == SUBTREE_SUMMARY) {
+            return message.getSubtreeSummaryCount() > 0;
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -1432,8 +2278,19 @@ public class ClientProtocolAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       RegistrationSyncMessage message = (RegistrationSyncMessage) rawMessage;
-      if (field == SUBTREE) {
-        return message.getSubtreeList();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == SUBTREE) {
+            return message.getSubtreeList();
+          }
+          break;
+        case 2:
+          if (field == SUBTREE_SUMMARY) {
+            return message.getSubtreeSummaryList();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -1449,8 +2306,12 @@ public class ClientProtocolAccessor {
   public static class RegistrationSyncRequestMessageAccessor implements Accessor {
     private static final Set<String> ALL_FIELD_NAMES = new HashSet<String>(
       Arrays.<String>asList(
+        "subtree",
+        "summary_requested"
       ));
     
+    public static final Descriptor SUBTREE = new Descriptor("subtree", 1);
+    public static final Descriptor SUMMARY_REQUESTED = new Descriptor("summary_requested", 2);
     
     /** Returns whether {@code field} is present in {@code message}. */
     @Override
@@ -1459,6 +2320,20 @@ public class ClientProtocolAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       RegistrationSyncRequestMessage message = (RegistrationSyncRequestMessage) rawMessage;
+      switch (field.getNumber()) {
+        case 1:
+          if (field == SUBTREE) {
+            return message.getSubtreeCount() > 0;
+          }
+          break;
+        case 2:
+          if (field == SUMMARY_REQUESTED) {
+            return message.getSummaryRequestedCount() > 0;
+          }
+          break;
+        default:
+          break;
+      }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
     
@@ -1469,6 +2344,20 @@ public class ClientProtocolAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       RegistrationSyncRequestMessage message = (RegistrationSyncRequestMessage) rawMessage;
+      switch (field.getNumber()) {
+        case 1:
+          if (field == SUBTREE) {
+            return message.getSubtreeList();
+          }
+          break;
+        case 2:
+          if (field == SUMMARY_REQUESTED) {
+            return message.getSummaryRequestedList();
+          }
+          break;
+        default:
+          break;
+      }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
     
@@ -1487,14 +2376,16 @@ public class ClientProtocolAccessor {
         "client_token",
         "registration_summary",
         "server_time_ms",
-        "message_id"
+        "message_id",
+        "accepted_compression"
       ));
     
-    public static final Descriptor PROTOCOL_VERSION = new Descriptor("protocol_version");
-    public static final Descriptor CLIENT_TOKEN = new Descriptor("client_token");
-    public static final Descriptor REGISTRATION_SUMMARY = new Descriptor("registration_summary");
-    public static final Descriptor SERVER_TIME_MS = new Descriptor("server_time_ms");
-    public static final Descriptor MESSAGE_ID = new Descriptor("message_id");
+    public static final Descriptor PROTOCOL_VERSION = new Descriptor("protocol_version", 1);
+    public static final Descriptor CLIENT_TOKEN = new Descriptor("client_token", 2);
+    public static final Descriptor REGISTRATION_SUMMARY = new Descriptor("registration_summary", 3);
+    public static final Descriptor SERVER_TIME_MS = new Descriptor("server_time_ms", 4);
+    public static final Descriptor MESSAGE_ID = new Descriptor("message_id", 5);
+    public static final Descriptor ACCEPTED_COMPRESSION = new Descriptor("accepted_compression", 6);
     
     /** Returns whether {@code field} is present in {@code message}. */
     @Override
@@ -1503,20 +2394,39 @@ public class ClientProtocolAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       ServerHeader message = (ServerHeader) rawMessage;
-      if (field == PROTOCOL_VERSION) {
-        return message.hasProtocolVersion();
-      }
-      if (field == CLIENT_TOKEN) {
-        return message.hasClientToken();
-      }
-      if (field == REGISTRATION_SUMMARY) {
-        return message.hasRegistrationSummary();
-      }
-      if (field == SERVER_TIME_MS) {
-        return message.hasServerTimeMs();
-      }
-      if (field == MESSAGE_ID) {
-        return message.hasMessageId();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == PROTOCOL_VERSION) {
+            return message.hasProtocolVersion();
+          }
+          break;
+        case 2:
+          if (field == CLIENT_TOKEN) {
+            return message.hasClientToken();
+          }
+          break;
+        case 3:
+          if (field == REGISTRATION_SUMMARY) {
+            return message.hasRegistrationSummary();
+          }
+          break;
+        case 4:
+          if (field == SERVER_TIME_MS) {
+            return message.hasServerTimeMs();
+          }
+          break;
+        case 5:
+          if (field == MESSAGE_ID) {
+            return message.hasMessageId();
+          }
+          break;
+        case 6:
+          if (field == ACCEPTED_COMPRESSION) {
+            return message.getAcceptedCompressionCount() > 0;
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -1528,20 +2438,39 @@ public class ClientProtocolAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       ServerHeader message = (ServerHeader) rawMessage;
-      if (field == PROTOCOL_VERSION) {
-        return message.getProtocolVersion();
-      }
-      if (field == CLIENT_TOKEN) {
-        return message.getClientToken();
-      }
-      if (field == REGISTRATION_SUMMARY) {
-        return message.getRegistrationSummary();
-      }
-      if (field == SERVER_TIME_MS) {
-        return message.getServerTimeMs();
-      }
-      if (field == MESSAGE_ID) {
-        return message.getMessageId();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == PROTOCOL_VERSION) {
+            return message.getProtocolVersion();
+          }
+          break;
+        case 2:
+          if (field == CLIENT_TOKEN) {
+            return message.getClientToken();
+          }
+          break;
+        case 3:
+          if (field == REGISTRATION_SUMMARY) {
+            return message.getRegistrationSummary();
+          }
+          break;
+        case 4:
+          if (field == SERVER_TIME_MS) {
+            return message.getServerTimeMs();
+          }
+          break;
+        case 5:
+          if (field == MESSAGE_ID) {
+            return message.getMessageId();
+          }
+          break;
+        case 6:
+          if (field == ACCEPTED_COMPRESSION) {
+            return message.getAcceptedCompressionList();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -1564,17 +2493,19 @@ public class ClientProtocolAccessor {
         "registration_sync_request_message",
         "config_change_message",
         "info_request_message",
-        "error_message"
+        "error_message",
+        "compressed_body"
       ));
     
-    public static final Descriptor HEADER = new Descriptor("header");
-    public static final Descriptor TOKEN_CONTROL_MESSAGE = new Descriptor("token_control_message");
-    public static final Descriptor INVALIDATION_MESSAGE = new Descriptor("invalidation_message");
-    public static final Descriptor REGISTRATION_STATUS_MESSAGE = new Descriptor("registration_status_message");
-    public static final Descriptor REGISTRATION_SYNC_REQUEST_MESSAGE = new Descriptor("registration_sync_request_message");
-    public static final Descriptor CONFIG_CHANGE_MESSAGE = new Descriptor("config_change_message");
-    public static final Descriptor INFO_REQUEST_MESSAGE = new Descriptor("info_request_message");
-    public static final Descriptor ERROR_MESSAGE = new Descriptor("error_message");
+    public static final Descriptor HEADER = new Descriptor("header", 1);
+    public static final Descriptor TOKEN_CONTROL_MESSAGE = new Descriptor("token_control_message", 2);
+    public static final Descriptor INVALIDATION_MESSAGE = new Descriptor("invalidation_message", 3);
+    public static final Descriptor REGISTRATION_STATUS_MESSAGE = new Descriptor("registration_status_message", 4);
+    public static final Descriptor REGISTRATION_SYNC_REQUEST_MESSAGE = new Descriptor("registration_sync_request_message", 5);
+    public static final Descriptor CONFIG_CHANGE_MESSAGE = new Descriptor("config_change_message", 6);
+    public static final Descriptor INFO_REQUEST_MESSAGE = new Descriptor("info_request_message", 7);
+    public static final Descriptor ERROR_MESSAGE = new Descriptor("error_message", 8);
+    public static final Descriptor COMPRESSED_BODY = new Descriptor("compressed_body", 9);
     
     /** Returns whether {@code field} is present in {@code message}. */
     @Override
@@ -1583,29 +2514,54 @@ public class ClientProtocolAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       ServerToClientMessage message = (ServerToClientMessage) rawMessage;
-      if (field == HEADER) {
-        return message.hasHeader();
-      }
-      if (field == TOKEN_CONTROL_MESSAGE) {
-        return message.hasTokenControlMessage();
-      }
-      if (field == INVALIDATION_MESSAGE) {
-        return message.hasInvalidationMessage();
-      }
-      if (field == REGISTRATION_STATUS_MESSAGE) {
-        return message.hasRegistrationStatusMessage();
-      }
-      if (field == REGISTRATION_SYNC_REQUEST_MESSAGE) {
-        return message.hasRegistrationSyncRequestMessage();
-      }
-      if (field == CONFIG_CHANGE_MESSAGE) {
-        return message.hasConfigChangeMessage();
-      }
-      if (field == INFO_REQUEST_MESSAGE) {
-        return message.hasInfoRequestMessage();
-      }
-      if (field == ERROR_MESSAGE) {
-        return message.hasErrorMessage();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == HEADER) {
+            return message.hasHeader();
+          }
+          break;
+        case 2:
+          if (field == TOKEN_CONTROL_MESSAGE) {
+            return message.hasTokenControlMessage();
+          }
+          break;
+        case 3:
+          if (field == INVALIDATION_MESSAGE) {
+            return message.hasInvalidationMessage();
+          }
+          break;
+        case 4:
+          if (field == REGISTRATION_STATUS_MESSAGE) {
+            return message.hasRegistrationStatusMessage();
+          }
+          break;
+        case 5:
+          if (field == REGISTRATION_SYNC_REQUEST_MESSAGE) {
+            return message.hasRegistrationSyncRequestMessage();
+          }
+          break;
+        case 6:
+          if (field == CONFIG_CHANGE_MESSAGE) {
+            return message.hasConfigChangeMessage();
+          }
+          break;
+        case 7:
+          if (field == INFO_REQUEST_MESSAGE) {
+            return message.hasInfoRequestMessage();
+          }
+          break;
+        case 8:
+          if (field == ERROR_MESSAGE) {
+            return message.hasErrorMessage();
+          }
+          break;
+        case 9:
+          if (field == COMPRESSED_BODY) {
+            return message.hasCompressedBody();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -1617,29 +2573,54 @@ public class ClientProtocolAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       ServerToClientMessage message = (ServerToClientMessage) rawMessage;
-      if (field == HEADER) {
-        return message.getHeader();
-      }
-      if (field == TOKEN_CONTROL_MESSAGE) {
-        return message.getTokenControlMessage();
-      }
-      if (field == INVALIDATION_MESSAGE) {
-        return message.getInvalidationMessage();
-      }
-      if (field == REGISTRATION_STATUS_MESSAGE) {
-        return message.getRegistrationStatusMessage();
-      }
-      if (field == REGISTRATION_SYNC_REQUEST_MESSAGE) {
-        return message.getRegistrationSyncRequestMessage();
-      }
-      if (field == CONFIG_CHANGE_MESSAGE) {
-        return message.getConfigChangeMessage();
-      }
-      if (field == INFO_REQUEST_MESSAGE) {
-        return message.getInfoRequestMessage();
-      }
-      if (field == ERROR_MESSAGE) {
-        return message.getErrorMessage();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == HEADER) {
+            return message.getHeader();
+          }
+          break;
+        case 2:
+          if (field == TOKEN_CONTROL_MESSAGE) {
+            return message.getTokenControlMessage();
+          }
+          break;
+        case 3:
+          if (field == INVALIDATION_MESSAGE) {
+            return message.getInvalidationMessage();
+          }
+          break;
+        case 4:
+          if (field == REGISTRATION_STATUS_MESSAGE) {
+            return message.getRegistrationStatusMessage();
+          }
+          break;
+        case 5:
+          if (field == REGISTRATION_SYNC_REQUEST_MESSAGE) {
+            return message.getRegistrationSyncRequestMessage();
+          }
+          break;
+        case 6:
+          if (field == CONFIG_CHANGE_MESSAGE) {
+            return message.getConfigChangeMessage();
+          }
+          break;
+        case 7:
+          if (field == INFO_REQUEST_MESSAGE) {
+            return message.getInfoRequestMessage();
+          }
+          break;
+        case 8:
+          if (field == ERROR_MESSAGE) {
+            return message.getErrorMessage();
+          }
+          break;
+        case 9:
+          if (field == COMPRESSED_BODY) {
+            return message.getCompressedBody();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -1659,8 +2640,8 @@ public class ClientProtocolAccessor {
         "description"
       ));
     
-    public static final Descriptor CODE = new Descriptor("code");
-    public static final Descriptor DESCRIPTION = new Descriptor("description");
+    public static final Descriptor CODE = new Descriptor("code", 1);
+    public static final Descriptor DESCRIPTION = new Descriptor("description", 2);
     
     /** Returns whether {@code field} is present in {@code message}. */
     @Override
@@ -1669,11 +2650,19 @@ public class ClientProtocolAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       StatusP message = (StatusP) rawMessage;
-      if (field == CODE) {
-        return message.hasCode();
-      }
-      if (field == DESCRIPTION) {
-        return message.hasDescription();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == CODE) {
+            return message.hasCode();
+          }
+          break;
+        case 2:
+          if (field == DESCRIPTION) {
+            return message.hasDescription();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -1685,11 +2674,19 @@ public class ClientProtocolAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       StatusP message = (StatusP) rawMessage;
-      if (field == CODE) {
-        return message.getCode();
-      }
-      if (field == DESCRIPTION) {
-        return message.getDescription();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == CODE) {
+            return message.getCode();
+          }
+          break;
+        case 2:
+          if (field == DESCRIPTION) {
+            return message.getDescription();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -1705,10 +2702,12 @@ public class ClientProtocolAccessor {
   public static class TokenControlMessageAccessor implements Accessor {
     private static final Set<String> ALL_FIELD_NAMES = new HashSet<String>(
       Arrays.<String>asList(
-        "new_token"
+        "new_token",
+        "digest_serialization_type"
       ));
     
-    public static final Descriptor NEW_TOKEN = new Descriptor("new_token");
+    public static final Descriptor NEW_TOKEN = new Descriptor("new_token", 1);
+    public static final Descriptor DIGEST_SERIALIZATION_TYPE = new Descriptor("digest_serialization_type", 2);
     
     /** Returns whether {@code field} is present in {@code message}. */
     @Override
@@ -1717,8 +2716,19 @@ public class ClientProtocolAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       TokenControlMessage message = (TokenControlMessage) rawMessage;
-      if (field == NEW_TOKEN) {
-        return message.hasNewToken();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == NEW_TOKEN) {
+            return message.hasNewToken();
+          }
+          break;
+        case 2:
+          if (field == DIGEST_SERIALIZATION_TYPE) {
+            return message.hasDigestSerializationType();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -1730,8 +2740,19 @@ public class ClientProtocolAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       TokenControlMessage message = (TokenControlMessage) rawMessage;
-      if (field == NEW_TOKEN) {
-        return message.getNewToken();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == NEW_TOKEN) {
+            return message.getNewToken();
+          }
+          break;
+        case 2:
+          if (field == DIGEST_SERIALIZATION_TYPE) {
+            return message.getDigestSerializationType();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -1751,8 +2772,8 @@ public class ClientProtocolAccessor {
         "minor_version"
       ));
     
-    public static final Descriptor MAJOR_VERSION = new Descriptor("major_version");
-    public static final Descriptor MINOR_VERSION = new Descriptor("minor_version");
+    public static final Descriptor MAJOR_VERSION = new Descriptor("major_version", 1);
+    public static final Descriptor MINOR_VERSION = new Descriptor("minor_version", 2);
     
     /** Returns whether {@code field} is present in {@code message}. */
     @Override
@@ -1761,11 +2782,19 @@ public class ClientProtocolAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       Version message = (Version) rawMessage;
-      if (field == MAJOR_VERSION) {
-        return message.hasMajorVersion();
-      }
-      if (field == MINOR_VERSION) {
-        return message.hasMinorVersion();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == MAJOR_VERSION) {
+            return message.hasMajorVersion();
+          }
+          break;
+        case 2:
+          if (field == MINOR_VERSION) {
+            return message.hasMinorVersion();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -1777,11 +2806,19 @@ public class ClientProtocolAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       Version message = (Version) rawMessage;
-      if (field == MAJOR_VERSION) {
-        return message.getMajorVersion();
-      }
-      if (field == MINOR_VERSION) {
-        return message.getMinorVersion();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == MAJOR_VERSION) {
+            return message.getMajorVersion();
+          }
+          break;
+        case 2:
+          if (field == MINOR_VERSION) {
+            return message.getMinorVersion();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -27,6 +27,7 @@ import com.google.protos.ipc.invalidation.Client.PersistentTiclState;
 import com.google.protos.ipc.invalidation.ClientProtocol.ApplicationClientIdP;
 import com.google.protos.ipc.invalidation.ClientProtocol.ClientVersion;
 import com.google.protos.ipc.invalidation.ClientProtocol.ConfigChangeMessage;
+import com.google.protos.ipc.invalidation.ClientProtocol.DigestPrefixP;
 import com.google.protos.ipc.invalidation.ClientProtocol.ErrorMessage;
 import com.google.protos.ipc.invalidation.ClientProtocol.InfoRequestMessage;
 import com.google.protos.ipc.invalidation.ClientProtocol.InitializeMessage;
@@ -41,6 +42,7 @@ import com.google.protos.ipc.invalidation.ClientProtocol.RegistrationP;
 import com.google.protos.ipc.invalidation.ClientProtocol.RegistrationStatus;
 import com.google.protos.ipc.invalidation.ClientProtocol.RegistrationStatusMessage;
 import com.google.protos.ipc.invalidation.ClientProtocol.RegistrationSubtree;
+import com.google.protos.ipc.invalidation.ClientProtocol.RegistrationSubtreeSummary;
 import com.google.protos.ipc.invalidation.ClientProtocol.RegistrationSummary;
 import com.google.protos.ipc.invalidation.ClientProtocol.RegistrationSyncMessage;
 import com.google.protos.ipc.invalidation.ClientProtocol.RegistrationSyncRequestMessage;
@@ -236,10 +238,11 @@ public class CommonProtos2 {
   }
 
   public static PersistentTiclState newPersistentTiclState(ByteString clientToken,
-      long lastMessageSendTimeMs) {
+      long lastMessageSendTimeMs, DigestSerializationType digestSerializationType) {
     return PersistentTiclState.newBuilder()
         .setClientToken(clientToken)
         .setLastMessageSendTimeMs(lastMessageSendTimeMs)
+        .setDigestSerializationType(digestSerializationType)
         .build();
   }
 
@@ -309,10 +312,33 @@ public class CommonProtos2 {
     return RegistrationSyncMessage.newBuilder().addAllSubtree(subtrees).build();
   }
 
+  public static RegistrationSyncRequestMessage newRegistrationSyncRequestMessage(
+      Collection<DigestPrefixP> subtrees, Collection<DigestPrefixP> summariesRequested) {
+    return RegistrationSyncRequestMessage.newBuilder()
+        .addAllSubtree(subtrees)
+        .addAllSummaryRequested(summariesRequested)
+        .build();
+  }
+
   public static RegistrationSubtree newRegistrationSubtree(List<ObjectIdP> registeredOids) {
     return RegistrationSubtree.newBuilder().addAllRegisteredObject(registeredOids).build();
   }
 
+  public static DigestPrefixP newDigestPrefixP(byte[] digestPrefix, int prefixLength) {
+    return DigestPrefixP.newBuilder()
+        .setDigestPrefix(ByteString.copyFrom(digestPrefix))
+        .setPrefixLength(prefixLength)
+        .build();
+  }
+
+  public static RegistrationSubtreeSummary newRegistrationSubtreeSummary(DigestPrefixP prefix,
+      RegistrationSummary summary) {
+    return RegistrationSubtreeSummary.newBuilder()
+        .setPrefix(prefix)
+        .setSummary(summary)
+        .build();
+  }
+
   public static InfoRequestMessage newPerformanceCounterRequestMessage() {
     return InfoRequestMessage.newBuilder()
         .addInfoType(InfoRequestMessage.InfoType.GET_PERFORMANCE_COUNTERS)
@@ -24,6 +24,7 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.SortedMap;
 
 /**
  * Digest-related utilities for object ids.
@@ -88,6 +89,104 @@ public class ObjectIdDigestUtils {
     return new Bytes(digestFn.getDigest());
   }
 
+  /**
+   * Adds {@code objectIdDigest} to {@code digestSum} in place, treating both as big-endian unsigned
+   * integers and discarding any carry out of the most significant byte. Used to maintain
+   * {@code SUM_BASED} registration digests.
+   * <p>
+   * REQUIRES: {@code digestSum} and {@code objectIdDigest} have the same length.
+   */
+  public static void addToDigestSum(byte[] digestSum, byte[] objectIdDigest) {
+    Preconditions.checkArgument(digestSum.length == objectIdDigest.length,
+        "Digest length mismatch: %s vs %s", digestSum.length, objectIdDigest.length);
+    int carry = 0;
+    for (int i = digestSum.length - 1; i >= 0; i--) {
+      int value = (digestSum[i] & 0xff) + (objectIdDigest[i] & 0xff) + carry;
+      digestSum[i] = (byte) value;
+      carry = value >>> 8;
+    }
+  }
+
+  /**
+   * Subtracts {@code objectIdDigest} from {@code digestSum} in place; the inverse of
+   * {@link #addToDigestSum}.
+   * <p>
+   * REQUIRES: {@code digestSum} and {@code objectIdDigest} have the same length.
+   */
+  public static void subtractFromDigestSum(byte[] digestSum, byte[] objectIdDigest) {
+    Preconditions.checkArgument(digestSum.length == objectIdDigest.length,
+        "Digest length mismatch: %s vs %s", digestSum.length, objectIdDigest.length);
+    int borrow = 0;
+    for (int i = digestSum.length - 1; i >= 0; i--) {
+      int value = (digestSum[i] & 0xff) - (objectIdDigest[i] & 0xff) - borrow;
+      digestSum[i] = (byte) value;
+      borrow = (value < 0) ? 1 : 0;
+    }
+  }
+
+  /** Returns bit {@code bitIndex} of {@code digest}, counting from the most significant bit. */
+  public static int getBit(byte[] digest, int bitIndex) {
+    return (digest[bitIndex / 8] >> (7 - (bitIndex % 8))) & 1;
+  }
+
+  /**
+   * Returns the view of {@code digestMap} containing the entries whose digests begin with the bit
+   * prefix {@code digestPrefix} of {@code prefixLen} bits.
+   * <p>
+   * REQUIRES: {@code digestMap} be ordered by {@link Bytes#compareTo}.
+   */
+  public static <V> SortedMap<Bytes, V> getPrefixRange(SortedMap<Bytes, V> digestMap,
+      byte[] digestPrefix, int prefixLen) {
+    if (prefixLen == 0) {
+      return digestMap;
+    }
+    byte[] start = getPrefixRangeStart(digestPrefix, prefixLen);
+    byte[] end = getPrefixRangeEnd(digestPrefix, prefixLen);
+    if (end == null) {
+      return digestMap.tailMap(new Bytes(start));
+    }
+    return digestMap.subMap(new Bytes(start), new Bytes(end));
+  }
+
+  /**
+   * Returns the smallest digest, in {@link Bytes#compareTo} order, that begins with the bit prefix
+   * {@code digestPrefix} of {@code prefixLen} bits.
+   */
+  public static byte[] getPrefixRangeStart(byte[] digestPrefix, int prefixLen) {
+    Preconditions.checkArgument(prefixLen <= digestPrefix.length * 8,
+        "Prefix length %s exceeds prefix %s", prefixLen, digestPrefix.length);
+
+    // The range starts at the prefix with all bits after prefixLen cleared. Since shorter byte
+    // arrays sort before longer ones with the same contents, truncating it is enough.
+    int numBytes = (prefixLen + 7) / 8;
+    byte[] start = new byte[numBytes];
+    System.arraycopy(digestPrefix, 0, start, 0, numBytes);
+    if (numBytes > 0) {
+      start[numBytes - 1] &= (byte) (0xff << ((numBytes * 8) - prefixLen));
+    }
+    return start;
+  }
+
+  /**
+   * Returns the smallest digest, in {@link Bytes#compareTo} order, that is greater than all
+   * digests beginning with the bit prefix {@code digestPrefix} of {@code prefixLen} bits, or
+   * {@code null} if there is none (i.e., the prefix is all ones).
+   */
+  public static byte[] getPrefixRangeEnd(byte[] digestPrefix, int prefixLen) {
+    // The range ends (exclusive) at the prefix incremented by one in its last bit.
+    byte[] end = getPrefixRangeStart(digestPrefix, prefixLen);
+    if (end.length == 0) {
+      return null;
+    }
+    int increment = 1 << ((end.length * 8) - prefixLen);
+    for (int i = end.length - 1; (i >= 0) && (increment != 0); i--) {
+      int value = (end[i] & 0xff) + increment;
+      end[i] = (byte) value;
+      increment = value >>> 8;
+    }
+    return (increment != 0) ? null : end;
+  }
+
   /** Returns the digest of {@code objectId} using {@code digestFn}. */
   
   public static Bytes getDigest(ObjectIdP objectId, DigestFunction digestFn) {
@@ -23,9 +23,7 @@ import com.google.protobuf.MessageLite;
 
 import java.util.Collection;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
-import java.util.NoSuchElementException;
 import java.util.Set;
 
 
@@ -46,13 +44,21 @@ public abstract class ProtoValidator {
   public static class Descriptor {
     private final String name;
 
-    public Descriptor(String name) {
+    /** The field number, by which accessors dispatch. */
+    private final int number;
+
+    public Descriptor(String name, int number) {
       this.name = name;
+      this.number = number;
     }
     /** Returns the name of the described field. */
     public String getName() {
       return name;
     }
+    /** Returns the number of the described field. */
+    public int getNumber() {
+      return number;
+    }
     @Override
     public String toString() {
       return "Descriptor for field " + name;
@@ -64,8 +70,12 @@ public abstract class ProtoValidator {
     /** Protocol buffer descriptor for the message. */
     private final Accessor messageAccessor;
 
-    /** Information about required and optional fields in this message. */
-    private final Set<FieldInfo> fieldInfo = new HashSet<FieldInfo>();
+    /**
+     * Information about required and optional fields in this message, in the order given to the
+     * constructor. This is the plan followed by {@link ProtoValidator#checkMessage}, so it is kept
+     * as an array that can be walked without allocating an iterator.
+     */
+    private final FieldInfo[] fieldInfo;
 
     private int numRequiredFields;
 
@@ -82,14 +92,12 @@ public abstract class ProtoValidator {
       unusedDescriptors.addAll(messageAccessor.getAllFieldNames());
 
       this.messageAccessor = messageAccessor;
+      this.fieldInfo = fields.clone();
       for (FieldInfo info : fields) {
         // Lookup the field given the name in the FieldInfo.
         boolean removed = TypedUtil.remove(unusedDescriptors, info.getFieldDescriptor().getName());
         Preconditions.checkState(removed, "Bad field: %s", info.getFieldDescriptor().getName());
 
-        // Add the field info to the number -> info map.
-        fieldInfo.add(info);
-
         if (info.getPresence() == Presence.REQUIRED) {
           ++numRequiredFields;
         }
@@ -98,8 +106,8 @@ public abstract class ProtoValidator {
           messageAccessor, unusedDescriptors);
     }
 
-    /** Returns the stored field information. */
-    protected Collection<FieldInfo> getAllFields() {
+    /** Returns the stored field information. The returned array must not be modified. */
+    protected FieldInfo[] getAllFields() {
       return fieldInfo;
     }
 
@@ -214,49 +222,6 @@ public abstract class ProtoValidator {
     this.logger = logger;
   }
 
-  /**
-   * Returns an {@link Iterable} over the instance(s) of {@code field} in {@code message}. This
-   * provides a uniform way to handle both singleton and repeated fields in protocol buffers, which
-   * are accessed using different calls in the protocol buffer API.
-   */
-  @SuppressWarnings("unchecked")
-  
-  protected static <FieldType> Iterable<FieldType> getFieldIterable(final MessageLite message,
-      final Accessor messageAccessor, final Descriptor fieldDescriptor) {
-    final Object obj = messageAccessor.getField(message, fieldDescriptor);
-    if (obj instanceof List) {
-      return (List<FieldType>) obj;
-    } else {
-      // Otherwise, just use a singleton iterator.
-      return new Iterable<FieldType>() {
-        @Override
-        public Iterator<FieldType> iterator() {
-          return new Iterator<FieldType>() {
-            boolean done;
-            @Override
-            public boolean hasNext() {
-              return !done;
-            }
-
-            @Override
-            public FieldType next() {
-              if (done) {
-                throw new NoSuchElementException();
-              }
-              done = true;
-              return (FieldType) obj;
-            }
-
-            @Override
-            public void remove() {
-              throw new UnsupportedOperationException("Not allowed");
-            }
-          };
-        }
-      };
-    }
-  }
-
   /**
    * Returns whether {@code message} is valid.
    * @param messageInfo specification of validity for {@code message}
@@ -274,13 +239,19 @@ public abstract class ProtoValidator {
         return false;
       }
 
-      // If the field is present and requires its own validation, validate it.
+      // If the field is present and requires its own validation, validate it. Repeated fields
+      // are accessed as lists, singleton fields directly.
       if (isFieldPresent && fieldInfo.requiresAdditionalValidation()) {
-        for (MessageLite subMessage : TiclMessageValidator2.<MessageLite>getFieldIterable(
-            message, messageInfo.messageAccessor, fieldDescriptor)) {
-          if (!checkMessage(subMessage, fieldInfo.getMessageInfo())) {
-            return false;
+        Object fieldValue = messageInfo.messageAccessor.getField(message, fieldDescriptor);
+        if (fieldValue instanceof List) {
+          List<?> subMessages = (List<?>) fieldValue;
+          for (int i = 0; i < subMessages.size(); i++) {
+            if (!checkMessage((MessageLite) subMessages.get(i), fieldInfo.getMessageInfo())) {
+              return false;
+            }
           }
+        } else if (!checkMessage((MessageLite) fieldValue, fieldInfo.getMessageInfo())) {
+          return false;
         }
       }
     }
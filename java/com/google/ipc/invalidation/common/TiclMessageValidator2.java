@@ -21,7 +21,9 @@ import com.google.ipc.invalidation.common.ClientProtocolAccessor.ClientConfigPAc
 import com.google.ipc.invalidation.common.ClientProtocolAccessor.ClientHeaderAccessor;
 import com.google.ipc.invalidation.common.ClientProtocolAccessor.ClientToServerMessageAccessor;
 import com.google.ipc.invalidation.common.ClientProtocolAccessor.ClientVersionAccessor;
+import com.google.ipc.invalidation.common.ClientProtocolAccessor.CompressedBodyPAccessor;
 import com.google.ipc.invalidation.common.ClientProtocolAccessor.ConfigChangeMessageAccessor;
+import com.google.ipc.invalidation.common.ClientProtocolAccessor.DigestPrefixPAccessor;
 import com.google.ipc.invalidation.common.ClientProtocolAccessor.ErrorMessageAccessor;
 import com.google.ipc.invalidation.common.ClientProtocolAccessor.InfoMessageAccessor;
 import com.google.ipc.invalidation.common.ClientProtocolAccessor.InfoRequestMessageAccessor;
@@ -36,8 +38,10 @@ import com.google.ipc.invalidation.common.ClientProtocolAccessor.RegistrationPAc
 import com.google.ipc.invalidation.common.ClientProtocolAccessor.RegistrationStatusAccessor;
 import com.google.ipc.invalidation.common.ClientProtocolAccessor.RegistrationStatusMessageAccessor;
 import com.google.ipc.invalidation.common.ClientProtocolAccessor.RegistrationSubtreeAccessor;
+import com.google.ipc.invalidation.common.ClientProtocolAccessor.RegistrationSubtreeSummaryAccessor;
 import com.google.ipc.invalidation.common.ClientProtocolAccessor.RegistrationSummaryAccessor;
 import com.google.ipc.invalidation.common.ClientProtocolAccessor.RegistrationSyncMessageAccessor;
+import com.google.ipc.invalidation.common.ClientProtocolAccessor.RegistrationSyncRequestMessageAccessor;
 import com.google.ipc.invalidation.common.ClientProtocolAccessor.ServerHeaderAccessor;
 import com.google.ipc.invalidation.common.ClientProtocolAccessor.ServerToClientMessageAccessor;
 import com.google.ipc.invalidation.common.ClientProtocolAccessor.StatusPAccessor;
@@ -48,14 +52,20 @@ import com.google.protobuf.MessageLite;
 import com.google.protos.ipc.invalidation.ClientProtocol.ApplicationClientIdP;
 import com.google.protos.ipc.invalidation.ClientProtocol.ClientHeader;
 import com.google.protos.ipc.invalidation.ClientProtocol.ClientToServerMessage;
+import com.google.protos.ipc.invalidation.ClientProtocol.CompressedBodyP;
 import com.google.protos.ipc.invalidation.ClientProtocol.ConfigChangeMessage;
+import com.google.protos.ipc.invalidation.ClientProtocol.DigestPrefixP;
 import com.google.protos.ipc.invalidation.ClientProtocol.InitializeMessage;
+import com.google.protos.ipc.invalidation.ClientProtocol.InitializeMessage.DigestSerializationType;
 import com.google.protos.ipc.invalidation.ClientProtocol.InvalidationP;
 import com.google.protos.ipc.invalidation.ClientProtocol.ObjectIdP;
+import com.google.protos.ipc.invalidation.ClientProtocol.ProtocolHandlerConfigP;
 import com.google.protos.ipc.invalidation.ClientProtocol.RateLimitP;
 import com.google.protos.ipc.invalidation.ClientProtocol.RegistrationSummary;
+import com.google.protos.ipc.invalidation.ClientProtocol.RegistrationSyncMessage;
 import com.google.protos.ipc.invalidation.ClientProtocol.ServerHeader;
 import com.google.protos.ipc.invalidation.ClientProtocol.ServerToClientMessage;
+import com.google.protos.ipc.invalidation.ClientProtocol.TokenControlMessage;
 import com.google.protos.ipc.invalidation.ClientProtocol.Version;
 
 /**
@@ -99,6 +109,23 @@ public class TiclMessageValidator2 extends ProtoValidator {
         ClientProtocolAccessor.PROTOCOL_VERSION_ACCESSOR,
         FieldInfo.newRequired(ClientProtocolAccessor.ProtocolVersionAccessor.VERSION, VERSION));
 
+    /** Validation for compressed message bodies. */
+    final MessageInfo COMPRESSED_BODY = new MessageInfo(
+        ClientProtocolAccessor.COMPRESSED_BODY_P_ACCESSOR,
+        FieldInfo.newRequired(CompressedBodyPAccessor.COMPRESSION),
+        FieldInfo.newRequired(CompressedBodyPAccessor.UNCOMPRESSED_SIZE),
+        FieldInfo.newRequired(CompressedBodyPAccessor.DATA)) {
+      @Override
+      public boolean postValidate(MessageLite message) {
+        CompressedBodyP body = (CompressedBodyP) message;
+        if (body.getUncompressedSize() < 0) {
+          logger.info("Uncompressed size was negative: %s", body);
+          return false;
+        }
+        return true;
+      }
+    };
+
     /** Validation for object ids. */
     final MessageInfo OID = new MessageInfo(ClientProtocolAccessor.OBJECT_ID_P_ACCESSOR,
         FieldInfo.newRequired(ObjectIdPAccessor.NAME),
@@ -169,6 +196,20 @@ public class TiclMessageValidator2 extends ProtoValidator {
       }
     };
 
+    /** Validation for a digest prefix identifying a registration subtree. */
+    final MessageInfo DIGEST_PREFIX = new MessageInfo(
+        ClientProtocolAccessor.DIGEST_PREFIX_P_ACCESSOR,
+        FieldInfo.newRequired(DigestPrefixPAccessor.DIGEST_PREFIX),
+        FieldInfo.newRequired(DigestPrefixPAccessor.PREFIX_LENGTH)) {
+      @Override
+      public boolean postValidate(MessageLite message) {
+        // The prefix must hold at least prefix_length bits.
+        DigestPrefixP prefix = (DigestPrefixP) message;
+        return (prefix.getPrefixLength() >= 0) &&
+            (prefix.getPrefixLength() <= prefix.getDigestPrefix().size() * 8);
+      }
+    };
+
     final MessageInfo RATE_LIMIT = new MessageInfo(
         ClientProtocolAccessor.RATE_LIMIT_P_ACCESSOR,
         FieldInfo.newRequired(RateLimitPAccessor.WINDOW_MS),
@@ -184,8 +225,26 @@ public class TiclMessageValidator2 extends ProtoValidator {
     final MessageInfo PROTOCOL_HANDLER_CONFIG = new MessageInfo(
         ClientProtocolAccessor.PROTOCOL_HANDLER_CONFIG_P_ACCESSOR,
         FieldInfo.newOptional(ProtocolHandlerConfigPAccessor.BATCHING_DELAY_MS),
-        FieldInfo.newOptional(ProtocolHandlerConfigPAccessor.RATE_LIMIT, RATE_LIMIT)
-        );
+        FieldInfo.newOptional(ProtocolHandlerConfigPAccessor.RATE_LIMIT, RATE_LIMIT),
+        FieldInfo.newOptional(ProtocolHandlerConfigPAccessor.MAX_MESSAGE_SIZE_BYTES),
+        FieldInfo.newOptional(ProtocolHandlerConfigPAccessor.MIN_BATCHING_DELAY_MS),
+        FieldInfo.newOptional(ProtocolHandlerConfigPAccessor.MAX_BATCHING_DELAY_MS),
+        FieldInfo.newOptional(ProtocolHandlerConfigPAccessor.OUTGOING_MESSAGE_VALIDATION_PERIOD),
+        FieldInfo.newOptional(ProtocolHandlerConfigPAccessor.URGENT_BATCHING_DELAY_MS),
+        FieldInfo.newOptional(ProtocolHandlerConfigPAccessor.MAX_MESSAGES_IN_FLIGHT),
+        FieldInfo.newOptional(ProtocolHandlerConfigPAccessor.MIN_COMPRESSED_BODY_SIZE_BYTES)) {
+      @Override
+      public boolean postValidate(MessageLite message) {
+        ProtocolHandlerConfigP config = (ProtocolHandlerConfigP) message;
+        return (config.getMaxMessageSizeBytes() >= 0) &&
+            (config.getMinBatchingDelayMs() >= 0) &&
+            (config.getMinBatchingDelayMs() <= config.getMaxBatchingDelayMs()) &&
+            (config.getOutgoingMessageValidationPeriod() >= 0) &&
+            (config.getUrgentBatchingDelayMs() >= 0) &&
+            (config.getMaxMessagesInFlight() >= 0) &&
+            (config.getMinCompressedBodySizeBytes() >= 0);
+      }
+    };
 
     // Validation for Client Config. */
     final MessageInfo CLIENT_CONFIG = new MessageInfo(
@@ -203,7 +262,10 @@ public class TiclMessageValidator2 extends ProtoValidator {
         FieldInfo.newRequired(ClientConfigPAccessor.PROTOCOL_HANDLER_CONFIG,
             PROTOCOL_HANDLER_CONFIG),
         FieldInfo.newOptional(ClientConfigPAccessor.OFFLINE_HEARTBEAT_THRESHOLD_MS),
-        FieldInfo.newOptional(ClientConfigPAccessor.ALLOW_SUPPRESSION)
+        FieldInfo.newOptional(ClientConfigPAccessor.ALLOW_SUPPRESSION),
+        FieldInfo.newOptional(ClientConfigPAccessor.DIGEST_SERIALIZATION_TYPE),
+        FieldInfo.newOptional(ClientConfigPAccessor.USE_COMPACT_REGISTRATION_STORE),
+        FieldInfo.newOptional(ClientConfigPAccessor.PARALLEL_DIGEST_THREADS)
         );
 
     private CommonMsgInfos() {
@@ -228,7 +290,8 @@ public class TiclMessageValidator2 extends ProtoValidator {
         FieldInfo.newRequired(ClientHeaderAccessor.CLIENT_TIME_MS),
         FieldInfo.newRequired(ClientHeaderAccessor.MAX_KNOWN_SERVER_TIME_MS),
         FieldInfo.newOptional(ClientHeaderAccessor.MESSAGE_ID),
-        FieldInfo.newOptional(ClientHeaderAccessor.CLIENT_TYPE)) {
+        FieldInfo.newOptional(ClientHeaderAccessor.CLIENT_TYPE),
+        FieldInfo.newOptional(ClientHeaderAccessor.ACCEPTED_COMPRESSION)) {
       @Override
       public boolean postValidate(MessageLite message) {
         ClientHeader header = (ClientHeader) message;
@@ -313,12 +376,29 @@ public class TiclMessageValidator2 extends ProtoValidator {
     /** Validation for registration subtrees. */
     final MessageInfo SUBTREE = new MessageInfo(
         ClientProtocolAccessor.REGISTRATION_SUBTREE_ACCESSOR,
-        FieldInfo.newOptional(RegistrationSubtreeAccessor.REGISTERED_OBJECT));
+        FieldInfo.newOptional(RegistrationSubtreeAccessor.REGISTERED_OBJECT),
+        FieldInfo.newOptional(RegistrationSubtreeAccessor.PREFIX, commonMsgInfos.DIGEST_PREFIX));
+
+    /** Validation for registration subtree summaries. */
+    final MessageInfo SUBTREE_SUMMARY = new MessageInfo(
+        ClientProtocolAccessor.REGISTRATION_SUBTREE_SUMMARY_ACCESSOR,
+        FieldInfo.newRequired(RegistrationSubtreeSummaryAccessor.PREFIX,
+            commonMsgInfos.DIGEST_PREFIX),
+        FieldInfo.newRequired(RegistrationSubtreeSummaryAccessor.SUMMARY,
+            commonMsgInfos.REGISTRATION_SUMMARY));
 
     /** Validation for registration sync messages. */
     final MessageInfo REGISTRATION_SYNC = new MessageInfo(
         ClientProtocolAccessor.REGISTRATION_SYNC_MESSAGE_ACCESSOR,
-        FieldInfo.newRequired(RegistrationSyncMessageAccessor.SUBTREE, SUBTREE));
+        FieldInfo.newOptional(RegistrationSyncMessageAccessor.SUBTREE, SUBTREE),
+        FieldInfo.newOptional(RegistrationSyncMessageAccessor.SUBTREE_SUMMARY, SUBTREE_SUMMARY)) {
+      @Override
+      public boolean postValidate(MessageLite message) {
+        // The message must carry either subtrees or subtree summaries.
+        RegistrationSyncMessage syncMessage = (RegistrationSyncMessage) message;
+        return (syncMessage.getSubtreeCount() > 0) || (syncMessage.getSubtreeSummaryCount() > 0);
+      }
+    };
 
     /** Validation for a ClientToServerMessage. */
     final MessageInfo CLIENT_MSG = new MessageInfo(
@@ -330,10 +410,16 @@ public class TiclMessageValidator2 extends ProtoValidator {
             commonMsgInfos.INVALIDATION_MSG),
         FieldInfo.newOptional(ClientToServerMessageAccessor.REGISTRATION_MESSAGE, REGISTRATION),
         FieldInfo.newOptional(ClientToServerMessageAccessor.REGISTRATION_SYNC_MESSAGE,
-            REGISTRATION_SYNC)) {
+            REGISTRATION_SYNC),
+        FieldInfo.newOptional(ClientToServerMessageAccessor.COMPRESSED_BODY,
+            commonMsgInfos.COMPRESSED_BODY)) {
       @Override
       public boolean postValidate(MessageLite message) {
         ClientToServerMessage parsedMessage = (ClientToServerMessage) message;
+        if (parsedMessage.hasCompressedBody()) {
+          // The other parts are in the compressed body and are validated once it is decompressed.
+          return true;
+        }
         // The message either has an initialize request from the client or it has the client token.
         return (parsedMessage.hasInitializeMessage() ^ parsedMessage.getHeader().hasClientToken());
       }
@@ -352,7 +438,8 @@ public class TiclMessageValidator2 extends ProtoValidator {
         FieldInfo.newOptional(ServerHeaderAccessor.REGISTRATION_SUMMARY,
             commonMsgInfos.REGISTRATION_SUMMARY),
         FieldInfo.newRequired(ServerHeaderAccessor.SERVER_TIME_MS),
-        FieldInfo.newOptional(ServerHeaderAccessor.MESSAGE_ID)) {
+        FieldInfo.newOptional(ServerHeaderAccessor.MESSAGE_ID),
+        FieldInfo.newOptional(ServerHeaderAccessor.ACCEPTED_COMPRESSION)) {
       @Override
       public boolean postValidate(MessageLite message) {
         ServerHeader header = (ServerHeader) message;
@@ -383,7 +470,21 @@ public class TiclMessageValidator2 extends ProtoValidator {
     /** Validation for token control messages. */
     final MessageInfo TOKEN_CONTROL = new MessageInfo(
         ClientProtocolAccessor.TOKEN_CONTROL_MESSAGE_ACCESSOR,
-        FieldInfo.newOptional(TokenControlMessageAccessor.NEW_TOKEN));
+        FieldInfo.newOptional(TokenControlMessageAccessor.NEW_TOKEN),
+        FieldInfo.newOptional(TokenControlMessageAccessor.DIGEST_SERIALIZATION_TYPE)) {
+      @Override
+      public boolean postValidate(MessageLite message) {
+        // The client keeps registration digests only of the types it can compute.
+        TokenControlMessage tokenControl = (TokenControlMessage) message;
+        if (tokenControl.hasDigestSerializationType() &&
+            (tokenControl.getDigestSerializationType() != DigestSerializationType.BYTE_BASED) &&
+            (tokenControl.getDigestSerializationType() != DigestSerializationType.SUM_BASED)) {
+          logger.info("Unsupported digest serialization type: %s", tokenControl);
+          return false;
+        }
+        return true;
+      }
+    };
 
     /** Validation for error messages. */
     final MessageInfo ERROR = new MessageInfo(
@@ -406,7 +507,11 @@ public class TiclMessageValidator2 extends ProtoValidator {
 
     /** Validation for registration sync requests. */
     final MessageInfo REGISTRATION_SYNC_REQUEST = new MessageInfo(
-        ClientProtocolAccessor.REGISTRATION_SYNC_REQUEST_MESSAGE_ACCESSOR);
+        ClientProtocolAccessor.REGISTRATION_SYNC_REQUEST_MESSAGE_ACCESSOR,
+        FieldInfo.newOptional(RegistrationSyncRequestMessageAccessor.SUBTREE,
+            commonMsgInfos.DIGEST_PREFIX),
+        FieldInfo.newOptional(RegistrationSyncRequestMessageAccessor.SUMMARY_REQUESTED,
+            commonMsgInfos.DIGEST_PREFIX));
 
     /** Validation for info requests. */
     final MessageInfo INFO_REQUEST = new MessageInfo(
@@ -439,7 +544,9 @@ public class TiclMessageValidator2 extends ProtoValidator {
             REGISTRATION_SYNC_REQUEST),
         FieldInfo.newOptional(ServerToClientMessageAccessor.CONFIG_CHANGE_MESSAGE, CONFIG_CHANGE),
         FieldInfo.newOptional(ServerToClientMessageAccessor.INFO_REQUEST_MESSAGE, INFO_REQUEST),
-        FieldInfo.newOptional(ServerToClientMessageAccessor.ERROR_MESSAGE, ERROR));
+        FieldInfo.newOptional(ServerToClientMessageAccessor.ERROR_MESSAGE, ERROR),
+        FieldInfo.newOptional(ServerToClientMessageAccessor.COMPRESSED_BODY,
+            commonMsgInfos.COMPRESSED_BODY));
   }
 
   /** Common validation information */
@@ -463,6 +570,43 @@ public class TiclMessageValidator2 extends ProtoValidator {
     return checkMessage(serverMessage, serverMsgInfos.SERVER_MSG);
   }
 
+  /**
+   * Returns whether {@code header} is valid as the header of a {@link ServerToClientMessage}, for
+   * messages whose parts are validated separately (see {@link #isValidServerMessagePart}).
+   */
+  public boolean isValid(ServerHeader header) {
+    return checkMessage(header, serverMsgInfos.HEADER);
+  }
+
+  /**
+   * Returns whether {@code part}, the value of field {@code fieldNumber} of a
+   * {@link ServerToClientMessage} other than its header, is valid. A message is valid if and only
+   * if it has a valid header and each of its other parts is valid.
+   */
+  public boolean isValidServerMessagePart(int fieldNumber, MessageLite part) {
+    switch (fieldNumber) {
+      case ServerToClientMessage.TOKEN_CONTROL_MESSAGE_FIELD_NUMBER:
+        return checkMessage(part, serverMsgInfos.TOKEN_CONTROL);
+      case ServerToClientMessage.INVALIDATION_MESSAGE_FIELD_NUMBER:
+        return checkMessage(part, commonMsgInfos.INVALIDATION_MSG);
+      case ServerToClientMessage.REGISTRATION_STATUS_MESSAGE_FIELD_NUMBER:
+        return checkMessage(part, serverMsgInfos.REGISTRATION_STATUS_MSG);
+      case ServerToClientMessage.REGISTRATION_SYNC_REQUEST_MESSAGE_FIELD_NUMBER:
+        return checkMessage(part, serverMsgInfos.REGISTRATION_SYNC_REQUEST);
+      case ServerToClientMessage.CONFIG_CHANGE_MESSAGE_FIELD_NUMBER:
+        return checkMessage(part, serverMsgInfos.CONFIG_CHANGE);
+      case ServerToClientMessage.INFO_REQUEST_MESSAGE_FIELD_NUMBER:
+        return checkMessage(part, serverMsgInfos.INFO_REQUEST);
+      case ServerToClientMessage.ERROR_MESSAGE_FIELD_NUMBER:
+        return checkMessage(part, serverMsgInfos.ERROR);
+      case ServerToClientMessage.COMPRESSED_BODY_FIELD_NUMBER:
+        return checkMessage(part, commonMsgInfos.COMPRESSED_BODY);
+      default:
+        logger.warning("Not a server message part: %s", fieldNumber);
+        return false;
+    }
+  }
+
   /** Returns whether {@code invalidation} is valid. */
   public boolean isValid(InvalidationP invalidation) {
     return checkMessage(invalidation, commonMsgInfos.INVALIDATION);
@@ -96,6 +96,21 @@ public interface InvalidationClient {
    */
   void unregister(Collection<ObjectId> objectIds);
 
+  /**
+   * Makes {@code objectIds} the complete set of objects for which invalidations are received:
+   * registers for the objects in {@code objectIds} that are not registered and unregisters for the
+   * registered objects that are not in {@code objectIds}. Only these changes are sent to the
+   * server, and nothing is sent if the resulting registrations already match those last reported
+   * by the server. An empty {@code objectIds} unregisters for all objects.
+   * <p>
+   * The caller is informed of the results as for {@link #register(ObjectId)} and
+   * {@link #unregister(ObjectId)}.
+   * <p>
+   * REQUIRES: {@link #start} has been called and {@link InvalidationListener#ready} has been
+   * received by the application's listener.
+   */
+  void setRegistrations(Collection<ObjectId> objectIds);
+
   /**
    * Acknowledges the {@link InvalidationListener} event that was delivered with the provided
    * acknowledgement handle. This indicates that the client has accepted responsibility for
@@ -21,6 +21,8 @@ import com.google.ipc.invalidation.external.client.types.SimplePair;
 import com.google.ipc.invalidation.external.client.types.Status;
 import com.google.ipc.invalidation.util.BaseLogger;
 
+import java.nio.ByteBuffer;
+
 /**
  * Interfaces for the system resources used by the Ticl. System resources are an abstraction layer
  * over the host operating system that provides the Ticl with the ability to schedule events, send
@@ -100,6 +102,55 @@ public interface SystemResources {
     void setListener(NetworkListener listener);
   }
 
+  /**
+   * A {@link NetworkChannel} that can send a message from a buffer, which lets the Ticl encode
+   * outgoing messages into a buffer it reuses instead of allocating an array for each message.
+   */
+  public interface BufferedNetworkChannel extends NetworkChannel {
+    /**
+     * Sends the bytes of {@code outgoingMessage} between its position and its limit to the data
+     * center, as for {@link #sendMessage(byte[])}.
+     * <p>
+     * The buffer's contents are only valid during this call: an implementation that sends the
+     * message later must copy them.
+     */
+    void sendMessage(ByteBuffer outgoingMessage);
+
+    /**
+     * A {@link NetworkListener} that can receive a message in a buffer, which lets a channel that
+     * receives messages into buffers deliver them without copying. Any channel may deliver
+     * messages this way to a listener that implements this interface.
+     */
+    public interface BufferedNetworkListener extends NetworkListener {
+      /**
+       * Upcall made when a network message has been received from the data center, with the
+       * message in the bytes of {@code message} between its position and its limit.
+       * <p>
+       * Unlike the buffer given to {@link BufferedNetworkChannel#sendMessage(ByteBuffer)}, this
+       * buffer is handed over to the listener, which may process it after the upcall returns: the
+       * channel must not modify its contents afterwards.
+       */
+      void onMessageReceived(ByteBuffer message);
+    }
+  }
+
+  /**
+   * A {@link NetworkChannel} that reports when it is done with each message it sends, which lets
+   * the Ticl limit the number of messages in flight: while the channel is busy, the Ticl keeps
+   * pending data batched and merges it into its next message, rather than handing the channel
+   * many small messages to queue.
+   */
+  public interface AsyncNetworkChannel extends NetworkChannel {
+    /**
+     * Sends {@code outgoingMessage} to the data center, as for {@link #sendMessage(byte[])}, and
+     * invokes {@code done} once the channel is done with it, passing a value that indicates whether
+     * it was sent successfully. The channel may hold on to {@code outgoingMessage} until then.
+     * <p>
+     * {@code done} may be invoked on any thread, and must be invoked exactly once.
+     */
+    void sendMessage(byte[] outgoingMessage, Callback<Status> done);
+  }
+
   /**
    * Interface specifying the storage functionality provided by {@link SystemResources}. Basically,
    * the required functionality is a small subset of the method of a regular hash map.
@@ -223,6 +223,21 @@ final class AndroidInvalidationClientImpl implements AndroidInvalidationClient {
     executeServiceRequest(request);
   }
 
+  /**
+   * Replaces the set of objects for which invalidations are received.
+   *
+   * @param objectIds object id collection.
+   */
+  @Override
+  public void setRegistrations(Collection<ObjectId> objectIds) {
+    Request request = Request
+        .newBuilder(Action.SET_REGISTRATIONS)
+        .setClientKey(clientKey)
+        .setObjectIds(objectIds)
+        .build();
+    executeServiceRequest(request);
+  }
+
   @Override
   public void acknowledge(AckHandle ackHandle) {
     Request request = Request
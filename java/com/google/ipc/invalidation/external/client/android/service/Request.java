@@ -64,7 +64,10 @@ public final class Request extends Message {
     ACKNOWLEDGE,
 
     /** Destroys the client permanently */
-    DESTROY;
+    DESTROY,
+
+    /** Replaces the set of objects registered for invalidation notifications */
+    SET_REGISTRATIONS;
   }
 
   /**
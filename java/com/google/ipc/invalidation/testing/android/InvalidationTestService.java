@@ -357,6 +357,19 @@ public class InvalidationTestService extends AbstractInvalidationService {
     }
   }
 
+  @Override
+  protected void setRegistrations(Request request, Response.Builder response) {
+    synchronized (LOCK) {
+      validateRequest(request, Action.SET_REGISTRATIONS, Parameter.ACTION, Parameter.CLIENT,
+          Parameter.OBJECT_ID_LIST);
+      if (!validateClient(request)) {
+        response.setStatus(Response.Status.INVALID_CLIENT);
+        return;
+      }
+      response.setStatus(Response.Status.SUCCESS);
+    }
+  }
+
   /**
    * Validates that the client associated with the request is one that has
    * previously been created or resumed on the test service.
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.ipc.invalidation.ticl;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Batching delay that adapts to the rate at which operations (registrations, acks, etc.) arrive
+ * for sending. When operations are sparse, waiting gains nothing, so the delay shrinks towards
+ * {@code minDelayMs} and, e.g., a lone ack is sent promptly; when they are dense, the delay grows
+ * towards {@code maxDelayMs} so that a burst is sent in few messages.
+ * <p>
+ * The arrival rate is tracked as an exponentially weighted moving average of the intervals
+ * between operations, each capped at {@code maxDelayMs}. The delay decreases linearly from
+ * {@code maxDelayMs} when that average is zero to {@code minDelayMs} when it reaches
+ * {@code maxDelayMs}.
+ * <p>
+ * This class is not thread-safe.
+ *
+ */
+class AdaptiveBatchingDelay {
+
+  /** Weight of the newest interval in the moving average, as a shift (i.e., 1/4). */
+  private static final int NEW_INTERVAL_WEIGHT_SHIFT = 2;
+
+  /** Delay when operations are sparse. */
+  private final int minDelayMs;
+
+  /** Delay when operations are dense. */
+  private final int maxDelayMs;
+
+  /** Time of the most recent operation, or {@code -1} if none. */
+  private long lastOperationTimeMs;
+
+  /** Moving average of the intervals between operations. */
+  private int meanIntervalMs;
+
+  /** Creates an instance that has seen no operations, i.e., that assumes they are sparse. */
+  AdaptiveBatchingDelay(int minDelayMs, int maxDelayMs) {
+    this(minDelayMs, maxDelayMs, -1, maxDelayMs);
+  }
+
+  /**
+   * Creates an instance whose most recent operation was at {@code lastOperationTimeMs} (or
+   * {@code -1} for none) and whose average interval is {@code meanIntervalMs}.
+   */
+  AdaptiveBatchingDelay(int minDelayMs, int maxDelayMs, long lastOperationTimeMs,
+      int meanIntervalMs) {
+    Preconditions.checkArgument((minDelayMs > 0) && (minDelayMs <= maxDelayMs),
+        "Bad delays: %s, %s", minDelayMs, maxDelayMs);
+    this.minDelayMs = minDelayMs;
+    this.maxDelayMs = maxDelayMs;
+    this.lastOperationTimeMs = lastOperationTimeMs;
+    this.meanIntervalMs = Math.max(0, Math.min(meanIntervalMs, maxDelayMs));
+  }
+
+  /**
+   * Records that {@code numOperations} operations arrived together at {@code nowMs}: the first
+   * after the interval since the previous operation, the others after intervals of zero.
+   */
+  void recordOperations(long nowMs, int numOperations) {
+    Preconditions.checkArgument(numOperations > 0, "Bad number of operations: %s", numOperations);
+    if (lastOperationTimeMs >= 0) {
+      int intervalMs = (int) Math.max(0, Math.min(nowMs - lastOperationTimeMs, maxDelayMs));
+      meanIntervalMs += (intervalMs - meanIntervalMs) >> NEW_INTERVAL_WEIGHT_SHIFT;
+    }
+
+    // Each zero interval shrinks the average by its weight, until the shrinkage rounds to zero.
+    for (int i = 1;
+        (i < numOperations) && ((meanIntervalMs >> NEW_INTERVAL_WEIGHT_SHIFT) > 0); i++) {
+      meanIntervalMs -= meanIntervalMs >> NEW_INTERVAL_WEIGHT_SHIFT;
+    }
+    lastOperationTimeMs = nowMs;
+  }
+
+  /** Returns the delay for the current arrival rate, between the minimum and maximum delays. */
+  int getDelayMs() {
+    long rangeMs = maxDelayMs - minDelayMs;
+    return maxDelayMs - (int) (rangeMs * meanIntervalMs / maxDelayMs);
+  }
+
+  /** Returns the time of the most recent operation, or {@code -1} if none. */
+  long getLastOperationTimeMs() {
+    return lastOperationTimeMs;
+  }
+
+  /** Returns the moving average of the intervals between operations. */
+  int getMeanIntervalMs() {
+    return meanIntervalMs;
+  }
+}
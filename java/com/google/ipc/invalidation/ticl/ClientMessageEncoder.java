@@ -0,0 +1,322 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.ipc.invalidation.ticl;
+
+import com.google.common.base.Preconditions;
+import com.google.ipc.invalidation.common.CommonProtos2;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+import com.google.protos.ipc.invalidation.ClientProtocol.ClientHeader;
+import com.google.protos.ipc.invalidation.ClientProtocol.ClientToServerMessage;
+import com.google.protos.ipc.invalidation.ClientProtocol.InfoMessage;
+import com.google.protos.ipc.invalidation.ClientProtocol.InitializeMessage;
+import com.google.protos.ipc.invalidation.ClientProtocol.InvalidationMessage;
+import com.google.protos.ipc.invalidation.ClientProtocol.InvalidationP;
+import com.google.protos.ipc.invalidation.ClientProtocol.ObjectIdP;
+import com.google.protos.ipc.invalidation.ClientProtocol.RegistrationMessage;
+import com.google.protos.ipc.invalidation.ClientProtocol.RegistrationP;
+import com.google.protos.ipc.invalidation.ClientProtocol.RegistrationSubtree;
+import com.google.protos.ipc.invalidation.ClientProtocol.RegistrationSubtreeSummary;
+import com.google.protos.ipc.invalidation.ClientProtocol.RegistrationSyncMessage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The parts of a {@link ClientToServerMessage} taken from the protocol handler's batcher, which
+ * encodes the message directly from the serialized forms the parts' {@link ProtoWrapper}s already
+ * hold, rather than serializing every registration, ack and registration subtree again.
+ * <p>
+ * The encoding is identical to that of {@link #toMessage}: fields are written in field number
+ * order and repeated fields in the order in which they were added.
+ * <p>
+ * This class is not thread-safe.
+ *
+ */
+class ClientMessageEncoder {
+
+  /** The message header, or {@code null} if not yet set. */
+  private ClientHeader header;
+
+  /** The initialize message, if any. */
+  private InitializeMessage initializeMessage;
+
+  /** The info message, if any. */
+  private InfoMessage infoMessage;
+
+  /** The objects to (un)register, with the operation for each in {@link #registrationOpTypes}. */
+  private final List<ProtoWrapper<ObjectIdP>> registrationObjectIds =
+      new ArrayList<ProtoWrapper<ObjectIdP>>();
+  private final List<RegistrationP.OpType> registrationOpTypes =
+      new ArrayList<RegistrationP.OpType>();
+
+  /** The invalidations to acknowledge. */
+  private final List<ProtoWrapper<InvalidationP>> acks =
+      new ArrayList<ProtoWrapper<InvalidationP>>();
+
+  /** The registration subtrees for registration sync. */
+  private final List<ProtoWrapper<RegistrationSubtree>> subtrees =
+      new ArrayList<ProtoWrapper<RegistrationSubtree>>();
+
+  /** The registration subtree summaries for registration sync. */
+  private final List<ProtoWrapper<RegistrationSubtreeSummary>> subtreeSummaries =
+      new ArrayList<ProtoWrapper<RegistrationSubtreeSummary>>();
+
+  void setHeader(ClientHeader header) {
+    this.header = header;
+  }
+
+  void setInitializeMessage(InitializeMessage initializeMessage) {
+    this.initializeMessage = initializeMessage;
+  }
+
+  boolean hasInitializeMessage() {
+    return initializeMessage != null;
+  }
+
+  void setInfoMessage(InfoMessage infoMessage) {
+    this.infoMessage = infoMessage;
+  }
+
+  void addRegistration(ProtoWrapper<ObjectIdP> objectId, RegistrationP.OpType opType) {
+    registrationObjectIds.add(objectId);
+    registrationOpTypes.add(opType);
+  }
+
+  boolean hasRegistrations() {
+    return !registrationObjectIds.isEmpty();
+  }
+
+  void addAck(ProtoWrapper<InvalidationP> ack) {
+    acks.add(ack);
+  }
+
+  boolean hasAcks() {
+    return !acks.isEmpty();
+  }
+
+  void addSubtree(ProtoWrapper<RegistrationSubtree> subtree) {
+    subtrees.add(subtree);
+  }
+
+  void addSubtreeSummary(ProtoWrapper<RegistrationSubtreeSummary> summary) {
+    subtreeSummaries.add(summary);
+  }
+
+  boolean hasRegistrationSync() {
+    return !subtrees.isEmpty() || !subtreeSummaries.isEmpty();
+  }
+
+  /**
+   * Returns the number of bytes taken by the registration of {@code objectId} with
+   * {@code opType} in a {@link RegistrationMessage}.
+   */
+  static int getRegistrationSize(ProtoWrapper<ObjectIdP> objectId, RegistrationP.OpType opType) {
+    return getLengthDelimitedSize(RegistrationMessage.REGISTRATION_FIELD_NUMBER,
+        getRegistrationContentSize(objectId, opType));
+  }
+
+  /** Returns the number of bytes taken by {@code element} as message field {@code fieldNumber}. */
+  static int getElementSize(int fieldNumber, ProtoWrapper<?> element) {
+    return getLengthDelimitedSize(fieldNumber, element.getByteArray().length);
+  }
+
+  /** Returns the message built from the parts. */
+  ClientToServerMessage toMessage() {
+    ClientToServerMessage.Builder builder = ClientToServerMessage.newBuilder();
+    if (header != null) {
+      builder.setHeader(header);
+    }
+    if (initializeMessage != null) {
+      builder.setInitializeMessage(initializeMessage);
+    }
+    if (hasRegistrations()) {
+      RegistrationMessage.Builder regMessage = RegistrationMessage.newBuilder();
+      for (int i = 0; i < registrationObjectIds.size(); i++) {
+        regMessage.addRegistration(CommonProtos2.newRegistrationP(
+            registrationObjectIds.get(i).getProto(),
+            registrationOpTypes.get(i) == RegistrationP.OpType.REGISTER));
+      }
+      builder.setRegistrationMessage(regMessage);
+    }
+    if (hasRegistrationSync()) {
+      RegistrationSyncMessage.Builder syncMessage = RegistrationSyncMessage.newBuilder();
+      for (ProtoWrapper<RegistrationSubtree> subtree : subtrees) {
+        syncMessage.addSubtree(subtree.getProto());
+      }
+      for (ProtoWrapper<RegistrationSubtreeSummary> summary : subtreeSummaries) {
+        syncMessage.addSubtreeSummary(summary.getProto());
+      }
+      builder.setRegistrationSyncMessage(syncMessage);
+    }
+    if (hasAcks()) {
+      InvalidationMessage.Builder ackMessage = InvalidationMessage.newBuilder();
+      for (ProtoWrapper<InvalidationP> ack : acks) {
+        ackMessage.addInvalidation(ack.getProto());
+      }
+      builder.setInvalidationAckMessage(ackMessage);
+    }
+    if (infoMessage != null) {
+      builder.setInfoMessage(infoMessage);
+    }
+    return builder.build();
+  }
+
+  /** Returns the size of the encoded message. */
+  int getSerializedSize() {
+    int size = 0;
+    if (header != null) {
+      size += CodedOutputStream.computeMessageSize(
+          ClientToServerMessage.HEADER_FIELD_NUMBER, header);
+    }
+    if (initializeMessage != null) {
+      size += CodedOutputStream.computeMessageSize(
+          ClientToServerMessage.INITIALIZE_MESSAGE_FIELD_NUMBER, initializeMessage);
+    }
+    if (hasRegistrations()) {
+      size += getLengthDelimitedSize(ClientToServerMessage.REGISTRATION_MESSAGE_FIELD_NUMBER,
+          getRegistrationMessageContentSize());
+    }
+    if (hasRegistrationSync()) {
+      size += getLengthDelimitedSize(ClientToServerMessage.REGISTRATION_SYNC_MESSAGE_FIELD_NUMBER,
+          getRegistrationSyncMessageContentSize());
+    }
+    if (hasAcks()) {
+      size += getLengthDelimitedSize(ClientToServerMessage.INVALIDATION_ACK_MESSAGE_FIELD_NUMBER,
+          getAckMessageContentSize());
+    }
+    if (infoMessage != null) {
+      size += CodedOutputStream.computeMessageSize(
+          ClientToServerMessage.INFO_MESSAGE_FIELD_NUMBER, infoMessage);
+    }
+    return size;
+  }
+
+  /** Writes the encoded message to {@code output}. */
+  void writeTo(CodedOutputStream output) throws IOException {
+    if (header != null) {
+      output.writeMessage(ClientToServerMessage.HEADER_FIELD_NUMBER, header);
+    }
+    if (initializeMessage != null) {
+      output.writeMessage(ClientToServerMessage.INITIALIZE_MESSAGE_FIELD_NUMBER,
+          initializeMessage);
+    }
+    if (hasRegistrations()) {
+      writeLengthDelimitedTag(output, ClientToServerMessage.REGISTRATION_MESSAGE_FIELD_NUMBER,
+          getRegistrationMessageContentSize());
+      for (int i = 0; i < registrationObjectIds.size(); i++) {
+        ProtoWrapper<ObjectIdP> objectId = registrationObjectIds.get(i);
+        RegistrationP.OpType opType = registrationOpTypes.get(i);
+        writeLengthDelimitedTag(output, RegistrationMessage.REGISTRATION_FIELD_NUMBER,
+            getRegistrationContentSize(objectId, opType));
+        writeElement(output, RegistrationP.OBJECT_ID_FIELD_NUMBER, objectId);
+        output.writeEnum(RegistrationP.OP_TYPE_FIELD_NUMBER, opType.getNumber());
+      }
+    }
+    if (hasRegistrationSync()) {
+      writeLengthDelimitedTag(output, ClientToServerMessage.REGISTRATION_SYNC_MESSAGE_FIELD_NUMBER,
+          getRegistrationSyncMessageContentSize());
+      for (ProtoWrapper<RegistrationSubtree> subtree : subtrees) {
+        writeElement(output, RegistrationSyncMessage.SUBTREE_FIELD_NUMBER, subtree);
+      }
+      for (ProtoWrapper<RegistrationSubtreeSummary> summary : subtreeSummaries) {
+        writeElement(output, RegistrationSyncMessage.SUBTREE_SUMMARY_FIELD_NUMBER, summary);
+      }
+    }
+    if (hasAcks()) {
+      writeLengthDelimitedTag(output, ClientToServerMessage.INVALIDATION_ACK_MESSAGE_FIELD_NUMBER,
+          getAckMessageContentSize());
+      for (ProtoWrapper<InvalidationP> ack : acks) {
+        writeElement(output, InvalidationMessage.INVALIDATION_FIELD_NUMBER, ack);
+      }
+    }
+    if (infoMessage != null) {
+      output.writeMessage(ClientToServerMessage.INFO_MESSAGE_FIELD_NUMBER, infoMessage);
+    }
+  }
+
+  /**
+   * Encodes the message into {@code buffer}, which must have room for exactly
+   * {@link #getSerializedSize} bytes from {@code offset}.
+   */
+  void encode(byte[] buffer, int offset, int size) {
+    CodedOutputStream output = CodedOutputStream.newInstance(buffer, offset, size);
+    try {
+      writeTo(output);
+    } catch (IOException exception) {
+      throw new IllegalStateException("Writing to a byte array failed", exception);
+    }
+    output.checkNoSpaceLeft();
+  }
+
+  private int getRegistrationMessageContentSize() {
+    int size = 0;
+    for (int i = 0; i < registrationObjectIds.size(); i++) {
+      size += getRegistrationSize(registrationObjectIds.get(i), registrationOpTypes.get(i));
+    }
+    return size;
+  }
+
+  private int getRegistrationSyncMessageContentSize() {
+    int size = 0;
+    for (ProtoWrapper<RegistrationSubtree> subtree : subtrees) {
+      size += getElementSize(RegistrationSyncMessage.SUBTREE_FIELD_NUMBER, subtree);
+    }
+    for (ProtoWrapper<RegistrationSubtreeSummary> summary : subtreeSummaries) {
+      size += getElementSize(RegistrationSyncMessage.SUBTREE_SUMMARY_FIELD_NUMBER, summary);
+    }
+    return size;
+  }
+
+  private int getAckMessageContentSize() {
+    int size = 0;
+    for (ProtoWrapper<InvalidationP> ack : acks) {
+      size += getElementSize(InvalidationMessage.INVALIDATION_FIELD_NUMBER, ack);
+    }
+    return size;
+  }
+
+  /** Returns the size of the {@link RegistrationP} for {@code objectId} and {@code opType}. */
+  private static int getRegistrationContentSize(ProtoWrapper<ObjectIdP> objectId,
+      RegistrationP.OpType opType) {
+    return getElementSize(RegistrationP.OBJECT_ID_FIELD_NUMBER, objectId) +
+        CodedOutputStream.computeEnumSize(RegistrationP.OP_TYPE_FIELD_NUMBER, opType.getNumber());
+  }
+
+  /** Returns the size of a length-delimited field {@code fieldNumber} of {@code length} bytes. */
+  private static int getLengthDelimitedSize(int fieldNumber, int length) {
+    Preconditions.checkArgument(length >= 0);
+    return CodedOutputStream.computeTagSize(fieldNumber) +
+        CodedOutputStream.computeRawVarint32Size(length) + length;
+  }
+
+  /** Writes the tag and length of a length-delimited field {@code fieldNumber}. */
+  private static void writeLengthDelimitedTag(CodedOutputStream output, int fieldNumber,
+      int length) throws IOException {
+    output.writeTag(fieldNumber, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+    output.writeRawVarint32(length);
+  }
+
+  /** Writes the serialized {@code element} as message field {@code fieldNumber}. */
+  private static void writeElement(CodedOutputStream output, int fieldNumber,
+      ProtoWrapper<?> element) throws IOException {
+    byte[] bytes = element.getByteArray();
+    writeLengthDelimitedTag(output, fieldNumber, bytes.length);
+    output.writeRawBytes(bytes);
+  }
+}
@@ -41,12 +41,23 @@ public interface DigestStore<ElementType> {
    */
   byte[] getDigest();
 
+  /**
+   * Returns the number of elements whose digest prefixes begin with the bit prefix
+   * {@code digestPrefix} of {@code prefixLen} bits.
+   */
+  int size(byte[] digestPrefix, int prefixLen);
+
+  /**
+   * Returns a digest of the elements whose digest prefixes begin with the bit prefix
+   * {@code digestPrefix} of {@code prefixLen} bits, computed as {@link #getDigest()} would be if
+   * they were the only elements in the store.
+   */
+  byte[] getDigest(byte[] digestPrefix, int prefixLen);
+
   /**
    * Returns the elements whose digest prefixes begin with the bit prefix {@code digestPrefix}.
    * {@code prefixLen} is the length of {@code digestPrefix} in bits, which may be less than
-   * {@code digestPrefix.length} (and may be 0). The implementing class can return *more* objects
-   * than what has been specified by {@code digestPrefix}, e.g., it could return all the objects
-   * in the store.
+   * {@code digestPrefix.length} (and may be 0).
    */
   Collection<ElementType> getElements(byte[] digestPrefix, int prefixLen);
 
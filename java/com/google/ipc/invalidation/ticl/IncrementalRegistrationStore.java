@@ -0,0 +1,273 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.ipc.invalidation.ticl;
+
+import com.google.ipc.invalidation.common.CommonProtoStrings2;
+import com.google.ipc.invalidation.common.DigestFunction;
+import com.google.ipc.invalidation.common.ObjectIdDigestUtils;
+import com.google.ipc.invalidation.util.Bytes;
+import com.google.ipc.invalidation.util.InternalBase;
+import com.google.ipc.invalidation.util.TextBuilder;
+import com.google.protos.ipc.invalidation.ClientProtocol.ObjectIdP;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Implementation of {@link DigestStore} for the {@code SUM_BASED} digest serialization type. The
+ * digest of the store is the sum of the digests of its objects, so it is updated in constant time
+ * on each add or remove instead of being recomputed over all objects.
+ * <p>
+ * Objects are also indexed by a binary trie over their digests, each node of which keeps the count
+ * and digest sum of the objects under its prefix. This makes the summary of any subtree available
+ * without iterating over its objects, so that registration sync can compare subtrees cheaply.
+ *
+ */
+class IncrementalRegistrationStore extends InternalBase implements DigestStore<ObjectIdP> {
+
+  /**
+   * A node in the trie over object digests. The node at depth {@code d} covers the objects whose
+   * digests begin with the {@code d}-bit path from the root to the node.
+   */
+  private static class TrieNode {
+    /** Number of objects under this node. */
+    int count = 0;
+
+    /** Sum of the digests of the objects under this node. */
+    final byte[] digestSum;
+
+    /**
+     * Children for the objects whose next digest bit is 0 and 1 respectively, or {@code null} if
+     * this node is a leaf.
+     */
+    TrieNode[] children = null;
+
+    TrieNode(int digestLength) {
+      this.digestSum = new byte[digestLength];
+    }
+  }
+
+  /** Number of objects above which a leaf of the trie is split. */
+  private static final int MAX_LEAF_SIZE = 32;
+
+  /**
+   * All the registrations in the store mapped from the digest to the canonical Object Id. The key
+   * of each registration is the digest held by its handle.
+   */
+  private final SortedMap<Bytes, ObjectIdHandle> registrations =
+      new TreeMap<Bytes, ObjectIdHandle>();
+
+  /** Table of the canonical object ids held by the store, which also carry their digests. */
+  private final ObjectIdInterner interner;
+
+  /** Length in bytes of the object digests. */
+  private final int digestLength;
+
+  /** Root of the trie, covering all objects; its digest sum is the digest of the store. */
+  private TrieNode root;
+
+  IncrementalRegistrationStore(DigestFunction digestFunction) {
+    this(new ObjectIdInterner(digestFunction));
+  }
+
+  /** Constructs a store holding the canonical object ids of {@code interner}. */
+  IncrementalRegistrationStore(ObjectIdInterner interner) {
+    this.interner = interner;
+    DigestFunction digestFunction = interner.getDigestFunction();
+
+    // The digest of the empty set is all zeroes, with the length of the digest function's output.
+    digestFunction.reset();
+    this.digestLength = digestFunction.getDigest().length;
+    this.root = new TrieNode(digestLength);
+  }
+
+  @Override
+  public boolean add(ObjectIdP oid) {
+    // Intern first, so that the digest is memoized with the canonical object id.
+    ObjectIdHandle handle = interner.intern(oid);
+    Bytes oidDigest = interner.getDigest(handle);
+    if (registrations.containsKey(oidDigest)) {
+      return false;
+    }
+    registrations.put(oidDigest, interner.acquire(handle, ObjectIdInterner.DESIRED_REGISTRATION));
+    byte[] digestBytes = oidDigest.getByteArray();
+    TrieNode node = root;
+    for (int depth = 0; ; depth++) {
+      node.count++;
+      ObjectIdDigestUtils.addToDigestSum(node.digestSum, digestBytes);
+      if (node.children == null) {
+        if (node.count > MAX_LEAF_SIZE) {
+          split(node, digestBytes, depth);
+        }
+        return true;
+      }
+      node = node.children[ObjectIdDigestUtils.getBit(digestBytes, depth)];
+    }
+  }
+
+  @Override
+  public Collection<ObjectIdP> add(Collection<ObjectIdP> oids) {
+    Collection<ObjectIdP> addedOids = new ArrayList<ObjectIdP>();
+    for (ObjectIdP oid : oids) {
+      if (add(oid)) {
+        addedOids.add(oid);
+      }
+    }
+    return addedOids;
+  }
+
+  @Override
+  public boolean remove(ObjectIdP oid) {
+    Bytes oidDigest = interner.getDigest(oid);
+    ObjectIdHandle handle = registrations.remove(oidDigest);
+    if (handle == null) {
+      return false;
+    }
+    interner.release(handle, ObjectIdInterner.DESIRED_REGISTRATION);
+    byte[] digestBytes = oidDigest.getByteArray();
+    TrieNode node = root;
+    for (int depth = 0; node != null; depth++) {
+      node.count--;
+      ObjectIdDigestUtils.subtractFromDigestSum(node.digestSum, digestBytes);
+      if ((node.children != null) && (node.count <= MAX_LEAF_SIZE / 2)) {
+        // Few enough objects remain that the subtree can be collapsed back into a leaf.
+        node.children = null;
+      }
+      node = (node.children == null) ? null
+          : node.children[ObjectIdDigestUtils.getBit(digestBytes, depth)];
+    }
+    return true;
+  }
+
+  @Override
+  public Collection<ObjectIdP> remove(Collection<ObjectIdP> oids) {
+    Collection<ObjectIdP> removedOids = new ArrayList<ObjectIdP>();
+    for (ObjectIdP oid : oids) {
+      if (remove(oid)) {
+        removedOids.add(oid);
+      }
+    }
+    return removedOids;
+  }
+
+  @Override
+  public Collection<ObjectIdP> removeAll() {
+    Collection<ObjectIdP> result =
+        new ArrayList<ObjectIdP>(ObjectIdInterner.unwrap(registrations.values()));
+    for (ObjectIdHandle handle : registrations.values()) {
+      interner.release(handle, ObjectIdInterner.DESIRED_REGISTRATION);
+    }
+    registrations.clear();
+    root = new TrieNode(digestLength);
+    return result;
+  }
+
+  @Override
+  public boolean contains(ObjectIdP oid) {
+    return registrations.containsKey(interner.getDigest(oid));
+  }
+
+  @Override
+  public int size() {
+    return registrations.size();
+  }
+
+  @Override
+  public int size(byte[] oidDigestPrefix, int prefixLen) {
+    TrieNode node = findNode(oidDigestPrefix, prefixLen);
+    if (node != null) {
+      return node.count;
+    }
+    return ObjectIdDigestUtils.getPrefixRange(registrations, oidDigestPrefix, prefixLen).size();
+  }
+
+  @Override
+  public byte[] getDigest() {
+    return root.digestSum.clone();
+  }
+
+  @Override
+  public byte[] getDigest(byte[] oidDigestPrefix, int prefixLen) {
+    TrieNode node = findNode(oidDigestPrefix, prefixLen);
+    if (node != null) {
+      return node.digestSum.clone();
+    }
+    // The prefix lies below a leaf, which covers few enough objects to sum directly.
+    byte[] digestSum = new byte[digestLength];
+    for (Bytes oidDigest :
+        ObjectIdDigestUtils.getPrefixRange(registrations, oidDigestPrefix, prefixLen).keySet()) {
+      ObjectIdDigestUtils.addToDigestSum(digestSum, oidDigest.getByteArray());
+    }
+    return digestSum;
+  }
+
+  @Override
+  public Collection<ObjectIdP> getElements(byte[] oidDigestPrefix, int prefixLen) {
+    return ObjectIdInterner.unwrap(
+        ObjectIdDigestUtils.getPrefixRange(registrations, oidDigestPrefix, prefixLen).values());
+  }
+
+  /**
+   * Returns the trie node for the bit prefix {@code oidDigestPrefix} of {@code prefixLen} bits,
+   * or {@code null} if the prefix lies strictly below a leaf of the trie.
+   */
+  private TrieNode findNode(byte[] oidDigestPrefix, int prefixLen) {
+    TrieNode node = root;
+    for (int depth = 0; depth < prefixLen; depth++) {
+      if (node.children == null) {
+        return null;
+      }
+      node = node.children[ObjectIdDigestUtils.getBit(oidDigestPrefix, depth)];
+    }
+    return node;
+  }
+
+  /**
+   * Splits the leaf {@code node} at depth {@code depth}, distributing its objects between two new
+   * children. {@code digestInNode} is the digest of any object under {@code node}.
+   */
+  private void split(TrieNode node, byte[] digestInNode, int depth) {
+    node.children = new TrieNode[] {new TrieNode(digestLength), new TrieNode(digestLength)};
+    byte[][] digestInChild = new byte[2][];
+    for (Bytes oidDigest :
+        ObjectIdDigestUtils.getPrefixRange(registrations, digestInNode, depth).keySet()) {
+      byte[] digestBytes = oidDigest.getByteArray();
+      int bit = ObjectIdDigestUtils.getBit(digestBytes, depth);
+      TrieNode child = node.children[bit];
+      child.count++;
+      ObjectIdDigestUtils.addToDigestSum(child.digestSum, digestBytes);
+      digestInChild[bit] = digestBytes;
+    }
+    // If the objects mostly fell on one side, that child needs splitting as well.
+    for (int bit = 0; bit < 2; bit++) {
+      if (node.children[bit].count > MAX_LEAF_SIZE) {
+        split(node.children[bit], digestInChild[bit], depth + 1);
+      }
+    }
+  }
+
+  @Override
+  public void toCompactString(TextBuilder builder) {
+    builder.append("<IncrementalRegistrationStore: registrations=");
+    CommonProtoStrings2.toCompactStringForObjectIds(builder,
+        ObjectIdInterner.unwrap(registrations.values()));
+    builder.append(", digest=").append(new Bytes(root.digestSum))
+        .append(">");
+  }
+}
@@ -28,6 +28,7 @@ import com.google.ipc.invalidation.common.TiclMessageValidator2;
 import com.google.ipc.invalidation.external.client.InvalidationListener;
 import com.google.ipc.invalidation.external.client.InvalidationListener.RegistrationState;
 import com.google.ipc.invalidation.external.client.SystemResources;
+import com.google.ipc.invalidation.external.client.SystemResources.BufferedNetworkChannel.BufferedNetworkListener;
 import com.google.ipc.invalidation.external.client.SystemResources.Logger;
 import com.google.ipc.invalidation.external.client.SystemResources.NetworkChannel;
 import com.google.ipc.invalidation.external.client.SystemResources.Scheduler;
@@ -61,8 +62,10 @@ import com.google.protos.ipc.invalidation.Client.PersistentTiclState;
 import com.google.protos.ipc.invalidation.Client.RunStateP;
 import com.google.protos.ipc.invalidation.ClientProtocol.ApplicationClientIdP;
 import com.google.protos.ipc.invalidation.ClientProtocol.ClientConfigP;
+import com.google.protos.ipc.invalidation.ClientProtocol.DigestPrefixP;
 import com.google.protos.ipc.invalidation.ClientProtocol.ErrorMessage;
 import com.google.protos.ipc.invalidation.ClientProtocol.InfoRequestMessage.InfoType;
+import com.google.protos.ipc.invalidation.ClientProtocol.InitializeMessage.DigestSerializationType;
 import com.google.protos.ipc.invalidation.ClientProtocol.InvalidationP;
 import com.google.protos.ipc.invalidation.ClientProtocol.ObjectIdP;
 import com.google.protos.ipc.invalidation.ClientProtocol.RegistrationP;
@@ -70,12 +73,14 @@ import com.google.protos.ipc.invalidation.ClientProtocol.RegistrationP.OpType;
 import com.google.protos.ipc.invalidation.ClientProtocol.RegistrationStatus;
 import com.google.protos.ipc.invalidation.ClientProtocol.RegistrationSubtree;
 import com.google.protos.ipc.invalidation.ClientProtocol.RegistrationSummary;
+import com.google.protos.ipc.invalidation.ClientProtocol.RegistrationSyncRequestMessage;
 import com.google.protos.ipc.invalidation.JavaClient.InvalidationClientState;
 import com.google.protos.ipc.invalidation.JavaClient.ProtocolHandlerState;
 import com.google.protos.ipc.invalidation.JavaClient.RecurringTaskState;
 import com.google.protos.ipc.invalidation.JavaClient.RegistrationManagerStateP;
 import com.google.protos.ipc.invalidation.JavaClient.StatisticsState;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -150,7 +155,8 @@ public abstract class InvalidationClientCore extends InternalBase
       if (clientToken == null) {
         // Allocate a nonce and send a message requesting a new token.
         setNonce(generateNonce(random));
-        protocolHandler.sendInitializeMessage(applicationClientId, nonce, batchingTask, TASK_NAME);
+        protocolHandler.sendInitializeMessage(applicationClientId, nonce,
+            config.getDigestSerializationType(), batchingTask, TASK_NAME);
         return true;  // Reschedule to check state, retry if necessary after timeout.
       } else {
         return false;  // Don't reschedule.
@@ -219,7 +225,8 @@ public abstract class InvalidationClientCore extends InternalBase
 
       // Compute the state that we will write if we decide to go ahead with the write.
       final ProtoWrapper<PersistentTiclState> state =
-          ProtoWrapper.of(CommonProtos2.newPersistentTiclState(clientToken, lastMessageSendTimeMs));
+          ProtoWrapper.of(CommonProtos2.newPersistentTiclState(clientToken, lastMessageSendTimeMs,
+              registrationManager.getDigestSerializationType()));
       byte[] serializedState = PersistenceUtils.serializeState(state.getProto(), digestFn);
 
       // Decide whether or not to do the write. The decision varies depending on whether or
@@ -298,30 +305,92 @@ public abstract class InvalidationClientCore extends InternalBase
      * independently in ProtocolHandlerTest.
      */
     private static final String TASK_NAME = "Batching";
+    private static final String URGENT_TASK_NAME = "UrgentBatching";
+
+    /**
+     * Task that sends urgent data sooner than the batching task, along with whatever else is
+     * pending, so that the batching task usually finds nothing left to send.
+     */
+    private class UrgentBatchingTask extends RecurringTask {
+      UrgentBatchingTask(SystemResources resources, Smearer smearer, int urgentBatchingDelayMs) {
+        super(URGENT_TASK_NAME, resources.getInternalScheduler(), resources.getLogger(), smearer,
+            null, urgentBatchingDelayMs, NO_DELAY);
+      }
+
+      UrgentBatchingTask(SystemResources resources, Smearer smearer,
+          RecurringTaskState marshalledState) {
+        super(URGENT_TASK_NAME, resources.getInternalScheduler(), resources.getLogger(), smearer,
+            null, marshalledState);
+      }
+
+      @Override
+      public boolean runTask() {
+        // Leave whatever could not be sent now to the batching task, which retries.
+        if (!protocolHandler.sendMessageToServer()) {
+          BatchingTask.this.ensureScheduled("Urgent-remainder");
+        }
+        return false;
+      }
+    }
 
     /** {@link ProtocolHandler} instance from which messages will be pulled. */
     private final ProtocolHandler protocolHandler;
 
+    /** Task sending urgent data, which is disabled if its delay is not positive. */
+    private final UrgentBatchingTask urgentTask;
+
     /** Creates a new instance with default state. */
     BatchingTask(ProtocolHandler protocolHandler, SystemResources resources, Smearer smearer,
-        int batchingDelayMs) {
+        int batchingDelayMs, int urgentBatchingDelayMs) {
       super(TASK_NAME, resources.getInternalScheduler(), resources.getLogger(), smearer, null,
           batchingDelayMs, NO_DELAY);
       this.protocolHandler = protocolHandler;
+      this.urgentTask = new UrgentBatchingTask(resources, smearer, urgentBatchingDelayMs);
     }
 
-    /** Creates a new instance with state from {@code marshalledState}. */
+    /**
+     * Creates a new instance with state from {@code marshalledState} and, for the urgent task,
+     * {@code urgentMarshalledState} or, if {@code null}, {@code urgentBatchingDelayMs}.
+     */
     BatchingTask(ProtocolHandler protocolHandler, SystemResources resources, Smearer smearer,
-        RecurringTaskState marshalledState) {
+        RecurringTaskState marshalledState, int urgentBatchingDelayMs,
+        RecurringTaskState urgentMarshalledState) {
       super(TASK_NAME, resources.getInternalScheduler(), resources.getLogger(), smearer, null,
           marshalledState);
       this.protocolHandler = protocolHandler;
+      this.urgentTask = (urgentMarshalledState != null) ?
+          new UrgentBatchingTask(resources, smearer, urgentMarshalledState) :
+          new UrgentBatchingTask(resources, smearer, urgentBatchingDelayMs);
+    }
+
+    @Override
+    protected int getInitialDelayMs() {
+      return protocolHandler.getBatchingDelayMs(super.getInitialDelayMs());
     }
 
     @Override
     public boolean runTask() {
-      protocolHandler.sendMessageToServer();
-      return false;  // Don't reschedule.
+      // Reschedule if sending was deferred (e.g., by a rate limit) or the batch was split across
+      // messages, so that the pending data is sent, with whatever is added in the meantime.
+      return !protocolHandler.sendMessageToServer();
+    }
+
+    /**
+     * Ensures that the urgent task is scheduled, if urgent batching is enabled (with
+     * {@code debugReason} as the reason to be logged), unless a message was sent within the
+     * batching delay. This caps urgent messages at about one per batching delay: urgent data queued
+     * in between waits for this task, which is scheduled along with it.
+     */
+    void ensureUrgentScheduled(String debugReason) {
+      if ((urgentTask.getInitialDelayMs() > 0) &&
+          !protocolHandler.wasMessageSentWithinMs(super.getInitialDelayMs())) {
+        urgentTask.ensureScheduled(debugReason);
+      }
+    }
+
+    /** Returns the task sending urgent data. */
+    RecurringTask getUrgentTask() {
+      return urgentTask;
     }
   }
 
@@ -353,6 +422,12 @@ public abstract class InvalidationClientCore extends InternalBase
   
   public static final String CLIENT_TOKEN_KEY = "ClientToken";
 
+  /**
+   * Minimum number of objects in an (un)registration call for them to be converted and digested
+   * on the {@link #parallelDigester}, if any.
+   */
+  private static final int PARALLEL_DIGEST_MIN_OBJECTS = 1024;
+
   /** Resources for the Ticl. */
   private final SystemResources resources;
 
@@ -389,6 +464,15 @@ public abstract class InvalidationClientCore extends InternalBase
   /** The function for computing the registration and persistence state digests. */
   private final DigestFunction digestFn = new ObjectIdDigestUtils.Sha1DigestFunction();
 
+  /** Table of canonical object ids, shared by the registration manager and protocol handler. */
+  private final ObjectIdInterner interner = new ObjectIdInterner(digestFn);
+
+  /**
+   * If not {@code null}, digester for the objects of large (un)registration calls. Configured by
+   * {@code ClientConfigP.parallel_digest_threads}.
+   */
+  private final ParallelObjectIdDigester parallelDigester;
+
   /** The state of the Ticl whether it has started or not. */
   private final RunState ticlState;
 
@@ -471,10 +555,14 @@ public abstract class InvalidationClientCore extends InternalBase
     this.statistics = (statisticsState != null) ?
         Statistics.deserializeStatistics(resources.getLogger(), statisticsState.getCounterList()) :
         new Statistics();
-    this.registrationManager = new RegistrationManager(logger, statistics, digestFn,
+    this.parallelDigester = (config.getParallelDigestThreads() > 0) ?
+        new ParallelObjectIdDigester(config.getParallelDigestThreads()) : null;
+    this.registrationManager = new RegistrationManager(logger, statistics, interner,
         regManagerState);
+    registrationManager.setUseCompactStore(config.getUseCompactRegistrationStore());
     this.protocolHandler = new ProtocolHandler(config.getProtocolHandlerConfig(), resources,
-        smearer, statistics, clientType, applicationName, this, msgValidator, protocolHandlerState);
+        smearer, statistics, interner, clientType, applicationName, this, msgValidator,
+        protocolHandlerState);
   }
 
   /**
@@ -540,9 +628,13 @@ public abstract class InvalidationClientCore extends InternalBase
    * {@code resources}.
    */
   private void registerWithNetwork(final SystemResources resources) {
-    resources.getNetwork().setListener(new NetworkChannel.NetworkListener() {
+    resources.getNetwork().setListener(new BufferedNetworkListener() {
       @Override
       public void onMessageReceived(byte[] incomingMessage) {
+        InvalidationClientCore.this.handleIncomingMessage(ByteBuffer.wrap(incomingMessage));
+      }
+      @Override
+      public void onMessageReceived(ByteBuffer incomingMessage) {
         InvalidationClientCore.this.handleIncomingMessage(incomingMessage);
       }
       @Override
@@ -590,7 +682,8 @@ public abstract class InvalidationClientCore extends InternalBase
       this.regSyncHeartbeatTask = new RegSyncHeartbeatTask();
       this.persistentWriteTask = new PersistentWriteTask();
       this.batchingTask = new BatchingTask(protocolHandler, resources, smearer,
-          config.getProtocolHandlerConfig().getBatchingDelayMs());
+          config.getProtocolHandlerConfig().getBatchingDelayMs(),
+          config.getProtocolHandlerConfig().getUrgentBatchingDelayMs());
     } else {
       this.acquireTokenTask = new AcquireTokenTask(marshalledState.getAcquireTokenTaskState());
       this.heartbeatTask = new HeartbeatTask(marshalledState.getHeartbeatTaskState());
@@ -599,7 +692,10 @@ public abstract class InvalidationClientCore extends InternalBase
       this.persistentWriteTask =
           new PersistentWriteTask(marshalledState.getPersistentWriteTaskState());
       this.batchingTask = new BatchingTask(protocolHandler, resources, smearer,
-          marshalledState.getBatchingTaskState());
+          marshalledState.getBatchingTaskState(),
+          config.getProtocolHandlerConfig().getUrgentBatchingDelayMs(),
+          marshalledState.hasUrgentBatchingTaskState() ?
+              marshalledState.getUrgentBatchingTaskState() : null);
       if (marshalledState.hasLastWrittenState()) {
         persistentWriteTask.lastWrittenState.set(
             ProtoWrapper.of(marshalledState.getLastWrittenState()));
@@ -814,6 +910,7 @@ public abstract class InvalidationClientCore extends InternalBase
           CommonProtoStrings2.toLazyCompactString(persistentState.getClientToken()));
       setNonce(null);
       setClientToken(persistentState.getClientToken());
+      registrationManager.setDigestSerializationType(persistentState.getDigestSerializationType());
       shouldSendRegistrations = false;
 
       // Schedule an info message for the near future.
@@ -929,6 +1026,66 @@ public abstract class InvalidationClientCore extends InternalBase
     performRegisterOperations(objectIds, RegistrationP.OpType.UNREGISTER);
   }
 
+  @Override  // InvalidationClient
+  public void setRegistrations(Collection<ObjectId> objectIds) {
+    Preconditions.checkNotNull(objectIds, "Must specify object ids");
+    Preconditions.checkState(internalScheduler.isRunningOnThread(),
+        "Not running on internal thread");
+
+    if (ticlState.isStopped()) {
+      logger.severe("Ticl stopped: set registrations of %s ignored.", objectIds);
+      return;
+    }
+    if (!ticlState.isStarted()) {
+      logger.severe("Ticl is not yet started; failing set registrations call; client = %s, " +
+          "objects = %s", this, objectIds);
+      for (ObjectId objectId : objectIds) {
+        listener.informRegistrationFailure(this, objectId, true, "Client not yet ready");
+      }
+      return;
+    }
+
+    List<ObjectIdHandle> objectIdHandles = convertToObjectIdHandles(objectIds);
+    for (int i = 0; i < objectIdHandles.size(); i++) {
+      statistics.recordIncomingOperation(IncomingOperationType.REGISTRATION);
+    }
+    logger.info("Set registrations to %s objects", objectIdHandles.size());
+
+    // Compute and apply the difference between the current and the desired registrations.
+    SimplePair<Collection<ObjectIdHandle>, Collection<ObjectIdHandle>> delta =
+        registrationManager.setDesiredRegistrations(objectIdHandles);
+
+    if (shouldSendRegistrations) {
+      if (!delta.first.isEmpty()) {
+        protocolHandler.sendRegistrations(delta.first, RegistrationP.OpType.REGISTER,
+            batchingTask);
+      }
+      if (!delta.second.isEmpty()) {
+        protocolHandler.sendRegistrations(delta.second, RegistrationP.OpType.UNREGISTER,
+            batchingTask);
+      }
+    }
+    InvalidationClientCore.this.regSyncHeartbeatTask.ensureScheduled("setRegistrations");
+  }
+
+  /**
+   * Converts {@code objectIds} to handles from the {@link #interner}, in order. Large collections
+   * are converted and digested on the {@link #parallelDigester}, if any.
+   */
+  private List<ObjectIdHandle> convertToObjectIdHandles(Collection<ObjectId> objectIds) {
+    for (ObjectId objectId : objectIds) {
+      Preconditions.checkNotNull(objectId, "Must specify object id");
+    }
+    if ((parallelDigester != null) && (objectIds.size() >= PARALLEL_DIGEST_MIN_OBJECTS)) {
+      return parallelDigester.convertAndDigest(new ArrayList<ObjectId>(objectIds));
+    }
+    List<ObjectIdHandle> objectIdHandles = new ArrayList<ObjectIdHandle>(objectIds.size());
+    for (ObjectId objectId : objectIds) {
+      objectIdHandles.add(interner.intern(ProtoConverter.convertToObjectIdProto(objectId)));
+    }
+    return objectIdHandles;
+  }
+
   /**
    * Implementation of (un)registration.
    *
@@ -960,24 +1117,21 @@ public abstract class InvalidationClientCore extends InternalBase
       return;
     }
 
-    List<ObjectIdP> objectIdProtos = new ArrayList<ObjectIdP>(objectIds.size());
-    for (ObjectId objectId : objectIds) {
-      Preconditions.checkNotNull(objectId, "Must specify object id");
-      ObjectIdP objectIdProto = ProtoConverter.convertToObjectIdProto(objectId);
+    List<ObjectIdHandle> objectIdHandles = convertToObjectIdHandles(objectIds);
+    for (ObjectIdHandle objectIdHandle : objectIdHandles) {
       IncomingOperationType opType = (regOpType == RegistrationP.OpType.REGISTER) ?
           IncomingOperationType.REGISTRATION : IncomingOperationType.UNREGISTRATION;
       statistics.recordIncomingOperation(opType);
-      logger.info("Register %s, %s", CommonProtoStrings2.toLazyCompactString(objectIdProto),
-          regOpType);
-      objectIdProtos.add(objectIdProto);
+      logger.info("Register %s, %s",
+          CommonProtoStrings2.toLazyCompactString(objectIdHandle.getProto()), regOpType);
     }
 
     // Update the registration manager state, then have the protocol client send a message.
-    // performOperations returns only those elements of objectIdProtos that caused a state
+    // performOperations returns only those elements of objectIdHandles that caused a state
     // change (i.e., elements not present if regOpType == REGISTER or elements that were present
     // if regOpType == UNREGISTER).
-    Collection<ObjectIdP> objectProtosToSend = registrationManager.performOperations(
-        objectIdProtos, regOpType);
+    Collection<ObjectIdHandle> objectProtosToSend = registrationManager.performOperations(
+        objectIdHandles, regOpType);
 
     // Check whether we should suppress sending registrations because we don't
     // yet know the server's summary.
@@ -1064,6 +1218,7 @@ public abstract class InvalidationClientCore extends InternalBase
     Preconditions.checkState(internalScheduler.isRunningOnThread(), "Not on internal thread");
     boolean wasOnline = this.isOnline;
     this.isOnline = isOnline;
+    protocolHandler.handleNetworkStatusChange(isOnline);
     if (isOnline && !wasOnline && (internalScheduler.getCurrentTimeMs() >
         lastMessageSendTimeMs + config.getOfflineHeartbeatThresholdMs())) {
       logger.log(Level.INFO,
@@ -1076,9 +1231,10 @@ public abstract class InvalidationClientCore extends InternalBase
   /**
    * Handles an {@code incomingMessage} from the data center. If it is valid and addressed to
    * this client, dispatches to methods to handle sub-parts of the message; if not, drops the
-   * message.
+   * message. The message is the remaining bytes of {@code incomingMessage}, which is decoded in
+   * place and must not be modified by the caller.
    */
-  void handleIncomingMessage(byte[] incomingMessage) {
+  void handleIncomingMessage(ByteBuffer incomingMessage) {
     Preconditions.checkState(internalScheduler.isRunningOnThread(), "Not on internal thread");
     statistics.recordReceivedMessage(ReceivedMessageType.TOTAL);
     ParsedMessage parsedMessage = protocolHandler.handleIncomingMessage(incomingMessage);
@@ -1092,12 +1248,18 @@ public abstract class InvalidationClientCore extends InternalBase
       return;
     }
 
+    // Only now that the message is known to be for this client, decode the rest of it.
+    if (!protocolHandler.decodeIncomingMessageBody(parsedMessage)) {
+      return;
+    }
+
     // Handle a token-control message, if present.
     if (parsedMessage.tokenControlMessage != null) {
       statistics.recordReceivedMessage(ReceivedMessageType.TOKEN_CONTROL);
       handleTokenChanged(parsedMessage.header.token,
           parsedMessage.tokenControlMessage.hasNewToken() ?
-              parsedMessage.tokenControlMessage.getNewToken() : null);
+              parsedMessage.tokenControlMessage.getNewToken() : null,
+          parsedMessage.tokenControlMessage.getDigestSerializationType());
     }
 
     // We might have lost our token or failed to acquire one. Ensure that we do not proceed in
@@ -1120,7 +1282,7 @@ public abstract class InvalidationClientCore extends InternalBase
     }
     if (parsedMessage.registrationSyncRequestMessage != null) {
       statistics.recordReceivedMessage(ReceivedMessageType.REGISTRATION_SYNC_REQUEST);
-      handleRegistrationSyncRequest();
+      handleRegistrationSyncRequest(parsedMessage.registrationSyncRequestMessage);
     }
     if (parsedMessage.infoRequestMessage != null) {
       statistics.recordReceivedMessage(ReceivedMessageType.INFO_REQUEST);
@@ -1137,8 +1299,10 @@ public abstract class InvalidationClientCore extends InternalBase
    * Handles a token-control message.
    * @param headerToken token in the server message
    * @param newToken the new token provided, or {@code null} if this is a destroy message.
+   * @param digestType the registration digest type the server will use with {@code newToken}
    */
-  private void handleTokenChanged(ByteString headerToken, final ByteString newToken) {
+  private void handleTokenChanged(ByteString headerToken, final ByteString newToken,
+      DigestSerializationType digestType) {
     Preconditions.checkState(internalScheduler.isRunningOnThread(), "Not on internal thread");
 
     // The server is either supplying a new token in response to an InitializeMessage, spontaneously
@@ -1163,6 +1327,7 @@ public abstract class InvalidationClientCore extends InternalBase
       heartbeatTask.ensureScheduled("Heartbeat-after-new-token");
       setNonce(null);
       setClientToken(newToken);
+      registrationManager.setDigestSerializationType(digestType);
       persistentWriteTask.ensureScheduled("Write-after-new-token");
     } else {
       logger.info("Destroying existing token: %s",
@@ -1264,13 +1429,40 @@ public abstract class InvalidationClientCore extends InternalBase
   }
 
   /** Handles a registration sync request. */
-  private void handleRegistrationSyncRequest() {
+  private void handleRegistrationSyncRequest(RegistrationSyncRequestMessage syncRequest) {
     Preconditions.checkState(internalScheduler.isRunningOnThread(), "Not on internal thread");
-    // Send all the registrations in the reg sync message.
-    // Generate a single subtree for all the registrations.
-    RegistrationSubtree subtree =
-        registrationManager.getRegistrations(Bytes.EMPTY_BYTES.getByteArray(), 0);
-    protocolHandler.sendRegistrationSyncSubtree(subtree, batchingTask);
+    if ((syncRequest.getSubtreeCount() == 0) && (syncRequest.getSummaryRequestedCount() == 0)) {
+      // Send all the registrations in the reg sync message: a single subtree for all the
+      // registrations, unless it must be split to fit in messages.
+      sendRegistrationSyncSubtrees(Bytes.EMPTY_BYTES.getByteArray(), 0);
+      return;
+    }
+
+    // The server is bisecting the registration space to find where we disagree: send summaries
+    // for the subtrees it is comparing and the objects of the subtrees it has narrowed down.
+    for (DigestPrefixP prefix : syncRequest.getSummaryRequestedList()) {
+      RegistrationSummary summary = registrationManager.getRegistrationSummary(
+          prefix.getDigestPrefix().toByteArray(), prefix.getPrefixLength());
+      protocolHandler.sendRegistrationSyncSubtreeSummary(
+          CommonProtos2.newRegistrationSubtreeSummary(prefix, summary), batchingTask);
+    }
+    for (DigestPrefixP prefix : syncRequest.getSubtreeList()) {
+      sendRegistrationSyncSubtrees(prefix.getDigestPrefix().toByteArray(),
+          prefix.getPrefixLength());
+    }
+  }
+
+  /**
+   * Sends the registrations whose digest begins with the prefix {@code digestPrefix} of
+   * {@code prefixLen} bits, as subtrees small enough that they can be spread over consecutive
+   * messages.
+   */
+  private void sendRegistrationSyncSubtrees(byte[] digestPrefix, int prefixLen) {
+    int maxSubtreeSizeBytes = config.getProtocolHandlerConfig().getMaxMessageSizeBytes();
+    for (RegistrationSubtree subtree :
+        registrationManager.getRegistrationSubtrees(digestPrefix, prefixLen, maxSubtreeSizeBytes)) {
+      protocolHandler.sendRegistrationSyncSubtree(subtree, batchingTask);
+    }
   }
 
   /** Handles an info message request. */
@@ -1319,10 +1511,10 @@ public abstract class InvalidationClientCore extends InternalBase
     }
 
     // If there are any registrations, remove them and issue registration failure.
-    Collection<ProtoWrapper<ObjectIdP>> desiredRegistrations =
+    Collection<ObjectIdHandle> desiredRegistrations =
         registrationManager.removeRegisteredObjects();
     logger.warning("Issuing failure for %s objects", desiredRegistrations.size());
-    for (ProtoWrapper<ObjectIdP> objectIdWrapper : desiredRegistrations) {
+    for (ObjectIdHandle objectIdWrapper : desiredRegistrations) {
       ObjectIdP objectId = objectIdWrapper.getProto();
       listener.informRegistrationFailure(this,
         ProtoConverter.convertFromObjectIdProto(objectId), false, "Auth error: " + description);
@@ -1508,13 +1700,14 @@ public abstract class InvalidationClientCore extends InternalBase
 
   /** Returns a map from recurring task name to the runnable for that recurring task. */
   protected Map<String, Runnable> getRecurringTasks() {
-    final int numPersistentTasks = 6;
+    final int numPersistentTasks = 7;
     HashMap<String, Runnable> tasks = new HashMap<String, Runnable>(numPersistentTasks);
     tasks.put(AcquireTokenTask.TASK_NAME, acquireTokenTask.getRunnable());
     tasks.put(RegSyncHeartbeatTask.TASK_NAME, regSyncHeartbeatTask.getRunnable());
     tasks.put(PersistentWriteTask.TASK_NAME, persistentWriteTask.getRunnable());
     tasks.put(HeartbeatTask.TASK_NAME, heartbeatTask.getRunnable());
     tasks.put(BatchingTask.TASK_NAME, batchingTask.getRunnable());
+    tasks.put(BatchingTask.URGENT_TASK_NAME, batchingTask.getUrgentTask().getRunnable());
     tasks.put(InitialPersistentHeartbeatTask.TASK_NAME,
         initialPersistentHeartbeatTask.getRunnable());
     return tasks;
@@ -1548,6 +1741,7 @@ public abstract class InvalidationClientCore extends InternalBase
       .setRegSyncHeartbeatTaskState(regSyncHeartbeatTask.marshal())
       .setHeartbeatTaskState(heartbeatTask.marshal())
       .setBatchingTaskState(batchingTask.marshal())
+      .setUrgentBatchingTaskState(batchingTask.getUrgentTask().marshal())
       .setStatisticsState(statistics.marshal());
     if (clientToken != null) {
       builder.setClientToken(clientToken);
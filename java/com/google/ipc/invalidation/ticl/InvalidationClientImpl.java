@@ -23,6 +23,7 @@ import com.google.ipc.invalidation.external.client.types.AckHandle;
 import com.google.ipc.invalidation.external.client.types.ObjectId;
 import com.google.protos.ipc.invalidation.ClientProtocol.ClientConfigP;
 
+import java.nio.ByteBuffer;
 import java.util.Collection;
 import java.util.Random;
 
@@ -129,6 +130,16 @@ public class InvalidationClientImpl extends InvalidationClientCore {
     });
   }
 
+  @Override
+  public void setRegistrations(final Collection<ObjectId> objectIds) {
+    getResources().getInternalScheduler().schedule(NO_DELAY, new Runnable() {
+      @Override
+      public void run() {
+        InvalidationClientImpl.super.setRegistrations(objectIds);
+      }
+    });
+  }
+
   @Override
   public void acknowledge(final AckHandle ackHandle) {
     getResources().getInternalScheduler().schedule(NO_DELAY, new Runnable() {
@@ -142,7 +153,7 @@ public class InvalidationClientImpl extends InvalidationClientCore {
  // End InvalidationClient methods.
 
   @Override  // InvalidationClientCore; overriding to add concurrency control.
-  void handleIncomingMessage(final byte[] message) {
+  void handleIncomingMessage(final ByteBuffer message) {
     getResources().getInternalScheduler().schedule(NO_DELAY, new Runnable() {
       @Override
       public void run() {
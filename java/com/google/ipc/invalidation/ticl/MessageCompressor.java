@@ -0,0 +1,124 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.ipc.invalidation.ticl;
+
+import com.google.protobuf.ByteString;
+import com.google.protos.ipc.invalidation.ClientProtocol.CompressedBodyP;
+
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+
+/**
+ * Compressor and decompressor of message bodies ({@link CompressedBodyP}). An instance keeps its
+ * deflater, inflater and output buffer across messages, so that compressing many messages does
+ * not allocate the native compression state for each of them.
+ * <p>
+ * This class is not thread-safe.
+ *
+ */
+public class MessageCompressor {
+
+  /** Largest body accepted for decompression, so that a corrupt size cannot exhaust memory. */
+  public static final int MAX_UNCOMPRESSED_SIZE_BYTES = 16 * 1024 * 1024;
+
+  /** Size of the output buffer above which it is not kept across messages. */
+  private static final int MAX_POOLED_OUTPUT_BYTES = 1 << 20;
+
+  private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+
+  private final Inflater inflater = new Inflater();
+
+  /** Buffer into which bodies are compressed, or {@code null} if none is kept. */
+  private byte[] outputBuffer = null;
+
+  /**
+   * Returns the {@code length} bytes of {@code buffer} from {@code offset} compressed, or
+   * {@code null} if compressing does not make them smaller.
+   */
+  public CompressedBodyP compress(byte[] buffer, int offset, int length) {
+    if ((outputBuffer == null) || (outputBuffer.length < length)) {
+      outputBuffer = new byte[length];
+    }
+    deflater.reset();
+    deflater.setInput(buffer, offset, length);
+    deflater.finish();
+
+    // Compress into at most as many bytes as the input, and give up if that is not enough.
+    int compressedLength = 0;
+    while (!deflater.finished() && (compressedLength < length)) {
+      compressedLength +=
+          deflater.deflate(outputBuffer, compressedLength, length - compressedLength);
+    }
+    CompressedBodyP body = null;
+    if (deflater.finished() && (compressedLength < length)) {
+      body = CompressedBodyP.newBuilder()
+          .setCompression(CompressedBodyP.Compression.DEFLATE)
+          .setUncompressedSize(length)
+          .setData(ByteString.copyFrom(outputBuffer, 0, compressedLength))
+          .build();
+    }
+
+    // Do not hold on to the memory of an unusually large body.
+    if (outputBuffer.length > MAX_POOLED_OUTPUT_BYTES) {
+      outputBuffer = null;
+    }
+    return body;
+  }
+
+  /**
+   * Returns the decompressed contents of {@code body}.
+   *
+   * @throws IOException if {@code body} does not hold properly compressed data of its uncompressed
+   *     size, or that size exceeds {@link #MAX_UNCOMPRESSED_SIZE_BYTES}
+   */
+  public byte[] decompress(CompressedBodyP body) throws IOException {
+    if (body.getCompression() != CompressedBodyP.Compression.DEFLATE) {
+      throw new IOException("Unsupported compression: " + body.getCompression());
+    }
+    int size = body.getUncompressedSize();
+    if ((size < 0) || (size > MAX_UNCOMPRESSED_SIZE_BYTES)) {
+      throw new IOException("Bad uncompressed size: " + size);
+    }
+    byte[] uncompressed = new byte[size];
+    inflater.reset();
+    inflater.setInput(body.getData().toByteArray());
+    int uncompressedLength = 0;
+    try {
+      while (uncompressedLength < size) {
+        int numBytes =
+            inflater.inflate(uncompressed, uncompressedLength, size - uncompressedLength);
+        if (numBytes == 0) {
+          break;  // The data ended early, or needs input or a dictionary that it will not get.
+        }
+        uncompressedLength += numBytes;
+      }
+      // Read the end of the data, which must hold nothing more.
+      if (!inflater.finished() && (inflater.inflate(new byte[1]) > 0)) {
+        throw new IOException("Compressed data exceeds uncompressed size " + size);
+      }
+    } catch (DataFormatException exception) {
+      throw new IOException("Malformed compressed data: " + exception.getMessage());
+    }
+    if (!inflater.finished() || (uncompressedLength != size)) {
+      throw new IOException("Compressed data does not match uncompressed size " + size);
+    }
+    return uncompressed;
+  }
+}
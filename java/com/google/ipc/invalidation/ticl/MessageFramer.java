@@ -0,0 +1,140 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.ipc.invalidation.ticl;
+
+import com.google.common.base.Preconditions;
+import com.google.protobuf.CodedOutputStream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Framing of messages on a byte stream: each message is preceded by its length as a varint, as
+ * written by {@code MessageLite.writeDelimitedTo}. {@link #frame} frames an outgoing message; an
+ * instance splits the bytes read from a stream into the messages they hold.
+ * <p>
+ * This class is not thread-safe.
+ *
+ */
+class MessageFramer {
+
+  /** Initial size of the buffer for bytes read from the stream. */
+  private static final int INITIAL_BUFFER_BYTES = 4 * 1024;
+
+  /** Maximum number of bytes in the varint encoding of a message length. */
+  private static final int MAX_LENGTH_BYTES = 5;
+
+  /** Largest message accepted from the stream. */
+  private final int maxMessageSizeBytes;
+
+  /** Bytes read from the stream but not yet returned as messages, from index 0 to position. */
+  private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_BUFFER_BYTES);
+
+  /** Creates an instance accepting messages of up to {@code maxMessageSizeBytes}. */
+  MessageFramer(int maxMessageSizeBytes) {
+    Preconditions.checkArgument(maxMessageSizeBytes > 0, "Bad size: %s", maxMessageSizeBytes);
+    this.maxMessageSizeBytes = maxMessageSizeBytes;
+  }
+
+  /** Returns a buffer holding {@code message} preceded by its length. */
+  static ByteBuffer frame(byte[] message) {
+    int size = CodedOutputStream.computeRawVarint32Size(message.length) + message.length;
+    byte[] framedMessage = new byte[size];
+    CodedOutputStream output = CodedOutputStream.newInstance(framedMessage);
+    try {
+      output.writeRawVarint32(message.length);
+      output.writeRawBytes(message);
+    } catch (IOException exception) {
+      throw new IllegalStateException("Writing to a byte array failed", exception);
+    }
+    output.checkNoSpaceLeft();
+    return ByteBuffer.wrap(framedMessage);
+  }
+
+  /**
+   * Returns the buffer into which the next bytes read from the stream must be put, from its
+   * position; it has space for at least one byte.
+   */
+  ByteBuffer getReadBuffer() {
+    if (!buffer.hasRemaining()) {
+      ensureCapacity(2 * buffer.capacity());
+    }
+    return buffer;
+  }
+
+  /**
+   * Returns the next complete message read from the stream, or {@code null} if none has been read
+   * entirely yet.
+   *
+   * @throws IOException if the stream does not hold properly framed messages of at most the
+   *     maximum size
+   */
+  byte[] nextMessage() throws IOException {
+    // Decode the length, if all of it has been read.
+    int dataEnd = buffer.position();
+    int index = 0;
+    int length = 0;
+    for (int shift = 0; ; shift += 7) {
+      if (index >= dataEnd) {
+        return null;
+      }
+      if (index == MAX_LENGTH_BYTES) {
+        throw new IOException("Malformed message length");
+      }
+      byte lengthByte = buffer.get(index++);
+      length |= (lengthByte & 0x7f) << shift;
+      if ((lengthByte & 0x80) == 0) {
+        break;
+      }
+    }
+    if ((length < 0) || (length > maxMessageSizeBytes)) {
+      throw new IOException("Bad message length: " + length);
+    }
+    if (dataEnd - index < length) {
+      // Make room for the rest of the message.
+      ensureCapacity(index + length);
+      return null;
+    }
+
+    // Take the message and keep the bytes after it, in a buffer of the initial size again if they
+    // fit, so that the space of a large message is not held for the life of the connection.
+    byte[] message = new byte[length];
+    buffer.flip();
+    buffer.position(index);
+    buffer.get(message);
+    if ((buffer.capacity() > INITIAL_BUFFER_BYTES) &&
+        (buffer.remaining() <= INITIAL_BUFFER_BYTES)) {
+      ByteBuffer newBuffer = ByteBuffer.allocate(INITIAL_BUFFER_BYTES);
+      newBuffer.put(buffer);
+      buffer = newBuffer;
+    } else {
+      buffer.compact();
+    }
+    return message;
+  }
+
+  /** Ensures that the buffer can hold at least {@code capacity} bytes. */
+  private void ensureCapacity(int capacity) {
+    if (buffer.capacity() >= capacity) {
+      return;
+    }
+    ByteBuffer newBuffer = ByteBuffer.allocate(Math.max(capacity, 2 * buffer.capacity()));
+    buffer.flip();
+    newBuffer.put(buffer);
+    buffer = newBuffer;
+  }
+}
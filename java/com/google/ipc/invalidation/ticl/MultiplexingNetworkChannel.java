@@ -0,0 +1,335 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.ipc.invalidation.ticl;
+
+import com.google.common.base.Preconditions;
+import com.google.ipc.invalidation.external.client.SystemResources;
+import com.google.ipc.invalidation.external.client.SystemResources.BufferedNetworkChannel;
+import com.google.ipc.invalidation.external.client.SystemResources.Logger;
+import com.google.ipc.invalidation.external.client.SystemResources.NetworkChannel;
+import com.google.ipc.invalidation.external.client.SystemResources.NetworkChannel.NetworkListener;
+import com.google.ipc.invalidation.external.client.SystemResources.Scheduler;
+import com.google.ipc.invalidation.util.NamedRunnable;
+import com.google.ipc.invalidation.util.TypedUtil;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protos.ipc.invalidation.ChannelCommon.AddressedMessage;
+import com.google.protos.ipc.invalidation.ChannelCommon.AddressedMessageBatch;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Network layer through which many clients in one process share a single network channel, e.g.,
+ * in a gateway hosting thousands of clients. Each client connects through its own
+ * {@link ClientChannel} from {@link #newChannel}, which it closes when it stops. The messages sent
+ * by the clients are gathered and sent on the shared channel as one {@link AddressedMessageBatch}
+ * per flush, which happens {@code flushDelayMs} after the first message of the batch; the batches
+ * received on the shared channel are split into messages for the individual clients, by client
+ * key.
+ * <p>
+ * The shared channel runs on the resources given to the constructor, and its network events are
+ * relayed to all clients. Messages and events are delivered to each client on its own internal
+ * scheduler.
+ * <p>
+ * This class is thread-safe.
+ *
+ */
+public class MultiplexingNetworkChannel {
+
+  /**
+   * Network channel connecting a single client to the shared channel. Once the client is done with
+   * it, it must be {@link #close}d, so that the shared channel stops relaying to it.
+   */
+  public class ClientChannel implements BufferedNetworkChannel {
+    /** Key identifying the client in the batches. */
+    private final int clientKey;
+
+    /** Resources of the client, whose internal scheduler runs message deliveries. */
+    private volatile SystemResources resources;
+
+    /** Listener for messages to the client. */
+    private volatile NetworkListener listener;
+
+    /** Whether the channel has been closed. */
+    private volatile boolean isClosed = false;
+
+    private ClientChannel(int clientKey) {
+      this.clientKey = clientKey;
+    }
+
+    @Override
+    public void setSystemResources(SystemResources resources) {
+      this.resources = resources;
+    }
+
+    @Override
+    public void setListener(NetworkListener listener) {
+      this.listener = listener;
+    }
+
+    @Override
+    public void sendMessage(byte[] outgoingMessage) {
+      if (checkOpen()) {
+        addMessage(clientKey, ByteString.copyFrom(outgoingMessage));
+      }
+    }
+
+    @Override
+    public void sendMessage(ByteBuffer outgoingMessage) {
+      if (checkOpen()) {
+        // The message is sent later, so its bytes must be copied now.
+        addMessage(clientKey, ByteString.copyFrom(outgoingMessage.duplicate()));
+      }
+    }
+
+    /**
+     * Disconnects the client from the shared channel: messages and events are no longer delivered
+     * to it, and messages it sends are dropped. Messages it sent before are still sent.
+     */
+    public void close() {
+      isClosed = true;
+      removeChannel(clientKey);
+    }
+
+    /** Returns whether the channel is open, logging a warning if not. */
+    private boolean checkOpen() {
+      if (isClosed) {
+        logger.warning("Dropping message from closed client: %s", clientKey);
+        return false;
+      }
+      return true;
+    }
+
+    /** Delivers {@code message} to the client on its internal thread. */
+    void deliver(final ByteString message) {
+      scheduleOnClient(new NamedRunnable("MultiplexingNetworkChannel.deliver") {
+        @Override
+        public void run() {
+          if (listener != null) {
+            listener.onMessageReceived(message.toByteArray());
+          }
+        }
+      });
+    }
+
+    /** Informs the client of the online status {@code isOnline} on its internal thread. */
+    void informOnlineStatus(final boolean isOnline) {
+      scheduleOnClient(new NamedRunnable("MultiplexingNetworkChannel.informOnlineStatus") {
+        @Override
+        public void run() {
+          if (listener != null) {
+            listener.onOnlineStatusChange(isOnline);
+          }
+        }
+      });
+    }
+
+    /** Informs the client of a network address change on its internal thread. */
+    void informAddressChange() {
+      scheduleOnClient(new NamedRunnable("MultiplexingNetworkChannel.informAddressChange") {
+        @Override
+        public void run() {
+          if (listener != null) {
+            listener.onAddressChange();
+          }
+        }
+      });
+    }
+
+    /**
+     * Schedules {@code runnable} on the client's internal scheduler, or drops it if the channel is
+     * closed or the client has not yet given the channel its resources.
+     */
+    private void scheduleOnClient(NamedRunnable runnable) {
+      SystemResources clientResources = resources;
+      if (isClosed || (clientResources == null)) {
+        logger.warning("Dropping %s for client %s: closed = %s, has resources = %s",
+            runnable.getName(), clientKey, isClosed, clientResources != null);
+        return;
+      }
+      clientResources.getInternalScheduler().schedule(Scheduler.NO_DELAY, runnable);
+    }
+  }
+
+  /** Listener for the shared channel, which relays its events to the clients. */
+  private class SharedChannelListener implements NetworkListener {
+    @Override
+    public void onMessageReceived(byte[] message) {
+      AddressedMessageBatch batch;
+      try {
+        batch = AddressedMessageBatch.parseFrom(message);
+      } catch (InvalidProtocolBufferException exception) {
+        logger.warning("Dropping unparseable message batch: %s", exception);
+        return;
+      }
+      for (AddressedMessage addressedMessage : batch.getAddressedMessageList()) {
+        ClientChannel channel = getChannel(addressedMessage.getClientKey());
+        if (channel == null) {
+          logger.warning("Dropping message for unknown client: %s",
+              addressedMessage.getClientKey());
+          continue;
+        }
+        channel.deliver(addressedMessage.getMessage());
+      }
+    }
+
+    @Override
+    public void onOnlineStatusChange(boolean isOnline) {
+      for (ClientChannel channel : getChannels()) {
+        channel.informOnlineStatus(isOnline);
+      }
+    }
+
+    @Override
+    public void onAddressChange() {
+      for (ClientChannel channel : getChannels()) {
+        channel.informAddressChange();
+      }
+    }
+  }
+
+  /** Resources on which the shared channel runs. */
+  private final SystemResources resources;
+
+  private final Logger logger;
+
+  /** The shared channel, which carries serialized {@link AddressedMessageBatch} protos. */
+  private final NetworkChannel sharedChannel;
+
+  /** Delay between the first message of a batch and the sending of the batch. */
+  private final int flushDelayMs;
+
+  /** Task that sends the pending batch. */
+  private final Runnable flushTask = new NamedRunnable("MultiplexingNetworkChannel.flush") {
+    @Override
+    public void run() {
+      flush();
+    }
+  };
+
+  /** Channels of the clients, by client key. */
+  private final Map<Integer, ClientChannel> channels = new HashMap<Integer, ClientChannel>();
+
+  /** Key to be assigned to the next client. */
+  private int nextClientKey = 0;
+
+  /** Messages to be sent in the next batch. */
+  private AddressedMessageBatch.Builder pendingBatch = AddressedMessageBatch.newBuilder();
+
+  /** Whether {@link #flushTask} has been scheduled to send {@link #pendingBatch}. */
+  private boolean isFlushScheduled = false;
+
+  /** Number of batches sent on the shared channel. */
+  private long numBatchesSent = 0;
+
+  /** Number of client messages sent on the shared channel. */
+  private long numMessagesSent = 0;
+
+  /**
+   * Constructs a multiplexing channel.
+   * <p>
+   * REQUIRES: {@code resources} be started.
+   *
+   * @param resources resources on which {@code sharedChannel} runs
+   * @param sharedChannel the channel shared by the clients
+   * @param flushDelayMs delay between the first message of a batch and the sending of the batch
+   */
+  public MultiplexingNetworkChannel(SystemResources resources, NetworkChannel sharedChannel,
+      int flushDelayMs) {
+    Preconditions.checkArgument(flushDelayMs >= 0, "Bad flush delay: %s", flushDelayMs);
+    this.resources = Preconditions.checkNotNull(resources);
+    this.logger = resources.getLogger();
+    this.sharedChannel = Preconditions.checkNotNull(sharedChannel);
+    this.flushDelayMs = flushDelayMs;
+    sharedChannel.setSystemResources(resources);
+    sharedChannel.setListener(new SharedChannelListener());
+  }
+
+  /**
+   * Returns a new network channel through which a client can share the channel. The channel must be
+   * closed once the client is stopped.
+   */
+  public synchronized ClientChannel newChannel() {
+    ClientChannel channel = new ClientChannel(nextClientKey++);
+    channels.put(channel.clientKey, channel);
+    return channel;
+  }
+
+  /** Returns the number of batches sent on the shared channel. */
+  public synchronized long getNumBatchesSent() {
+    return numBatchesSent;
+  }
+
+  /** Returns the number of client messages sent on the shared channel. */
+  public synchronized long getNumMessagesSent() {
+    return numMessagesSent;
+  }
+
+  /** Returns the number of open client channels. */
+  public synchronized int getNumChannels() {
+    return channels.size();
+  }
+
+  /** Returns the channel of the client with key {@code clientKey}, or {@code null} if none. */
+  private synchronized ClientChannel getChannel(int clientKey) {
+    return TypedUtil.mapGet(channels, clientKey);
+  }
+
+  /** Removes the channel of the client with key {@code clientKey}, if any. */
+  private synchronized void removeChannel(int clientKey) {
+    channels.remove(clientKey);
+  }
+
+  /** Returns the channels of all clients. */
+  private synchronized List<ClientChannel> getChannels() {
+    return new ArrayList<ClientChannel>(channels.values());
+  }
+
+  /**
+   * Adds {@code message} from the client with key {@code clientKey} to the pending batch, and
+   * schedules the batch to be sent if it is the first message in it.
+   */
+  private synchronized void addMessage(int clientKey, ByteString message) {
+    pendingBatch.addAddressedMessage(
+        AddressedMessage.newBuilder().setClientKey(clientKey).setMessage(message));
+    if (!isFlushScheduled) {
+      isFlushScheduled = true;
+      resources.getInternalScheduler().schedule(flushDelayMs, flushTask);
+    }
+  }
+
+  /** Sends the pending batch on the shared channel. */
+  private void flush() {
+    Preconditions.checkState(resources.getInternalScheduler().isRunningOnThread(),
+        "Not on internal thread");
+    AddressedMessageBatch batch;
+    synchronized (this) {
+      batch = pendingBatch.build();
+      pendingBatch = AddressedMessageBatch.newBuilder();
+      isFlushScheduled = false;
+      numBatchesSent++;
+      numMessagesSent += batch.getAddressedMessageCount();
+    }
+    // Send outside the lock, so that clients can keep adding messages meanwhile.
+    sharedChannel.sendMessage(batch.toByteArray());
+  }
+}
@@ -0,0 +1,433 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.ipc.invalidation.ticl;
+
+import com.google.common.base.Preconditions;
+import com.google.ipc.invalidation.external.client.SystemResources;
+import com.google.ipc.invalidation.external.client.SystemResources.AsyncNetworkChannel;
+import com.google.ipc.invalidation.external.client.SystemResources.Logger;
+import com.google.ipc.invalidation.external.client.SystemResources.Scheduler;
+import com.google.ipc.invalidation.external.client.types.Callback;
+import com.google.ipc.invalidation.external.client.types.Status;
+import com.google.ipc.invalidation.util.ExponentialBackoffDelayGenerator;
+import com.google.ipc.invalidation.util.NamedRunnable;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+
+/**
+ * Network channel for JVM deployments that exchanges messages with the data center over a
+ * persistent TCP connection, using non-blocking I/O on a thread of its own. Each message is
+ * preceded by its length, as framed by {@link MessageFramer}.
+ * <p>
+ * The channel connects when started, and reconnects with exponential backoff whenever the
+ * connection fails; the listener is told that the network is online while connected. Messages
+ * sent while disconnected are queued (up to a bound) and sent once connected, and a message whose
+ * sending was interrupted is sent again in full on the next connection. As an
+ * {@link AsyncNetworkChannel}, the channel reports when each message has been written to the
+ * connection, which lets the Ticl limit the messages queued here.
+ * <p>
+ * Messages and network events are delivered to the listener on the internal scheduler.
+ * <p>
+ * This class is thread-safe.
+ *
+ */
+public class NioNetworkChannel implements AsyncNetworkChannel {
+
+  /** A message waiting to be written to the connection. */
+  private static class PendingMessage {
+    /** The framed message, whose position is the next byte to be written. */
+    final ByteBuffer framedMessage;
+
+    /** Callback to be invoked once the message has been written, or {@code null} if none. */
+    final Callback<Status> done;
+
+    PendingMessage(ByteBuffer framedMessage, Callback<Status> done) {
+      this.framedMessage = framedMessage;
+      this.done = done;
+    }
+  }
+
+  /** Default initial delay before reconnecting. */
+  private static final int DEFAULT_RECONNECT_DELAY_MS = 1000;
+
+  /** Maximum factor by which the reconnect delay grows. */
+  private static final int MAX_RECONNECT_DELAY_FACTOR = 60;
+
+  /** Default largest message accepted from the server. */
+  private static final int DEFAULT_MAX_MESSAGE_SIZE_BYTES = 4 * 1024 * 1024;
+
+  /** Maximum number of messages queued for sending; further messages fail. */
+  private static final int MAX_PENDING_MESSAGES = 64;
+
+  /** Address of the server. */
+  private final SocketAddress serverAddress;
+
+  /** Largest message accepted from the server. */
+  private final int maxMessageSizeBytes;
+
+  /** Generator of the delays before reconnecting. */
+  private final ExponentialBackoffDelayGenerator reconnectDelayGenerator;
+
+  /** Messages to be written to the connection, oldest first. */
+  private final LinkedList<PendingMessage> pendingMessages = new LinkedList<PendingMessage>();
+
+  /** Resources on whose internal scheduler the listener is called. */
+  private SystemResources resources;
+
+  private Logger logger;
+
+  /** Listener for messages and network events. */
+  private volatile NetworkListener listener;
+
+  /** Selector of the I/O thread, or {@code null} if not started. */
+  private volatile Selector selector;
+
+  /** Whether the channel has been stopped. */
+  private boolean isStopped = false;
+
+  // State owned by the I/O thread.
+
+  /** Connection to the server, or {@code null} if none (being) established. */
+  private SocketChannel socketChannel;
+
+  /** Registration of {@link #socketChannel} with the selector. */
+  private SelectionKey selectionKey;
+
+  /** Splitter of the bytes read from the connection into messages. */
+  private MessageFramer framer;
+
+  /** Whether the connection is established. */
+  private boolean isConnected = false;
+
+  /** Time at or after which to try to connect when there is no connection. */
+  private long nextConnectTimeMs = 0;
+
+  /** Creates a channel to the server at {@code serverAddress}, with default parameters. */
+  public NioNetworkChannel(SocketAddress serverAddress) {
+    this(serverAddress, DEFAULT_RECONNECT_DELAY_MS, DEFAULT_MAX_MESSAGE_SIZE_BYTES);
+  }
+
+  /**
+   * Creates a channel.
+   *
+   * @param serverAddress address of the server
+   * @param reconnectDelayMs initial delay before reconnecting after a connection failure
+   * @param maxMessageSizeBytes largest message accepted from the server
+   */
+  public NioNetworkChannel(SocketAddress serverAddress, int reconnectDelayMs,
+      int maxMessageSizeBytes) {
+    this.serverAddress = Preconditions.checkNotNull(serverAddress);
+    this.maxMessageSizeBytes = maxMessageSizeBytes;
+    this.reconnectDelayGenerator = new ExponentialBackoffDelayGenerator(new Random(),
+        reconnectDelayMs, MAX_RECONNECT_DELAY_FACTOR);
+  }
+
+  @Override
+  public void setSystemResources(SystemResources resources) {
+    this.resources = resources;
+    this.logger = resources.getLogger();
+  }
+
+  @Override
+  public void setListener(NetworkListener listener) {
+    this.listener = listener;
+  }
+
+  /**
+   * Starts the I/O thread, which connects to the server. Messages sent before then are queued.
+   * <p>
+   * REQUIRES: the channel has not been started and its resources have been set.
+   */
+  public synchronized void start() throws IOException {
+    Preconditions.checkState(!isStopped && (selector == null), "Already started");
+    Preconditions.checkState(resources != null, "No resources");
+    selector = Selector.open();
+    Thread ioThread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        runIoLoop();
+      }
+    }, "NioNetworkChannel");
+    ioThread.setDaemon(true);
+    ioThread.start();
+  }
+
+  /**
+   * Stops the I/O thread, which closes the connection and fails the messages not yet sent. The
+   * channel cannot be restarted.
+   */
+  public void stop() {
+    synchronized (this) {
+      isStopped = true;
+    }
+    wakeUpIoThread();
+  }
+
+  @Override
+  public void sendMessage(byte[] outgoingMessage) {
+    sendMessage(outgoingMessage, null);
+  }
+
+  @Override
+  public void sendMessage(byte[] outgoingMessage, Callback<Status> done) {
+    PendingMessage message = new PendingMessage(MessageFramer.frame(outgoingMessage), done);
+    boolean isQueued;
+    synchronized (this) {
+      isQueued = !isStopped && (pendingMessages.size() < MAX_PENDING_MESSAGES);
+      if (isQueued) {
+        pendingMessages.add(message);
+      }
+    }
+    if (isQueued) {
+      wakeUpIoThread();
+    } else {
+      logger.warning("Dropping message of %s bytes: channel stopped or too many pending",
+          outgoingMessage.length);
+      complete(message, Status.newInstance(Status.Code.TRANSIENT_FAILURE, "Not sent"));
+    }
+  }
+
+  /** Returns whether the channel has been stopped. */
+  private synchronized boolean isStopped() {
+    return isStopped;
+  }
+
+  /** Makes the I/O thread return from waiting for I/O, if it has been started. */
+  private void wakeUpIoThread() {
+    Selector currentSelector = selector;
+    if (currentSelector != null) {
+      currentSelector.wakeup();
+    }
+  }
+
+  /** Runs the I/O thread until the channel is stopped. */
+  private void runIoLoop() {
+    while (!isStopped()) {
+      try {
+        if ((socketChannel == null) && (System.currentTimeMillis() >= nextConnectTimeMs)) {
+          connect();
+        }
+        if (isConnected) {
+          writeMessages();
+        }
+        selector.select(getSelectTimeoutMs());
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+          SelectionKey key = keys.next();
+          keys.remove();
+          if (key.isValid() && key.isConnectable() && socketChannel.finishConnect()) {
+            handleConnected();
+          }
+          if (key.isValid() && key.isReadable()) {
+            readMessages();
+          }
+          if (key.isValid() && key.isWritable()) {
+            writeMessages();
+          }
+        }
+      } catch (IOException exception) {
+        handleDisconnect(exception);
+      } catch (RuntimeException exception) {
+        // E.g., the address cannot be resolved or is not supported, or connecting to it is not
+        // allowed. These may be transient, and must not end the I/O thread.
+        handleDisconnect(exception);
+      }
+    }
+    shutDown();
+  }
+
+  /**
+   * Returns how long the I/O thread may wait for I/O: until it must reconnect if there is no
+   * connection, else until woken up (0).
+   */
+  private long getSelectTimeoutMs() {
+    if (socketChannel != null) {
+      return 0;
+    }
+    return Math.max(1, nextConnectTimeMs - System.currentTimeMillis());
+  }
+
+  /** Starts connecting to the server. */
+  private void connect() throws IOException {
+    logger.info("Connecting to %s", serverAddress);
+    socketChannel = SocketChannel.open();
+    socketChannel.configureBlocking(false);
+    socketChannel.socket().setTcpNoDelay(true);
+    framer = new MessageFramer(maxMessageSizeBytes);
+    if (socketChannel.connect(serverAddress)) {
+      selectionKey = socketChannel.register(selector, SelectionKey.OP_READ);
+      handleConnected();
+    } else {
+      selectionKey = socketChannel.register(selector, SelectionKey.OP_CONNECT);
+    }
+  }
+
+  /** Handles the establishment of the connection. */
+  private void handleConnected() {
+    logger.info("Connected to %s", serverAddress);
+    selectionKey.interestOps(SelectionKey.OP_READ);
+    isConnected = true;
+    reconnectDelayGenerator.reset();
+    informOnlineStatus(true);
+  }
+
+  /**
+   * Handles the failure of the connection (or of the attempt to establish it) with
+   * {@code exception}: closes it and schedules a reconnection.
+   */
+  private void handleDisconnect(Exception exception) {
+    int delayMs = reconnectDelayGenerator.getNextDelay();
+    logger.warning("Connection to %s failed: %s; reconnecting in %s ms", serverAddress,
+        exception, delayMs);
+    closeConnection();
+    nextConnectTimeMs = System.currentTimeMillis() + delayMs;
+  }
+
+  /**
+   * Closes the connection, if any, and tells the listener that the network is offline if it was
+   * connected. A message partly written is written again in full on the next connection.
+   */
+  private void closeConnection() {
+    if (selectionKey != null) {
+      selectionKey.cancel();
+      selectionKey = null;
+    }
+    if (socketChannel != null) {
+      try {
+        socketChannel.close();
+      } catch (IOException exception) {
+        logger.warning("Failed to close connection: %s", exception);
+      }
+      socketChannel = null;
+    }
+    synchronized (this) {
+      if (!pendingMessages.isEmpty()) {
+        pendingMessages.getFirst().framedMessage.rewind();
+      }
+    }
+    if (isConnected) {
+      isConnected = false;
+      informOnlineStatus(false);
+    }
+  }
+
+  /** Closes the connection and the selector, and fails the messages not yet sent. */
+  private void shutDown() {
+    closeConnection();
+    try {
+      selector.close();
+    } catch (IOException exception) {
+      logger.warning("Failed to close selector: %s", exception);
+    }
+    List<PendingMessage> unsentMessages;
+    synchronized (this) {
+      unsentMessages = new ArrayList<PendingMessage>(pendingMessages);
+      pendingMessages.clear();
+    }
+    for (PendingMessage message : unsentMessages) {
+      complete(message, Status.newInstance(Status.Code.TRANSIENT_FAILURE, "Channel stopped"));
+    }
+    logger.info("Stopped channel to %s", serverAddress);
+  }
+
+  /**
+   * Writes as many pending messages as the connection accepts without blocking, and asks to be
+   * told when it can accept more if some remain.
+   */
+  private void writeMessages() throws IOException {
+    while (true) {
+      PendingMessage message;
+      synchronized (this) {
+        message = pendingMessages.peek();
+      }
+      if (message == null) {
+        selectionKey.interestOps(SelectionKey.OP_READ);
+        return;
+      }
+      socketChannel.write(message.framedMessage);
+      if (message.framedMessage.hasRemaining()) {
+        selectionKey.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        return;
+      }
+      synchronized (this) {
+        pendingMessages.removeFirst();
+      }
+      complete(message, Status.newInstance(Status.Code.SUCCESS, ""));
+    }
+  }
+
+  /** Reads the bytes available on the connection and delivers the messages completed by them. */
+  private void readMessages() throws IOException {
+    int numBytesRead;
+    while ((numBytesRead = socketChannel.read(framer.getReadBuffer())) > 0) {
+      byte[] message;
+      while ((message = framer.nextMessage()) != null) {
+        deliver(message);
+      }
+    }
+    if (numBytesRead < 0) {
+      throw new EOFException("Connection closed by server");
+    }
+  }
+
+  /** Invokes the callback of {@code message}, if any, with {@code status}. */
+  private static void complete(PendingMessage message, Status status) {
+    if (message.done != null) {
+      message.done.accept(status);
+    }
+  }
+
+  /** Delivers {@code message} to the listener on the internal thread. */
+  private void deliver(final byte[] message) {
+    resources.getInternalScheduler().schedule(Scheduler.NO_DELAY,
+        new NamedRunnable("NioNetworkChannel.deliver") {
+      @Override
+      public void run() {
+        NetworkListener currentListener = listener;
+        if (currentListener != null) {
+          currentListener.onMessageReceived(message);
+        }
+      }
+    });
+  }
+
+  /** Informs the listener of the online status {@code isOnline} on the internal thread. */
+  private void informOnlineStatus(final boolean isOnline) {
+    resources.getInternalScheduler().schedule(Scheduler.NO_DELAY,
+        new NamedRunnable("NioNetworkChannel.informOnlineStatus") {
+      @Override
+      public void run() {
+        NetworkListener currentListener = listener;
+        if (currentListener != null) {
+          currentListener.onOnlineStatusChange(isOnline);
+        }
+      }
+    });
+  }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.ipc.invalidation.ticl;
+
+import com.google.ipc.invalidation.util.Bytes;
+import com.google.protos.ipc.invalidation.ClientProtocol.ObjectIdP;
+
+/**
+ * Handle of an object id: the wrapped proto with its serialized form and hash code, plus the
+ * digest of the object. A handle interned by an {@link ObjectIdInterner} is canonical, and is then
+ * the only per-object allocation of the registration stores, the registration manager's pending
+ * operations and the batcher, all of which key their maps directly by it.
+ * <p>
+ * The mutable fields are managed by the interner. This class is not thread-safe.
+ *
+ */
+final class ObjectIdHandle extends ProtoWrapper<ObjectIdP> {
+
+  /** The digest of the object, or {@code null} if not yet computed. */
+  Bytes digest;
+
+  /** The components holding the handle, as a set of {@link ObjectIdInterner} holder bits. */
+  int holders = 0;
+
+  /** The next handle in the same bucket of the interner's table. */
+  ObjectIdHandle next = null;
+
+  /** Constructs a handle for {@code objectId}, whose digest is computed when first needed. */
+  ObjectIdHandle(ObjectIdP objectId) {
+    this(objectId, null);
+  }
+
+  /**
+   * Constructs a handle for {@code objectId} with the known digest {@code digest}, e.g. computed
+   * off the internal thread.
+   */
+  ObjectIdHandle(ObjectIdP objectId, Bytes digest) {
+    super(objectId);
+    this.digest = digest;
+  }
+}
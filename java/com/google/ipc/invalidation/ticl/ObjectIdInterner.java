@@ -0,0 +1,259 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.ipc.invalidation.ticl;
+
+import com.google.ipc.invalidation.common.DigestFunction;
+import com.google.ipc.invalidation.common.ObjectIdDigestUtils;
+import com.google.ipc.invalidation.util.Bytes;
+import com.google.protobuf.ByteString;
+import com.google.protos.ipc.invalidation.ClientProtocol.ObjectIdP;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Iterator;
+
+/**
+ * Per-client table of canonical {@link ObjectIdHandle}s. The registration stores, the registration
+ * manager's pending operations and the batcher all hold the same handle for a given object, so its
+ * proto, serialized form, hash code and digest exist once rather than once per map.
+ * <p>
+ * The table chains the handles themselves, so it allocates nothing per object beyond the handle.
+ * Each component holding a handle marks it with its own holder bit through {@link #acquire} and
+ * clears the bit through {@link #release} when it lets go; a handle leaves the table once it has no
+ * holder.
+ * <p>
+ * This class is not thread-safe.
+ *
+ */
+class ObjectIdInterner {
+
+  /** Holder bit of the registration store holding the desired registrations. */
+  static final int DESIRED_REGISTRATION = 1 << 0;
+
+  /** Holder bit of the registration manager's pending operations. */
+  static final int PENDING_OPERATION = 1 << 1;
+
+  /** Holder bit of the batcher's registrations to be sent. */
+  static final int PENDING_REGISTRATION = 1 << 2;
+
+  /** Holder bit of the batcher's acks of known versions to be sent. */
+  static final int PENDING_KNOWN_VERSION_ACK = 1 << 3;
+
+  /** Holder bit of the batcher's acks of unknown versions to be sent. */
+  static final int PENDING_UNKNOWN_VERSION_ACK = 1 << 4;
+
+  /** Initial number of buckets of the table, a power of two. */
+  private static final int INITIAL_CAPACITY = 16;
+
+  /** The buckets of the table, each a chain of handles linked through their {@code next}. */
+  private ObjectIdHandle[] buckets = new ObjectIdHandle[INITIAL_CAPACITY];
+
+  /** Number of handles in the table. */
+  private int size = 0;
+
+  /** The function used to compute object digests. */
+  private final DigestFunction digestFunction;
+
+  ObjectIdInterner(DigestFunction digestFunction) {
+    this.digestFunction = digestFunction;
+  }
+
+  /** Returns the canonical handle for {@code objectId}, or {@code null} if there is none. */
+  ObjectIdHandle find(ObjectIdP objectId) {
+    int source = objectId.getSource();
+    ByteString name = objectId.getName();
+    ObjectIdHandle handle = buckets[getBucket(source, name, buckets.length)];
+    while (handle != null) {
+      ObjectIdP candidate = handle.getProto();
+      if ((candidate == objectId) ||
+          ((candidate.getSource() == source) && candidate.getName().equals(name))) {
+        return handle;
+      }
+      handle = handle.next;
+    }
+    return null;
+  }
+
+  /**
+   * Returns the canonical handle for {@code objectId} if there is one, else a new handle, which
+   * becomes canonical when first acquired.
+   */
+  ObjectIdHandle intern(ObjectIdP objectId) {
+    ObjectIdHandle handle = find(objectId);
+    return (handle != null) ? handle : new ObjectIdHandle(objectId);
+  }
+
+  /**
+   * Marks the canonical handle for the object of {@code handle} as held by the component with
+   * holder bit {@code holder}, making {@code handle} canonical if there is none yet, and returns
+   * the canonical handle. The digest carried by {@code handle}, if any, is kept if the canonical
+   * handle has none.
+   * <p>
+   * REQUIRES: the digest carried by {@code handle}, if any, be the digest of the object under
+   * {@link #getDigestFunction}.
+   */
+  ObjectIdHandle acquire(ObjectIdHandle handle, int holder) {
+    ObjectIdHandle canonicalHandle = (handle.holders != 0) ? handle : find(handle.getProto());
+    if (canonicalHandle == null) {
+      insert(handle);
+      canonicalHandle = handle;
+    } else if (canonicalHandle.digest == null) {
+      canonicalHandle.digest = handle.digest;
+    }
+    canonicalHandle.holders |= holder;
+    return canonicalHandle;
+  }
+
+  /**
+   * Marks the canonical handle {@code handle} as no longer held by the component with holder bit
+   * {@code holder}, removing it from the table if no component holds it any more.
+   */
+  void release(ObjectIdHandle handle, int holder) {
+    if (handle.holders == 0) {
+      return;
+    }
+    handle.holders &= ~holder;
+    if (handle.holders == 0) {
+      remove(handle);
+    }
+  }
+
+  /**
+   * Returns the digest of the object of {@code handle}, computed with {@link #getDigestFunction}
+   * when first needed and then kept with the handle.
+   */
+  Bytes getDigest(ObjectIdHandle handle) {
+    if (handle.digest == null) {
+      handle.digest = ObjectIdDigestUtils.getDigest(handle.getProto(), digestFunction);
+    }
+    return handle.digest;
+  }
+
+  /**
+   * Returns the digest of {@code objectId}, computed with {@link #getDigestFunction}. The digest is
+   * kept with the canonical handle of the object, if any, so it is computed at most once while a
+   * component holds the object, however large the registration set.
+   */
+  Bytes getDigest(ObjectIdP objectId) {
+    ObjectIdHandle handle = find(objectId);
+    if (handle == null) {
+      // Not held by any component: avoid creating a handle just for the digest.
+      return ObjectIdDigestUtils.getDigest(objectId, digestFunction);
+    }
+    return getDigest(handle);
+  }
+
+  /** Returns the function used to compute object digests. */
+  DigestFunction getDigestFunction() {
+    return digestFunction;
+  }
+
+  /** Returns the number of canonical handles in the table. */
+  int size() {
+    return size;
+  }
+
+  /** Adds {@code handle}, for an object not in the table, to the table. */
+  private void insert(ObjectIdHandle handle) {
+    if (size >= buckets.length - (buckets.length >>> 2)) {
+      resize(2 * buckets.length);
+    }
+    ObjectIdP objectId = handle.getProto();
+    int bucket = getBucket(objectId.getSource(), objectId.getName(), buckets.length);
+    handle.next = buckets[bucket];
+    buckets[bucket] = handle;
+    size++;
+  }
+
+  /** Removes {@code handle} from the table, if present. */
+  private void remove(ObjectIdHandle handle) {
+    ObjectIdP objectId = handle.getProto();
+    int bucket = getBucket(objectId.getSource(), objectId.getName(), buckets.length);
+    ObjectIdHandle previous = null;
+    for (ObjectIdHandle current = buckets[bucket]; current != null; current = current.next) {
+      if (current == handle) {
+        if (previous == null) {
+          buckets[bucket] = current.next;
+        } else {
+          previous.next = current.next;
+        }
+        current.next = null;
+        size--;
+        return;
+      }
+      previous = current;
+    }
+  }
+
+  /** Rehashes the handles into {@code numBuckets} buckets. */
+  private void resize(int numBuckets) {
+    ObjectIdHandle[] newBuckets = new ObjectIdHandle[numBuckets];
+    for (ObjectIdHandle handle : buckets) {
+      while (handle != null) {
+        ObjectIdHandle next = handle.next;
+        ObjectIdP objectId = handle.getProto();
+        int bucket = getBucket(objectId.getSource(), objectId.getName(), numBuckets);
+        handle.next = newBuckets[bucket];
+        newBuckets[bucket] = handle;
+        handle = next;
+      }
+    }
+    buckets = newBuckets;
+  }
+
+  /**
+   * Returns the bucket of the object with {@code source} and {@code name} among
+   * {@code numBuckets}, a power of two. The hash of the name is cached by the {@link ByteString}.
+   */
+  private static int getBucket(int source, ByteString name, int numBuckets) {
+    int hash = 31 * source + name.hashCode();
+    hash ^= hash >>> 16;
+    return hash & (numBuckets - 1);
+  }
+
+  /** Returns a read-only view of the protos wrapped by {@code handles}. */
+  static Collection<ObjectIdP> unwrap(
+      final Collection<? extends ProtoWrapper<ObjectIdP>> handles) {
+    return new AbstractCollection<ObjectIdP>() {
+      @Override
+      public Iterator<ObjectIdP> iterator() {
+        final Iterator<? extends ProtoWrapper<ObjectIdP>> handleIterator = handles.iterator();
+        return new Iterator<ObjectIdP>() {
+          @Override
+          public boolean hasNext() {
+            return handleIterator.hasNext();
+          }
+
+          @Override
+          public ObjectIdP next() {
+            return handleIterator.next().getProto();
+          }
+
+          @Override
+          public void remove() {
+            throw new UnsupportedOperationException();
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return handles.size();
+      }
+    };
+  }
+}
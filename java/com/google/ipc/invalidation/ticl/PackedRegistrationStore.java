@@ -0,0 +1,389 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.ipc.invalidation.ticl;
+
+import com.google.ipc.invalidation.common.CommonProtoStrings2;
+import com.google.ipc.invalidation.common.CommonProtos2;
+import com.google.ipc.invalidation.common.DigestFunction;
+import com.google.ipc.invalidation.common.ObjectIdDigestUtils;
+import com.google.ipc.invalidation.util.Bytes;
+import com.google.ipc.invalidation.util.InternalBase;
+import com.google.ipc.invalidation.util.TextBuilder;
+import com.google.protobuf.ByteString;
+import com.google.protos.ipc.invalidation.ClientProtocol.ObjectIdP;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Compact implementation of {@link DigestStore} for clients with very large registration sets.
+ * Objects are kept sorted by digest in packed primitive arrays (digests, sources and names), which
+ * costs a few dozen bytes per object instead of the several hundred of a map of protos.
+ * <p>
+ * The store computes the same {@code BYTE_BASED} digests as {@link SimpleRegistrationStore}: since
+ * the digests are packed in sorted order, the digest of the store is that of the digest array.
+ * <p>
+ * Lookups are binary searches. Additions and removals are buffered and merged into the arrays in a
+ * single pass once they amount to a fraction of the store, or when the store is next read as a
+ * whole or by prefix, so that adding or removing objects one at a time costs amortized
+ * logarithmic rather than linear time. {@link #getElements} materializes new {@link ObjectIdP}s.
+ *
+ */
+class PackedRegistrationStore extends InternalBase implements DigestStore<ObjectIdP> {
+
+  /**
+   * Number of buffered mutations that are always allowed before merging; beyond it, mutations are
+   * merged once they number {@code 1 / MAX_BUFFERED_FRACTION} of the store.
+   */
+  private static final int MIN_BUFFERED_MUTATIONS = 64;
+
+  /** Inverse of the fraction of the store that buffered mutations may reach before merging. */
+  private static final int MAX_BUFFERED_FRACTION = 16;
+
+  /** Table of canonical object ids, used here only for the digests they carry. */
+  private final ObjectIdInterner interner;
+
+  /** The function used to compute digests of objects. */
+  private final DigestFunction digestFunction;
+
+  /** Length in bytes of the object digests. */
+  private final int digestLength;
+
+  /** Number of objects in the store. */
+  private int count = 0;
+
+  /** The digests of the objects, in increasing order, packed into {@code count * digestLength}. */
+  private byte[] digests = new byte[0];
+
+  /** The sources of the objects, in the order of {@link #digests}. */
+  private int[] sources = new int[0];
+
+  /** The names of the objects, concatenated in the order of {@link #digests}. */
+  private byte[] names = new byte[0];
+
+  /** Offset in {@link #names} of the name of each object, followed by {@code names.length}. */
+  private int[] nameOffsets = new int[] {0};
+
+  /** Objects added but not yet merged into the arrays, by digest. */
+  private final SortedMap<Bytes, ObjectIdP> bufferedAdditions = new TreeMap<Bytes, ObjectIdP>();
+
+  /** Indices in the arrays of the objects removed but not yet merged out of them. */
+  private final BitSet bufferedRemovals = new BitSet();
+
+  /** Number of bits set in {@link #bufferedRemovals}. */
+  private int numBufferedRemovals = 0;
+
+  /**
+   * The memoized digest of all objects in the store, or {@code null} if the store has changed since
+   * it was computed.
+   */
+  private Bytes digest;
+
+  PackedRegistrationStore(DigestFunction digestFunction) {
+    this(new ObjectIdInterner(digestFunction));
+  }
+
+  /** Constructs a store computing object digests through {@code interner}. */
+  PackedRegistrationStore(ObjectIdInterner interner) {
+    this.interner = interner;
+    this.digestFunction = interner.getDigestFunction();
+    digestFunction.reset();
+    this.digestLength = digestFunction.getDigest().length;
+  }
+
+  @Override
+  public boolean add(ObjectIdP oid) {
+    return !add(Collections.singletonList(oid)).isEmpty();
+  }
+
+  @Override
+  public Collection<ObjectIdP> add(Collection<ObjectIdP> oids) {
+    List<ObjectIdP> addedOids = new ArrayList<ObjectIdP>();
+    for (ObjectIdP oid : oids) {
+      Bytes oidDigest = interner.getDigest(oid);
+      if (bufferedAdditions.containsKey(oidDigest)) {
+        continue;
+      }
+      int index = indexOf(oidDigest.getByteArray());
+      if (index < 0) {
+        bufferedAdditions.put(oidDigest, oid);
+        addedOids.add(oid);
+      } else if (bufferedRemovals.get(index)) {
+        // Re-added before its removal was merged: just cancel the removal.
+        bufferedRemovals.clear(index);
+        numBufferedRemovals--;
+        addedOids.add(oid);
+      }
+    }
+    onMutation(addedOids.size());
+    return addedOids;
+  }
+
+  @Override
+  public boolean remove(ObjectIdP oid) {
+    return !remove(Collections.singletonList(oid)).isEmpty();
+  }
+
+  @Override
+  public Collection<ObjectIdP> remove(Collection<ObjectIdP> oids) {
+    List<ObjectIdP> removedOids = new ArrayList<ObjectIdP>();
+    for (ObjectIdP oid : oids) {
+      Bytes oidDigest = interner.getDigest(oid);
+      if (bufferedAdditions.remove(oidDigest) != null) {
+        removedOids.add(oid);
+        continue;
+      }
+      int index = indexOf(oidDigest.getByteArray());
+      if ((index >= 0) && !bufferedRemovals.get(index)) {
+        bufferedRemovals.set(index);
+        numBufferedRemovals++;
+        removedOids.add(oid);
+      }
+    }
+    onMutation(removedOids.size());
+    return removedOids;
+  }
+
+  @Override
+  public Collection<ObjectIdP> removeAll() {
+    mergeBufferedMutations();
+    Collection<ObjectIdP> result = getElements(0, count);
+    setArrays(0, new byte[0], new int[0], new byte[0], new int[] {0});
+    return result;
+  }
+
+  @Override
+  public boolean contains(ObjectIdP oid) {
+    Bytes oidDigest = interner.getDigest(oid);
+    if (bufferedAdditions.containsKey(oidDigest)) {
+      return true;
+    }
+    int index = indexOf(oidDigest.getByteArray());
+    return (index >= 0) && !bufferedRemovals.get(index);
+  }
+
+  @Override
+  public int size() {
+    return count - numBufferedRemovals + bufferedAdditions.size();
+  }
+
+  @Override
+  public int size(byte[] oidDigestPrefix, int prefixLen) {
+    mergeBufferedMutations();
+    return getPrefixEnd(oidDigestPrefix, prefixLen) - getPrefixStart(oidDigestPrefix, prefixLen);
+  }
+
+  @Override
+  public byte[] getDigest() {
+    return getMemoizedDigest().getByteArray();
+  }
+
+  @Override
+  public byte[] getDigest(byte[] oidDigestPrefix, int prefixLen) {
+    if (prefixLen == 0) {
+      return getDigest();
+    }
+    mergeBufferedMutations();
+    int start = getPrefixStart(oidDigestPrefix, prefixLen);
+    int end = getPrefixEnd(oidDigestPrefix, prefixLen);
+    byte[] rangeDigests = new byte[(end - start) * digestLength];
+    System.arraycopy(digests, start * digestLength, rangeDigests, 0, rangeDigests.length);
+    digestFunction.reset();
+    digestFunction.update(rangeDigests);
+    return digestFunction.getDigest();
+  }
+
+  @Override
+  public Collection<ObjectIdP> getElements(byte[] oidDigestPrefix, int prefixLen) {
+    mergeBufferedMutations();
+    return getElements(getPrefixStart(oidDigestPrefix, prefixLen),
+        getPrefixEnd(oidDigestPrefix, prefixLen));
+  }
+
+  /** Returns new object ids for the objects at indices {@code start} (inclusive) to {@code end}. */
+  private List<ObjectIdP> getElements(int start, int end) {
+    List<ObjectIdP> elements = new ArrayList<ObjectIdP>(end - start);
+    for (int index = start; index < end; index++) {
+      elements.add(CommonProtos2.newObjectIdP(sources[index],
+          ByteString.copyFrom(names, nameOffsets[index], nameOffsets[index + 1] -
+              nameOffsets[index])));
+    }
+    return elements;
+  }
+
+  /**
+   * Records that {@code numMutations} objects were just added or removed, merging the buffered
+   * mutations into the arrays if there are enough of them.
+   */
+  private void onMutation(int numMutations) {
+    if (numMutations == 0) {
+      return;
+    }
+    digest = null;
+    int numBuffered = bufferedAdditions.size() + numBufferedRemovals;
+    if (numBuffered > Math.max(MIN_BUFFERED_MUTATIONS, count / MAX_BUFFERED_FRACTION)) {
+      mergeBufferedMutations();
+    }
+  }
+
+  /** Rewrites the arrays with the buffered additions and without the buffered removals. */
+  private void mergeBufferedMutations() {
+    if (bufferedAdditions.isEmpty() && (numBufferedRemovals == 0)) {
+      return;
+    }
+    int newCount = size();
+    int newNamesLength = names.length;
+    for (int index = bufferedRemovals.nextSetBit(0); index >= 0;
+        index = bufferedRemovals.nextSetBit(index + 1)) {
+      newNamesLength -= nameOffsets[index + 1] - nameOffsets[index];
+    }
+    for (ObjectIdP oid : bufferedAdditions.values()) {
+      newNamesLength += oid.getName().size();
+    }
+    byte[] newDigests = new byte[newCount * digestLength];
+    int[] newSources = new int[newCount];
+    byte[] newNames = new byte[newNamesLength];
+    int[] newNameOffsets = new int[newCount + 1];
+
+    // Both the arrays and the additions are sorted by digest, so they merge in one pass.
+    int oldIndex = 0;
+    int newIndex = 0;
+    for (Map.Entry<Bytes, ObjectIdP> entry : bufferedAdditions.entrySet()) {
+      byte[] oidDigest = entry.getKey().getByteArray();
+
+      // Copy the remaining existing objects that sort before the new one.
+      while ((oldIndex < count) && (compareDigest(oldIndex, oidDigest) < 0)) {
+        if (!bufferedRemovals.get(oldIndex)) {
+          copyObject(oldIndex, newIndex++, newDigests, newSources, newNames, newNameOffsets);
+        }
+        oldIndex++;
+      }
+      ObjectIdP oid = entry.getValue();
+      System.arraycopy(oidDigest, 0, newDigests, newIndex * digestLength, digestLength);
+      newSources[newIndex] = oid.getSource();
+      oid.getName().copyTo(newNames, newNameOffsets[newIndex]);
+      newNameOffsets[newIndex + 1] = newNameOffsets[newIndex] + oid.getName().size();
+      newIndex++;
+    }
+    for (; oldIndex < count; oldIndex++) {
+      if (!bufferedRemovals.get(oldIndex)) {
+        copyObject(oldIndex, newIndex++, newDigests, newSources, newNames, newNameOffsets);
+      }
+    }
+    bufferedAdditions.clear();
+    bufferedRemovals.clear();
+    numBufferedRemovals = 0;
+    setArrays(newCount, newDigests, newSources, newNames, newNameOffsets);
+  }
+
+  /** Returns the index of the object with digest {@code oidDigest}, or -1 if not present. */
+  private int indexOf(byte[] oidDigest) {
+    int index = lowerBound(oidDigest);
+    return ((index < count) && (compareDigest(index, oidDigest) == 0)) ? index : -1;
+  }
+
+  /** Returns the index of the first object whose digest begins with the given bit prefix. */
+  private int getPrefixStart(byte[] oidDigestPrefix, int prefixLen) {
+    return lowerBound(ObjectIdDigestUtils.getPrefixRangeStart(oidDigestPrefix, prefixLen));
+  }
+
+  /** Returns the index after the last object whose digest begins with the given bit prefix. */
+  private int getPrefixEnd(byte[] oidDigestPrefix, int prefixLen) {
+    byte[] end = ObjectIdDigestUtils.getPrefixRangeEnd(oidDigestPrefix, prefixLen);
+    return (end == null) ? count : lowerBound(end);
+  }
+
+  /** Returns the index of the first object whose digest is not less than {@code key}. */
+  private int lowerBound(byte[] key) {
+    int low = 0;
+    int high = count;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (compareDigest(mid, key) < 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Compares the digest of the object at {@code index} to {@code key} in {@link Bytes#compareTo}
+   * order, where {@code key} may be shorter than a digest.
+   */
+  private int compareDigest(int index, byte[] key) {
+    int offset = index * digestLength;
+    int length = Math.min(digestLength, key.length);
+    for (int i = 0; i < length; i++) {
+      int diff = (digests[offset + i] & 0xff) - (key[i] & 0xff);
+      if (diff != 0) {
+        return diff;
+      }
+    }
+    return digestLength - key.length;
+  }
+
+  /** Copies the object at {@code oldIndex} in the current arrays to {@code newIndex} in the new. */
+  private void copyObject(int oldIndex, int newIndex, byte[] newDigests, int[] newSources,
+      byte[] newNames, int[] newNameOffsets) {
+    System.arraycopy(digests, oldIndex * digestLength, newDigests, newIndex * digestLength,
+        digestLength);
+    newSources[newIndex] = sources[oldIndex];
+    int nameLength = nameOffsets[oldIndex + 1] - nameOffsets[oldIndex];
+    System.arraycopy(names, nameOffsets[oldIndex], newNames, newNameOffsets[newIndex], nameLength);
+    newNameOffsets[newIndex + 1] = newNameOffsets[newIndex] + nameLength;
+  }
+
+  /** Replaces the arrays of the store and invalidates its digest. */
+  private void setArrays(int newCount, byte[] newDigests, int[] newSources, byte[] newNames,
+      int[] newNameOffsets) {
+    this.count = newCount;
+    this.digests = newDigests;
+    this.sources = newSources;
+    this.names = newNames;
+    this.nameOffsets = newNameOffsets;
+    this.digest = null;
+  }
+
+  /** Returns the digest over all objects, recomputing it if the store has changed. */
+  private Bytes getMemoizedDigest() {
+    if (digest == null) {
+      mergeBufferedMutations();
+      // Equivalent to hashing each object digest in order, as SimpleRegistrationStore does.
+      digestFunction.reset();
+      digestFunction.update(digests);
+      digest = new Bytes(digestFunction.getDigest());
+    }
+    return digest;
+  }
+
+  @Override
+  public void toCompactString(TextBuilder builder) {
+    builder.append("<PackedRegistrationStore: registrations=");
+    mergeBufferedMutations();
+    CommonProtoStrings2.toCompactStringForObjectIds(builder, getElements(0, count));
+    builder.append(", digest=").append(getMemoizedDigest())
+        .append(">");
+  }
+}
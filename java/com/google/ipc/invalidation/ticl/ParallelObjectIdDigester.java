@@ -0,0 +1,165 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.ipc.invalidation.ticl;
+
+import com.google.common.base.Preconditions;
+import com.google.ipc.invalidation.common.DigestFunction;
+import com.google.ipc.invalidation.common.ObjectIdDigestUtils;
+import com.google.ipc.invalidation.external.client.types.ObjectId;
+import com.google.protos.ipc.invalidation.ClientProtocol.ObjectIdP;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Converts and digests large batches of application object ids on worker threads, so that bulk
+ * (un)registrations do not stall the internal thread hashing one object at a time.
+ * <p>
+ * The worker threads belong to one pool shared by the digesters of all clients in the process. The
+ * pool is created when first used, has at most one thread per processor, and lets its threads exit
+ * when idle, so a process hosting many clients, or a service whose clients come and go, does not
+ * accumulate threads. The calling thread digests one chunk of each batch itself.
+ * <p>
+ * Workers only do the thread-safe, per-object work: converting the {@link ObjectId} to an
+ * {@link ObjectIdP}, serializing it into its {@link ObjectIdHandle} and computing its SHA-1
+ * digest, each with its own {@link DigestFunction}. The handles carry their digests, and become
+ * canonical, digests included, when the registration manager acquires them on the internal thread,
+ * so the interner and all client state remain confined to that thread.
+ *
+ */
+class ParallelObjectIdDigester {
+
+  /** Minimum number of objects handed to a worker, to amortize the cost of a task. */
+  private static final int MIN_CHUNK_SIZE = 256;
+
+  /** Number of seconds after which an idle thread of the shared pool exits. */
+  private static final int IDLE_THREAD_TIMEOUT_SECS = 30;
+
+  /**
+   * Pool of worker threads shared by all digesters, or {@code null} until first needed. Guarded by
+   * the class lock.
+   */
+  private static ExecutorService sharedExecutor;
+
+  /** Maximum number of chunks into which a batch is split. */
+  private final int parallelism;
+
+  /** Constructs a digester splitting batches into at most {@code parallelism} chunks. */
+  ParallelObjectIdDigester(int parallelism) {
+    Preconditions.checkArgument(parallelism > 0, "Bad parallelism: %s", parallelism);
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * Converts {@code objectIds} to protos and digests them on the worker threads and the calling
+   * thread. Returns new handles carrying SHA-1 digests, in the order of {@code objectIds}.
+   */
+  List<ObjectIdHandle> convertAndDigest(List<ObjectId> objectIds) {
+    int chunkSize = Math.max(MIN_CHUNK_SIZE, (objectIds.size() + parallelism - 1) / parallelism);
+
+    // Hand all chunks but the last to the shared pool, and digest the last one here.
+    ExecutorService executor = getSharedExecutor();
+    List<Future<List<ObjectIdHandle>>> futures = new ArrayList<Future<List<ObjectIdHandle>>>();
+    int start = 0;
+    for (; start + chunkSize < objectIds.size(); start += chunkSize) {
+      final List<ObjectId> chunkIds = objectIds.subList(start, start + chunkSize);
+      futures.add(executor.submit(new Callable<List<ObjectIdHandle>>() {
+        @Override
+        public List<ObjectIdHandle> call() {
+          return convertAndDigestChunk(chunkIds);
+        }
+      }));
+    }
+    List<ObjectIdHandle> lastChunk =
+        convertAndDigestChunk(objectIds.subList(start, objectIds.size()));
+
+    // Concatenate the chunks in order.
+    List<ObjectIdHandle> handles = new ArrayList<ObjectIdHandle>(objectIds.size());
+    for (Future<List<ObjectIdHandle>> future : futures) {
+      handles.addAll(getUninterruptibly(future));
+    }
+    handles.addAll(lastChunk);
+    return handles;
+  }
+
+  /** Returns new handles carrying SHA-1 digests for {@code objectIds}, in order. */
+  private static List<ObjectIdHandle> convertAndDigestChunk(List<ObjectId> objectIds) {
+    DigestFunction digestFunction = new ObjectIdDigestUtils.Sha1DigestFunction();
+    List<ObjectIdHandle> chunk = new ArrayList<ObjectIdHandle>(objectIds.size());
+    for (ObjectId objectId : objectIds) {
+      ObjectIdP objectIdProto = ProtoConverter.convertToObjectIdProto(objectId);
+      chunk.add(new ObjectIdHandle(objectIdProto,
+          ObjectIdDigestUtils.getDigest(objectIdProto, digestFunction)));
+    }
+    return chunk;
+  }
+
+  /** Returns the pool of worker threads shared by all digesters, creating it if needed. */
+  private static synchronized ExecutorService getSharedExecutor() {
+    if (sharedExecutor == null) {
+      int numThreads = Math.max(1, Runtime.getRuntime().availableProcessors());
+      ThreadPoolExecutor executor = new ThreadPoolExecutor(numThreads, numThreads,
+          IDLE_THREAD_TIMEOUT_SECS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+          new ThreadFactory() {
+            private int numThreadsCreated = 0;
+
+            @Override
+            public synchronized Thread newThread(Runnable runnable) {
+              Thread thread = new Thread(runnable, "ObjectIdDigester-" + (++numThreadsCreated));
+              thread.setDaemon(true);
+              return thread;
+            }
+          });
+      executor.allowCoreThreadTimeOut(true);
+      sharedExecutor = executor;
+    }
+    return sharedExecutor;
+  }
+
+  /** Returns the result of {@code future}, waiting for it even if interrupted. */
+  private static <T> T getUninterruptibly(Future<T> future) {
+    boolean interrupted = false;
+    try {
+      while (true) {
+        try {
+          return future.get();
+        } catch (InterruptedException exception) {
+          interrupted = true;
+        } catch (ExecutionException exception) {
+          // Rethrow worker failures (e.g., a null object id) as they would occur inline.
+          Throwable cause = exception.getCause();
+          if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+          }
+          throw new RuntimeException(cause);
+        }
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+}
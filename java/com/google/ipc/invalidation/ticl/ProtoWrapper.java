@@ -47,7 +47,7 @@ public class ProtoWrapper<P extends AbstractMessageLite> {
   }
 
   // Internal constructor that savees the object and computes serialized state and hash code.
-  private ProtoWrapper(P proto) {
+  ProtoWrapper(P proto) {
     this.proto = Preconditions.checkNotNull(proto);
     this.protoBytes = proto.toByteArray();
     this.hashCode = Arrays.hashCode(protoBytes);
@@ -58,6 +58,14 @@ public class ProtoWrapper<P extends AbstractMessageLite> {
     return proto;
   }
 
+  /**
+   * Returns the serialized representation of the wrapped object. The returned array is shared and
+   * must not be modified.
+   */
+  byte[] getByteArray() {
+    return protoBytes;
+  }
+
   /** Returns the hash code of the serialized state representation of the protobuf object */
   @Override
   public int hashCode() {
@@ -70,7 +78,10 @@ public class ProtoWrapper<P extends AbstractMessageLite> {
    */
   @Override
   public boolean equals(Object o) {
-    Class<?> msgClass = proto.getClass();
+    if (this == o) {
+      // Fast path for canonical wrappers (see ObjectIdHandle).
+      return true;
+    }
     if (!(o instanceof ProtoWrapper)) {
       return false;
     }
@@ -22,25 +22,36 @@ import com.google.ipc.invalidation.common.CommonProtoStrings2;
 import com.google.ipc.invalidation.common.CommonProtos2;
 import com.google.ipc.invalidation.common.TiclMessageValidator2;
 import com.google.ipc.invalidation.external.client.SystemResources;
+import com.google.ipc.invalidation.external.client.SystemResources.AsyncNetworkChannel;
+import com.google.ipc.invalidation.external.client.SystemResources.BufferedNetworkChannel;
 import com.google.ipc.invalidation.external.client.SystemResources.Logger;
 import com.google.ipc.invalidation.external.client.SystemResources.NetworkChannel;
 import com.google.ipc.invalidation.external.client.SystemResources.Scheduler;
+import com.google.ipc.invalidation.external.client.types.Callback;
 import com.google.ipc.invalidation.external.client.types.SimplePair;
+import com.google.ipc.invalidation.external.client.types.Status;
 import com.google.ipc.invalidation.ticl.InvalidationClientCore.BatchingTask;
 import com.google.ipc.invalidation.ticl.Statistics.ClientErrorType;
+import com.google.ipc.invalidation.ticl.Statistics.GaugeType;
 import com.google.ipc.invalidation.ticl.Statistics.ReceivedMessageType;
 import com.google.ipc.invalidation.ticl.Statistics.SentMessageType;
 import com.google.ipc.invalidation.util.InternalBase;
 import com.google.ipc.invalidation.util.Marshallable;
+import com.google.ipc.invalidation.util.NamedRunnable;
 import com.google.ipc.invalidation.util.Smearer;
 import com.google.ipc.invalidation.util.TextBuilder;
 import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
 import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.MessageLite;
+import com.google.protobuf.WireFormat;
 import com.google.protos.ipc.invalidation.ClientProtocol.ApplicationClientIdP;
 import com.google.protos.ipc.invalidation.ClientProtocol.ClientConfigP;
 import com.google.protos.ipc.invalidation.ClientProtocol.ClientHeader;
 import com.google.protos.ipc.invalidation.ClientProtocol.ClientToServerMessage;
 import com.google.protos.ipc.invalidation.ClientProtocol.ClientVersion;
+import com.google.protos.ipc.invalidation.ClientProtocol.CompressedBodyP;
 import com.google.protos.ipc.invalidation.ClientProtocol.ConfigChangeMessage;
 import com.google.protos.ipc.invalidation.ClientProtocol.ErrorMessage;
 import com.google.protos.ipc.invalidation.ClientProtocol.InfoMessage;
@@ -52,11 +63,11 @@ import com.google.protos.ipc.invalidation.ClientProtocol.InvalidationP;
 import com.google.protos.ipc.invalidation.ClientProtocol.ObjectIdP;
 import com.google.protos.ipc.invalidation.ClientProtocol.PropertyRecord;
 import com.google.protos.ipc.invalidation.ClientProtocol.ProtocolHandlerConfigP;
-import com.google.protos.ipc.invalidation.ClientProtocol.RegistrationMessage;
 import com.google.protos.ipc.invalidation.ClientProtocol.RegistrationP;
 import com.google.protos.ipc.invalidation.ClientProtocol.RegistrationP.OpType;
 import com.google.protos.ipc.invalidation.ClientProtocol.RegistrationStatusMessage;
 import com.google.protos.ipc.invalidation.ClientProtocol.RegistrationSubtree;
+import com.google.protos.ipc.invalidation.ClientProtocol.RegistrationSubtreeSummary;
 import com.google.protos.ipc.invalidation.ClientProtocol.RegistrationSummary;
 import com.google.protos.ipc.invalidation.ClientProtocol.RegistrationSyncMessage;
 import com.google.protos.ipc.invalidation.ClientProtocol.RegistrationSyncRequestMessage;
@@ -66,12 +77,18 @@ import com.google.protos.ipc.invalidation.ClientProtocol.TokenControlMessage;
 import com.google.protos.ipc.invalidation.JavaClient.BatcherState;
 import com.google.protos.ipc.invalidation.JavaClient.ProtocolHandlerState;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.logging.Level;
 
 
 /**
@@ -89,6 +106,55 @@ import java.util.Set;
  *
  */
 class ProtocolHandler implements Marshallable<ProtocolHandlerState> {
+  /**
+   * Upper bound on the bytes, beyond its contents, taken by a submessage of a message to the
+   * server (a tag and a length).
+   */
+  private static final int SUBMESSAGE_OVERHEAD_BYTES = 6;
+
+  /** Size above which the buffer used to encode a message is not kept for the next one. */
+  private static final int MAX_POOLED_SEND_BUFFER_BYTES = 1 << 20;
+
+  /** Mask of the wire type in a field tag (as in {@link WireFormat}, whose mask is not public). */
+  private static final int WIRE_TYPE_MASK = 7;
+
+  /** Tracks the space left in a message being built by the {@link Batcher}. */
+  private static class SizeBudget {
+    /** Bytes that can still be added, possibly negative. */
+    private long remainingBytes;
+
+    /** Whether any batched operation has been added. */
+    private boolean hasOperations = false;
+
+    /** Creates a budget of {@code maxSizeBytes}, or an unbounded one if it is not positive. */
+    SizeBudget(int maxSizeBytes) {
+      this.remainingBytes = (maxSizeBytes > 0) ? maxSizeBytes : Long.MAX_VALUE;
+    }
+
+    /** Takes {@code numBytes} for data that is sent regardless of the budget. */
+    void reserve(int numBytes) {
+      remainingBytes -= numBytes;
+    }
+
+    /** Returns whether another operation may be added. */
+    boolean hasSpace() {
+      return !hasOperations || (remainingBytes > 0);
+    }
+
+    /**
+     * Takes {@code numBytes} for an operation and returns {@code true} if they fit or no operation
+     * has been added yet; otherwise, returns {@code false}.
+     */
+    boolean tryConsume(int numBytes) {
+      if (hasOperations && (numBytes > remainingBytes)) {
+        return false;
+      }
+      remainingBytes -= numBytes;
+      hasOperations = true;
+      return true;
+    }
+  }
+
   /** Class that batches messages to the server. */
   private static class Batcher implements Marshallable<BatcherState> {
     /** Statistics to be updated when messages are created. */
@@ -97,18 +163,35 @@ class ProtocolHandler implements Marshallable<ProtocolHandlerState> {
     /** Resources used for logging and thread assertions. */
     private final SystemResources resources;
 
+    /** Table of canonical object ids, shared with the registration manager. */
+    private final ObjectIdInterner interner;
+
     /** Set of pending registrations stored as a map for overriding later operations. */
-    private final Map<ProtoWrapper<ObjectIdP>, RegistrationP.OpType> pendingRegistrations =
-        new HashMap<ProtoWrapper<ObjectIdP>, RegistrationP.OpType>();
+    private final Map<ObjectIdHandle, RegistrationP.OpType> pendingRegistrations =
+        new HashMap<ObjectIdHandle, RegistrationP.OpType>();
 
-    /** Set of pending invalidation acks. */
-    private final Set<ProtoWrapper<InvalidationP>> pendingAckedInvalidations =
-        new HashSet<ProtoWrapper<InvalidationP>>();
+    /**
+     * Pending invalidation acks for known versions, by object. An ack for a version acknowledges
+     * all earlier versions of the object, so only the ack of the highest version is kept.
+     */
+    private final Map<ObjectIdHandle, ProtoWrapper<InvalidationP>> pendingKnownVersionAcks =
+        new HashMap<ObjectIdHandle, ProtoWrapper<InvalidationP>>();
+
+    /**
+     * Pending invalidation acks for unknown versions, by object, likewise keeping only the highest
+     * version. These are system versions, which cannot be compared with known versions.
+     */
+    private final Map<ObjectIdHandle, ProtoWrapper<InvalidationP>> pendingUnknownVersionAcks =
+        new HashMap<ObjectIdHandle, ProtoWrapper<InvalidationP>>();
 
     /** Set of pending registration sub trees for registration sync. */
     private final Set<ProtoWrapper<RegistrationSubtree>> pendingRegSubtrees =
         new HashSet<ProtoWrapper<RegistrationSubtree>>();
 
+    /** Set of pending registration subtree summaries for registration sync. */
+    private final Set<ProtoWrapper<RegistrationSubtreeSummary>> pendingRegSubtreeSummaries =
+        new HashSet<ProtoWrapper<RegistrationSubtreeSummary>>();
+
     /** Pending initialization message to send to the server, if any. */
     private InitializeMessage pendingInitializeMessage = null;
 
@@ -116,26 +199,32 @@ class ProtocolHandler implements Marshallable<ProtocolHandlerState> {
     private InfoMessage pendingInfoMessage = null;
 
     /** Creates a batcher. */
-    Batcher(SystemResources resources, Statistics statistics) {
+    Batcher(SystemResources resources, Statistics statistics, ObjectIdInterner interner) {
       this.resources = resources;
       this.statistics = statistics;
+      this.interner = interner;
     }
 
     /** Creates a batcher from {@code marshalledState}. */
-    Batcher(SystemResources resources, Statistics statistics, BatcherState marshalledState) {
-      this(resources, statistics);
+    Batcher(SystemResources resources, Statistics statistics, ObjectIdInterner interner,
+        BatcherState marshalledState) {
+      this(resources, statistics, interner);
       for (ObjectIdP registration : marshalledState.getRegistrationList()) {
-        pendingRegistrations.put(ProtoWrapper.of(registration), RegistrationP.OpType.REGISTER);
+        putRegistration(interner.intern(registration), RegistrationP.OpType.REGISTER);
       }
       for (ObjectIdP unregistration : marshalledState.getUnregistrationList()) {
-        pendingRegistrations.put(ProtoWrapper.of(unregistration), RegistrationP.OpType.UNREGISTER);
+        putRegistration(interner.intern(unregistration), RegistrationP.OpType.UNREGISTER);
       }
       for (InvalidationP ack : marshalledState.getAcknowledgementList()) {
-        pendingAckedInvalidations.add(ProtoWrapper.of(ack));
+        addAck(ack);
       }
       for (RegistrationSubtree subtree : marshalledState.getRegistrationSubtreeList()) {
         pendingRegSubtrees.add(ProtoWrapper.of(subtree));
       }
+      for (RegistrationSubtreeSummary summary :
+          marshalledState.getRegistrationSubtreeSummaryList()) {
+        pendingRegSubtreeSummaries.add(ProtoWrapper.of(summary));
+      }
       if (marshalledState.hasInitializeMessage()) {
         pendingInitializeMessage = marshalledState.getInitializeMessage();
       }
@@ -154,14 +243,48 @@ class ProtocolHandler implements Marshallable<ProtocolHandlerState> {
       pendingInfoMessage = msg;
     }
 
-    /** Adds a registration on {@code oid} of {@code opType} to the registrations to be sent. */
-    void addRegistration(ObjectIdP oid, RegistrationP.OpType opType) {
-      pendingRegistrations.put(ProtoWrapper.of(oid), opType);
+    /**
+     * Adds a registration on {@code oid} of {@code opType} to the registrations to be sent. If the
+     * opposite operation on {@code oid} is pending, the two cancel out instead: every operation
+     * given to the batcher changes the desired state of its object, so the object is back in the
+     * state it had when an operation on it was last sent.
+     */
+    void addRegistration(ObjectIdHandle oid, RegistrationP.OpType opType) {
+      RegistrationP.OpType pendingOpType = pendingRegistrations.get(oid);
+      if ((pendingOpType != null) && (pendingOpType != opType)) {
+        ObjectIdHandle objectId = interner.find(oid.getProto());
+        pendingRegistrations.remove(objectId);
+        interner.release(objectId, ObjectIdInterner.PENDING_REGISTRATION);
+      } else {
+        putRegistration(oid, opType);
+      }
+    }
+
+    /** Sets the registration of {@code oid} to be sent to {@code opType}. */
+    private void putRegistration(ObjectIdHandle oid, RegistrationP.OpType opType) {
+      pendingRegistrations.put(interner.acquire(oid, ObjectIdInterner.PENDING_REGISTRATION),
+          opType);
     }
 
-    /** Adds {@code ack} to the set of acknowledgements to be sent. */
+    /**
+     * Adds {@code ack} to the acknowledgements to be sent, unless an ack of the same or a later
+     * version of the object is pending, in which case that ack covers it. The invalidate-all object
+     * is treated like any other object.
+     */
     void addAck(InvalidationP ack) {
-      pendingAckedInvalidations.add(ProtoWrapper.of(ack));
+      Map<ObjectIdHandle, ProtoWrapper<InvalidationP>> acks =
+          ack.getIsKnownVersion() ? pendingKnownVersionAcks : pendingUnknownVersionAcks;
+      ObjectIdHandle objectId = interner.intern(ack.getObjectId());
+      ProtoWrapper<InvalidationP> pendingAck = acks.get(objectId);
+      if ((pendingAck == null) || (pendingAck.getProto().getVersion() < ack.getVersion())) {
+        acks.put(interner.acquire(objectId, getAckHolder(acks)), ProtoWrapper.of(ack));
+      }
+    }
+
+    /** Returns the interner holder bit of {@code acks}, one of the maps of pending acks. */
+    private int getAckHolder(Map<ObjectIdHandle, ProtoWrapper<InvalidationP>> acks) {
+      return (acks == pendingKnownVersionAcks) ? ObjectIdInterner.PENDING_KNOWN_VERSION_ACK
+          : ObjectIdInterner.PENDING_UNKNOWN_VERSION_ACK;
     }
 
     /** Adds {@code subtree} to the set of registration subtrees to be sent. */
@@ -169,16 +292,30 @@ class ProtocolHandler implements Marshallable<ProtocolHandlerState> {
       pendingRegSubtrees.add(ProtoWrapper.of(subtree));
     }
 
+    /** Adds {@code summary} to the set of registration subtree summaries to be sent. */
+    void addRegSubtreeSummary(RegistrationSubtreeSummary summary) {
+      pendingRegSubtreeSummaries.add(ProtoWrapper.of(summary));
+    }
+
     /**
-     * Returns a builder for a {@link ClientToServerMessage} to be sent to the server. Crucially,
-     * the builder does <b>NOT</b> include the message header.
+     * Returns the parts of a {@link ClientToServerMessage} to be sent to the server. Crucially,
+     * the returned encoder does <b>NOT</b> include the message header.
+     * <p>
+     * Batched operations are added only while the message stays within about
+     * {@code maxSizeBytes}; the rest remain pending (see {@link #hasPendingOperations}). At least
+     * one operation is always added, so that an operation larger than the bound is still sent.
+     *
      * @param hasClientToken whether the client currently holds a token
+     * @param maxSizeBytes approximate bound on the serialized size of the returned message
      */
-    ClientToServerMessage.Builder toBuilder(boolean hasClientToken) {
-      ClientToServerMessage.Builder builder = ClientToServerMessage.newBuilder();
+    ClientMessageEncoder takeMessage(boolean hasClientToken, int maxSizeBytes) {
+      ClientMessageEncoder encoder = new ClientMessageEncoder();
+      SizeBudget budget = new SizeBudget(maxSizeBytes);
       if (pendingInitializeMessage != null) {
         statistics.recordSentMessage(SentMessageType.INITIALIZE);
-        builder.setInitializeMessage(pendingInitializeMessage);
+        encoder.setInitializeMessage(pendingInitializeMessage);
+        budget.reserve(CodedOutputStream.computeMessageSize(
+            ClientToServerMessage.INITIALIZE_MESSAGE_FIELD_NUMBER, pendingInitializeMessage));
         pendingInitializeMessage = null;
       }
 
@@ -186,82 +323,155 @@ class ProtocolHandler implements Marshallable<ProtocolHandlerState> {
       // messages such as regisration messages, etc to the server. But if there is no token
       // and an initialize message is not being sent, we cannot send any other message.
 
-      if (!hasClientToken && !builder.hasInitializeMessage()) {
+      if (!hasClientToken && !encoder.hasInitializeMessage()) {
         // Cannot send any message
         resources.getLogger().warning(
-            "Cannot send message since no token and no initialize msg: %s", builder);
+            "Cannot send message since no token and no initialize msg: %s", encoder.toMessage());
         statistics.recordError(ClientErrorType.TOKEN_MISSING_FAILURE);
         return null;
       }
 
-      // Check for pending batched operations and add to message builder if needed.
+      // Check if an info message has to be sent. It is small and is always sent, so account for
+      // it before the batched operations.
+      if (pendingInfoMessage != null) {
+        statistics.recordSentMessage(SentMessageType.INFO);
+        encoder.setInfoMessage(pendingInfoMessage);
+        budget.reserve(CodedOutputStream.computeMessageSize(
+            ClientToServerMessage.INFO_MESSAGE_FIELD_NUMBER, pendingInfoMessage));
+        pendingInfoMessage = null;
+      }
+
+      // Check for pending batched operations and add them to the encoder if needed. The
+      // operations are added as the wrappers that hold them, so their serialized forms are reused
+      // when encoding the message.
 
       // Add reg, acks, reg subtrees - clear them after adding.
-      if (!pendingAckedInvalidations.isEmpty()) {
-        builder.setInvalidationAckMessage(createInvalidationAckMessage());
+      if (hasPendingAcks()) {
+        addInvalidationAcks(encoder, budget);
         statistics.recordSentMessage(SentMessageType.INVALIDATION_ACK);
       }
 
       // Check regs.
-      if (!pendingRegistrations.isEmpty()) {
-        builder.setRegistrationMessage(createRegistrationMessage());
-        statistics.recordSentMessage(SentMessageType.REGISTRATION);
+      if (!pendingRegistrations.isEmpty() && budget.hasSpace()) {
+        addRegistrations(encoder, budget);
+        if (encoder.hasRegistrations()) {
+          statistics.recordSentMessage(SentMessageType.REGISTRATION);
+        }
       }
 
-      // Check reg substrees.
-      if (!pendingRegSubtrees.isEmpty()) {
-        for (ProtoWrapper<RegistrationSubtree> subtree : pendingRegSubtrees) {
-          builder.setRegistrationSyncMessage(RegistrationSyncMessage.newBuilder()
-              .addSubtree(subtree.getProto()));
+      // Check reg substrees and subtree summaries. A registration sync response may carry
+      // several of each, so they all go into a single sync message.
+      if ((!pendingRegSubtrees.isEmpty() || !pendingRegSubtreeSummaries.isEmpty()) &&
+          budget.hasSpace()) {
+        budget.reserve(SUBMESSAGE_OVERHEAD_BYTES);
+        Iterator<ProtoWrapper<RegistrationSubtreeSummary>> summaries =
+            pendingRegSubtreeSummaries.iterator();
+        while (summaries.hasNext()) {
+          ProtoWrapper<RegistrationSubtreeSummary> summary = summaries.next();
+          if (!budget.tryConsume(ClientMessageEncoder.getElementSize(
+              RegistrationSyncMessage.SUBTREE_SUMMARY_FIELD_NUMBER, summary))) {
+            break;
+          }
+          encoder.addSubtreeSummary(summary);
+          summaries.remove();
+        }
+        Iterator<ProtoWrapper<RegistrationSubtree>> subtrees = pendingRegSubtrees.iterator();
+        while (subtrees.hasNext()) {
+          ProtoWrapper<RegistrationSubtree> subtree = subtrees.next();
+          if (!budget.tryConsume(ClientMessageEncoder.getElementSize(
+              RegistrationSyncMessage.SUBTREE_FIELD_NUMBER, subtree))) {
+            break;
+          }
+          encoder.addSubtree(subtree);
+          subtrees.remove();
+        }
+        if (encoder.hasRegistrationSync()) {
+          statistics.recordSentMessage(SentMessageType.REGISTRATION_SYNC);
         }
-        pendingRegSubtrees.clear();
-        statistics.recordSentMessage(SentMessageType.REGISTRATION_SYNC);
       }
+      return encoder;
+    }
 
-      // Check if an info message has to be sent.
-      if (pendingInfoMessage != null) {
-        statistics.recordSentMessage(SentMessageType.INFO);
-        builder.setInfoMessage(pendingInfoMessage);
-        pendingInfoMessage = null;
-      }
-      return builder;
+    /** Returns whether there is any data (messages or batched operations) still to be sent. */
+    boolean hasPendingData() {
+      return (pendingInitializeMessage != null) || (pendingInfoMessage != null) ||
+          hasPendingOperations();
+    }
+
+    /**
+     * Returns whether there are batched operations (registrations, acks, registration subtrees or
+     * summaries) still to be sent.
+     */
+    boolean hasPendingOperations() {
+      return !pendingRegistrations.isEmpty() || hasPendingAcks() ||
+          !pendingRegSubtrees.isEmpty() || !pendingRegSubtreeSummaries.isEmpty();
     }
 
     /**
-     * Creates a registration message based on registrations from {@code pendingRegistrations}
-     * and returns it.
+     * Adds the registrations from {@code pendingRegistrations} that fit in {@code budget} to
+     * {@code encoder} and removes them from {@code pendingRegistrations}.
      * <p>
      * REQUIRES: pendingRegistrations.size() > 0
      */
-    private RegistrationMessage createRegistrationMessage() {
+    private void addRegistrations(ClientMessageEncoder encoder, SizeBudget budget) {
       Preconditions.checkState(!pendingRegistrations.isEmpty());
-      RegistrationMessage.Builder regMessage = RegistrationMessage.newBuilder();
+      budget.reserve(SUBMESSAGE_OVERHEAD_BYTES);
 
       // Run through the pendingRegistrations map.
-      for (Map.Entry<ProtoWrapper<ObjectIdP>, RegistrationP.OpType> entry :
-           pendingRegistrations.entrySet()) {
-        RegistrationP reg = CommonProtos2.newRegistrationP(entry.getKey().getProto(),
-            entry.getValue() == RegistrationP.OpType.REGISTER);
-        regMessage.addRegistration(reg);
+      Iterator<Map.Entry<ObjectIdHandle, RegistrationP.OpType>> iterator =
+          pendingRegistrations.entrySet().iterator();
+      while (iterator.hasNext()) {
+        Map.Entry<ObjectIdHandle, RegistrationP.OpType> entry = iterator.next();
+        if (!budget.tryConsume(
+            ClientMessageEncoder.getRegistrationSize(entry.getKey(), entry.getValue()))) {
+          break;
+        }
+        encoder.addRegistration(entry.getKey(), entry.getValue());
+        interner.release(entry.getKey(), ObjectIdInterner.PENDING_REGISTRATION);
+        iterator.remove();
       }
-      pendingRegistrations.clear();
-      return regMessage.build();
+    }
+
+    /** Returns whether there are invalidation acks still to be sent. */
+    private boolean hasPendingAcks() {
+      return !pendingKnownVersionAcks.isEmpty() || !pendingUnknownVersionAcks.isEmpty();
     }
 
     /**
-     * Creates an invalidation ack message based on acks from {@code pendingAckedInvalidations} and
-     * returns it.
+     * Adds the pending acks that fit in {@code budget} to {@code encoder} and removes them from
+     * the pending acks.
      * <p>
-     * REQUIRES: pendingAckedInvalidations.size() > 0
+     * REQUIRES: hasPendingAcks()
      */
-    private InvalidationMessage createInvalidationAckMessage() {
-      Preconditions.checkState(!pendingAckedInvalidations.isEmpty());
-      InvalidationMessage.Builder ackMessage = InvalidationMessage.newBuilder();
-      for (ProtoWrapper<InvalidationP> wrapper : pendingAckedInvalidations) {
-        ackMessage.addInvalidation(wrapper.getProto());
+    private void addInvalidationAcks(ClientMessageEncoder encoder, SizeBudget budget) {
+      Preconditions.checkState(hasPendingAcks());
+      budget.reserve(SUBMESSAGE_OVERHEAD_BYTES);
+      if (addInvalidationAcks(encoder, budget, pendingKnownVersionAcks)) {
+        addInvalidationAcks(encoder, budget, pendingUnknownVersionAcks);
       }
-      pendingAckedInvalidations.clear();
-      return ackMessage.build();
+    }
+
+    /**
+     * Adds the acks from {@code acks} that fit in {@code budget} to {@code encoder} and removes
+     * them from {@code acks}. Returns whether all of them fit.
+     */
+    private boolean addInvalidationAcks(ClientMessageEncoder encoder, SizeBudget budget,
+        Map<ObjectIdHandle, ProtoWrapper<InvalidationP>> acks) {
+      int holder = getAckHolder(acks);
+      Iterator<Map.Entry<ObjectIdHandle, ProtoWrapper<InvalidationP>>> iterator =
+          acks.entrySet().iterator();
+      while (iterator.hasNext()) {
+        Map.Entry<ObjectIdHandle, ProtoWrapper<InvalidationP>> entry = iterator.next();
+        ProtoWrapper<InvalidationP> ack = entry.getValue();
+        if (!budget.tryConsume(ClientMessageEncoder.getElementSize(
+            InvalidationMessage.INVALIDATION_FIELD_NUMBER, ack))) {
+          return false;
+        }
+        encoder.addAck(ack);
+        interner.release(entry.getKey(), holder);
+        iterator.remove();
+      }
+      return true;
     }
 
     @Override
@@ -269,7 +479,7 @@ class ProtocolHandler implements Marshallable<ProtocolHandlerState> {
       BatcherState.Builder builder = BatcherState.newBuilder();
 
       // Marshall (un)registrations.
-      for (Map.Entry<ProtoWrapper<ObjectIdP>, RegistrationP.OpType> entry :
+      for (Map.Entry<ObjectIdHandle, RegistrationP.OpType> entry :
           pendingRegistrations.entrySet()) {
         OpType opType = entry.getValue();
         ObjectIdP oid = entry.getKey().getProto();
@@ -286,7 +496,10 @@ class ProtocolHandler implements Marshallable<ProtocolHandlerState> {
       }
 
       // Marshall acks.
-      for (ProtoWrapper<InvalidationP> ack : pendingAckedInvalidations) {
+      for (ProtoWrapper<InvalidationP> ack : pendingKnownVersionAcks.values()) {
+        builder.addAcknowledgement(ack.getProto());
+      }
+      for (ProtoWrapper<InvalidationP> ack : pendingUnknownVersionAcks.values()) {
         builder.addAcknowledgement(ack.getProto());
       }
 
@@ -294,6 +507,9 @@ class ProtocolHandler implements Marshallable<ProtocolHandlerState> {
       for (ProtoWrapper<RegistrationSubtree> subtree : pendingRegSubtrees) {
         builder.addRegistrationSubtree(subtree.getProto());
       }
+      for (ProtoWrapper<RegistrationSubtreeSummary> summary : pendingRegSubtreeSummaries) {
+        builder.addRegistrationSubtreeSummary(summary.getProto());
+      }
 
       // Marshall initialize and info messages if present.
       if (pendingInitializeMessage != null) {
@@ -332,44 +548,84 @@ class ProtocolHandler implements Marshallable<ProtocolHandlerState> {
     }
   }
 
+  /** Location of a field in the serialized form of a message. */
+  private static class FieldRange {
+    /** Number of the field. */
+    final int fieldNumber;
+
+    /** Offset of the field's value in the buffer holding the message. */
+    final int offset;
+
+    /** Length of the field's value. */
+    final int length;
+
+    FieldRange(int fieldNumber, int offset, int length) {
+      this.fieldNumber = fieldNumber;
+      this.offset = offset;
+      this.length = length;
+    }
+  }
+
   /**
-   * Representation of a message receiver for the server. Such a message is guaranteed to be
-   * valid (i.e. checked by {@link TiclMessageValidator2}, but the session token is <b>not</b>
-   * checked.
+   * Representation of a message received from the server. Its header is decoded and validated
+   * (by {@link TiclMessageValidator2}) on receipt, but its other parts are only located in the
+   * received bytes: they are decoded and validated by {@link #decodeIncomingMessageBody}, so that
+   * no work is spent on the body of a message that is dropped because of its header. The session
+   * token is <b>not</b> checked.
    */
   static class ParsedMessage {
+    final ServerMessageHeader header;
+
     /*
      * Each of these fields corresponds directly to a field in the ServerToClientMessage protobuf.
-     * It is non-null iff the correspondig hasYYY method in the protobuf would return true.
+     * Once the body has been decoded, it is non-null iff the correspondig hasYYY method in the
+     * protobuf would return true.
      */
-    final ServerMessageHeader header;
-    final TokenControlMessage tokenControlMessage;
-    final InvalidationMessage invalidationMessage;
-    final RegistrationStatusMessage registrationStatusMessage;
-    final RegistrationSyncRequestMessage registrationSyncRequestMessage;
-    final ConfigChangeMessage configChangeMessage;
-    final InfoRequestMessage infoRequestMessage;
-    final ErrorMessage errorMessage;
-
-    /** Constructs an instance from a {@code rawMessage}. */
-    ParsedMessage(ServerToClientMessage rawMessage) {
-      // For each field, assign it to the corresponding protobuf field if present, else null.
-      ServerHeader messageHeader = rawMessage.getHeader();
-      header = new ServerMessageHeader(messageHeader.getClientToken(),
-          messageHeader.hasRegistrationSummary() ? messageHeader.getRegistrationSummary() : null);
-      tokenControlMessage = rawMessage.hasTokenControlMessage() ?
-          rawMessage.getTokenControlMessage() : null;
-      invalidationMessage = rawMessage.hasInvalidationMessage() ?
-          rawMessage.getInvalidationMessage() : null;
-      registrationStatusMessage = rawMessage.hasRegistrationStatusMessage() ?
-          rawMessage.getRegistrationStatusMessage() : null;
-      registrationSyncRequestMessage = rawMessage.hasRegistrationSyncRequestMessage() ?
-          rawMessage.getRegistrationSyncRequestMessage() : null;
-      configChangeMessage = rawMessage.hasConfigChangeMessage() ?
-          rawMessage.getConfigChangeMessage() : null;
-      infoRequestMessage = rawMessage.hasInfoRequestMessage() ?
-          rawMessage.getInfoRequestMessage() : null;
-      errorMessage = rawMessage.hasErrorMessage() ? rawMessage.getErrorMessage() : null;
+    TokenControlMessage tokenControlMessage;
+    InvalidationMessage invalidationMessage;
+    RegistrationStatusMessage registrationStatusMessage;
+    RegistrationSyncRequestMessage registrationSyncRequestMessage;
+    InfoRequestMessage infoRequestMessage;
+    ErrorMessage errorMessage;
+
+    /** The received bytes. */
+    private final byte[] buffer;
+
+    /** Locations in {@link #buffer} of the parts of the message other than the header. */
+    private final List<FieldRange> bodyFields;
+
+    /** Constructs an instance from a decoded {@code serverHeader} and the rest of the message. */
+    ParsedMessage(ServerHeader serverHeader, byte[] buffer, List<FieldRange> bodyFields) {
+      header = new ServerMessageHeader(serverHeader.getClientToken(),
+          serverHeader.hasRegistrationSummary() ? serverHeader.getRegistrationSummary() : null);
+      this.buffer = buffer;
+      this.bodyFields = bodyFields;
+    }
+
+    /**
+     * Returns the part of the message in field {@code fieldNumber}, decoded by merging all its
+     * occurrences into {@code builder} (as the full parser would), or {@code null} if absent.
+     */
+    MessageLite decodePart(int fieldNumber, MessageLite.Builder builder)
+        throws InvalidProtocolBufferException {
+      boolean isPresent = false;
+      for (FieldRange field : bodyFields) {
+        if (field.fieldNumber == fieldNumber) {
+          builder.mergeFrom(buffer, field.offset, field.length);
+          isPresent = true;
+        }
+      }
+      return isPresent ? builder.build() : null;
+    }
+
+    /** Returns whether the message has a part in field {@code fieldNumber}. */
+    boolean hasPart(int fieldNumber) {
+      for (FieldRange field : bodyFields) {
+        if (field.fieldNumber == fieldNumber) {
+          return true;
+        }
+      }
+      return false;
     }
   }
 
@@ -409,6 +665,87 @@ class ProtocolHandler implements Marshallable<ProtocolHandlerState> {
   /** Batches messages to the server. */
   private final Batcher batcher;
 
+  /** Enforces the configured rate limits on messages sent to the server. */
+  private final Throttle throttle;
+
+  /** Approximate bound on the size of a message sent to the server, or 0 if unbounded. */
+  private final int maxMessageSizeBytes;
+
+  /**
+   * Outgoing messages are validated one in this many; if {@code 0}, they are not validated (only
+   * incoming messages are).
+   */
+  private final int outgoingMessageValidationPeriod;
+
+  /** Number of outgoing messages until the next one that is validated. */
+  private int messagesUntilValidation = 1;
+
+  /** Batching delay adapting to the arrival rate of operations, or {@code null} if fixed. */
+  private final AdaptiveBatchingDelay adaptiveBatchingDelay;
+
+  /**
+   * Buffer into which messages are encoded if the network accepts buffers, or {@code null} if
+   * none has been allocated.
+   */
+  private byte[] sendBuffer = null;
+
+  /**
+   * Maximum number of messages sent on the network whose sending has not completed, or {@code 0}
+   * if unbounded (in particular, if the network does not report completions).
+   */
+  private final int maxMessagesInFlight;
+
+  /**
+   * Number of messages sent on the network whose sending has not completed. Reset when the network
+   * goes offline, since the channel may then never complete them.
+   */
+  private int numMessagesInFlight = 0;
+
+  /**
+   * Batching task most recently given to this handler, which is rescheduled when a message in
+   * flight completes while data is pending, or {@code null} if none.
+   */
+  private BatchingTask batchingTask = null;
+
+  /** Callback invoked by an asynchronous network when it is done sending a message. */
+  private final Callback<Status> messageSentCallback = new Callback<Status>() {
+    @Override
+    public void accept(final Status status) {
+      internalScheduler.schedule(Scheduler.NO_DELAY,
+          new NamedRunnable("ProtocolHandler.handleMessageSendCompletion") {
+        @Override
+        public void run() {
+          handleMessageSendCompletion(status);
+        }
+      });
+    }
+  };
+
+  /**
+   * Minimum size of the body of a message to the server for it to be compressed, or {@code 0} if
+   * outgoing messages are not compressed.
+   */
+  private final int minCompressedBodySizeBytes;
+
+  /** Whether the most recent message from the server accepted bodies compressed with deflate. */
+  private boolean isCompressionAcceptedByServer = false;
+
+  /** Compressor of outgoing and decompressor of incoming message bodies. */
+  private final MessageCompressor compressor = new MessageCompressor();
+
+  /**
+   * Uncompressed size, size on the wire and compression time of the bodies of messages to the
+   * server whose compression was attempted.
+   */
+  private long compressionInputBytes = 0;
+  private long compressionOutputBytes = 0;
+  private long compressionTimeNs = 0;
+
+  /** Size on the wire, uncompressed size and decompression time of compressed incoming bodies. */
+  private long decompressionInputBytes = 0;
+  private long decompressionOutputBytes = 0;
+  private long decompressionTimeNs = 0;
+
   /** A debug message id that is added to every message to the server. */
   private int messageId = 1;
 
@@ -424,6 +761,9 @@ class ProtocolHandler implements Marshallable<ProtocolHandlerState> {
    */
   private long nextMessageSendTimeMs = 0;
 
+  /** The time at which the last message was sent to the server, or -1 if none has been. */
+  private long lastMessageSendTimeMs = -1;
+
   /** Statistics objects to track number of sent messages, etc. */
   private final Statistics statistics;
 
@@ -437,12 +777,13 @@ class ProtocolHandler implements Marshallable<ProtocolHandlerState> {
    * @param resources resources to use
    * @param smearer a smearer to randomize delays
    * @param statistics track information about messages sent/received, etc
+   * @param interner table of canonical object ids, shared with the registration manager
    * @param applicationName name of the application using the library (for debugging/monitoring)
    * @param listener callback for protocol events
    */
   ProtocolHandler(ProtocolHandlerConfigP config, final SystemResources resources,
-      Smearer smearer, Statistics statistics, int clientType, String applicationName,
-      ProtocolListener listener, TiclMessageValidator2 msgValidator,
+      Smearer smearer, Statistics statistics, ObjectIdInterner interner, int clientType,
+      String applicationName, ProtocolListener listener, TiclMessageValidator2 msgValidator,
       ProtocolHandlerState marshalledState) {
     this.logger = resources.getLogger();
     this.statistics = statistics;
@@ -453,15 +794,36 @@ class ProtocolHandler implements Marshallable<ProtocolHandlerState> {
     this.clientVersion = CommonProtos2.newClientVersion(resources.getPlatform(), "Java",
         applicationName);
     this.clientType = clientType;
+    this.maxMessageSizeBytes = config.getMaxMessageSizeBytes();
+    this.outgoingMessageValidationPeriod = config.getOutgoingMessageValidationPeriod();
+    this.maxMessagesInFlight =
+        (network instanceof AsyncNetworkChannel) ? config.getMaxMessagesInFlight() : 0;
+    this.minCompressedBodySizeBytes = config.getMinCompressedBodySizeBytes();
     if (marshalledState == null) {
-      // If there is no marshalled state, construct a clean batcher.
-      this.batcher = new Batcher(resources, statistics);
+      // If there is no marshalled state, construct a clean batcher and throttle.
+      this.batcher = new Batcher(resources, statistics, interner);
+      this.throttle = new Throttle(config.getRateLimitList(), Collections.<Long>emptyList());
+      this.adaptiveBatchingDelay = isAdaptiveBatchingEnabled(config) ?
+          new AdaptiveBatchingDelay(config.getMinBatchingDelayMs(),
+              config.getMaxBatchingDelayMs()) :
+          null;
     } else {
       // Otherwise, restore the batcher from the marshalled state.
-      this.batcher = new Batcher(resources, statistics, marshalledState.getBatcherState());
+      this.batcher = new Batcher(resources, statistics, interner,
+          marshalledState.getBatcherState());
       this.messageId = marshalledState.getMessageId();
       this.lastKnownServerTimeMs = marshalledState.getLastKnownServerTimeMs();
       this.nextMessageSendTimeMs = marshalledState.getNextMessageSendTimeMs();
+      this.throttle = new Throttle(config.getRateLimitList(),
+          marshalledState.getRecentMessageSendTimesMsList());
+      this.adaptiveBatchingDelay = isAdaptiveBatchingEnabled(config) ?
+          new AdaptiveBatchingDelay(config.getMinBatchingDelayMs(),
+              config.getMaxBatchingDelayMs(),
+              marshalledState.hasLastOperationTimeMs() ?
+                  marshalledState.getLastOperationTimeMs() : -1,
+              marshalledState.hasMeanOperationIntervalMs() ?
+                  marshalledState.getMeanOperationIntervalMs() : config.getMaxBatchingDelayMs()) :
+          null;
     }
     logger.info("Created protocol handler for application %s, platform %s", applicationName,
         resources.getPlatform());
@@ -473,15 +835,45 @@ class ProtocolHandler implements Marshallable<ProtocolHandlerState> {
     int windowMs = 5 * 1000;
     int numMessagesPerWindow = 3;
 
+    // Split batches into messages of at most about 512 KB.
+    int maxMessageSizeBytes = 512 * 1024;
+
+    // Validate every outgoing message. Since they are built from validated parts, deployments may
+    // choose to only spot-check them with a longer period.
+    int outgoingMessageValidationPeriod = 1;
+
+    // Send acks and initialize messages (with whatever else is pending) after 50 ms.
+    int urgentBatchingDelayMs = 50;
+
+    // Keep data batched while two messages are being sent.
+    int maxMessagesInFlight = 2;
+
+    // Compress message bodies of 512 bytes or more (e.g., registration syncs) if the server can
+    // decompress them.
+    int minCompressedBodySizeBytes = 512;
+
     return ProtocolHandlerConfigP.newBuilder()
-        .addRateLimit(CommonProtos2.newRateLimitP(windowMs, numMessagesPerWindow));
+        .addRateLimit(CommonProtos2.newRateLimitP(windowMs, numMessagesPerWindow))
+        .setMaxMessageSizeBytes(maxMessageSizeBytes)
+        .setOutgoingMessageValidationPeriod(outgoingMessageValidationPeriod)
+        .setUrgentBatchingDelayMs(urgentBatchingDelayMs)
+        .setMaxMessagesInFlight(maxMessagesInFlight)
+        .setMinCompressedBodySizeBytes(minCompressedBodySizeBytes);
+  }
+
+  /** Returns whether {@code config} asks for a batching delay adapting to the operation rate. */
+  private static boolean isAdaptiveBatchingEnabled(ProtocolHandlerConfigP config) {
+    return (config.getMinBatchingDelayMs() > 0) && (config.getMaxBatchingDelayMs() > 0);
   }
 
   /** Returns a configuration object with parameters set for unit tests. */
   static ProtocolHandlerConfigP.Builder createConfigForTest() {
     // No rate limits
     int smallBatchDelayForTest = 200;
-    return ProtocolHandlerConfigP.newBuilder().setBatchingDelayMs(smallBatchDelayForTest);
+
+    // Validate every outgoing message, so that tests catch invalid ones.
+    return ProtocolHandlerConfigP.newBuilder().setBatchingDelayMs(smallBatchDelayForTest)
+        .setOutgoingMessageValidationPeriod(1);
   }
 
   /**
@@ -493,46 +885,109 @@ class ProtocolHandler implements Marshallable<ProtocolHandlerState> {
   }
 
   /**
-   * Handles a message from the server. If the message can be processed (i.e., is valid, is
-   * of the right version, and is not a silence message), returns a {@link ParsedMessage}
-   * representing it. Otherwise, returns {@code null}.
+   * Handles a message from the server. If the message can be processed (i.e., has a valid header,
+   * is of the right version, and is not a silence message), returns a {@link ParsedMessage}
+   * representing it. Otherwise, returns {@code null}. The body of the returned message must be
+   * decoded with {@link #decodeIncomingMessageBody} before it is used.
    * <p>
    * This class intercepts and processes silence messages. In this case, it will discard any other
    * data in the message.
    * <p>
+   * The message is decoded from {@code incomingMessage}'s remaining bytes, in place if the buffer
+   * is backed by an array; the buffer's contents must not change until the returned message has
+   * been handled. A compressed body is decompressed into a new array.
+   * <p>
    * Note that this method does <b>not</b> check the session token of any message.
    */
-  ParsedMessage handleIncomingMessage(byte[] incomingMessage) {
+  ParsedMessage handleIncomingMessage(ByteBuffer incomingMessage) {
     Preconditions.checkState(internalScheduler.isRunningOnThread(), "Not on internal thread");
-    ServerToClientMessage message;
+    byte[] buffer;
+    int offset;
+    int length = incomingMessage.remaining();
+    if (incomingMessage.hasArray()) {
+      buffer = incomingMessage.array();
+      offset = incomingMessage.arrayOffset() + incomingMessage.position();
+    } else {
+      buffer = new byte[length];
+      incomingMessage.duplicate().get(buffer);
+      offset = 0;
+    }
+
+    // Locate the parts of the message, decoding only the header.
+    ServerHeader.Builder headerBuilder = null;
+    List<FieldRange> bodyFields = new ArrayList<FieldRange>();
     try {
-      message = ServerToClientMessage.parseFrom(incomingMessage);
-    } catch (InvalidProtocolBufferException exception) {
-      logger.warning("Incoming message is unparseable: %s",
-          CommonProtoStrings2.toLazyCompactString(incomingMessage));
+      for (FieldRange field : locateFields(buffer, offset, length)) {
+        if (field.fieldNumber == ServerToClientMessage.HEADER_FIELD_NUMBER) {
+          if (headerBuilder == null) {
+            headerBuilder = ServerHeader.newBuilder();
+          }
+          headerBuilder.mergeFrom(buffer, field.offset, field.length);
+        } else {
+          bodyFields.add(field);
+        }
+      }
+    } catch (IOException exception) {
+      logger.warning("Incoming message is unparseable: %s", exception);
       return null;
     }
 
-    // Validate the message. If this passes, we can blindly assume valid messages from here on.
-    logger.fine("Incoming message: %s", message);
-    if (!msgValidator.isValid(message)) {
+    // Validate the header. If this passes, we can blindly assume a valid header from here on.
+    if (headerBuilder == null) {
+      statistics.recordError(ClientErrorType.INCOMING_MESSAGE_FAILURE);
+      logger.severe("Received message without header");
+      return null;
+    }
+    ServerHeader header = headerBuilder.build();
+    logger.fine("Incoming message header: %s", header);
+    if (!msgValidator.isValid(header)) {
       statistics.recordError(ClientErrorType.INCOMING_MESSAGE_FAILURE);
-      logger.severe("Received invalid message: %s", message);
+      logger.severe("Received message with invalid header: %s", header);
       return null;
     }
 
     // Check the version of the message.
-    if (message.getHeader().getProtocolVersion().getVersion().getMajorVersion() !=
+    if (header.getProtocolVersion().getVersion().getMajorVersion() !=
         CommonInvalidationConstants2.PROTOCOL_MAJOR_VERSION) {
       statistics.recordError(ClientErrorType.PROTOCOL_VERSION_FAILURE);
-      logger.severe("Dropping message with incompatible version: %s", message);
+      logger.severe("Dropping message with incompatible version: %s", header);
       return null;
     }
 
+    isCompressionAcceptedByServer =
+        header.getAcceptedCompressionList().contains(CompressedBodyP.Compression.DEFLATE);
+
+    // If the body is compressed, its parts are in the decompressed bytes.
+    ParsedMessage parsedMessage = new ParsedMessage(header, buffer, bodyFields);
+    if (parsedMessage.hasPart(ServerToClientMessage.COMPRESSED_BODY_FIELD_NUMBER)) {
+      parsedMessage = decompressBody(header, parsedMessage);
+      if (parsedMessage == null) {
+        return null;
+      }
+    }
+
     // Check if it is a ConfigChangeMessage which indicates that messages should no longer be
     // sent for a certain duration. Perform this check before the token is even checked.
-    if (message.hasConfigChangeMessage()) {
-      ConfigChangeMessage configChangeMsg = message.getConfigChangeMessage();
+    if (parsedMessage.hasPart(ServerToClientMessage.CONFIG_CHANGE_MESSAGE_FIELD_NUMBER)) {
+      ConfigChangeMessage configChangeMsg;
+      try {
+        configChangeMsg = (ConfigChangeMessage) parsedMessage.decodePart(
+            ServerToClientMessage.CONFIG_CHANGE_MESSAGE_FIELD_NUMBER,
+            ConfigChangeMessage.newBuilder());
+      } catch (InvalidProtocolBufferException exception) {
+        logger.warning("Incoming config change message is unparseable: %s", exception);
+        return null;
+      }
+      if (!isValidPart(ServerToClientMessage.CONFIG_CHANGE_MESSAGE_FIELD_NUMBER,
+          configChangeMsg)) {
+        return null;
+      }
+
+      // The other parts are ignored, but a message with an invalid part is dropped as a whole, so
+      // validate them before applying the config change.
+      if (!decodeIncomingMessageBody(parsedMessage)) {
+        return null;
+      }
       statistics.recordReceivedMessage(ReceivedMessageType.CONFIG_CHANGE);
       if (configChangeMsg.hasNextMessageDelayMs()) {  // Validator has ensured that it is positive.
         nextMessageSendTimeMs =
@@ -541,8 +996,129 @@ class ProtocolHandler implements Marshallable<ProtocolHandlerState> {
       return null;  // Ignore all other messages in the envelope.
     }
 
-    lastKnownServerTimeMs = Math.max(lastKnownServerTimeMs, message.getHeader().getServerTimeMs());
-    return new ParsedMessage(message);
+    lastKnownServerTimeMs = Math.max(lastKnownServerTimeMs, header.getServerTimeMs());
+    return parsedMessage;
+  }
+
+  /**
+   * Returns the locations of the length-delimited fields of the message in the {@code length}
+   * bytes of {@code buffer} from {@code offset}, in order. Every part of a message is
+   * length-delimited; other fields are skipped, as the full parser would skip fields of an
+   * unexpected type.
+   */
+  private static List<FieldRange> locateFields(byte[] buffer, int offset, int length)
+      throws IOException {
+    List<FieldRange> fields = new ArrayList<FieldRange>();
+    CodedInputStream input = CodedInputStream.newInstance(buffer, offset, length);
+    int tag;
+    while ((tag = input.readTag()) != 0) {
+      if ((tag & WIRE_TYPE_MASK) != WireFormat.WIRETYPE_LENGTH_DELIMITED) {
+        input.skipField(tag);
+        continue;
+      }
+      int fieldLength = input.readRawVarint32();
+      int fieldOffset = offset + input.getTotalBytesRead();
+      input.skipRawBytes(fieldLength);
+      fields.add(new FieldRange(WireFormat.getTagFieldNumber(tag), fieldOffset, fieldLength));
+    }
+    return fields;
+  }
+
+  /**
+   * Returns {@code message}, with header {@code header} and a compressed body, with its body
+   * decompressed, or {@code null} if the body is invalid.
+   */
+  private ParsedMessage decompressBody(ServerHeader header, ParsedMessage message) {
+    CompressedBodyP compressedBody;
+    try {
+      compressedBody = (CompressedBodyP) message.decodePart(
+          ServerToClientMessage.COMPRESSED_BODY_FIELD_NUMBER, CompressedBodyP.newBuilder());
+    } catch (InvalidProtocolBufferException exception) {
+      logger.warning("Incoming compressed body is unparseable: %s", exception);
+      return null;
+    }
+    if (!isValidPart(ServerToClientMessage.COMPRESSED_BODY_FIELD_NUMBER, compressedBody)) {
+      return null;
+    }
+    if (message.bodyFields.size() != 1) {
+      statistics.recordError(ClientErrorType.INCOMING_MESSAGE_FAILURE);
+      logger.severe("Received message with parts outside its compressed body");
+      return null;
+    }
+
+    // Decompress the body and locate its parts.
+    long startTimeNs = System.nanoTime();
+    byte[] body;
+    List<FieldRange> bodyFields;
+    try {
+      body = compressor.decompress(compressedBody);
+      bodyFields = locateFields(body, 0, body.length);
+    } catch (IOException exception) {
+      statistics.recordError(ClientErrorType.INCOMING_MESSAGE_FAILURE);
+      logger.warning("Incoming compressed body cannot be decompressed: %s", exception);
+      return null;
+    }
+    decompressionTimeNs += System.nanoTime() - startTimeNs;
+    decompressionInputBytes += message.bodyFields.get(0).length;
+    decompressionOutputBytes += body.length;
+    recordCompressionStatistics();
+    return new ParsedMessage(header, body, bodyFields);
+  }
+
+  /**
+   * Decodes and validates the parts of {@code message} other than its header. Returns whether
+   * they are all valid; if not, the message must be dropped.
+   */
+  boolean decodeIncomingMessageBody(ParsedMessage message) {
+    Preconditions.checkState(internalScheduler.isRunningOnThread(), "Not on internal thread");
+    try {
+      message.tokenControlMessage = (TokenControlMessage) message.decodePart(
+          ServerToClientMessage.TOKEN_CONTROL_MESSAGE_FIELD_NUMBER,
+          TokenControlMessage.newBuilder());
+      message.invalidationMessage = (InvalidationMessage) message.decodePart(
+          ServerToClientMessage.INVALIDATION_MESSAGE_FIELD_NUMBER,
+          InvalidationMessage.newBuilder());
+      message.registrationStatusMessage = (RegistrationStatusMessage) message.decodePart(
+          ServerToClientMessage.REGISTRATION_STATUS_MESSAGE_FIELD_NUMBER,
+          RegistrationStatusMessage.newBuilder());
+      message.registrationSyncRequestMessage = (RegistrationSyncRequestMessage) message.decodePart(
+          ServerToClientMessage.REGISTRATION_SYNC_REQUEST_MESSAGE_FIELD_NUMBER,
+          RegistrationSyncRequestMessage.newBuilder());
+      message.infoRequestMessage = (InfoRequestMessage) message.decodePart(
+          ServerToClientMessage.INFO_REQUEST_MESSAGE_FIELD_NUMBER,
+          InfoRequestMessage.newBuilder());
+      message.errorMessage = (ErrorMessage) message.decodePart(
+          ServerToClientMessage.ERROR_MESSAGE_FIELD_NUMBER, ErrorMessage.newBuilder());
+    } catch (InvalidProtocolBufferException exception) {
+      logger.warning("Incoming message body is unparseable: %s", exception);
+      return false;
+    }
+
+    // Validate the parts. If this passes, we can blindly assume valid messages from here on.
+    return isValidPart(ServerToClientMessage.TOKEN_CONTROL_MESSAGE_FIELD_NUMBER,
+            message.tokenControlMessage) &&
+        isValidPart(ServerToClientMessage.INVALIDATION_MESSAGE_FIELD_NUMBER,
+            message.invalidationMessage) &&
+        isValidPart(ServerToClientMessage.REGISTRATION_STATUS_MESSAGE_FIELD_NUMBER,
+            message.registrationStatusMessage) &&
+        isValidPart(ServerToClientMessage.REGISTRATION_SYNC_REQUEST_MESSAGE_FIELD_NUMBER,
+            message.registrationSyncRequestMessage) &&
+        isValidPart(ServerToClientMessage.INFO_REQUEST_MESSAGE_FIELD_NUMBER,
+            message.infoRequestMessage) &&
+        isValidPart(ServerToClientMessage.ERROR_MESSAGE_FIELD_NUMBER, message.errorMessage);
+  }
+
+  /**
+   * Returns whether {@code part}, the value of field {@code fieldNumber} of a message from the
+   * server, is absent ({@code null}) or valid. Records an error if it is not.
+   */
+  private boolean isValidPart(int fieldNumber, MessageLite part) {
+    if ((part != null) && !msgValidator.isValidServerMessagePart(fieldNumber, part)) {
+      statistics.recordError(ClientErrorType.INCOMING_MESSAGE_FAILURE);
+      logger.severe("Received invalid message part: %s", part);
+      return false;
+    }
+    return true;
   }
 
   /**
@@ -550,10 +1126,12 @@ class ProtocolHandler implements Marshallable<ProtocolHandlerState> {
    *
    * @param applicationClientId application-specific client id
    * @param nonce nonce for the request
+   * @param digestSerializationType registration digest type requested by the client
    * @param debugString information to identify the caller
    */
   void sendInitializeMessage(ApplicationClientIdP applicationClientId, ByteString nonce,
-      BatchingTask batchingTask, String debugString) {
+      DigestSerializationType digestSerializationType, BatchingTask batchingTask,
+      String debugString) {
     Preconditions.checkState(internalScheduler.isRunningOnThread(), "Not on internal thread");
     if (applicationClientId.getClientType() != clientType) {
       // This condition is not fatal, but it probably represents a bug somewhere if it occurs.
@@ -563,11 +1141,12 @@ class ProtocolHandler implements Marshallable<ProtocolHandlerState> {
     }
 
     // Simply store the message in pendingInitializeMessage and send it when the batching task runs.
+    // Until the client has a token, nothing else can be sent, so the message is urgent.
     InitializeMessage initializeMsg = CommonProtos2.newInitializeMessage(clientType,
-        applicationClientId, nonce, DigestSerializationType.BYTE_BASED);
+        applicationClientId, nonce, digestSerializationType);
     batcher.setInitializeMessage(initializeMsg);
     logger.info("Batching initialize message for client: %s, %s", debugString, initializeMsg);
-    batchingTask.ensureScheduled(debugString);
+    scheduleUrgentBatchingTask(batchingTask, 1, debugString);
   }
 
   /**
@@ -602,31 +1181,33 @@ class ProtocolHandler implements Marshallable<ProtocolHandlerState> {
 
     // Simply store the message in pendingInfoMessage and send it when the batching task runs.
     batcher.setInfoMessage(infoMessage.build());
-    batchingTask.ensureScheduled("Send-info");
+    scheduleBatchingTask(batchingTask, 1, "Send-info");
   }
 
   /**
-   * Sends a registration request to the server.
+   * Sends a registration request to the server. An operation that undoes a pending, unsent
+   * operation on the same object cancels it, and neither is sent.
+   * <p>
+   * REQUIRES: each operation change the desired registration state of its object.
    *
    * @param objectIds object ids on which to (un)register
    * @param regOpType whether to register or unregister
    */
-  void sendRegistrations(Collection<ObjectIdP> objectIds, RegistrationP.OpType regOpType,
+  void sendRegistrations(Collection<ObjectIdHandle> objectIds, RegistrationP.OpType regOpType,
       BatchingTask batchingTask) {
     Preconditions.checkState(internalScheduler.isRunningOnThread(), "Not on internal thread");
-    for (ObjectIdP objectId : objectIds) {
+    for (ObjectIdHandle objectId : objectIds) {
       batcher.addRegistration(objectId, regOpType);
     }
-    batchingTask.ensureScheduled("Send-registrations");
+    scheduleBatchingTask(batchingTask, objectIds.size(), "Send-registrations");
   }
 
   /** Sends an acknowledgement for {@code invalidation} to the server. */
   void sendInvalidationAck(InvalidationP invalidation, BatchingTask batchingTask) {
     Preconditions.checkState(internalScheduler.isRunningOnThread(), "Not on internal thread");
-    // We could do squelching - we don't since it is unlikely to be too beneficial here.
     logger.fine("Sending ack for invalidation %s", invalidation);
     batcher.addAck(invalidation);
-    batchingTask.ensureScheduled("Send-Ack");
+    scheduleUrgentBatchingTask(batchingTask, 1, "Send-Ack");
   }
 
   /**
@@ -638,47 +1219,309 @@ class ProtocolHandler implements Marshallable<ProtocolHandlerState> {
     Preconditions.checkState(internalScheduler.isRunningOnThread(), "Not on internal thread");
     batcher.addRegSubtree(regSubtree);
     logger.info("Adding subtree: %s", regSubtree);
-    batchingTask.ensureScheduled("Send-reg-sync");
+    scheduleBatchingTask(batchingTask, 1, "Send-reg-sync");
   }
 
-  /** Sends pending data to the server (e.g., registrations, acks, registration sync messages). */
-  void sendMessageToServer() {
+  /**
+   * Sends a summary of the registrations in a single subtree to the server, in response to a
+   * bisecting registration sync request.
+   *
+   * @param summary subtree summary to send
+   */
+  void sendRegistrationSyncSubtreeSummary(RegistrationSubtreeSummary summary,
+      BatchingTask batchingTask) {
     Preconditions.checkState(internalScheduler.isRunningOnThread(), "Not on internal thread");
-    if (nextMessageSendTimeMs > internalScheduler.getCurrentTimeMs()) {
-      logger.warning("In quiet period: not sending message to server: %s > %s",
-          nextMessageSendTimeMs, internalScheduler.getCurrentTimeMs());
-      return;
+    batcher.addRegSubtreeSummary(summary);
+    logger.fine("Adding subtree summary: %s", summary);
+    scheduleBatchingTask(batchingTask, 1, "Send-reg-sync-summary");
+  }
+
+  /**
+   * Records the arrival of {@code numOperations} operations to be batched and ensures that
+   * {@code batchingTask} is scheduled (with {@code debugReason} as the reason to be logged).
+   */
+  private void scheduleBatchingTask(BatchingTask batchingTask, int numOperations,
+      String debugReason) {
+    if ((adaptiveBatchingDelay != null) && (numOperations > 0)) {
+      adaptiveBatchingDelay.recordOperations(internalScheduler.getCurrentTimeMs(), numOperations);
     }
+    this.batchingTask = batchingTask;
+    batchingTask.ensureScheduled(debugReason);
+  }
+
+  /**
+   * Like {@link #scheduleBatchingTask}, for urgent data: also ensures that the pending data is sent
+   * after the urgent batching delay, if configured and no message was sent within the batching
+   * delay.
+   */
+  private void scheduleUrgentBatchingTask(BatchingTask batchingTask, int numOperations,
+      String debugReason) {
+    scheduleBatchingTask(batchingTask, numOperations, debugReason);
+    batchingTask.ensureUrgentScheduled(debugReason);
+  }
 
-    // Create the message from the batcher.
-    ClientToServerMessage.Builder msgBuilder =
-        batcher.toBuilder(listener.getClientToken() != null);
-    if (msgBuilder == null) {
+  /** Returns whether a message was sent to the server within the last {@code intervalMs}. */
+  boolean wasMessageSentWithinMs(int intervalMs) {
+    return (lastMessageSendTimeMs >= 0) &&
+        (internalScheduler.getCurrentTimeMs() - lastMessageSendTimeMs < intervalMs);
+  }
+
+  /**
+   * Returns the delay after which the batching task should send pending data: the adaptive delay
+   * if configured, else {@code fixedDelayMs}, or, if longer, the time until a message may be sent
+   * without violating a rate limit or the server's quiet period.
+   */
+  int getBatchingDelayMs(int fixedDelayMs) {
+    int delayMs =
+        (adaptiveBatchingDelay != null) ? adaptiveBatchingDelay.getDelayMs() : fixedDelayMs;
+    statistics.recordGaugeValue(GaugeType.BATCHING_DELAY_MS, delayMs);
+    long nowMs = internalScheduler.getCurrentTimeMs();
+    long sendDelayMs = Math.max(nextMessageSendTimeMs - nowMs, throttle.getDelayMs(nowMs));
+    return (int) Math.min(Math.max(delayMs, sendDelayMs), Integer.MAX_VALUE);
+  }
+
+  /**
+   * Sends pending data to the server (e.g., registrations, acks, registration sync messages).
+   * <p>
+   * Returns {@code false} if sending is deferred because the server asked for a quiet period or a
+   * rate limit would be violated, or if not all pending data fit in the maximum message size. In
+   * that case, the (remaining) pending data stays in the batcher, where later data is merged with
+   * it, and the caller must retry later. Otherwise, returns {@code true}; in particular, if no data
+   * is pending, e.g., because it was sent along with urgent data, nothing is sent, and if the
+   * maximum number of messages are in flight, the data stays pending until the batching task is
+   * rescheduled by the completion of one of them.
+   */
+  boolean sendMessageToServer() {
+    Preconditions.checkState(internalScheduler.isRunningOnThread(), "Not on internal thread");
+    if (!batcher.hasPendingData()) {
+      // E.g., the data was sent early along with urgent data.
+      logger.fine("No pending data: not sending message to server");
+      return true;
+    }
+    long nowMs = internalScheduler.getCurrentTimeMs();
+    if (nextMessageSendTimeMs > nowMs) {
+      logger.info("In quiet period: deferring message to server by %s ms",
+          nextMessageSendTimeMs - nowMs);
+      return false;
+    }
+    long throttleDelayMs = throttle.getDelayMs(nowMs);
+    if (throttleDelayMs > 0) {
+      logger.info("Rate limited: deferring message to server by at least %s ms",
+          throttleDelayMs);
+      return false;
+    }
+    if ((maxMessagesInFlight > 0) && (numMessagesInFlight >= maxMessagesInFlight)) {
+      logger.info("Network busy with %s messages: deferring message to server until one is sent",
+          numMessagesInFlight);
+      return true;
+    }
+
+    // Create the header first, so that the batcher can fill the rest of the maximum size.
+    ClientHeader header = createClientHeader().build();
+    int maxBodySizeBytes = (maxMessageSizeBytes > 0) ?
+        Math.max(1, maxMessageSizeBytes - CodedOutputStream.computeMessageSize(
+            ClientToServerMessage.HEADER_FIELD_NUMBER, header)) :
+        0;
+
+    // Take the message from the batcher.
+    ClientMessageEncoder encoder =
+        batcher.takeMessage(listener.getClientToken() != null, maxBodySizeBytes);
+    if (encoder == null) {
       // Happens when we don't have a token and are not sending an initialize message. Logged
-      // in batcher.toBuilder().
-      return;
+      // in batcher.takeMessage().
+      return true;
     }
-    msgBuilder.setHeader(createClientHeader());
+    encoder.setHeader(header);
     ++messageId;
 
-    // Validate the message and send it.
-    ClientToServerMessage message = msgBuilder.build();
-    if (!msgValidator.isValid(message)) {
-      logger.severe("Tried to send invalid message: %s", message);
-      statistics.recordError(ClientErrorType.OUTGOING_MESSAGE_FAILURE);
-      return;
+    // Validate the message, if this one is sampled, and send it. The message is built from the
+    // encoder only if it is validated or logged.
+    if (shouldValidateOutgoingMessage()) {
+      ClientToServerMessage message = encoder.toMessage();
+      if (!msgValidator.isValid(message)) {
+        logger.severe("Tried to send invalid message: %s", message);
+        statistics.recordError(ClientErrorType.OUTGOING_MESSAGE_FAILURE);
+        return true;
+      }
     }
 
     statistics.recordSentMessage(SentMessageType.TOTAL);
-    logger.fine("Sending message to server: %s",
-        CommonProtoStrings2.toLazyCompactString(message, true));
-    network.sendMessage(message.toByteArray());
+    if (logger.isLoggable(Level.FINE)) {
+      logger.fine("Sending message to server: %s",
+          CommonProtoStrings2.toLazyCompactString(encoder.toMessage(), true));
+    }
+    sendEncodedMessage(header, encoder);
+    throttle.recordEvent(nowMs);
+    lastMessageSendTimeMs = nowMs;
+
+    // If the message was bounded by the maximum size, the remaining operations go in the next one.
+    boolean isBatchComplete = !batcher.hasPendingOperations();
+    if (!isBatchComplete) {
+      logger.info("Message to server reached size limit of %s bytes; sending the rest later",
+          maxMessageSizeBytes);
+    }
 
     // Record that the message was sent. We're invoking the listener directly, rather than
     // scheduling a new work unit to do it. It would be safer to do a schedule, but that's hard to
     // do in Android, we wrote this listener (it's InvalidationClientCore, so we know what it does),
-    // and it's the last line of this function.
+    // and it's the last thing this function does.
     listener.handleMessageSent();
+    return isBatchComplete;
+  }
+
+  /**
+   * Returns whether the next outgoing message should be validated: one in
+   * {@link #outgoingMessageValidationPeriod} messages, starting with the first.
+   */
+  private boolean shouldValidateOutgoingMessage() {
+    if (outgoingMessageValidationPeriod == 0) {
+      return false;
+    }
+    if (--messagesUntilValidation > 0) {
+      return false;
+    }
+    messagesUntilValidation = outgoingMessageValidationPeriod;
+    return true;
+  }
+
+  /**
+   * Encodes the message in {@code encoder}, whose header is {@code header}, and sends it on the
+   * network. If the network accepts buffers, the message is encoded into {@link #sendBuffer},
+   * which is reused across messages; otherwise, it is encoded into an array of exactly its size,
+   * which an asynchronous network holds until it is done with it. Either way, the bytes of the
+   * batched operations are copied once, from their wrappers.
+   * <p>
+   * If the body of the message is large enough and the server accepts compressed bodies, the body
+   * is compressed, unless that does not make the message smaller.
+   */
+  private void sendEncodedMessage(ClientHeader header, ClientMessageEncoder encoder) {
+    int size = encoder.getSerializedSize();
+    int headerSize =
+        CodedOutputStream.computeMessageSize(ClientToServerMessage.HEADER_FIELD_NUMBER, header);
+    if (isCompressionAcceptedByServer && (minCompressedBodySizeBytes > 0) &&
+        (size - headerSize >= minCompressedBodySizeBytes)) {
+      byte[] outgoingMessage = new byte[size];
+      encoder.encode(outgoingMessage, 0, size);
+      byte[] compressedMessage = compressBody(header, outgoingMessage, headerSize);
+      sendMessageArray((compressedMessage != null) ? compressedMessage : outgoingMessage);
+    } else if (!(network instanceof AsyncNetworkChannel) &&
+        (network instanceof BufferedNetworkChannel)) {
+      if ((sendBuffer == null) || (sendBuffer.length < size)) {
+        sendBuffer = new byte[size];
+      }
+      encoder.encode(sendBuffer, 0, size);
+      ((BufferedNetworkChannel) network).sendMessage(ByteBuffer.wrap(sendBuffer, 0, size));
+
+      // Do not hold on to the memory of an unusually large message.
+      if (sendBuffer.length > MAX_POOLED_SEND_BUFFER_BYTES) {
+        sendBuffer = null;
+      }
+    } else {
+      byte[] outgoingMessage = new byte[size];
+      encoder.encode(outgoingMessage, 0, size);
+      sendMessageArray(outgoingMessage);
+    }
+  }
+
+  /**
+   * Returns the encoded message with header {@code header} and, compressed, the body of
+   * {@code message}, an encoded message whose header takes its first {@code headerSize} bytes; or
+   * {@code null} if compression does not make the message smaller.
+   */
+  private byte[] compressBody(ClientHeader header, byte[] message, int headerSize) {
+    int bodySize = message.length - headerSize;
+    long startTimeNs = System.nanoTime();
+    CompressedBodyP compressedBody = compressor.compress(message, headerSize, bodySize);
+    compressionTimeNs += System.nanoTime() - startTimeNs;
+    int compressedBodySize = (compressedBody == null) ? bodySize :
+        CodedOutputStream.computeMessageSize(
+            ClientToServerMessage.COMPRESSED_BODY_FIELD_NUMBER, compressedBody);
+    if (compressedBodySize >= bodySize) {
+      // Send the body uncompressed.
+      compressedBody = null;
+      compressedBodySize = bodySize;
+    }
+    compressionInputBytes += bodySize;
+    compressionOutputBytes += compressedBodySize;
+    recordCompressionStatistics();
+    if (compressedBody == null) {
+      return null;
+    }
+    byte[] compressedMessage = new byte[headerSize + compressedBodySize];
+    CodedOutputStream output = CodedOutputStream.newInstance(compressedMessage);
+    try {
+      output.writeMessage(ClientToServerMessage.HEADER_FIELD_NUMBER, header);
+      output.writeMessage(ClientToServerMessage.COMPRESSED_BODY_FIELD_NUMBER, compressedBody);
+    } catch (IOException exception) {
+      throw new IllegalStateException("Writing to a byte array failed", exception);
+    }
+    output.checkNoSpaceLeft();
+    return compressedMessage;
+  }
+
+  /**
+   * Sends {@code outgoingMessage} on the network, which may hold it until it is done sending it.
+   */
+  private void sendMessageArray(byte[] outgoingMessage) {
+    if (network instanceof AsyncNetworkChannel) {
+      ++numMessagesInFlight;
+      ((AsyncNetworkChannel) network).sendMessage(outgoingMessage, messageSentCallback);
+    } else {
+      network.sendMessage(outgoingMessage);
+    }
+  }
+
+  /** Records the ratios and times of compression and decompression so far in the statistics. */
+  private void recordCompressionStatistics() {
+    if (compressionInputBytes > 0) {
+      statistics.recordGaugeValue(GaugeType.COMPRESSION_RATIO_PERCENT,
+          (int) (100 * compressionOutputBytes / compressionInputBytes));
+      statistics.recordGaugeValue(GaugeType.COMPRESSION_TIME_US,
+          (int) Math.min(compressionTimeNs / 1000, Integer.MAX_VALUE));
+    }
+    if (decompressionOutputBytes > 0) {
+      statistics.recordGaugeValue(GaugeType.DECOMPRESSION_RATIO_PERCENT,
+          (int) (100 * decompressionInputBytes / decompressionOutputBytes));
+      statistics.recordGaugeValue(GaugeType.DECOMPRESSION_TIME_US,
+          (int) Math.min(decompressionTimeNs / 1000, Integer.MAX_VALUE));
+    }
+  }
+
+  /** Handles the completion, with {@code status}, of the sending of a message on the network. */
+  private void handleMessageSendCompletion(Status status) {
+    Preconditions.checkState(internalScheduler.isRunningOnThread(), "Not on internal thread");
+    numMessagesInFlight = Math.max(0, numMessagesInFlight - 1);
+    if (!status.isSuccess()) {
+      // The message is lost; the protocol recovers from lost messages (e.g., by heartbeats).
+      logger.warning("Failed to send message to server: %s", status);
+    }
+    rescheduleIfPending("Send-completion");
+  }
+
+  /**
+   * Handles a change in the online status of the network to {@code isOnline}. When the network
+   * goes offline, the messages in flight are no longer counted: the channel may never complete
+   * them, and pending data must not wait for them. A late completion of one of them may then let
+   * one extra message be in flight.
+   */
+  void handleNetworkStatusChange(boolean isOnline) {
+    Preconditions.checkState(internalScheduler.isRunningOnThread(), "Not on internal thread");
+    if (!isOnline && (numMessagesInFlight > 0)) {
+      logger.info("Network offline: no longer counting %s messages in flight",
+          numMessagesInFlight);
+      numMessagesInFlight = 0;
+      rescheduleIfPending("Network-offline");
+    }
+  }
+
+  /**
+   * Ensures that the batching task is scheduled if data is pending (with {@code debugReason} as the
+   * reason to be logged).
+   */
+  private void rescheduleIfPending(String debugReason) {
+    if ((batchingTask != null) && batcher.hasPendingData()) {
+      batchingTask.ensureScheduled(debugReason);
+    }
   }
 
   /** Returns the header to include on a message to the server. */
@@ -690,7 +1533,8 @@ class ProtocolHandler implements Marshallable<ProtocolHandlerState> {
         .setMessageId(Integer.toString(messageId))
         .setMaxKnownServerTimeMs(lastKnownServerTimeMs)
         .setRegistrationSummary(listener.getRegistrationSummary())
-        .setClientType(clientType);
+        .setClientType(clientType)
+        .addAcceptedCompression(CompressedBodyP.Compression.DEFLATE);
     ByteString clientToken = listener.getClientToken();
     if (clientToken != null) {
       logger.fine("Sending token on client->server message: %s",
@@ -707,6 +1551,11 @@ class ProtocolHandler implements Marshallable<ProtocolHandlerState> {
     builder.setMessageId(messageId);
     builder.setNextMessageSendTimeMs(nextMessageSendTimeMs);
     builder.setBatcherState(batcher.marshal());
+    builder.addAllRecentMessageSendTimesMs(throttle.getRecentEventTimesMs());
+    if (adaptiveBatchingDelay != null) {
+      builder.setLastOperationTimeMs(adaptiveBatchingDelay.getLastOperationTimeMs());
+      builder.setMeanOperationIntervalMs(adaptiveBatchingDelay.getMeanIntervalMs());
+    }
     return builder.build();
   }
 }
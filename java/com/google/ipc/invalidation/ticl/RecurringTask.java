@@ -174,6 +174,15 @@ public abstract class RecurringTask extends InternalBase
    */
   public abstract boolean runTask();
 
+  /**
+   * Returns the delay, before smearing, with which the task is scheduled (and retried, if there is
+   * no delay generator). Subclasses may override this to vary the delay; it must stay positive if
+   * the task can be retried without a delay generator.
+   */
+  protected int getInitialDelayMs() {
+    return initialDelayMs;
+  }
+
   /** Returns the smearer used for randomizing delays. */
   Smearer getSmearer() {
     return smearer;
@@ -220,10 +229,10 @@ public abstract class RecurringTask extends InternalBase
       if (delayGenerator != null) {
         delayMs = timeoutDelayMs + delayGenerator.getNextDelay();
       } else {
-        delayMs = timeoutDelayMs + smearer.getSmearedDelay(initialDelayMs);
+        delayMs = timeoutDelayMs + smearer.getSmearedDelay(getInitialDelayMs());
       }
     } else {
-      delayMs = smearer.getSmearedDelay(initialDelayMs);
+      delayMs = smearer.getSmearedDelay(getInitialDelayMs());
     }
 
     logger.fine("[%s] Scheduling %s with a delay %s, Now = %s", debugReason, name, delayMs,
@@ -20,12 +20,15 @@ import com.google.ipc.invalidation.common.CommonProtoStrings2;
 import com.google.ipc.invalidation.common.CommonProtos2;
 import com.google.ipc.invalidation.common.DigestFunction;
 import com.google.ipc.invalidation.external.client.SystemResources.Logger;
+import com.google.ipc.invalidation.external.client.types.SimplePair;
 import com.google.ipc.invalidation.ticl.Statistics.ClientErrorType;
 import com.google.ipc.invalidation.ticl.TestableInvalidationClient.RegistrationManagerState;
 import com.google.ipc.invalidation.util.InternalBase;
 import com.google.ipc.invalidation.util.Marshallable;
 import com.google.ipc.invalidation.util.TextBuilder;
 import com.google.ipc.invalidation.util.TypedUtil;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protos.ipc.invalidation.ClientProtocol.InitializeMessage.DigestSerializationType;
 import com.google.protos.ipc.invalidation.ClientProtocol.ObjectIdP;
 import com.google.protos.ipc.invalidation.ClientProtocol.RegistrationP;
 import com.google.protos.ipc.invalidation.ClientProtocol.RegistrationP.OpType;
@@ -55,15 +58,37 @@ class RegistrationManager extends InternalBase implements Marshallable<Registrat
   /** Prefix used to request all registrations. */
   static final byte[] EMPTY_PREFIX = new byte[]{};
 
+  /** Largest number of objects whose sizes are sampled to estimate those under a digest prefix. */
+  private static final int MAX_SIZE_SAMPLE_OBJECTS = 32;
+
   /** The set of regisrations that the application has requested for. */
   private DigestStore<ObjectIdP> desiredRegistrations;
 
+  /** The type of digest computed over {@link #desiredRegistrations}, as agreed with the server. */
+  private DigestSerializationType digestSerializationType = DigestSerializationType.BYTE_BASED;
+
+  /** Whether {@code BYTE_BASED} registrations are kept in a {@link PackedRegistrationStore}. */
+  private boolean useCompactStore = false;
+
+  /**
+   * Table of canonical object ids, shared with the digest stores and the protocol handler's
+   * batcher.
+   */
+  private final ObjectIdInterner interner;
+
   /** Statistics objects to track number of sent messages, etc. */
   private final Statistics statistics;
 
   /** Latest known server registration state summary. */
   private ProtoWrapper<RegistrationSummary> lastKnownServerSummary;
 
+  /**
+   * Memoized summary of {@link #desiredRegistrations}, or {@code null} if they have changed since
+   * it was built. The summary is read for every outgoing message header and every server header,
+   * far more often than the registrations change.
+   */
+  private ProtoWrapper<RegistrationSummary> registrationSummary;
+
   /**
    * Map of object ids and operation types for which we have not yet issued any registration-status
    * upcall to the listener. We need this so that we can synthesize success upcalls if registration
@@ -75,28 +100,39 @@ class RegistrationManager extends InternalBase implements Marshallable<Registrat
    * we issue, which isn't necessarily true (i.e., the server might send back an unregistration
    * status in response to a registration request).
    */
-  private final Map<ProtoWrapper<ObjectIdP>, RegistrationP.OpType> pendingOperations =
-      new HashMap<ProtoWrapper<ObjectIdP>, RegistrationP.OpType>();
+  private final Map<ObjectIdHandle, RegistrationP.OpType> pendingOperations =
+      new HashMap<ObjectIdHandle, RegistrationP.OpType>();
 
   private final Logger logger;
 
-  public RegistrationManager(Logger logger, Statistics statistics, DigestFunction digestFn,
+  public RegistrationManager(Logger logger, Statistics statistics, ObjectIdInterner interner,
       RegistrationManagerStateP registrationManagerState) {
     this.logger = logger;
     this.statistics = statistics;
-    this.desiredRegistrations = new SimpleRegistrationStore(digestFn);
+    this.interner = interner;
+    if ((registrationManagerState != null) &&
+        registrationManagerState.hasDigestSerializationType()) {
+      if (isSupportedDigestType(registrationManagerState.getDigestSerializationType())) {
+        this.digestSerializationType = registrationManagerState.getDigestSerializationType();
+      } else {
+        logger.warning("Ignoring unsupported persisted digest type %s",
+            registrationManagerState.getDigestSerializationType());
+      }
+    }
+    this.desiredRegistrations =
+        createDigestStore(digestSerializationType, useCompactStore, interner);
 
     if (registrationManagerState == null) {
       // Initialize the server summary with a 0 size and the digest corresponding
       // to it.  Using defaultInstance would wrong since the server digest will
       // not match unnecessarily and result in an info message being sent.
-      this.lastKnownServerSummary = ProtoWrapper.of(getRegistrationSummary());
+      this.lastKnownServerSummary = getRegistrationSummaryWrapper();
     } else {
       this.lastKnownServerSummary =
         ProtoWrapper.of(registrationManagerState.getLastKnownServerSummary());
       desiredRegistrations.add(registrationManagerState.getRegistrationsList());
       for (RegistrationP regOp : registrationManagerState.getPendingOperationsList()) {
-        pendingOperations.put(ProtoWrapper.of(regOp.getObjectId()), regOp.getOpType());
+        putPendingOperation(interner.intern(regOp.getObjectId()), regOp.getOpType());
       }
     }
   }
@@ -127,7 +163,83 @@ class RegistrationManager extends InternalBase implements Marshallable<Registrat
   
   void setDigestStoreForTest(DigestStore<ObjectIdP> digestStore) {
     this.desiredRegistrations = digestStore;
-    this.lastKnownServerSummary = ProtoWrapper.of(getRegistrationSummary());
+    this.registrationSummary = null;
+    this.lastKnownServerSummary = getRegistrationSummaryWrapper();
+  }
+
+  /** Returns whether registration digests of type {@code digestType} can be computed. */
+  private static boolean isSupportedDigestType(DigestSerializationType digestType) {
+    return (digestType == DigestSerializationType.BYTE_BASED) ||
+        (digestType == DigestSerializationType.SUM_BASED);
+  }
+
+  /**
+   * Returns a new, empty store computing digests of type {@code digestType}, compact if
+   * {@code useCompactStore} and the type allows it.
+   * <p>
+   * REQUIRES: {@code isSupportedDigestType(digestType)}.
+   */
+  private static DigestStore<ObjectIdP> createDigestStore(DigestSerializationType digestType,
+      boolean useCompactStore, ObjectIdInterner interner) {
+    if (digestType == DigestSerializationType.SUM_BASED) {
+      return new IncrementalRegistrationStore(interner);
+    }
+    return useCompactStore ? new PackedRegistrationStore(interner)
+        : new SimpleRegistrationStore(interner);
+  }
+
+  /** Returns the type of digest used in registration summaries. */
+  DigestSerializationType getDigestSerializationType() {
+    return digestSerializationType;
+  }
+
+  /**
+   * Sets the type of digest used in registration summaries to {@code digestType}, as agreed with
+   * the server when the client token was assigned. If the type changes, the desired registrations
+   * are moved to a store computing digests of the new type, and the last known server summary,
+   * whose digest is of the old type, is reset to that of no registrations. An unsupported type is
+   * ignored.
+   */
+  void setDigestSerializationType(DigestSerializationType digestType) {
+    if (digestType == digestSerializationType) {
+      return;
+    }
+    if (!isSupportedDigestType(digestType)) {
+      logger.warning("Keeping digest type %s instead of unsupported %s", digestSerializationType,
+          digestType);
+      return;
+    }
+    logger.info("Changing registration digest type from %s to %s", digestSerializationType,
+        digestType);
+    this.digestSerializationType = digestType;
+    DigestStore<ObjectIdP> emptyStore = createDigestStore(digestType, useCompactStore, interner);
+    this.lastKnownServerSummary =
+        ProtoWrapper.of(CommonProtos2.newRegistrationSummary(0, emptyStore.getDigest()));
+    replaceDigestStore();
+  }
+
+  /**
+   * Sets whether {@code BYTE_BASED} registrations are kept in a compact, packed-array store, which
+   * greatly reduces the heap used by large registration sets at the cost of slower mutations. The
+   * desired registrations are moved to a new store if needed.
+   */
+  void setUseCompactStore(boolean useCompactStore) {
+    if (useCompactStore == this.useCompactStore) {
+      return;
+    }
+    this.useCompactStore = useCompactStore;
+    replaceDigestStore();
+  }
+
+  /** Moves the desired registrations to a new store of the currently configured kind. */
+  private void replaceDigestStore() {
+    DigestStore<ObjectIdP> newStore =
+        createDigestStore(digestSerializationType, useCompactStore, interner);
+
+    // Empty the old store first, so that it no longer holds the canonical object ids.
+    newStore.add(desiredRegistrations.removeAll());
+    this.desiredRegistrations = newStore;
+    this.registrationSummary = null;
   }
 
   
@@ -135,34 +247,191 @@ class RegistrationManager extends InternalBase implements Marshallable<Registrat
     return desiredRegistrations.getElements(EMPTY_PREFIX, 0);
   }
 
-  /** Perform registration/unregistation for all objects in {@code objectIds}. */
-  Collection<ObjectIdP> performOperations(Collection<ObjectIdP> objectIds,
+  /**
+   * Perform registration/unregistation for all objects in {@code objectIds}, given as handles from
+   * the {@link #interner}. Returns the canonical handles of the objects whose desired state
+   * changed.
+   */
+  Collection<ObjectIdHandle> performOperations(Collection<ObjectIdHandle> objectIds,
       RegistrationP.OpType regOpType) {
-    // Record that we have pending operations on the objects.
-    for (ObjectIdP objectId : objectIds) {
-      pendingOperations.put(ProtoWrapper.of(objectId), regOpType);
+    // Record that we have pending operations on the objects. This makes their handles canonical,
+    // so the store finds them, with any digests they carry, rather than creating its own.
+    for (ObjectIdHandle objectId : objectIds) {
+      putPendingOperation(objectId, regOpType);
     }
     // Update the digest appropriately.
-    if (regOpType == RegistrationP.OpType.REGISTER) {
-      return desiredRegistrations.add(objectIds);
-    } else {
-      return desiredRegistrations.remove(objectIds);
+    Collection<ObjectIdP> objectIdProtos = ObjectIdInterner.unwrap(objectIds);
+    Collection<ObjectIdP> changedObjectIds = (regOpType == RegistrationP.OpType.REGISTER) ?
+        desiredRegistrations.add(objectIdProtos) : desiredRegistrations.remove(objectIdProtos);
+    if (changedObjectIds.isEmpty()) {
+      return Collections.emptyList();
+    }
+    registrationSummary = null;
+    List<ObjectIdHandle> changedHandles = new ArrayList<ObjectIdHandle>(changedObjectIds.size());
+    for (ObjectIdP objectId : changedObjectIds) {
+      // Held as a pending operation, so the lookup finds it.
+      changedHandles.add(interner.find(objectId));
+    }
+    return changedHandles;
+  }
+
+  /**
+   * Makes {@code objectIds} the complete set of desired registrations: registers the objects in
+   * {@code objectIds} and unregisters all other registered objects. Returns the canonical handles
+   * of the objects that were added and removed, respectively; only these need to be sent to the
+   * server, and only these become pending operations.
+   */
+  SimplePair<Collection<ObjectIdHandle>, Collection<ObjectIdHandle>> setDesiredRegistrations(
+      Collection<ObjectIdHandle> objectIds) {
+    Set<ObjectIdHandle> desiredObjectIds = new HashSet<ObjectIdHandle>(objectIds);
+    List<ObjectIdHandle> undesiredObjectIds = new ArrayList<ObjectIdHandle>();
+    for (ObjectIdP objectId : desiredRegistrations.getElements(EMPTY_PREFIX, 0)) {
+      ObjectIdHandle handle = interner.intern(objectId);
+      if (!desiredObjectIds.contains(handle)) {
+        undesiredObjectIds.add(handle);
+      }
+    }
+    List<ObjectIdHandle> newObjectIds = new ArrayList<ObjectIdHandle>();
+    for (ObjectIdHandle objectId : desiredObjectIds) {
+      if (!desiredRegistrations.contains(objectId.getProto())) {
+        newObjectIds.add(objectId);
+      }
     }
+    Collection<ObjectIdHandle> removedObjectIds =
+        performOperations(undesiredObjectIds, RegistrationP.OpType.UNREGISTER);
+    Collection<ObjectIdHandle> addedObjectIds =
+        performOperations(newObjectIds, RegistrationP.OpType.REGISTER);
+    return SimplePair.of(addedObjectIds, removedObjectIds);
   }
 
   /**
    * Returns a registration subtree for registrations where the digest of the object id begins with
-   * the prefix {@code digestPrefix} of {@code prefixLen} bits. This method may also return objects
-   * whose digest prefix does not match {@code digestPrefix}.
+   * the prefix {@code digestPrefix} of {@code prefixLen} bits. Unless the prefix is empty, the
+   * subtree identifies the prefix it covers.
    */
   RegistrationSubtree getRegistrations(byte[] digestPrefix, int prefixLen) {
     RegistrationSubtree.Builder builder = RegistrationSubtree.newBuilder();
     for (ObjectIdP objectId : desiredRegistrations.getElements(digestPrefix, prefixLen)) {
       builder.addRegisteredObject(objectId);
     }
+    if (prefixLen > 0) {
+      builder.setPrefix(CommonProtos2.newDigestPrefixP(digestPrefix, prefixLen));
+    }
     return builder.build();
   }
 
+  /**
+   * Returns registration subtrees that together hold the registrations where the digest of the
+   * object id begins with the prefix {@code digestPrefix} of {@code prefixLen} bits, each of at
+   * most about {@code maxSubtreeSizeBytes} serialized (unbounded if not positive).
+   * <p>
+   * A subtree that is too large is replaced by the subtrees of the two prefixes one bit longer,
+   * recursively; since each subtree identifies its prefix and holds all of the registrations under
+   * it, the server can apply them one at a time, so they can be sent in consecutive messages. A
+   * subtree whose prefix already spans the whole digest, or that holds a single object, cannot be
+   * split and is returned as is.
+   */
+  List<RegistrationSubtree> getRegistrationSubtrees(byte[] digestPrefix, int prefixLen,
+      int maxSubtreeSizeBytes) {
+    List<RegistrationSubtree> subtrees = new ArrayList<RegistrationSubtree>();
+    if ((maxSubtreeSizeBytes <= 0) || (desiredRegistrations.size(digestPrefix, prefixLen) <= 1)) {
+      subtrees.add(getRegistrations(digestPrefix, prefixLen));
+      return subtrees;
+    }
+
+    // Split by the number of objects that fit at the estimated mean size of the objects under the
+    // prefix, so that only the subtrees actually returned are built.
+    int digestBits = 8 * desiredRegistrations.getDigest().length;
+    int maxObjects = Math.max(1,
+        maxSubtreeSizeBytes / getMeanObjectSizeBytes(digestPrefix, prefixLen, digestBits));
+    addRegistrationSubtrees(digestPrefix, prefixLen, maxObjects, maxSubtreeSizeBytes, digestBits,
+        subtrees);
+    return subtrees;
+  }
+
+  /**
+   * Returns the mean serialized size in a registration subtree of the objects under the prefix
+   * {@code digestPrefix} of {@code prefixLen} bits, for digests of {@code digestBits}, estimated
+   * from at most {@link #MAX_SIZE_SAMPLE_OBJECTS} of them.
+   * <p>
+   * REQUIRES: there are objects under the prefix.
+   */
+  private int getMeanObjectSizeBytes(byte[] digestPrefix, int prefixLen, int digestBits) {
+    // Extend the prefix one bit at a time, keeping objects under it, until few enough remain.
+    // Since digests are uniformly distributed, these objects are a fair sample, and they are the
+    // only ones that stores building the objects they return have to build.
+    byte[] samplePrefix = new byte[(digestBits + 7) / 8];
+    System.arraycopy(digestPrefix, 0, samplePrefix, 0,
+        Math.min((prefixLen + 7) / 8, samplePrefix.length));
+    int samplePrefixLen = prefixLen;
+    while ((samplePrefixLen < digestBits) &&
+        (desiredRegistrations.size(samplePrefix, samplePrefixLen) > MAX_SIZE_SAMPLE_OBJECTS)) {
+      int mask = 1 << (7 - (samplePrefixLen % 8));
+      samplePrefix[samplePrefixLen / 8] &= ~mask;
+      if (desiredRegistrations.size(samplePrefix, samplePrefixLen + 1) == 0) {
+        samplePrefix[samplePrefixLen / 8] |= mask;
+      }
+      samplePrefixLen++;
+    }
+    int numSampled = 0;
+    int sampleSizeBytes = 0;
+    for (ObjectIdP objectId : desiredRegistrations.getElements(samplePrefix, samplePrefixLen)) {
+      if (numSampled == MAX_SIZE_SAMPLE_OBJECTS) {
+        break;
+      }
+      sampleSizeBytes += CodedOutputStream.computeMessageSize(
+          RegistrationSubtree.REGISTERED_OBJECT_FIELD_NUMBER, objectId);
+      numSampled++;
+    }
+    return Math.max(1, (sampleSizeBytes + numSampled - 1) / Math.max(1, numSampled));
+  }
+
+  /**
+   * Adds to {@code subtrees} the subtrees for the prefix {@code digestPrefix} of {@code prefixLen}
+   * bits, as described in {@link #getRegistrationSubtrees}, splitting prefixes of more than
+   * {@code maxObjects} objects without building their subtrees.
+   */
+  private void addRegistrationSubtrees(byte[] digestPrefix, int prefixLen, int maxObjects,
+      int maxSubtreeSizeBytes, int digestBits, List<RegistrationSubtree> subtrees) {
+    int numObjects = desiredRegistrations.size(digestPrefix, prefixLen);
+    boolean canSplit = (numObjects > 1) && (prefixLen < digestBits);
+    if (canSplit && (numObjects > maxObjects)) {
+      addChildSubtrees(digestPrefix, prefixLen, maxObjects, maxSubtreeSizeBytes, digestBits,
+          subtrees);
+      return;
+    }
+    RegistrationSubtree subtree = getRegistrations(digestPrefix, prefixLen);
+    if (canSplit && (subtree.getSerializedSize() > maxSubtreeSizeBytes)) {
+      // The objects under this prefix are larger than the mean.
+      addChildSubtrees(digestPrefix, prefixLen, maxObjects, maxSubtreeSizeBytes, digestBits,
+          subtrees);
+      return;
+    }
+    subtrees.add(subtree);
+  }
+
+  /**
+   * Adds to {@code subtrees} the subtrees for the two prefixes one bit longer than the prefix
+   * {@code digestPrefix} of {@code prefixLen} bits, as in {@link #addRegistrationSubtrees}.
+   */
+  private void addChildSubtrees(byte[] digestPrefix, int prefixLen, int maxObjects,
+      int maxSubtreeSizeBytes, int digestBits, List<RegistrationSubtree> subtrees) {
+    int childPrefixLen = prefixLen + 1;
+    for (int bit = 0; bit <= 1; bit++) {
+      byte[] childPrefix = new byte[(childPrefixLen + 7) / 8];
+      System.arraycopy(digestPrefix, 0, childPrefix, 0,
+          Math.min((prefixLen + 7) / 8, childPrefix.length));
+      int mask = 1 << (7 - (prefixLen % 8));
+      if (bit == 1) {
+        childPrefix[prefixLen / 8] |= mask;
+      } else {
+        childPrefix[prefixLen / 8] &= ~mask;
+      }
+      addRegistrationSubtrees(childPrefix, childPrefixLen, maxObjects, maxSubtreeSizeBytes,
+          digestBits, subtrees);
+    }
+  }
+
   /**
    * Handles registration operation statuses from the server. Returns a list of booleans, one per
    * registration status, that indicates whether the registration operation was both successful and
@@ -180,8 +449,12 @@ class RegistrationManager extends InternalBase implements Marshallable<Registrat
 
       // The object is no longer pending, since we have received a server status for it, so
       // remove it from the pendingOperations map. (It may or may not have existed in the map,
-      // since we can receive spontaneous status messages from the server.)
-      TypedUtil.remove(pendingOperations, ProtoWrapper.of(objectIdProto));
+      // since we can receive spontaneous status messages from the server.) The lookup of the
+      // canonical handle allocates nothing.
+      ObjectIdHandle pendingObjectId = interner.find(objectIdProto);
+      if (pendingObjectId != null) {
+        removePendingOperation(pendingObjectId);
+      }
 
       // We start off with the local-processing set as success, then potentially fail.
       boolean isSuccess = true;
@@ -196,7 +469,7 @@ class RegistrationManager extends InternalBase implements Marshallable<Registrat
         if (discrepancyExists) {
           // Remove the registration and set isSuccess to false, which will cause the caller to
           // issue registration-failure to the application.
-          desiredRegistrations.remove(objectIdProto);
+          removeDesiredRegistration(objectIdProto);
           statistics.recordError(ClientErrorType.REGISTRATION_DISCREPANCY);
           logger.info("Ticl discrepancy detected: registered = %s, requested = %s. " +
               "Removing %s from requested",
@@ -206,7 +479,7 @@ class RegistrationManager extends InternalBase implements Marshallable<Registrat
         }
       } else {
         // If the server operation failed, then also local processing fails.
-        desiredRegistrations.remove(objectIdProto);
+        removeDesiredRegistration(objectIdProto);
         logger.fine("Removing %s from committed",
             CommonProtoStrings2.toLazyCompactString(objectIdProto));
         isSuccess = false;
@@ -216,6 +489,13 @@ class RegistrationManager extends InternalBase implements Marshallable<Registrat
     return localStatuses;
   }
 
+  /** Removes {@code objectId} from the desired registrations, if present. */
+  private void removeDesiredRegistration(ObjectIdP objectId) {
+    if (desiredRegistrations.remove(objectId)) {
+      registrationSummary = null;
+    }
+  }
+
   /**
    * Removes all desired registrations and pending operations. Returns all object ids
    * that were affected.
@@ -223,25 +503,63 @@ class RegistrationManager extends InternalBase implements Marshallable<Registrat
    * REQUIRES: the caller issue a permanent failure upcall to the listener for all returned object
    * ids.
    */
-  Collection<ProtoWrapper<ObjectIdP>> removeRegisteredObjects() {
+  Collection<ObjectIdHandle> removeRegisteredObjects() {
     int numObjects = desiredRegistrations.size() + pendingOperations.size();
-    Set<ProtoWrapper<ObjectIdP>> failureCalls = new HashSet<ProtoWrapper<ObjectIdP>>(numObjects);
+    Set<ObjectIdHandle> failureCalls = new HashSet<ObjectIdHandle>(numObjects);
     for (ObjectIdP objectId : desiredRegistrations.removeAll()) {
-      failureCalls.add(ProtoWrapper.of(objectId));
+      failureCalls.add(interner.intern(objectId));
     }
+    registrationSummary = null;
     failureCalls.addAll(pendingOperations.keySet());
-    pendingOperations.clear();
+    clearPendingOperations();
     return failureCalls;
   }
 
+  /** Records a pending operation of type {@code opType} on the object of {@code objectId}. */
+  private void putPendingOperation(ObjectIdHandle objectId, RegistrationP.OpType opType) {
+    pendingOperations.put(interner.acquire(objectId, ObjectIdInterner.PENDING_OPERATION), opType);
+  }
+
+  /** Removes the pending operation on the object of the canonical handle {@code objectId}. */
+  private void removePendingOperation(ObjectIdHandle objectId) {
+    if (pendingOperations.remove(objectId) != null) {
+      interner.release(objectId, ObjectIdInterner.PENDING_OPERATION);
+    }
+  }
+
+  /** Removes all pending operations. */
+  private void clearPendingOperations() {
+    for (ObjectIdHandle objectId : pendingOperations.keySet()) {
+      interner.release(objectId, ObjectIdInterner.PENDING_OPERATION);
+    }
+    pendingOperations.clear();
+  }
+
   //
   // Digest-related methods
   //
 
   /** Returns a summary of the desired registrations. */
   RegistrationSummary getRegistrationSummary() {
-    return CommonProtos2.newRegistrationSummary(desiredRegistrations.size(),
-        desiredRegistrations.getDigest());
+    return getRegistrationSummaryWrapper().getProto();
+  }
+
+  /** Returns the wrapped summary of the desired registrations, building it if needed. */
+  private ProtoWrapper<RegistrationSummary> getRegistrationSummaryWrapper() {
+    if (registrationSummary == null) {
+      registrationSummary = ProtoWrapper.of(CommonProtos2.newRegistrationSummary(
+          desiredRegistrations.size(), desiredRegistrations.getDigest()));
+    }
+    return registrationSummary;
+  }
+
+  /**
+   * Returns a summary of the desired registrations where the digest of the object id begins with
+   * the prefix {@code digestPrefix} of {@code prefixLen} bits.
+   */
+  RegistrationSummary getRegistrationSummary(byte[] digestPrefix, int prefixLen) {
+    return CommonProtos2.newRegistrationSummary(desiredRegistrations.size(digestPrefix, prefixLen),
+        desiredRegistrations.getDigest(digestPrefix, prefixLen));
   }
 
   /**
@@ -259,13 +577,13 @@ class RegistrationManager extends InternalBase implements Marshallable<Registrat
       // upcalls for all operations that we had pending, if any; they are also no longer pending.
       Set<ProtoWrapper<RegistrationP>> upcallsToMake =
           new HashSet<ProtoWrapper<RegistrationP>>(pendingOperations.size());
-      for (Map.Entry<ProtoWrapper<ObjectIdP>, RegistrationP.OpType> entry :
+      for (Map.Entry<ObjectIdHandle, RegistrationP.OpType> entry :
           pendingOperations.entrySet()) {
         ObjectIdP objectId = entry.getKey().getProto();
         boolean isReg = entry.getValue() == OpType.REGISTER;
         upcallsToMake.add(ProtoWrapper.of(CommonProtos2.newRegistrationP(objectId, isReg)));
       }
-      pendingOperations.clear();
+      clearPendingOperations();
       return upcallsToMake;
     } else {
       // If we are not in sync with the server, then the caller should make no upcalls.
@@ -278,7 +596,12 @@ class RegistrationManager extends InternalBase implements Marshallable<Registrat
    * received server summary (from {@link #informServerRegistrationSummary}).
    */
   boolean isStateInSyncWithServer() {
-    return TypedUtil.equals(lastKnownServerSummary, ProtoWrapper.of(getRegistrationSummary()));
+    // Compare the counts first, to avoid recomputing the digest while they differ.
+    if ((lastKnownServerSummary == null) ||
+        (lastKnownServerSummary.getProto().getNumRegistrations() != desiredRegistrations.size())) {
+      return false;
+    }
+    return TypedUtil.equals(lastKnownServerSummary, getRegistrationSummaryWrapper());
   }
 
   @Override
@@ -292,12 +615,13 @@ class RegistrationManager extends InternalBase implements Marshallable<Registrat
     RegistrationManagerStateP.Builder builder = RegistrationManagerStateP.newBuilder();
     builder.setLastKnownServerSummary(lastKnownServerSummary.getProto());
     builder.addAllRegistrations(desiredRegistrations.getElements(EMPTY_PREFIX, 0));
-    for (Map.Entry<ProtoWrapper<ObjectIdP>, RegistrationP.OpType> pendingOp :
+    for (Map.Entry<ObjectIdHandle, RegistrationP.OpType> pendingOp :
         pendingOperations.entrySet()) {
       ObjectIdP objectId = pendingOp.getKey().getProto();
       boolean isReg = pendingOp.getValue() == OpType.REGISTER;
       builder.addPendingOperations(CommonProtos2.newRegistrationP(objectId, isReg));
     }
+    builder.setDigestSerializationType(digestSerializationType);
     return builder.build();
   }
 }
@@ -35,24 +35,40 @@ import java.util.TreeMap;
  */
 class SimpleRegistrationStore extends InternalBase implements DigestStore<ObjectIdP> {
 
-  /** All the registrations in the store mapped from the digest to the Object Id. */
-  private final SortedMap<Bytes, ObjectIdP> registrations = new TreeMap<Bytes, ObjectIdP>();
+  /**
+   * All the registrations in the store mapped from the digest to the canonical Object Id. The key
+   * of each registration is the digest held by its handle.
+   */
+  private final SortedMap<Bytes, ObjectIdHandle> registrations =
+      new TreeMap<Bytes, ObjectIdHandle>();
 
   /** The function used to compute digests of objects. */
   private final DigestFunction digestFunction;
 
-  /** The memoized digest of all objects in registrations. */
+  /** Table of the canonical object ids held by the store, which also carry their digests. */
+  private final ObjectIdInterner interner;
+
+  /**
+   * The memoized digest of all objects in registrations, or {@code null} if the registrations have
+   * changed since it was computed. The digest is only needed when a registration summary is built,
+   * so it is computed lazily rather than on every mutation.
+   */
   private Bytes digest;
 
   SimpleRegistrationStore(DigestFunction digestFunction) {
-    this.digestFunction = digestFunction;
-    recomputeDigest();
+    this(new ObjectIdInterner(digestFunction));
+  }
+
+  /** Constructs a store holding the canonical object ids of {@code interner}. */
+  SimpleRegistrationStore(ObjectIdInterner interner) {
+    this.interner = interner;
+    this.digestFunction = interner.getDigestFunction();
   }
 
   @Override
   public boolean add(ObjectIdP oid) {
-    if (registrations.put(ObjectIdDigestUtils.getDigest(oid, digestFunction), oid) == null) {
-      recomputeDigest();
+    if (addInternal(oid)) {
+      invalidateDigest();
       return true;
     }
     return false;
@@ -62,22 +78,22 @@ class SimpleRegistrationStore extends InternalBase implements DigestStore<Object
   public Collection<ObjectIdP> add(Collection<ObjectIdP> oids) {
     Collection<ObjectIdP> addedOids = new ArrayList<ObjectIdP>();
     for (ObjectIdP oid : oids) {
-      if (registrations.put(ObjectIdDigestUtils.getDigest(oid, digestFunction), oid) == null) {
+      if (addInternal(oid)) {
         // There was no previous value, so this is a new item.
         addedOids.add(oid);
       }
     }
     if (!addedOids.isEmpty()) {
-      // Only recompute the digest if we made changes.
-      recomputeDigest();
+      // Only invalidate the digest if we made changes.
+      invalidateDigest();
     }
     return addedOids;
   }
 
   @Override
   public boolean remove(ObjectIdP oid) {
-    if (registrations.remove(ObjectIdDigestUtils.getDigest(oid, digestFunction)) != null) {
-      recomputeDigest();
+    if (removeInternal(oid)) {
+      invalidateDigest();
       return true;
     }
     return false;
@@ -87,28 +103,32 @@ class SimpleRegistrationStore extends InternalBase implements DigestStore<Object
   public Collection<ObjectIdP> remove(Collection<ObjectIdP> oids) {
     Collection<ObjectIdP> removedOids = new ArrayList<ObjectIdP>();
     for (ObjectIdP oid : oids) {
-      if (registrations.remove(ObjectIdDigestUtils.getDigest(oid, digestFunction)) != null) {
+      if (removeInternal(oid)) {
         removedOids.add(oid);
       }
     }
     if (!removedOids.isEmpty()) {
-      // Only recompute the digest if we made changes.
-      recomputeDigest();
+      // Only invalidate the digest if we made changes.
+      invalidateDigest();
     }
     return removedOids;
   }
 
   @Override
   public Collection<ObjectIdP> removeAll() {
-    Collection<ObjectIdP> result = new ArrayList<ObjectIdP>(registrations.values());
+    Collection<ObjectIdP> result =
+        new ArrayList<ObjectIdP>(ObjectIdInterner.unwrap(registrations.values()));
+    for (ObjectIdHandle handle : registrations.values()) {
+      interner.release(handle, ObjectIdInterner.DESIRED_REGISTRATION);
+    }
     registrations.clear();
-    recomputeDigest();
+    invalidateDigest();
     return result;
   }
 
   @Override
   public boolean contains(ObjectIdP oid) {
-    return registrations.containsKey(ObjectIdDigestUtils.getDigest(oid, digestFunction));
+    return registrations.containsKey(interner.getDigest(oid));
   }
 
   @Override
@@ -116,27 +136,73 @@ class SimpleRegistrationStore extends InternalBase implements DigestStore<Object
     return registrations.size();
   }
 
+  @Override
+  public int size(byte[] oidDigestPrefix, int prefixLen) {
+    return ObjectIdDigestUtils.getPrefixRange(registrations, oidDigestPrefix, prefixLen).size();
+  }
+
   @Override
   public byte[] getDigest() {
-    return digest.getByteArray();
+    return getMemoizedDigest().getByteArray();
+  }
+
+  @Override
+  public byte[] getDigest(byte[] oidDigestPrefix, int prefixLen) {
+    if (prefixLen == 0) {
+      return getDigest();
+    }
+    return ObjectIdDigestUtils.getDigest(
+        ObjectIdDigestUtils.getPrefixRange(registrations, oidDigestPrefix, prefixLen).keySet(),
+        digestFunction).getByteArray();
   }
 
   @Override
   public Collection<ObjectIdP> getElements(byte[] oidDigestPrefix, int prefixLen) {
-    // We always return all the registrations and let the Ticl sort it out.
-    return registrations.values();
+    return ObjectIdInterner.unwrap(
+        ObjectIdDigestUtils.getPrefixRange(registrations, oidDigestPrefix, prefixLen).values());
+  }
+
+  /** Adds the canonical form of {@code oid} if not present, returning whether it was added. */
+  private boolean addInternal(ObjectIdP oid) {
+    // Intern first, so that the digest is memoized with the canonical object id.
+    ObjectIdHandle handle = interner.intern(oid);
+    Bytes oidDigest = interner.getDigest(handle);
+    if (registrations.containsKey(oidDigest)) {
+      return false;
+    }
+    registrations.put(oidDigest, interner.acquire(handle, ObjectIdInterner.DESIRED_REGISTRATION));
+    return true;
+  }
+
+  /** Removes {@code oid} if present, returning whether it was removed. */
+  private boolean removeInternal(ObjectIdP oid) {
+    ObjectIdHandle handle = registrations.remove(interner.getDigest(oid));
+    if (handle == null) {
+      return false;
+    }
+    interner.release(handle, ObjectIdInterner.DESIRED_REGISTRATION);
+    return true;
   }
 
-  /** Recomputes the digests over all objects and sets {@code this.digest}. */
-  private void recomputeDigest() {
-    this.digest = ObjectIdDigestUtils.getDigest(registrations.keySet(), digestFunction);
+  /** Marks the memoized digest as stale, to be recomputed when next needed. */
+  private void invalidateDigest() {
+    this.digest = null;
+  }
+
+  /** Returns the digest over all objects, recomputing it if the registrations have changed. */
+  private Bytes getMemoizedDigest() {
+    if (digest == null) {
+      digest = ObjectIdDigestUtils.getDigest(registrations.keySet(), digestFunction);
+    }
+    return digest;
   }
 
   @Override
   public void toCompactString(TextBuilder builder) {
     builder.append("<SimpleRegistrationStore: registrations=");
-    CommonProtoStrings2.toCompactStringForObjectIds(builder, registrations.values());
-    builder.append(", digest=").append(digest)
+    CommonProtoStrings2.toCompactStringForObjectIds(builder,
+        ObjectIdInterner.unwrap(registrations.values()));
+    builder.append(", digest=").append(getMemoizedDigest())
         .append(">");
   }
 }
@@ -127,6 +127,30 @@ public class Statistics extends InternalBase implements Marshallable<StatisticsS
     TOKEN_TRANSIENT_FAILURE,
   }
 
+  /** Values sampled by the Ticl; unlike the other statistics, these are set, not counted. */
+  public enum GaugeType {
+    /** Delay with which the batching task was most recently scheduled. */
+    BATCHING_DELAY_MS,
+
+    /**
+     * Size on the wire of the bodies of the messages sent so far whose compression was attempted,
+     * as a percentage of their uncompressed size.
+     */
+    COMPRESSION_RATIO_PERCENT,
+
+    /** Time spent compressing the bodies of messages sent so far, in microseconds. */
+    COMPRESSION_TIME_US,
+
+    /**
+     * Size on the wire of the compressed bodies received so far, as a percentage of their
+     * uncompressed size.
+     */
+    DECOMPRESSION_RATIO_PERCENT,
+
+    /** Time spent decompressing the bodies of messages received so far, in microseconds. */
+    DECOMPRESSION_TIME_US,
+  }
+
   // Names of statistics types. Do not rely on reflection to determine type names because Proguard
   // may change them for Android clients.
   private static final String SENT_MESSAGE_TYPE_NAME = "SentMessageType";
@@ -134,6 +158,7 @@ public class Statistics extends InternalBase implements Marshallable<StatisticsS
   private static final String RECEIVED_MESSAGE_TYPE_NAME = "ReceivedMessageType";
   private static final String LISTENER_EVENT_TYPE_NAME = "ListenerEventType";
   private static final String CLIENT_ERROR_TYPE_NAME = "ClientErrorType";
+  private static final String GAUGE_TYPE_NAME = "GaugeType";
 
   // Map from stats enum names to values. Used in place of Enum.valueOf() because this method
   // invokes Enum.values() via reflection, and that method may be renamed by Proguard.
@@ -147,6 +172,8 @@ public class Statistics extends InternalBase implements Marshallable<StatisticsS
       createValueOfMap(ListenerEventType.values());
   private static final Map<String, ClientErrorType> CLIENT_ERROR_TYPE_NAME_TO_VALUE_MAP =
       createValueOfMap(ClientErrorType.values());
+  private static final Map<String, GaugeType> GAUGE_TYPE_NAME_TO_VALUE_MAP =
+      createValueOfMap(GaugeType.values());
 
   // Maps for each type of Statistic to keep track of how many times each event has occurred.
 
@@ -160,6 +187,7 @@ public class Statistics extends InternalBase implements Marshallable<StatisticsS
       new HashMap<ListenerEventType, Integer>();
   private final Map<ClientErrorType, Integer> clientErrorTypes =
       new HashMap<ClientErrorType, Integer>();
+  private final Map<GaugeType, Integer> gaugeTypes = new HashMap<GaugeType, Integer>();
 
   public Statistics() {
     initializeMap(sentMessageTypes, SentMessageType.values());
@@ -167,6 +195,7 @@ public class Statistics extends InternalBase implements Marshallable<StatisticsS
     initializeMap(incomingOperationTypes, IncomingOperationType.values());
     initializeMap(listenerEventTypes, ListenerEventType.values());
     initializeMap(clientErrorTypes, ClientErrorType.values());
+    initializeMap(gaugeTypes, GaugeType.values());
   }
 
   /** Returns a copy of this. */
@@ -177,6 +206,7 @@ public class Statistics extends InternalBase implements Marshallable<StatisticsS
     statistics.incomingOperationTypes.putAll(incomingOperationTypes);
     statistics.listenerEventTypes.putAll(listenerEventTypes);
     statistics.clientErrorTypes.putAll(clientErrorTypes);
+    statistics.gaugeTypes.putAll(gaugeTypes);
     return statistics;
   }
 
@@ -223,6 +253,11 @@ public class Statistics extends InternalBase implements Marshallable<StatisticsS
     incrementValue(clientErrorTypes, clientErrorType);
   }
 
+  /** Records that the current value of {@code gaugeType} is {@code value}. */
+  public void recordGaugeValue(GaugeType gaugeType, int value) {
+    gaugeTypes.put(gaugeType, value);
+  }
+
   /**
    * Modifies {@code performanceCounters} to contain all the statistics that are non-zero. Each pair
    * has the name of the statistic event and the number of times that event has occurred since the
@@ -237,6 +272,7 @@ public class Statistics extends InternalBase implements Marshallable<StatisticsS
         INCOMING_OPERATION_TYPE_NAME);
     fillWithNonZeroStatistics(listenerEventTypes, performanceCounters, LISTENER_EVENT_TYPE_NAME);
     fillWithNonZeroStatistics(clientErrorTypes, performanceCounters, CLIENT_ERROR_TYPE_NAME);
+    fillWithNonZeroStatistics(gaugeTypes, performanceCounters, GAUGE_TYPE_NAME);
   }
 
   /** Modifies {@code result} to contain those statistics from {@code map} whose value is > 0. */
@@ -328,6 +364,9 @@ public class Statistics extends InternalBase implements Marshallable<StatisticsS
       } else if (TypedUtil.<String>equals(className,  CLIENT_ERROR_TYPE_NAME)) {
         incrementPerformanceCounterValue(logger, CLIENT_ERROR_TYPE_NAME_TO_VALUE_MAP,
             statistics.clientErrorTypes, fieldName, counterValue);
+      } else if (TypedUtil.<String>equals(className, GAUGE_TYPE_NAME)) {
+        incrementPerformanceCounterValue(logger, GAUGE_TYPE_NAME_TO_VALUE_MAP,
+            statistics.gaugeTypes, fieldName, counterValue);
       } else {
         logger.warning("Skipping unknown enum class name %s", className);
       }
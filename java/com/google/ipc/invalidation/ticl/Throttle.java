@@ -0,0 +1,104 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.ipc.invalidation.ticl;
+
+import com.google.common.base.Preconditions;
+import com.google.protos.ipc.invalidation.ClientProtocol.RateLimitP;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Multi-level rate limiting of events, e.g., no more than one message per second and six per
+ * minute. Implemented by keeping the times of the most recent events, as many as the largest
+ * {@code count} of the rate limits; so the space used is proportional to that count.
+ * <p>
+ * Unlike the C++ throttle, this class does not schedule deferred calls itself (on Android, all
+ * future work must be a recurring task): callers ask for the delay before the next event is
+ * allowed and retry after it.
+ * <p>
+ * This class is not thread-safe.
+ *
+ */
+class Throttle {
+
+  /** Rate limits to be enforced by this object. */
+  private final List<RateLimitP> rateLimits;
+
+  /** The maximum number of recent event times to retain. */
+  private final int maxRecentEvents;
+
+  /** Times of the most recent events, oldest first. */
+  private final LinkedList<Long> recentEventTimesMs = new LinkedList<Long>();
+
+  /**
+   * Creates a throttle enforcing {@code rateLimits}, given the times at which the most recent
+   * events occurred, oldest first (e.g., as previously returned by {@link #getRecentEventTimesMs}).
+   */
+  Throttle(List<RateLimitP> rateLimits, Collection<Long> recentEventTimesMs) {
+    this.rateLimits = new ArrayList<RateLimitP>(rateLimits);
+
+    // The largest count of all the rate limits is the number of event times to retain.
+    int maxCount = 1;
+    for (RateLimitP rateLimit : rateLimits) {
+      Preconditions.checkArgument(rateLimit.getWindowMs() > rateLimit.getCount(),
+          "Window size too small: %s", rateLimit);
+      maxCount = Math.max(maxCount, rateLimit.getCount());
+    }
+    this.maxRecentEvents = maxCount;
+    for (Long eventTimeMs : recentEventTimesMs) {
+      recordEvent(eventTimeMs);
+    }
+  }
+
+  /**
+   * Returns the time in milliseconds after {@code nowMs} at which an event would no longer violate
+   * any rate limit, or {@code 0} if an event may occur now.
+   */
+  long getDelayMs(long nowMs) {
+    long delayMs = 0;
+    int numRecentEvents = recentEventTimesMs.size();
+    for (RateLimitP rateLimit : rateLimits) {
+      int count = rateLimit.getCount();
+
+      // Only limits whose count has been reached can be violated.
+      if ((count > 0) && (numRecentEvents >= count)) {
+        // The count-th last event starts a window in which no more than count events may occur.
+        long windowStartMs = recentEventTimesMs.get(numRecentEvents - count);
+        delayMs = Math.max(delayMs, windowStartMs + rateLimit.getWindowMs() - nowMs);
+      }
+    }
+    return delayMs;
+  }
+
+  /** Records that an event occurred at {@code eventTimeMs}. */
+  void recordEvent(long eventTimeMs) {
+    recentEventTimesMs.addLast(eventTimeMs);
+
+    // Only retain up to maxRecentEvents event times.
+    if (recentEventTimesMs.size() > maxRecentEvents) {
+      recentEventTimesMs.removeFirst();
+    }
+  }
+
+  /** Returns the times of the most recent events, oldest first. */
+  List<Long> getRecentEventTimesMs() {
+    return new ArrayList<Long>(recentEventTimesMs);
+  }
+}
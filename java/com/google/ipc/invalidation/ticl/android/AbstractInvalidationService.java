@@ -137,6 +137,9 @@ public abstract class AbstractInvalidationService extends Service {
           case DESTROY:
             destroy(request, response);
             break;
+          case SET_REGISTRATIONS:
+            setRegistrations(request, response);
+            break;
           default:
             throw new IllegalStateException("Unknown action:" + action);
         }
@@ -164,6 +167,8 @@ public abstract class AbstractInvalidationService extends Service {
 
   protected abstract void destroy(Request request, Response.Builder response);
 
+  protected abstract void setRegistrations(Request request, Response.Builder response);
+
   /**
    * Send event messages to application clients and provides common processing
    * of the response.
@@ -315,6 +315,11 @@ class AndroidClientProxy implements AndroidInvalidationClient {
     delegate.unregister(objectId);
   }
 
+  @Override
+  public void setRegistrations(Collection<ObjectId> objectIds) {
+    delegate.setRegistrations(objectIds);
+  }
+
   @Override
   public void acknowledge(AckHandle ackHandle) {
     delegate.acknowledge(ackHandle);
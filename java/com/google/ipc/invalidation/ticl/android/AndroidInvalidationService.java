@@ -415,6 +415,15 @@ public class AndroidInvalidationService extends AbstractInvalidationService {
     }
   }
 
+  @Override
+  protected void setRegistrations(Request request, Response.Builder response) {
+    String clientKey = request.getClientKey();
+    AndroidInvalidationClient client = clientManager.get(clientKey);
+    if (setResponseStatus(client, request, response)) {
+      client.setRegistrations(request.getObjectIds());
+    }
+  }
+
   @Override
   protected void acknowledge(Request request, Response.Builder response) {
     String clientKey = request.getClientKey();
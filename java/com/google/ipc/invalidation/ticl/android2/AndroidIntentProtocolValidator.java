@@ -31,6 +31,7 @@ import com.google.protos.ipc.invalidation.AndroidService.AndroidNetworkSendReque
 import com.google.protos.ipc.invalidation.AndroidService.AndroidSchedulerEvent;
 import com.google.protos.ipc.invalidation.AndroidService.AndroidTiclStateWithDigest;
 import com.google.protos.ipc.invalidation.AndroidService.ClientDowncall;
+import com.google.protos.ipc.invalidation.AndroidService.ClientDowncall.RegistrationDowncall;
 import com.google.protos.ipc.invalidation.AndroidService.InternalDowncall;
 import com.google.protos.ipc.invalidation.AndroidService.ListenerUpcall;
 import com.google.protos.ipc.invalidation.ClientProtocol.Version;
@@ -56,8 +57,8 @@ import com.google.protos.ipc.invalidation.ClientProtocol.Version;
  * exactly one field (ack handle) set.
  * <p>
  * For a more complicated example, the {{@link DowncallMessageInfos#REGISTRATIONS} validator
- * requires one or the other (but not both) of two fields to be set, and those fields are
- * recursively validated.
+ * requires one or the other (but not both) of two fields to be set, unless the downcall carries a
+ * full set of registrations, and those fields are recursively validated.
  *
  */
 public final class AndroidIntentProtocolValidator extends ProtoValidator {
@@ -86,15 +87,21 @@ public final class AndroidIntentProtocolValidator extends ProtoValidator {
         ClientDowncallAccessor.REGISTRATION_DOWNCALL_ACCESSOR,
         FieldInfo.newOptional(ClientDowncallAccessor.RegistrationDowncallAccessor.REGISTRATIONS),
         FieldInfo.newOptional(
-            ClientDowncallAccessor.RegistrationDowncallAccessor.UNREGISTRATIONS)) {
+            ClientDowncallAccessor.RegistrationDowncallAccessor.UNREGISTRATIONS),
+        FieldInfo.newOptional(ClientDowncallAccessor.RegistrationDowncallAccessor.IS_FULL_SET)) {
       @Override
       public boolean postValidate(MessageLite message) {
+        RegistrationDowncall downcall = (RegistrationDowncall) message;
+        if (downcall.getIsFullSet()) {
+          // A full set of registrations, possibly empty; there is nothing to unregister.
+          return downcall.getUnregistrationsCount() == 0;
+        }
         int numSetFields = 0;
-        for (FieldInfo fieldInfo : getAllFields()) {
-          if (ClientDowncallAccessor.REGISTRATION_DOWNCALL_ACCESSOR.hasField(
-              message, fieldInfo.getFieldDescriptor())) {
-           ++numSetFields;
-          }
+        if (downcall.getRegistrationsCount() > 0) {
+          ++numSetFields;
+        }
+        if (downcall.getUnregistrationsCount() > 0) {
+          ++numSetFields;
         }
         return numSetFields == 1; // Registrations or unregistrations, but not both.
       }
@@ -97,6 +97,12 @@ class AndroidInvalidationClientStub implements InvalidationClient {
     issueIntent(ClientDowncalls.newUnregistrationIntent(objectIdPs));
   }
 
+  @Override
+  public void setRegistrations(Collection<ObjectId> objectIds) {
+    List<ObjectIdP> objectIdPs = ProtoConverter.convertToObjectIdProtoList(objectIds);
+    issueIntent(ClientDowncalls.newSetRegistrationsIntent(objectIdPs));
+  }
+
   @Override
   public void acknowledge(AckHandle ackHandle) {
     try {
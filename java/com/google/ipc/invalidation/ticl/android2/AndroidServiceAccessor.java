@@ -60,8 +60,8 @@ public class AndroidServiceAccessor {
         "message"
       ));
     
-    public static final Descriptor VERSION = new Descriptor("version");
-    public static final Descriptor MESSAGE = new Descriptor("message");
+    public static final Descriptor VERSION = new Descriptor("version", 1);
+    public static final Descriptor MESSAGE = new Descriptor("message", 2);
     
     /** Returns whether {@code field} is present in {@code message}. */
     @Override
@@ -70,11 +70,19 @@ public class AndroidServiceAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       AndroidNetworkSendRequest message = (AndroidNetworkSendRequest) rawMessage;
-      if (field == VERSION) {
-        return message.hasVersion();
-      }
-      if (field == MESSAGE) {
-        return message.hasMessage();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == VERSION) {
+            return message.hasVersion();
+          }
+          break;
+        case 2:
+          if (field == MESSAGE) {
+            return message.hasMessage();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -86,11 +94,19 @@ public class AndroidServiceAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       AndroidNetworkSendRequest message = (AndroidNetworkSendRequest) rawMessage;
-      if (field == VERSION) {
-        return message.getVersion();
-      }
-      if (field == MESSAGE) {
-        return message.getMessage();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == VERSION) {
+            return message.getVersion();
+          }
+          break;
+        case 2:
+          if (field == MESSAGE) {
+            return message.getMessage();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -111,9 +127,9 @@ public class AndroidServiceAccessor {
         "ticl_id"
       ));
     
-    public static final Descriptor VERSION = new Descriptor("version");
-    public static final Descriptor EVENT_NAME = new Descriptor("event_name");
-    public static final Descriptor TICL_ID = new Descriptor("ticl_id");
+    public static final Descriptor VERSION = new Descriptor("version", 1);
+    public static final Descriptor EVENT_NAME = new Descriptor("event_name", 2);
+    public static final Descriptor TICL_ID = new Descriptor("ticl_id", 3);
     
     /** Returns whether {@code field} is present in {@code message}. */
     @Override
@@ -122,14 +138,24 @@ public class AndroidServiceAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       AndroidSchedulerEvent message = (AndroidSchedulerEvent) rawMessage;
-      if (field == VERSION) {
-        return message.hasVersion();
-      }
-      if (field == EVENT_NAME) {
-        return message.hasEventName();
-      }
-      if (field == TICL_ID) {
-        return message.hasTiclId();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == VERSION) {
+            return message.hasVersion();
+          }
+          break;
+        case 2:
+          if (field == EVENT_NAME) {
+            return message.hasEventName();
+          }
+          break;
+        case 3:
+          if (field == TICL_ID) {
+            return message.hasTiclId();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -141,14 +167,24 @@ public class AndroidServiceAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       AndroidSchedulerEvent message = (AndroidSchedulerEvent) rawMessage;
-      if (field == VERSION) {
-        return message.getVersion();
-      }
-      if (field == EVENT_NAME) {
-        return message.getEventName();
-      }
-      if (field == TICL_ID) {
-        return message.getTiclId();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == VERSION) {
+            return message.getVersion();
+          }
+          break;
+        case 2:
+          if (field == EVENT_NAME) {
+            return message.getEventName();
+          }
+          break;
+        case 3:
+          if (field == TICL_ID) {
+            return message.getTiclId();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -172,10 +208,10 @@ public class AndroidServiceAccessor {
           "client_config"
         ));
       
-      public static final Descriptor CLIENT_TYPE = new Descriptor("client_type");
-      public static final Descriptor CLIENT_NAME = new Descriptor("client_name");
-      public static final Descriptor TICL_ID = new Descriptor("ticl_id");
-      public static final Descriptor CLIENT_CONFIG = new Descriptor("client_config");
+      public static final Descriptor CLIENT_TYPE = new Descriptor("client_type", 1);
+      public static final Descriptor CLIENT_NAME = new Descriptor("client_name", 2);
+      public static final Descriptor TICL_ID = new Descriptor("ticl_id", 3);
+      public static final Descriptor CLIENT_CONFIG = new Descriptor("client_config", 4);
       
       /** Returns whether {@code field} is present in {@code message}. */
       @Override
@@ -184,17 +220,29 @@ public class AndroidServiceAccessor {
         Preconditions.checkNotNull(rawMessage);
         Preconditions.checkNotNull(field);
         Metadata message = (Metadata) rawMessage;
-        if (field == CLIENT_TYPE) {
-          return message.hasClientType();
-        }
-        if (field == CLIENT_NAME) {
-          return message.hasClientName();
-        }
-        if (field == TICL_ID) {
-          return message.hasTiclId();
-        }
-        if (field == CLIENT_CONFIG) {
-          return message.hasClientConfig();
+        switch (field.getNumber()) {
+          case 1:
+            if (field == CLIENT_TYPE) {
+              return message.hasClientType();
+            }
+            break;
+          case 2:
+            if (field == CLIENT_NAME) {
+              return message.hasClientName();
+            }
+            break;
+          case 3:
+            if (field == TICL_ID) {
+              return message.hasTiclId();
+            }
+            break;
+          case 4:
+            if (field == CLIENT_CONFIG) {
+              return message.hasClientConfig();
+            }
+            break;
+          default:
+            break;
         }
         throw new IllegalArgumentException("Bad descriptor: " + field);
       }
@@ -206,17 +254,29 @@ public class AndroidServiceAccessor {
         Preconditions.checkNotNull(rawMessage);
         Preconditions.checkNotNull(field);
         Metadata message = (Metadata) rawMessage;
-        if (field == CLIENT_TYPE) {
-          return message.getClientType();
-        }
-        if (field == CLIENT_NAME) {
-          return message.getClientName();
-        }
-        if (field == TICL_ID) {
-          return message.getTiclId();
-        }
-        if (field == CLIENT_CONFIG) {
-          return message.getClientConfig();
+        switch (field.getNumber()) {
+          case 1:
+            if (field == CLIENT_TYPE) {
+              return message.getClientType();
+            }
+            break;
+          case 2:
+            if (field == CLIENT_NAME) {
+              return message.getClientName();
+            }
+            break;
+          case 3:
+            if (field == TICL_ID) {
+              return message.getTiclId();
+            }
+            break;
+          case 4:
+            if (field == CLIENT_CONFIG) {
+              return message.getClientConfig();
+            }
+            break;
+          default:
+            break;
         }
         throw new IllegalArgumentException("Bad descriptor: " + field);
       }
@@ -235,9 +295,9 @@ public class AndroidServiceAccessor {
         "metadata"
       ));
     
-    public static final Descriptor VERSION = new Descriptor("version");
-    public static final Descriptor TICL_STATE = new Descriptor("ticl_state");
-    public static final Descriptor METADATA = new Descriptor("metadata");
+    public static final Descriptor VERSION = new Descriptor("version", 1);
+    public static final Descriptor TICL_STATE = new Descriptor("ticl_state", 2);
+    public static final Descriptor METADATA = new Descriptor("metadata", 3);
     
     /** Returns whether {@code field} is present in {@code message}. */
     @Override
@@ -246,14 +306,24 @@ public class AndroidServiceAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       AndroidTiclState message = (AndroidTiclState) rawMessage;
-      if (field == VERSION) {
-        return message.hasVersion();
-      }
-      if (field == TICL_STATE) {
-        return message.hasTiclState();
-      }
-      if (field == METADATA) {
-        return message.hasMetadata();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == VERSION) {
+            return message.hasVersion();
+          }
+          break;
+        case 2:
+          if (field == TICL_STATE) {
+            return message.hasTiclState();
+          }
+          break;
+        case 3:
+          if (field == METADATA) {
+            return message.hasMetadata();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -265,14 +335,24 @@ public class AndroidServiceAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       AndroidTiclState message = (AndroidTiclState) rawMessage;
-      if (field == VERSION) {
-        return message.getVersion();
-      }
-      if (field == TICL_STATE) {
-        return message.getTiclState();
-      }
-      if (field == METADATA) {
-        return message.getMetadata();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == VERSION) {
+            return message.getVersion();
+          }
+          break;
+        case 2:
+          if (field == TICL_STATE) {
+            return message.getTiclState();
+          }
+          break;
+        case 3:
+          if (field == METADATA) {
+            return message.getMetadata();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -292,8 +372,8 @@ public class AndroidServiceAccessor {
         "digest"
       ));
     
-    public static final Descriptor STATE = new Descriptor("state");
-    public static final Descriptor DIGEST = new Descriptor("digest");
+    public static final Descriptor STATE = new Descriptor("state", 1);
+    public static final Descriptor DIGEST = new Descriptor("digest", 2);
     
     /** Returns whether {@code field} is present in {@code message}. */
     @Override
@@ -302,11 +382,19 @@ public class AndroidServiceAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       AndroidTiclStateWithDigest message = (AndroidTiclStateWithDigest) rawMessage;
-      if (field == STATE) {
-        return message.hasState();
-      }
-      if (field == DIGEST) {
-        return message.hasDigest();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == STATE) {
+            return message.hasState();
+          }
+          break;
+        case 2:
+          if (field == DIGEST) {
+            return message.hasDigest();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -318,11 +406,19 @@ public class AndroidServiceAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       AndroidTiclStateWithDigest message = (AndroidTiclStateWithDigest) rawMessage;
-      if (field == STATE) {
-        return message.getState();
-      }
-      if (field == DIGEST) {
-        return message.getDigest();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == STATE) {
+            return message.getState();
+          }
+          break;
+        case 2:
+          if (field == DIGEST) {
+            return message.getDigest();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -341,11 +437,13 @@ public class AndroidServiceAccessor {
       private static final Set<String> ALL_FIELD_NAMES = new HashSet<String>(
         Arrays.<String>asList(
           "registrations",
-          "unregistrations"
+          "unregistrations",
+          "is_full_set"
         ));
       
-      public static final Descriptor REGISTRATIONS = new Descriptor("registrations");
-      public static final Descriptor UNREGISTRATIONS = new Descriptor("unregistrations");
+      public static final Descriptor REGISTRATIONS = new Descriptor("registrations", 1);
+      public static final Descriptor UNREGISTRATIONS = new Descriptor("unregistrations", 2);
+      public static final Descriptor IS_FULL_SET = new Descriptor("is_full_set", 3);
       
       /** Returns whether {@code field} is present in {@code message}. */
       @Override
@@ -354,11 +452,24 @@ public class AndroidServiceAccessor {
         Preconditions.checkNotNull(rawMessage);
         Preconditions.checkNotNull(field);
         RegistrationDowncall message = (RegistrationDowncall) rawMessage;
-        if (field == REGISTRATIONS) {
-          return message.getRegistrationsCount() > 0;
-        }
-        if (field == UNREGISTRATIONS) {
-          return message.getUnregistrationsCount() > 0;
+        switch (field.getNumber()) {
+          case 1:
+            if (field == REGISTRATIONS) {
+              return message.getRegistrationsCount() > 0;
+            }
+            break;
+          case 2:
+            if (field == UNREGISTRATIONS) {
+              return message.getUnregistrationsCount() > 0;
+            }
+            break;
+          case 3:
+            if (field == IS_FULL_SET) {
+              return message.hasIsFullSet();
+            }
+            break;
+          default:
+            break;
         }
         throw new IllegalArgumentException("Bad descriptor: " + field);
       }
@@ -370,11 +481,24 @@ public class AndroidServiceAccessor {
         Preconditions.checkNotNull(rawMessage);
         Preconditions.checkNotNull(field);
         RegistrationDowncall message = (RegistrationDowncall) rawMessage;
-        if (field == REGISTRATIONS) {
-          return message.getRegistrationsList();
-        }
-        if (field == UNREGISTRATIONS) {
-          return message.getUnregistrationsList();
+        switch (field.getNumber()) {
+          case 1:
+            if (field == REGISTRATIONS) {
+              return message.getRegistrationsList();
+            }
+            break;
+          case 2:
+            if (field == UNREGISTRATIONS) {
+              return message.getUnregistrationsList();
+            }
+            break;
+          case 3:
+            if (field == IS_FULL_SET) {
+              return message.getIsFullSet();
+            }
+            break;
+          default:
+            break;
         }
         throw new IllegalArgumentException("Bad descriptor: " + field);
       }
@@ -393,7 +517,7 @@ public class AndroidServiceAccessor {
           "ack_handle"
         ));
       
-      public static final Descriptor ACK_HANDLE = new Descriptor("ack_handle");
+      public static final Descriptor ACK_HANDLE = new Descriptor("ack_handle", 1);
       
       /** Returns whether {@code field} is present in {@code message}. */
       @Override
@@ -402,8 +526,14 @@ public class AndroidServiceAccessor {
         Preconditions.checkNotNull(rawMessage);
         Preconditions.checkNotNull(field);
         AckDowncall message = (AckDowncall) rawMessage;
-        if (field == ACK_HANDLE) {
-          return message.hasAckHandle();
+        switch (field.getNumber()) {
+          case 1:
+            if (field == ACK_HANDLE) {
+              return message.hasAckHandle();
+            }
+            break;
+          default:
+            break;
         }
         throw new IllegalArgumentException("Bad descriptor: " + field);
       }
@@ -415,8 +545,14 @@ public class AndroidServiceAccessor {
         Preconditions.checkNotNull(rawMessage);
         Preconditions.checkNotNull(field);
         AckDowncall message = (AckDowncall) rawMessage;
-        if (field == ACK_HANDLE) {
-          return message.getAckHandle();
+        switch (field.getNumber()) {
+          case 1:
+            if (field == ACK_HANDLE) {
+              return message.getAckHandle();
+            }
+            break;
+          default:
+            break;
         }
         throw new IllegalArgumentException("Bad descriptor: " + field);
       }
@@ -506,12 +642,12 @@ public class AndroidServiceAccessor {
         "registrations"
       ));
     
-    public static final Descriptor SERIAL = new Descriptor("serial");
-    public static final Descriptor VERSION = new Descriptor("version");
-    public static final Descriptor START = new Descriptor("start");
-    public static final Descriptor STOP = new Descriptor("stop");
-    public static final Descriptor ACK = new Descriptor("ack");
-    public static final Descriptor REGISTRATIONS = new Descriptor("registrations");
+    public static final Descriptor SERIAL = new Descriptor("serial", 1);
+    public static final Descriptor VERSION = new Descriptor("version", 2);
+    public static final Descriptor START = new Descriptor("start", 3);
+    public static final Descriptor STOP = new Descriptor("stop", 4);
+    public static final Descriptor ACK = new Descriptor("ack", 5);
+    public static final Descriptor REGISTRATIONS = new Descriptor("registrations", 6);
     
     /** Returns whether {@code field} is present in {@code message}. */
     @Override
@@ -520,23 +656,39 @@ public class AndroidServiceAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       ClientDowncall message = (ClientDowncall) rawMessage;
-      if (field == SERIAL) {
-        return message.hasSerial();
-      }
-      if (field == VERSION) {
-        return message.hasVersion();
-      }
-      if (field == START) {
-        return message.hasStart();
-      }
-      if (field == STOP) {
-        return message.hasStop();
-      }
-      if (field == ACK) {
-        return message.hasAck();
-      }
-      if (field == REGISTRATIONS) {
-        return message.hasRegistrations();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == SERIAL) {
+            return message.hasSerial();
+          }
+          break;
+        case 2:
+          if (field == VERSION) {
+            return message.hasVersion();
+          }
+          break;
+        case 3:
+          if (field == START) {
+            return message.hasStart();
+          }
+          break;
+        case 4:
+          if (field == STOP) {
+            return message.hasStop();
+          }
+          break;
+        case 5:
+          if (field == ACK) {
+            return message.hasAck();
+          }
+          break;
+        case 6:
+          if (field == REGISTRATIONS) {
+            return message.hasRegistrations();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -548,23 +700,39 @@ public class AndroidServiceAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       ClientDowncall message = (ClientDowncall) rawMessage;
-      if (field == SERIAL) {
-        return message.getSerial();
-      }
-      if (field == VERSION) {
-        return message.getVersion();
-      }
-      if (field == START) {
-        return message.getStart();
-      }
-      if (field == STOP) {
-        return message.getStop();
-      }
-      if (field == ACK) {
-        return message.getAck();
-      }
-      if (field == REGISTRATIONS) {
-        return message.getRegistrations();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == SERIAL) {
+            return message.getSerial();
+          }
+          break;
+        case 2:
+          if (field == VERSION) {
+            return message.getVersion();
+          }
+          break;
+        case 3:
+          if (field == START) {
+            return message.getStart();
+          }
+          break;
+        case 4:
+          if (field == STOP) {
+            return message.getStop();
+          }
+          break;
+        case 5:
+          if (field == ACK) {
+            return message.getAck();
+          }
+          break;
+        case 6:
+          if (field == REGISTRATIONS) {
+            return message.getRegistrations();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -588,10 +756,10 @@ public class AndroidServiceAccessor {
           "skip_start_for_test"
         ));
       
-      public static final Descriptor CLIENT_TYPE = new Descriptor("client_type");
-      public static final Descriptor CLIENT_NAME = new Descriptor("client_name");
-      public static final Descriptor CLIENT_CONFIG = new Descriptor("client_config");
-      public static final Descriptor SKIP_START_FOR_TEST = new Descriptor("skip_start_for_test");
+      public static final Descriptor CLIENT_TYPE = new Descriptor("client_type", 1);
+      public static final Descriptor CLIENT_NAME = new Descriptor("client_name", 2);
+      public static final Descriptor CLIENT_CONFIG = new Descriptor("client_config", 3);
+      public static final Descriptor SKIP_START_FOR_TEST = new Descriptor("skip_start_for_test", 4);
       
       /** Returns whether {@code field} is present in {@code message}. */
       @Override
@@ -600,17 +768,29 @@ public class AndroidServiceAccessor {
         Preconditions.checkNotNull(rawMessage);
         Preconditions.checkNotNull(field);
         CreateClient message = (CreateClient) rawMessage;
-        if (field == CLIENT_TYPE) {
-          return message.hasClientType();
-        }
-        if (field == CLIENT_NAME) {
-          return message.hasClientName();
-        }
-        if (field == CLIENT_CONFIG) {
-          return message.hasClientConfig();
-        }
-        if (field == SKIP_START_FOR_TEST) {
-          return message.hasSkipStartForTest();
+        switch (field.getNumber()) {
+          case 1:
+            if (field == CLIENT_TYPE) {
+              return message.hasClientType();
+            }
+            break;
+          case 2:
+            if (field == CLIENT_NAME) {
+              return message.hasClientName();
+            }
+            break;
+          case 3:
+            if (field == CLIENT_CONFIG) {
+              return message.hasClientConfig();
+            }
+            break;
+          case 4:
+            if (field == SKIP_START_FOR_TEST) {
+              return message.hasSkipStartForTest();
+            }
+            break;
+          default:
+            break;
         }
         throw new IllegalArgumentException("Bad descriptor: " + field);
       }
@@ -622,17 +802,29 @@ public class AndroidServiceAccessor {
         Preconditions.checkNotNull(rawMessage);
         Preconditions.checkNotNull(field);
         CreateClient message = (CreateClient) rawMessage;
-        if (field == CLIENT_TYPE) {
-          return message.getClientType();
-        }
-        if (field == CLIENT_NAME) {
-          return message.getClientName();
-        }
-        if (field == CLIENT_CONFIG) {
-          return message.getClientConfig();
-        }
-        if (field == SKIP_START_FOR_TEST) {
-          return message.getSkipStartForTest();
+        switch (field.getNumber()) {
+          case 1:
+            if (field == CLIENT_TYPE) {
+              return message.getClientType();
+            }
+            break;
+          case 2:
+            if (field == CLIENT_NAME) {
+              return message.getClientName();
+            }
+            break;
+          case 3:
+            if (field == CLIENT_CONFIG) {
+              return message.getClientConfig();
+            }
+            break;
+          case 4:
+            if (field == SKIP_START_FOR_TEST) {
+              return message.getSkipStartForTest();
+            }
+            break;
+          default:
+            break;
         }
         throw new IllegalArgumentException("Bad descriptor: " + field);
       }
@@ -651,7 +843,7 @@ public class AndroidServiceAccessor {
           "is_online"
         ));
       
-      public static final Descriptor IS_ONLINE = new Descriptor("is_online");
+      public static final Descriptor IS_ONLINE = new Descriptor("is_online", 1);
       
       /** Returns whether {@code field} is present in {@code message}. */
       @Override
@@ -660,8 +852,14 @@ public class AndroidServiceAccessor {
         Preconditions.checkNotNull(rawMessage);
         Preconditions.checkNotNull(field);
         NetworkStatus message = (NetworkStatus) rawMessage;
-        if (field == IS_ONLINE) {
-          return message.hasIsOnline();
+        switch (field.getNumber()) {
+          case 1:
+            if (field == IS_ONLINE) {
+              return message.hasIsOnline();
+            }
+            break;
+          default:
+            break;
         }
         throw new IllegalArgumentException("Bad descriptor: " + field);
       }
@@ -673,8 +871,14 @@ public class AndroidServiceAccessor {
         Preconditions.checkNotNull(rawMessage);
         Preconditions.checkNotNull(field);
         NetworkStatus message = (NetworkStatus) rawMessage;
-        if (field == IS_ONLINE) {
-          return message.getIsOnline();
+        switch (field.getNumber()) {
+          case 1:
+            if (field == IS_ONLINE) {
+              return message.getIsOnline();
+            }
+            break;
+          default:
+            break;
         }
         throw new IllegalArgumentException("Bad descriptor: " + field);
       }
@@ -693,7 +897,7 @@ public class AndroidServiceAccessor {
           "data"
         ));
       
-      public static final Descriptor DATA = new Descriptor("data");
+      public static final Descriptor DATA = new Descriptor("data", 1);
       
       /** Returns whether {@code field} is present in {@code message}. */
       @Override
@@ -702,8 +906,14 @@ public class AndroidServiceAccessor {
         Preconditions.checkNotNull(rawMessage);
         Preconditions.checkNotNull(field);
         ServerMessage message = (ServerMessage) rawMessage;
-        if (field == DATA) {
-          return message.hasData();
+        switch (field.getNumber()) {
+          case 1:
+            if (field == DATA) {
+              return message.hasData();
+            }
+            break;
+          default:
+            break;
         }
         throw new IllegalArgumentException("Bad descriptor: " + field);
       }
@@ -715,8 +925,14 @@ public class AndroidServiceAccessor {
         Preconditions.checkNotNull(rawMessage);
         Preconditions.checkNotNull(field);
         ServerMessage message = (ServerMessage) rawMessage;
-        if (field == DATA) {
-          return message.getData();
+        switch (field.getNumber()) {
+          case 1:
+            if (field == DATA) {
+              return message.getData();
+            }
+            break;
+          default:
+            break;
         }
         throw new IllegalArgumentException("Bad descriptor: " + field);
       }
@@ -737,11 +953,11 @@ public class AndroidServiceAccessor {
         "create_client"
       ));
     
-    public static final Descriptor VERSION = new Descriptor("version");
-    public static final Descriptor SERVER_MESSAGE = new Descriptor("server_message");
-    public static final Descriptor NETWORK_STATUS = new Descriptor("network_status");
-    public static final Descriptor NETWORK_ADDR_CHANGE = new Descriptor("network_addr_change");
-    public static final Descriptor CREATE_CLIENT = new Descriptor("create_client");
+    public static final Descriptor VERSION = new Descriptor("version", 1);
+    public static final Descriptor SERVER_MESSAGE = new Descriptor("server_message", 2);
+    public static final Descriptor NETWORK_STATUS = new Descriptor("network_status", 3);
+    public static final Descriptor NETWORK_ADDR_CHANGE = new Descriptor("network_addr_change", 4);
+    public static final Descriptor CREATE_CLIENT = new Descriptor("create_client", 5);
     
     /** Returns whether {@code field} is present in {@code message}. */
     @Override
@@ -750,20 +966,34 @@ public class AndroidServiceAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       InternalDowncall message = (InternalDowncall) rawMessage;
-      if (field == VERSION) {
-        return message.hasVersion();
-      }
-      if (field == SERVER_MESSAGE) {
-        return message.hasServerMessage();
-      }
-      if (field == NETWORK_STATUS) {
-        return message.hasNetworkStatus();
-      }
-      if (field == NETWORK_ADDR_CHANGE) {
-        return message.hasNetworkAddrChange();
-      }
-      if (field == CREATE_CLIENT) {
-        return message.hasCreateClient();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == VERSION) {
+            return message.hasVersion();
+          }
+          break;
+        case 2:
+          if (field == SERVER_MESSAGE) {
+            return message.hasServerMessage();
+          }
+          break;
+        case 3:
+          if (field == NETWORK_STATUS) {
+            return message.hasNetworkStatus();
+          }
+          break;
+        case 4:
+          if (field == NETWORK_ADDR_CHANGE) {
+            return message.hasNetworkAddrChange();
+          }
+          break;
+        case 5:
+          if (field == CREATE_CLIENT) {
+            return message.hasCreateClient();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -775,20 +1005,34 @@ public class AndroidServiceAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       InternalDowncall message = (InternalDowncall) rawMessage;
-      if (field == VERSION) {
-        return message.getVersion();
-      }
-      if (field == SERVER_MESSAGE) {
-        return message.getServerMessage();
-      }
-      if (field == NETWORK_STATUS) {
-        return message.getNetworkStatus();
-      }
-      if (field == NETWORK_ADDR_CHANGE) {
-        return message.getNetworkAddrChange();
-      }
-      if (field == CREATE_CLIENT) {
-        return message.getCreateClient();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == VERSION) {
+            return message.getVersion();
+          }
+          break;
+        case 2:
+          if (field == SERVER_MESSAGE) {
+            return message.getServerMessage();
+          }
+          break;
+        case 3:
+          if (field == NETWORK_STATUS) {
+            return message.getNetworkStatus();
+          }
+          break;
+        case 4:
+          if (field == NETWORK_ADDR_CHANGE) {
+            return message.getNetworkAddrChange();
+          }
+          break;
+        case 5:
+          if (field == CREATE_CLIENT) {
+            return message.getCreateClient();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -811,9 +1055,9 @@ public class AndroidServiceAccessor {
           "is_transient"
         ));
       
-      public static final Descriptor ERROR_CODE = new Descriptor("error_code");
-      public static final Descriptor ERROR_MESSAGE = new Descriptor("error_message");
-      public static final Descriptor IS_TRANSIENT = new Descriptor("is_transient");
+      public static final Descriptor ERROR_CODE = new Descriptor("error_code", 1);
+      public static final Descriptor ERROR_MESSAGE = new Descriptor("error_message", 2);
+      public static final Descriptor IS_TRANSIENT = new Descriptor("is_transient", 3);
       
       /** Returns whether {@code field} is present in {@code message}. */
       @Override
@@ -822,14 +1066,24 @@ public class AndroidServiceAccessor {
         Preconditions.checkNotNull(rawMessage);
         Preconditions.checkNotNull(field);
         ErrorUpcall message = (ErrorUpcall) rawMessage;
-        if (field == ERROR_CODE) {
-          return message.hasErrorCode();
-        }
-        if (field == ERROR_MESSAGE) {
-          return message.hasErrorMessage();
-        }
-        if (field == IS_TRANSIENT) {
-          return message.hasIsTransient();
+        switch (field.getNumber()) {
+          case 1:
+            if (field == ERROR_CODE) {
+              return message.hasErrorCode();
+            }
+            break;
+          case 2:
+            if (field == ERROR_MESSAGE) {
+              return message.hasErrorMessage();
+            }
+            break;
+          case 3:
+            if (field == IS_TRANSIENT) {
+              return message.hasIsTransient();
+            }
+            break;
+          default:
+            break;
         }
         throw new IllegalArgumentException("Bad descriptor: " + field);
       }
@@ -841,14 +1095,24 @@ public class AndroidServiceAccessor {
         Preconditions.checkNotNull(rawMessage);
         Preconditions.checkNotNull(field);
         ErrorUpcall message = (ErrorUpcall) rawMessage;
-        if (field == ERROR_CODE) {
-          return message.getErrorCode();
-        }
-        if (field == ERROR_MESSAGE) {
-          return message.getErrorMessage();
-        }
-        if (field == IS_TRANSIENT) {
-          return message.getIsTransient();
+        switch (field.getNumber()) {
+          case 1:
+            if (field == ERROR_CODE) {
+              return message.getErrorCode();
+            }
+            break;
+          case 2:
+            if (field == ERROR_MESSAGE) {
+              return message.getErrorMessage();
+            }
+            break;
+          case 3:
+            if (field == IS_TRANSIENT) {
+              return message.getIsTransient();
+            }
+            break;
+          default:
+            break;
         }
         throw new IllegalArgumentException("Bad descriptor: " + field);
       }
@@ -868,8 +1132,8 @@ public class AndroidServiceAccessor {
           "length"
         ));
       
-      public static final Descriptor PREFIX = new Descriptor("prefix");
-      public static final Descriptor LENGTH = new Descriptor("length");
+      public static final Descriptor PREFIX = new Descriptor("prefix", 1);
+      public static final Descriptor LENGTH = new Descriptor("length", 2);
       
       /** Returns whether {@code field} is present in {@code message}. */
       @Override
@@ -878,11 +1142,19 @@ public class AndroidServiceAccessor {
         Preconditions.checkNotNull(rawMessage);
         Preconditions.checkNotNull(field);
         ReissueRegistrationsUpcall message = (ReissueRegistrationsUpcall) rawMessage;
-        if (field == PREFIX) {
-          return message.hasPrefix();
-        }
-        if (field == LENGTH) {
-          return message.hasLength();
+        switch (field.getNumber()) {
+          case 1:
+            if (field == PREFIX) {
+              return message.hasPrefix();
+            }
+            break;
+          case 2:
+            if (field == LENGTH) {
+              return message.hasLength();
+            }
+            break;
+          default:
+            break;
         }
         throw new IllegalArgumentException("Bad descriptor: " + field);
       }
@@ -894,11 +1166,19 @@ public class AndroidServiceAccessor {
         Preconditions.checkNotNull(rawMessage);
         Preconditions.checkNotNull(field);
         ReissueRegistrationsUpcall message = (ReissueRegistrationsUpcall) rawMessage;
-        if (field == PREFIX) {
-          return message.getPrefix();
-        }
-        if (field == LENGTH) {
-          return message.getLength();
+        switch (field.getNumber()) {
+          case 1:
+            if (field == PREFIX) {
+              return message.getPrefix();
+            }
+            break;
+          case 2:
+            if (field == LENGTH) {
+              return message.getLength();
+            }
+            break;
+          default:
+            break;
         }
         throw new IllegalArgumentException("Bad descriptor: " + field);
       }
@@ -919,9 +1199,9 @@ public class AndroidServiceAccessor {
           "message"
         ));
       
-      public static final Descriptor OBJECT_ID = new Descriptor("object_id");
-      public static final Descriptor TRANSIENT = new Descriptor("transient");
-      public static final Descriptor MESSAGE = new Descriptor("message");
+      public static final Descriptor OBJECT_ID = new Descriptor("object_id", 1);
+      public static final Descriptor TRANSIENT = new Descriptor("transient", 2);
+      public static final Descriptor MESSAGE = new Descriptor("message", 3);
       
       /** Returns whether {@code field} is present in {@code message}. */
       @Override
@@ -930,14 +1210,24 @@ public class AndroidServiceAccessor {
         Preconditions.checkNotNull(rawMessage);
         Preconditions.checkNotNull(field);
         RegistrationFailureUpcall message = (RegistrationFailureUpcall) rawMessage;
-        if (field == OBJECT_ID) {
-          return message.hasObjectId();
-        }
-        if (field == TRANSIENT) {
-          return message.hasTransient();
-        }
-        if (field == MESSAGE) {
-          return message.hasMessage();
+        switch (field.getNumber()) {
+          case 1:
+            if (field == OBJECT_ID) {
+              return message.hasObjectId();
+            }
+            break;
+          case 2:
+            if (field == TRANSIENT) {
+              return message.hasTransient();
+            }
+            break;
+          case 3:
+            if (field == MESSAGE) {
+              return message.hasMessage();
+            }
+            break;
+          default:
+            break;
         }
         throw new IllegalArgumentException("Bad descriptor: " + field);
       }
@@ -949,14 +1239,24 @@ public class AndroidServiceAccessor {
         Preconditions.checkNotNull(rawMessage);
         Preconditions.checkNotNull(field);
         RegistrationFailureUpcall message = (RegistrationFailureUpcall) rawMessage;
-        if (field == OBJECT_ID) {
-          return message.getObjectId();
-        }
-        if (field == TRANSIENT) {
-          return message.getTransient();
-        }
-        if (field == MESSAGE) {
-          return message.getMessage();
+        switch (field.getNumber()) {
+          case 1:
+            if (field == OBJECT_ID) {
+              return message.getObjectId();
+            }
+            break;
+          case 2:
+            if (field == TRANSIENT) {
+              return message.getTransient();
+            }
+            break;
+          case 3:
+            if (field == MESSAGE) {
+              return message.getMessage();
+            }
+            break;
+          default:
+            break;
         }
         throw new IllegalArgumentException("Bad descriptor: " + field);
       }
@@ -976,8 +1276,8 @@ public class AndroidServiceAccessor {
           "is_registered"
         ));
       
-      public static final Descriptor OBJECT_ID = new Descriptor("object_id");
-      public static final Descriptor IS_REGISTERED = new Descriptor("is_registered");
+      public static final Descriptor OBJECT_ID = new Descriptor("object_id", 1);
+      public static final Descriptor IS_REGISTERED = new Descriptor("is_registered", 2);
       
       /** Returns whether {@code field} is present in {@code message}. */
       @Override
@@ -986,11 +1286,19 @@ public class AndroidServiceAccessor {
         Preconditions.checkNotNull(rawMessage);
         Preconditions.checkNotNull(field);
         RegistrationStatusUpcall message = (RegistrationStatusUpcall) rawMessage;
-        if (field == OBJECT_ID) {
-          return message.hasObjectId();
-        }
-        if (field == IS_REGISTERED) {
-          return message.hasIsRegistered();
+        switch (field.getNumber()) {
+          case 1:
+            if (field == OBJECT_ID) {
+              return message.hasObjectId();
+            }
+            break;
+          case 2:
+            if (field == IS_REGISTERED) {
+              return message.hasIsRegistered();
+            }
+            break;
+          default:
+            break;
         }
         throw new IllegalArgumentException("Bad descriptor: " + field);
       }
@@ -1002,11 +1310,19 @@ public class AndroidServiceAccessor {
         Preconditions.checkNotNull(rawMessage);
         Preconditions.checkNotNull(field);
         RegistrationStatusUpcall message = (RegistrationStatusUpcall) rawMessage;
-        if (field == OBJECT_ID) {
-          return message.getObjectId();
-        }
-        if (field == IS_REGISTERED) {
-          return message.getIsRegistered();
+        switch (field.getNumber()) {
+          case 1:
+            if (field == OBJECT_ID) {
+              return message.getObjectId();
+            }
+            break;
+          case 2:
+            if (field == IS_REGISTERED) {
+              return message.getIsRegistered();
+            }
+            break;
+          default:
+            break;
         }
         throw new IllegalArgumentException("Bad descriptor: " + field);
       }
@@ -1028,10 +1344,10 @@ public class AndroidServiceAccessor {
           "invalidate_all"
         ));
       
-      public static final Descriptor ACK_HANDLE = new Descriptor("ack_handle");
-      public static final Descriptor INVALIDATION = new Descriptor("invalidation");
-      public static final Descriptor INVALIDATE_UNKNOWN = new Descriptor("invalidate_unknown");
-      public static final Descriptor INVALIDATE_ALL = new Descriptor("invalidate_all");
+      public static final Descriptor ACK_HANDLE = new Descriptor("ack_handle", 1);
+      public static final Descriptor INVALIDATION = new Descriptor("invalidation", 2);
+      public static final Descriptor INVALIDATE_UNKNOWN = new Descriptor("invalidate_unknown", 3);
+      public static final Descriptor INVALIDATE_ALL = new Descriptor("invalidate_all", 4);
       
       /** Returns whether {@code field} is present in {@code message}. */
       @Override
@@ -1040,17 +1356,29 @@ public class AndroidServiceAccessor {
         Preconditions.checkNotNull(rawMessage);
         Preconditions.checkNotNull(field);
         InvalidateUpcall message = (InvalidateUpcall) rawMessage;
-        if (field == ACK_HANDLE) {
-          return message.hasAckHandle();
-        }
-        if (field == INVALIDATION) {
-          return message.hasInvalidation();
-        }
-        if (field == INVALIDATE_UNKNOWN) {
-          return message.hasInvalidateUnknown();
-        }
-        if (field == INVALIDATE_ALL) {
-          return message.hasInvalidateAll();
+        switch (field.getNumber()) {
+          case 1:
+            if (field == ACK_HANDLE) {
+              return message.hasAckHandle();
+            }
+            break;
+          case 2:
+            if (field == INVALIDATION) {
+              return message.hasInvalidation();
+            }
+            break;
+          case 3:
+            if (field == INVALIDATE_UNKNOWN) {
+              return message.hasInvalidateUnknown();
+            }
+            break;
+          case 4:
+            if (field == INVALIDATE_ALL) {
+              return message.hasInvalidateAll();
+            }
+            break;
+          default:
+            break;
         }
         throw new IllegalArgumentException("Bad descriptor: " + field);
       }
@@ -1062,17 +1390,29 @@ public class AndroidServiceAccessor {
         Preconditions.checkNotNull(rawMessage);
         Preconditions.checkNotNull(field);
         InvalidateUpcall message = (InvalidateUpcall) rawMessage;
-        if (field == ACK_HANDLE) {
-          return message.getAckHandle();
-        }
-        if (field == INVALIDATION) {
-          return message.getInvalidation();
-        }
-        if (field == INVALIDATE_UNKNOWN) {
-          return message.getInvalidateUnknown();
-        }
-        if (field == INVALIDATE_ALL) {
-          return message.getInvalidateAll();
+        switch (field.getNumber()) {
+          case 1:
+            if (field == ACK_HANDLE) {
+              return message.getAckHandle();
+            }
+            break;
+          case 2:
+            if (field == INVALIDATION) {
+              return message.getInvalidation();
+            }
+            break;
+          case 3:
+            if (field == INVALIDATE_UNKNOWN) {
+              return message.getInvalidateUnknown();
+            }
+            break;
+          case 4:
+            if (field == INVALIDATE_ALL) {
+              return message.getInvalidateAll();
+            }
+            break;
+          default:
+            break;
         }
         throw new IllegalArgumentException("Bad descriptor: " + field);
       }
@@ -1130,14 +1470,14 @@ public class AndroidServiceAccessor {
         "error"
       ));
     
-    public static final Descriptor SERIAL = new Descriptor("serial");
-    public static final Descriptor VERSION = new Descriptor("version");
-    public static final Descriptor READY = new Descriptor("ready");
-    public static final Descriptor INVALIDATE = new Descriptor("invalidate");
-    public static final Descriptor REGISTRATION_STATUS = new Descriptor("registration_status");
-    public static final Descriptor REGISTRATION_FAILURE = new Descriptor("registration_failure");
-    public static final Descriptor REISSUE_REGISTRATIONS = new Descriptor("reissue_registrations");
-    public static final Descriptor ERROR = new Descriptor("error");
+    public static final Descriptor SERIAL = new Descriptor("serial", 1);
+    public static final Descriptor VERSION = new Descriptor("version", 2);
+    public static final Descriptor READY = new Descriptor("ready", 3);
+    public static final Descriptor INVALIDATE = new Descriptor("invalidate", 4);
+    public static final Descriptor REGISTRATION_STATUS = new Descriptor("registration_status", 5);
+    public static final Descriptor REGISTRATION_FAILURE = new Descriptor("registration_failure", 6);
+    public static final Descriptor REISSUE_REGISTRATIONS = new Descriptor("reissue_registrations", 7);
+    public static final Descriptor ERROR = new Descriptor("error", 8);
     
     /** Returns whether {@code field} is present in {@code message}. */
     @Override
@@ -1146,29 +1486,49 @@ public class AndroidServiceAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       ListenerUpcall message = (ListenerUpcall) rawMessage;
-      if (field == SERIAL) {
-        return message.hasSerial();
-      }
-      if (field == VERSION) {
-        return message.hasVersion();
-      }
-      if (field == READY) {
-        return message.hasReady();
-      }
-      if (field == INVALIDATE) {
-        return message.hasInvalidate();
-      }
-      if (field == REGISTRATION_STATUS) {
-        return message.hasRegistrationStatus();
-      }
-      if (field == REGISTRATION_FAILURE) {
-        return message.hasRegistrationFailure();
-      }
-      if (field == REISSUE_REGISTRATIONS) {
-        return message.hasReissueRegistrations();
-      }
-      if (field == ERROR) {
-        return message.hasError();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == SERIAL) {
+            return message.hasSerial();
+          }
+          break;
+        case 2:
+          if (field == VERSION) {
+            return message.hasVersion();
+          }
+          break;
+        case 3:
+          if (field == READY) {
+            return message.hasReady();
+          }
+          break;
+        case 4:
+          if (field == INVALIDATE) {
+            return message.hasInvalidate();
+          }
+          break;
+        case 5:
+          if (field == REGISTRATION_STATUS) {
+            return message.hasRegistrationStatus();
+          }
+          break;
+        case 6:
+          if (field == REGISTRATION_FAILURE) {
+            return message.hasRegistrationFailure();
+          }
+          break;
+        case 7:
+          if (field == REISSUE_REGISTRATIONS) {
+            return message.hasReissueRegistrations();
+          }
+          break;
+        case 8:
+          if (field == ERROR) {
+            return message.hasError();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
@@ -1180,29 +1540,49 @@ public class AndroidServiceAccessor {
       Preconditions.checkNotNull(rawMessage);
       Preconditions.checkNotNull(field);
       ListenerUpcall message = (ListenerUpcall) rawMessage;
-      if (field == SERIAL) {
-        return message.getSerial();
-      }
-      if (field == VERSION) {
-        return message.getVersion();
-      }
-      if (field == READY) {
-        return message.getReady();
-      }
-      if (field == INVALIDATE) {
-        return message.getInvalidate();
-      }
-      if (field == REGISTRATION_STATUS) {
-        return message.getRegistrationStatus();
-      }
-      if (field == REGISTRATION_FAILURE) {
-        return message.getRegistrationFailure();
-      }
-      if (field == REISSUE_REGISTRATIONS) {
-        return message.getReissueRegistrations();
-      }
-      if (field == ERROR) {
-        return message.getError();
+      switch (field.getNumber()) {
+        case 1:
+          if (field == SERIAL) {
+            return message.getSerial();
+          }
+          break;
+        case 2:
+          if (field == VERSION) {
+            return message.getVersion();
+          }
+          break;
+        case 3:
+          if (field == READY) {
+            return message.getReady();
+          }
+          break;
+        case 4:
+          if (field == INVALIDATE) {
+            return message.getInvalidate();
+          }
+          break;
+        case 5:
+          if (field == REGISTRATION_STATUS) {
+            return message.getRegistrationStatus();
+          }
+          break;
+        case 6:
+          if (field == REGISTRATION_FAILURE) {
+            return message.getRegistrationFailure();
+          }
+          break;
+        case 7:
+          if (field == REISSUE_REGISTRATIONS) {
+            return message.getReissueRegistrations();
+          }
+          break;
+        case 8:
+          if (field == ERROR) {
+            return message.getError();
+          }
+          break;
+        default:
+          break;
       }
       throw new IllegalArgumentException("Bad descriptor: " + field);
     }
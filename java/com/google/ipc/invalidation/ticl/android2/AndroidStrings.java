@@ -121,7 +121,10 @@ public class AndroidStrings {
       return builder;
     }
     List<ObjectIdP> objects;
-    if (registration.getRegistrationsCount() > 0) {
+    if (registration.getIsFullSet()) {
+      builder.append("setRegistrations(");
+      objects = registration.getRegistrationsList();
+    } else if (registration.getRegistrationsCount() > 0) {
       builder.append("register(");
       objects = registration.getRegistrationsList();
     } else {
@@ -117,6 +117,15 @@ public class ProtocolIntents {
       return intent;
     }
 
+    public static Intent newSetRegistrationsIntent(Iterable<ObjectIdP> registrations) {
+      RegistrationDowncall regDowncall = RegistrationDowncall.newBuilder()
+          .addAllRegistrations(registrations).setIsFullSet(true).build();
+      Intent intent = new Intent();
+      intent.putExtra(CLIENT_DOWNCALL_KEY,
+          newBuilder().setRegistrations(regDowncall).build().toByteArray());
+      return intent;
+    }
+
     private static ClientDowncall.Builder newBuilder() {
       return ClientDowncall.newBuilder().setVersion(ANDROID_PROTOCOL_VERSION_VALUE);
     }
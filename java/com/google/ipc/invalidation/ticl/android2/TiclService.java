@@ -25,6 +25,7 @@ import com.google.ipc.invalidation.external.client.types.ObjectId;
 import com.google.ipc.invalidation.external.client.types.SimplePair;
 import com.google.ipc.invalidation.external.client.types.Status;
 import com.google.ipc.invalidation.ticl.InvalidationClientCore;
+import com.google.ipc.invalidation.ticl.MessageCompressor;
 import com.google.ipc.invalidation.ticl.PersistenceUtils;
 import com.google.ipc.invalidation.ticl.ProtoConverter;
 import com.google.ipc.invalidation.ticl.android2.AndroidInvalidationClientImpl.IntentForwardingListener;
@@ -41,6 +42,7 @@ import com.google.protos.ipc.invalidation.ClientProtocol.ServerToClientMessage;
 import android.app.IntentService;
 import android.content.Intent;
 
+import java.io.IOException;
 import java.util.List;
 
 
@@ -153,7 +155,10 @@ public class TiclService extends IntentService {
       ticl.stop();
     } else if (downcall.hasRegistrations()) {
       RegistrationDowncall regDowncall = downcall.getRegistrations();
-      if (regDowncall.getRegistrationsCount() > 0) {
+      if (regDowncall.getIsFullSet()) {
+        ticl.setRegistrations(ProtoConverter.convertToObjectIdList(
+            regDowncall.getRegistrationsList()));
+      } else if (regDowncall.getRegistrationsCount() > 0) {
         List<ObjectId> objects = ProtoConverter.convertToObjectIdList(
             regDowncall.getRegistrationsList());
         ticl.register(objects);
@@ -324,13 +329,18 @@ public class TiclService extends IntentService {
     if (backgroundServiceClass != null) {
       try {
         ServerToClientMessage s2cMessage = ServerToClientMessage.parseFrom(message);
+        if (s2cMessage.hasCompressedBody()) {
+          s2cMessage = s2cMessage.toBuilder().clearCompressedBody()
+              .mergeFrom(new MessageCompressor().decompress(s2cMessage.getCompressedBody()))
+              .build();
+        }
         if (s2cMessage.hasInvalidationMessage()) {
           Intent intent =
               ProtocolIntents.newBackgroundInvalidationIntent(s2cMessage.getInvalidationMessage());
           intent.setClassName(getApplicationContext(), backgroundServiceClass);
           startService(intent);
         }
-      } catch (InvalidProtocolBufferException exception) {
+      } catch (IOException exception) {
         resources.getLogger().info("Failed to parse message: %s", exception.getMessage());
       }
     }
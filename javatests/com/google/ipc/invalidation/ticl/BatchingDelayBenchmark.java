@@ -0,0 +1,164 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.ipc.invalidation.ticl;
+
+import com.google.ipc.invalidation.common.CommonProtos2;
+import com.google.ipc.invalidation.common.ObjectIdDigestUtils.Sha1DigestFunction;
+import com.google.ipc.invalidation.common.TiclMessageValidator2;
+import com.google.ipc.invalidation.external.client.SystemResources;
+import com.google.ipc.invalidation.external.client.SystemResources.NetworkChannel;
+import com.google.ipc.invalidation.ticl.InvalidationClientCore.BatchingTask;
+import com.google.ipc.invalidation.util.NamedRunnable;
+import com.google.ipc.invalidation.util.Smearer;
+import com.google.protobuf.ByteString;
+import com.google.protos.ipc.invalidation.ClientProtocol.ObjectIdP;
+import com.google.protos.ipc.invalidation.ClientProtocol.ProtocolHandlerConfigP;
+import com.google.protos.ipc.invalidation.ClientProtocol.RegistrationP.OpType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+
+/**
+ * Simulates a protocol handler batching registrations with a fixed and with an adaptive batching
+ * delay, in simulated time, and prints the messages sent and the mean latency from queuing an
+ * operation to sending the message with it, for three arrival patterns:
+ * <ul>
+ * <li>sparse: single operations 5 to 15 seconds apart;
+ * <li>dense: 5000 single operations 10 ms apart;
+ * <li>bulk: 20 calls of 250 operations each, one second apart.
+ * </ul>
+ * Usage: {@code BatchingDelayBenchmark}.
+ *
+ */
+public class BatchingDelayBenchmark {
+
+  /** Fixed batching delay compared against. */
+  private static final int FIXED_DELAY_MS = 500;
+
+  /** Bounds of the adaptive batching delay. */
+  private static final int MIN_DELAY_MS = 100;
+  private static final int MAX_DELAY_MS = 2 * 1000;
+
+  public static void main(String[] args) {
+    ProtocolHandlerConfigP fixedConfig = ProtocolHandler.createConfigForTest()
+        .setBatchingDelayMs(FIXED_DELAY_MS).setOutgoingMessageValidationPeriod(0).build();
+    ProtocolHandlerConfigP adaptiveConfig = ProtocolHandlerConfigP.newBuilder(fixedConfig)
+        .setMinBatchingDelayMs(MIN_DELAY_MS).setMaxBatchingDelayMs(MAX_DELAY_MS).build();
+
+    // Arrival times and number of operations of each arrival.
+    Random random = new Random(1);
+    List<long[]> sparse = new ArrayList<long[]>();
+    long timeMs = 0;
+    for (int i = 0; i < 200; i++) {
+      timeMs += 5 * 1000 + random.nextInt(10 * 1000);
+      sparse.add(new long[] {timeMs, 1});
+    }
+    List<long[]> dense = new ArrayList<long[]>();
+    for (int i = 0; i < 5000; i++) {
+      dense.add(new long[] {10L * i, 1});
+    }
+    List<long[]> bulk = new ArrayList<long[]>();
+    for (int i = 0; i < 20; i++) {
+      bulk.add(new long[] {1000L * i, 250});
+    }
+
+    simulate("Sparse, fixed " + FIXED_DELAY_MS + " ms", fixedConfig, sparse);
+    simulate("Sparse, adaptive", adaptiveConfig, sparse);
+    simulate("Dense, fixed " + FIXED_DELAY_MS + " ms", fixedConfig, dense);
+    simulate("Dense, adaptive", adaptiveConfig, dense);
+    simulate("Bulk, fixed " + FIXED_DELAY_MS + " ms", fixedConfig, bulk);
+    simulate("Bulk, adaptive", adaptiveConfig, bulk);
+  }
+
+  /**
+   * Runs a protocol handler with {@code config} on the {@code arrivals}, each a time and a number
+   * of operations queued together at that time, and prints the results.
+   */
+  private static void simulate(String description, ProtocolHandlerConfigP config,
+      List<long[]> arrivals) {
+    final DeterministicScheduler scheduler = new DeterministicScheduler(0);
+    final List<Long> sendTimesMs = new ArrayList<Long>();
+    NetworkChannel network = new NetworkChannel() {
+      @Override
+      public void sendMessage(byte[] outgoingMessage) {
+        sendTimesMs.add(scheduler.getCurrentTimeMs());
+      }
+
+      @Override
+      public void setListener(NetworkListener listener) {
+      }
+
+      @Override
+      public void setSystemResources(SystemResources resources) {
+      }
+    };
+    SystemResources resources = new BasicSystemResources(new TestLogger("Benchmark"), scheduler,
+        scheduler, network, new MemoryStorageImpl(), "Benchmark");
+    resources.start();
+
+    final ObjectIdInterner interner = new ObjectIdInterner(new Sha1DigestFunction());
+    Smearer smearer = new Smearer(new Random(1), 20);
+    final ProtocolHandler protocolHandler = new ProtocolHandler(config, resources, smearer,
+        new Statistics(), interner, TiclTestEnvironment.CLIENT_TYPE, "Benchmark",
+        new TiclTestEnvironment.StubProtocolListener(),
+        new TiclMessageValidator2(resources.getLogger()), null);
+    final BatchingTask batchingTask =
+        new BatchingTask(protocolHandler, resources, smearer, config.getBatchingDelayMs(), 0);
+
+    // Queue the operations at their arrival times.
+    final List<Long> queueTimesMs = new ArrayList<Long>();
+    int numObjects = 0;
+    for (long[] arrival : arrivals) {
+      final List<ObjectIdHandle> handles = new ArrayList<ObjectIdHandle>();
+      for (int i = 0; i < arrival[1]; i++) {
+        ObjectIdP objectId = CommonProtos2.newObjectIdP(TiclTestEnvironment.CLIENT_TYPE,
+            ByteString.copyFromUtf8("object-" + numObjects++));
+        handles.add(interner.intern(objectId));
+      }
+      scheduler.schedule((int) arrival[0], new NamedRunnable("Benchmark.queue") {
+        @Override
+        public void run() {
+          for (int i = 0; i < handles.size(); i++) {
+            queueTimesMs.add(scheduler.getCurrentTimeMs());
+          }
+          protocolHandler.sendRegistrations(handles, OpType.REGISTER, batchingTask);
+        }
+      });
+    }
+    scheduler.runFor(arrivals.get(arrivals.size() - 1)[0] + 10 * MAX_DELAY_MS);
+
+    // Each message holds all operations queued since the previous one, so an operation waits
+    // until the first message sent after it was queued.
+    long totalLatencyMs = 0;
+    int messageIndex = 0;
+    for (long queueTimeMs : queueTimesMs) {
+      while (sendTimesMs.get(messageIndex) < queueTimeMs) {
+        messageIndex++;
+      }
+      totalLatencyMs += sendTimesMs.get(messageIndex) - queueTimeMs;
+    }
+    System.out.println(description + ": " + queueTimesMs.size() + " operations, " +
+        sendTimesMs.size() + " messages, " + (totalLatencyMs / queueTimesMs.size()) +
+        " ms mean latency");
+  }
+
+  /** Returns a protocol listener with a fixed client token and registration summary. */
+  private BatchingDelayBenchmark() {  // To prevent instantiation.
+  }
+}
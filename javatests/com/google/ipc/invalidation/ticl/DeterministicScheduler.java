@@ -0,0 +1,135 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.ipc.invalidation.ticl;
+
+import com.google.ipc.invalidation.external.client.SystemResources;
+import com.google.ipc.invalidation.external.client.SystemResources.Scheduler;
+
+import java.util.PriorityQueue;
+
+
+/**
+ * Scheduler running tasks on the calling thread in simulated time, for deterministic tests. Time
+ * only advances through {@link #runFor}; tasks due at the same time run in the order in which they
+ * were scheduled.
+ * <p>
+ * This class is not thread-safe.
+ *
+ */
+class DeterministicScheduler implements Scheduler {
+
+  /** A task and the time at which it is due. */
+  private static class ScheduledTask implements Comparable<ScheduledTask> {
+    final long dueTimeMs;
+
+    /** Sequence number of the task, ordering tasks due at the same time. */
+    final long sequenceNumber;
+
+    final Runnable runnable;
+
+    ScheduledTask(long dueTimeMs, long sequenceNumber, Runnable runnable) {
+      this.dueTimeMs = dueTimeMs;
+      this.sequenceNumber = sequenceNumber;
+      this.runnable = runnable;
+    }
+
+    @Override
+    public int compareTo(ScheduledTask other) {
+      if (dueTimeMs != other.dueTimeMs) {
+        return (dueTimeMs < other.dueTimeMs) ? -1 : 1;
+      }
+      return (sequenceNumber < other.sequenceNumber) ? -1 :
+          ((sequenceNumber == other.sequenceNumber) ? 0 : 1);
+    }
+  }
+
+  /** Tasks not yet run, earliest first. */
+  private final PriorityQueue<ScheduledTask> tasks = new PriorityQueue<ScheduledTask>();
+
+  /** Current simulated time. */
+  private long currentTimeMs;
+
+  /** Number of tasks scheduled so far. */
+  private long numTasksScheduled = 0;
+
+  /** Number of tasks run so far. */
+  private long numTasksRun = 0;
+
+  /** Whether a task is running. */
+  private boolean isRunningTask = false;
+
+  /** Constructs a scheduler whose simulated time starts at {@code startTimeMs}. */
+  DeterministicScheduler(long startTimeMs) {
+    this.currentTimeMs = startTimeMs;
+  }
+
+  @Override
+  public void schedule(int delayMs, Runnable runnable) {
+    tasks.add(new ScheduledTask(currentTimeMs + Math.max(delayMs, 0), numTasksScheduled++,
+        runnable));
+  }
+
+  @Override
+  public boolean isRunningOnThread() {
+    return isRunningTask;
+  }
+
+  @Override
+  public long getCurrentTimeMs() {
+    return currentTimeMs;
+  }
+
+  @Override
+  public void setSystemResources(SystemResources resources) {
+    // No-op.
+  }
+
+  /** Runs the tasks that are due now, including those they schedule without delay. */
+  void runReadyTasks() {
+    runFor(0);
+  }
+
+  /**
+   * Advances the simulated time by {@code durationMs}, running the tasks that become due in the
+   * order of their due times.
+   */
+  void runFor(long durationMs) {
+    long endTimeMs = currentTimeMs + durationMs;
+    while (!tasks.isEmpty() && (tasks.peek().dueTimeMs <= endTimeMs)) {
+      ScheduledTask task = tasks.poll();
+      currentTimeMs = Math.max(currentTimeMs, task.dueTimeMs);
+      isRunningTask = true;
+      numTasksRun++;
+      try {
+        task.runnable.run();
+      } finally {
+        isRunningTask = false;
+      }
+    }
+    currentTimeMs = endTimeMs;
+  }
+
+  /** Returns the number of tasks run so far. */
+  long getNumTasksRun() {
+    return numTasksRun;
+  }
+
+  /** Returns the number of tasks not yet run. */
+  int getNumPendingTasks() {
+    return tasks.size();
+  }
+}
@@ -0,0 +1,513 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.ipc.invalidation.ticl;
+
+import com.google.common.base.Preconditions;
+import com.google.ipc.invalidation.common.CommonProtos2;
+import com.google.ipc.invalidation.common.ObjectIdDigestUtils;
+import com.google.ipc.invalidation.common.TiclMessageValidator2;
+import com.google.ipc.invalidation.external.client.SystemResources;
+import com.google.ipc.invalidation.external.client.SystemResources.BufferedNetworkChannel;
+import com.google.ipc.invalidation.external.client.SystemResources.Logger;
+import com.google.ipc.invalidation.external.client.SystemResources.NetworkChannel;
+import com.google.ipc.invalidation.external.client.SystemResources.Scheduler;
+import com.google.ipc.invalidation.util.NamedRunnable;
+import com.google.ipc.invalidation.util.TypedUtil;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protos.ipc.invalidation.ChannelCommon.AddressedMessage;
+import com.google.protos.ipc.invalidation.ChannelCommon.AddressedMessageBatch;
+import com.google.protos.ipc.invalidation.ClientProtocol.ClientHeader;
+import com.google.protos.ipc.invalidation.ClientProtocol.ClientToServerMessage;
+import com.google.protos.ipc.invalidation.ClientProtocol.CompressedBodyP;
+import com.google.protos.ipc.invalidation.ClientProtocol.DigestPrefixP;
+import com.google.protos.ipc.invalidation.ClientProtocol.InitializeMessage;
+import com.google.protos.ipc.invalidation.ClientProtocol.InitializeMessage.DigestSerializationType;
+import com.google.protos.ipc.invalidation.ClientProtocol.ObjectIdP;
+import com.google.protos.ipc.invalidation.ClientProtocol.RegistrationP;
+import com.google.protos.ipc.invalidation.ClientProtocol.RegistrationStatus;
+import com.google.protos.ipc.invalidation.ClientProtocol.RegistrationSubtree;
+import com.google.protos.ipc.invalidation.ClientProtocol.RegistrationSubtreeSummary;
+import com.google.protos.ipc.invalidation.ClientProtocol.RegistrationSummary;
+import com.google.protos.ipc.invalidation.ClientProtocol.RegistrationSyncMessage;
+import com.google.protos.ipc.invalidation.ClientProtocol.ServerHeader;
+import com.google.protos.ipc.invalidation.ClientProtocol.ServerToClientMessage;
+import com.google.protos.ipc.invalidation.ClientProtocol.TokenControlMessage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * In-process stand-in for the invalidation server, for exercising clients without a backend.
+ * Each client connects through its own {@link NetworkChannel} from {@link #newChannel}; the server
+ * assigns tokens, applies registrations, and keeps the registration state of each client in sync
+ * with the client's own. Clients sharing a {@link MultiplexingNetworkChannel} connect through a
+ * single channel from {@link #newMultiplexedChannel}, which lets many clients be load-tested
+ * against one server.
+ * <p>
+ * When the registration summary in a client's message disagrees with the server's, the server
+ * bisects the registration space: it requests summaries of the subtrees below each disagreeing
+ * subtree, and only requests the objects of subtrees that are small enough. Registration sync thus
+ * costs in proportion to the number of discrepancies rather than the number of registrations.
+ * <p>
+ * The server accepts compressed message bodies, and compresses the bodies of its replies of at
+ * least {@link #MIN_COMPRESSED_BODY_SIZE_BYTES} to clients that accept them.
+ * <p>
+ * This class is thread-safe.
+ *
+ */
+public class InMemoryInvalidationServer {
+
+  /** Number of prefix bits by which each bisection round extends a disagreeing subtree. */
+  private static final int BISECTION_BITS = 2;
+
+  /**
+   * Maximum number of objects in a subtree whose objects are requested outright rather than
+   * bisected further.
+   */
+  private static final int MAX_SUBTREE_OBJECTS = 64;
+
+  /** Minimum size of the body of a reply for it to be compressed. */
+  private static final int MIN_COMPRESSED_BODY_SIZE_BYTES = 256;
+
+  /** Per-client state kept by the server. */
+  private static class ClientState {
+    /** Token assigned to the client. */
+    final ByteString token;
+
+    /** The registrations of the client, as known to the server. */
+    final DigestStore<ObjectIdP> registrations;
+
+    /** Whether a registration sync with the client is in progress. */
+    boolean isSyncInProgress = false;
+
+    ClientState(ByteString token, DigestStore<ObjectIdP> registrations) {
+      this.token = token;
+      this.registrations = registrations;
+    }
+  }
+
+  /** Network channel connected to the server, delivering messages on a client's scheduler. */
+  private abstract static class ServerChannel implements NetworkChannel {
+    /** Resources of the client, whose internal scheduler runs message deliveries. */
+    private SystemResources resources;
+
+    /** Listener for messages to the client. */
+    private NetworkListener listener;
+
+    @Override
+    public void setSystemResources(SystemResources resources) {
+      this.resources = resources;
+    }
+
+    @Override
+    public void setListener(NetworkListener listener) {
+      this.listener = listener;
+    }
+
+    /** Delivers {@code message} to the client on its internal thread. */
+    void deliver(final byte[] message) {
+      resources.getInternalScheduler().schedule(Scheduler.NO_DELAY,
+          new NamedRunnable("InMemoryInvalidationServer.deliver") {
+        @Override
+        public void run() {
+          if (listener != null) {
+            listener.onMessageReceived(message);
+          }
+        }
+      });
+    }
+  }
+
+  /** Network channel connecting a single client to the server. */
+  private class ClientChannel extends ServerChannel implements BufferedNetworkChannel {
+    @Override
+    public void sendMessage(byte[] outgoingMessage) {
+      handleClientMessageAndReply(outgoingMessage, 0, outgoingMessage.length);
+    }
+
+    @Override
+    public void sendMessage(ByteBuffer outgoingMessage) {
+      // The message is handled synchronously, so it can be parsed in place.
+      if (outgoingMessage.hasArray()) {
+        handleClientMessageAndReply(outgoingMessage.array(),
+            outgoingMessage.arrayOffset() + outgoingMessage.position(),
+            outgoingMessage.remaining());
+      } else {
+        byte[] message = new byte[outgoingMessage.remaining()];
+        outgoingMessage.duplicate().get(message);
+        handleClientMessageAndReply(message, 0, message.length);
+      }
+    }
+
+    /** Handles a client message as for {@link #handleClientMessage} and delivers the reply. */
+    private void handleClientMessageAndReply(byte[] buffer, int offset, int length) {
+      byte[] reply = handleClientMessage(buffer, offset, length);
+      if (reply != null) {
+        deliver(reply);
+      }
+    }
+  }
+
+  /**
+   * Network channel connecting a {@link MultiplexingNetworkChannel} to the server, carrying
+   * serialized {@link AddressedMessageBatch} protos.
+   */
+  private class MultiplexedChannel extends ServerChannel {
+    @Override
+    public void sendMessage(byte[] outgoingMessage) {
+      byte[] reply = handleClientBatch(outgoingMessage);
+      if (reply != null) {
+        deliver(reply);
+      }
+    }
+  }
+
+  /** State of each client, by token. */
+  private final Map<ByteString, ClientState> clients = new HashMap<ByteString, ClientState>();
+
+  private final Logger logger;
+
+  /** Validator for messages from clients. */
+  private final TiclMessageValidator2 msgValidator;
+
+  /** Source of time for server headers. */
+  private final Scheduler scheduler;
+
+  /** Number of tokens assigned so far, used to generate unique tokens. */
+  private int numTokensAssigned = 0;
+
+  /** Compressor of reply and decompressor of client message bodies. */
+  private final MessageCompressor compressor = new MessageCompressor();
+
+  /** Total number of message bytes received from clients. */
+  private long bytesReceived = 0;
+
+  /** Total number of message bytes sent to clients. */
+  private long bytesSent = 0;
+
+  /** Total number of registration operations received from clients. */
+  private int numRegistrationOpsReceived = 0;
+
+  /**
+   * Constructs a server.
+   *
+   * @param logger logger for the server
+   * @param scheduler source of the server time
+   */
+  public InMemoryInvalidationServer(Logger logger, Scheduler scheduler) {
+    this.logger = Preconditions.checkNotNull(logger);
+    this.scheduler = Preconditions.checkNotNull(scheduler);
+    this.msgValidator = new TiclMessageValidator2(logger);
+  }
+
+  /** Returns a new network channel through which a client can connect to this server. */
+  public NetworkChannel newChannel() {
+    return new ClientChannel();
+  }
+
+  /**
+   * Returns a new network channel through which a {@link MultiplexingNetworkChannel} can connect
+   * many clients to this server. The replies to the messages in a batch are sent back in a single
+   * batch, addressed to the same client keys.
+   */
+  public NetworkChannel newMultiplexedChannel() {
+    return new MultiplexedChannel();
+  }
+
+  /** Returns the total number of message bytes received from clients. */
+  public synchronized long getBytesReceived() {
+    return bytesReceived;
+  }
+
+  /** Returns the total number of message bytes sent to clients. */
+  public synchronized long getBytesSent() {
+    return bytesSent;
+  }
+
+  /** Returns the total number of registration operations received from clients. */
+  public synchronized int getNumRegistrationOpsReceivedForTest() {
+    return numRegistrationOpsReceived;
+  }
+
+  /** Returns the registrations the server holds for the client with {@code token}. */
+  public synchronized Collection<ObjectIdP> getRegistrationsForTest(ByteString token) {
+    ClientState client = Preconditions.checkNotNull(TypedUtil.mapGet(clients, token));
+    return new ArrayList<ObjectIdP>(
+        client.registrations.getElements(RegistrationManager.EMPTY_PREFIX, 0));
+  }
+
+  /**
+   * Removes {@code objectIds} from the registrations the server holds for the client with
+   * {@code token}, so as to make the server diverge from the client.
+   */
+  public synchronized void removeRegistrationsForTest(ByteString token,
+      Collection<ObjectIdP> objectIds) {
+    ClientState client = Preconditions.checkNotNull(TypedUtil.mapGet(clients, token));
+    client.registrations.remove(objectIds);
+  }
+
+  /**
+   * Handles the serialized {@link AddressedMessageBatch} {@code batch}, received from a
+   * multiplexed channel. Returns the serialized batch of the replies, or {@code null} if there
+   * are none.
+   */
+  private synchronized byte[] handleClientBatch(byte[] batch) {
+    AddressedMessageBatch clientBatch;
+    try {
+      clientBatch = AddressedMessageBatch.parseFrom(batch);
+    } catch (InvalidProtocolBufferException exception) {
+      logger.warning("Dropping unparseable client message batch: %s", exception);
+      return null;
+    }
+    AddressedMessageBatch.Builder replyBatch = AddressedMessageBatch.newBuilder();
+    for (AddressedMessage addressedMessage : clientBatch.getAddressedMessageList()) {
+      byte[] message = addressedMessage.getMessage().toByteArray();
+      byte[] reply = handleClientMessage(message, 0, message.length);
+      if (reply != null) {
+        replyBatch.addAddressedMessage(AddressedMessage.newBuilder()
+            .setClientKey(addressedMessage.getClientKey())
+            .setMessage(ByteString.copyFrom(reply)));
+      }
+    }
+    return (replyBatch.getAddressedMessageCount() == 0) ? null : replyBatch.build().toByteArray();
+  }
+
+  /**
+   * Handles the client message in the {@code length} bytes of {@code buffer} from {@code offset}.
+   * Returns the serialized reply to the client, or {@code null} if there is none.
+   */
+  synchronized byte[] handleClientMessage(byte[] buffer, int offset, int length) {
+    bytesReceived += length;
+    ClientToServerMessage clientMessage;
+    try {
+      clientMessage = ClientToServerMessage.newBuilder().mergeFrom(buffer, offset, length).build();
+    } catch (InvalidProtocolBufferException exception) {
+      logger.warning("Dropping unparseable client message: %s", exception);
+      return null;
+    }
+    if (clientMessage.hasCompressedBody()) {
+      try {
+        clientMessage = clientMessage.toBuilder().clearCompressedBody()
+            .mergeFrom(compressor.decompress(clientMessage.getCompressedBody())).build();
+      } catch (IOException exception) {
+        logger.warning("Dropping client message with bad compressed body: %s", exception);
+        return null;
+      }
+    }
+    if (!msgValidator.isValid(clientMessage)) {
+      logger.warning("Dropping invalid client message: %s", clientMessage);
+      return null;
+    }
+
+    ClientHeader clientHeader = clientMessage.getHeader();
+
+    // Handle token assignment.
+    if (clientMessage.hasInitializeMessage()) {
+      InitializeMessage initializeMessage = clientMessage.getInitializeMessage();
+      ClientState client = newClient(initializeMessage.getDigestSerializationType());
+      TokenControlMessage.Builder tokenControl =
+          CommonProtos2.newTokenControlMessage(client.token).toBuilder();
+      if (initializeMessage.getDigestSerializationType() == DigestSerializationType.SUM_BASED) {
+        tokenControl.setDigestSerializationType(DigestSerializationType.SUM_BASED);
+      }
+      // The reply is addressed to the nonce, since the client does not have its token yet.
+      return serialize(CommonProtos2.newServerToClientMessage(
+          newServerHeader(initializeMessage.getNonce(), null), tokenControl.build()).build(),
+          clientHeader);
+    }
+
+    ByteString token = clientHeader.getClientToken();
+    ClientState client = TypedUtil.mapGet(clients, token);
+    if (client == null) {
+      // Unknown token: tell the client to acquire a new one.
+      logger.info("Destroying unknown token: %s", token);
+      return serialize(CommonProtos2.newServerToClientMessage(newServerHeader(token, null),
+          CommonProtos2.newTokenControlMessage(null)).build(), clientHeader);
+    }
+    ServerToClientMessage.Builder reply = ServerToClientMessage.newBuilder();
+
+    // Apply registrations.
+    if (clientMessage.hasRegistrationMessage()) {
+      List<RegistrationStatus> statuses = new ArrayList<RegistrationStatus>();
+      for (RegistrationP registration :
+          clientMessage.getRegistrationMessage().getRegistrationList()) {
+        numRegistrationOpsReceived++;
+        if (registration.getOpType() == RegistrationP.OpType.REGISTER) {
+          client.registrations.add(registration.getObjectId());
+        } else {
+          client.registrations.remove(registration.getObjectId());
+        }
+        statuses.add(CommonProtos2.newSuccessRegistrationStatus(registration));
+      }
+      if (!statuses.isEmpty()) {
+        reply.setRegistrationStatusMessage(CommonProtos2.newRegistrationStatusMessage(statuses));
+      }
+    }
+
+    // Apply registration sync results and continue the bisection where needed.
+    if (clientMessage.hasRegistrationSyncMessage()) {
+      List<DigestPrefixP> subtreesToRequest = new ArrayList<DigestPrefixP>();
+      List<DigestPrefixP> summariesToRequest = new ArrayList<DigestPrefixP>();
+      handleRegistrationSync(client, clientMessage.getRegistrationSyncMessage(),
+          subtreesToRequest, summariesToRequest);
+      if (subtreesToRequest.isEmpty() && summariesToRequest.isEmpty()) {
+        client.isSyncInProgress = false;
+      } else {
+        reply.setRegistrationSyncRequestMessage(CommonProtos2.newRegistrationSyncRequestMessage(
+            subtreesToRequest, summariesToRequest));
+      }
+    }
+
+    // Start a registration sync if the client disagrees with us.
+    RegistrationSummary serverSummary = getSummary(client, RegistrationManager.EMPTY_PREFIX, 0);
+    RegistrationSummary clientSummary = clientHeader.getRegistrationSummary();
+    if (!client.isSyncInProgress && !reply.hasRegistrationStatusMessage() &&
+        !ProtoWrapper.of(serverSummary).equals(ProtoWrapper.of(clientSummary))) {
+      client.isSyncInProgress = true;
+      if (Math.max(serverSummary.getNumRegistrations(), clientSummary.getNumRegistrations()) <=
+          MAX_SUBTREE_OBJECTS) {
+        // Small enough to sync everything at once.
+        reply.setRegistrationSyncRequestMessage(CommonProtos2.newRegistrationSyncRequestMessage());
+      } else {
+        reply.setRegistrationSyncRequestMessage(CommonProtos2.newRegistrationSyncRequestMessage(
+            new ArrayList<DigestPrefixP>(),
+            getChildPrefixes(CommonProtos2.newDigestPrefixP(RegistrationManager.EMPTY_PREFIX, 0))));
+      }
+    }
+    reply.setHeader(newServerHeader(token, serverSummary));
+    return serialize(reply.build(), clientHeader);
+  }
+
+  /**
+   * Applies the subtrees in {@code syncMessage} to the registrations of {@code client} and
+   * compares the subtree summaries in it with the server's. Adds to {@code subtreesToRequest} the
+   * prefixes of disagreeing subtrees small enough to fetch outright, and to
+   * {@code summariesToRequest} the prefixes below the other disagreeing subtrees.
+   */
+  private void handleRegistrationSync(ClientState client, RegistrationSyncMessage syncMessage,
+      List<DigestPrefixP> subtreesToRequest, List<DigestPrefixP> summariesToRequest) {
+    for (RegistrationSubtree subtree : syncMessage.getSubtreeList()) {
+      // The subtree holds all of the client's objects under its prefix: replace ours with them.
+      byte[] prefix = subtree.getPrefix().getDigestPrefix().toByteArray();
+      int prefixLen = subtree.getPrefix().getPrefixLength();
+      client.registrations.remove(
+          new ArrayList<ObjectIdP>(client.registrations.getElements(prefix, prefixLen)));
+      client.registrations.add(subtree.getRegisteredObjectList());
+    }
+    for (RegistrationSubtreeSummary subtreeSummary : syncMessage.getSubtreeSummaryList()) {
+      DigestPrefixP prefix = subtreeSummary.getPrefix();
+      RegistrationSummary serverSummary = getSummary(client,
+          prefix.getDigestPrefix().toByteArray(), prefix.getPrefixLength());
+      RegistrationSummary clientSummary = subtreeSummary.getSummary();
+      if (ProtoWrapper.of(serverSummary).equals(ProtoWrapper.of(clientSummary))) {
+        continue;
+      }
+      boolean isSmall = Math.max(serverSummary.getNumRegistrations(),
+          clientSummary.getNumRegistrations()) <= MAX_SUBTREE_OBJECTS;
+      if (isSmall || (prefix.getPrefixLength() + BISECTION_BITS > 8 * getDigestLength(client))) {
+        subtreesToRequest.add(prefix);
+      } else {
+        summariesToRequest.addAll(getChildPrefixes(prefix));
+      }
+    }
+  }
+
+  /** Returns the summary of the registrations of {@code client} under the given prefix. */
+  private static RegistrationSummary getSummary(ClientState client, byte[] digestPrefix,
+      int prefixLen) {
+    return CommonProtos2.newRegistrationSummary(
+        client.registrations.size(digestPrefix, prefixLen),
+        client.registrations.getDigest(digestPrefix, prefixLen));
+  }
+
+  /** Returns the length in bytes of the registration digests of {@code client}. */
+  private static int getDigestLength(ClientState client) {
+    return client.registrations.getDigest().length;
+  }
+
+  /** Returns the prefixes {@link #BISECTION_BITS} bits longer than {@code prefix}. */
+  private static List<DigestPrefixP> getChildPrefixes(DigestPrefixP prefix) {
+    int prefixLen = prefix.getPrefixLength();
+    int childPrefixLen = prefixLen + BISECTION_BITS;
+    List<DigestPrefixP> children = new ArrayList<DigestPrefixP>(1 << BISECTION_BITS);
+    for (int child = 0; child < (1 << BISECTION_BITS); child++) {
+      byte[] childPrefix = new byte[(childPrefixLen + 7) / 8];
+      byte[] parentPrefix = prefix.getDigestPrefix().toByteArray();
+      System.arraycopy(parentPrefix, 0, childPrefix, 0,
+          Math.min(parentPrefix.length, childPrefix.length));
+      for (int bit = 0; bit < BISECTION_BITS; bit++) {
+        int bitIndex = prefixLen + bit;
+        int mask = 1 << (7 - (bitIndex % 8));
+        if (((child >> (BISECTION_BITS - 1 - bit)) & 1) != 0) {
+          childPrefix[bitIndex / 8] |= mask;
+        } else {
+          childPrefix[bitIndex / 8] &= ~mask;
+        }
+      }
+      children.add(CommonProtos2.newDigestPrefixP(childPrefix, childPrefixLen));
+    }
+    return children;
+  }
+
+  /** Creates and returns the state for a new client using digests of type {@code digestType}. */
+  private ClientState newClient(DigestSerializationType digestType) {
+    ByteString token = ByteString.copyFromUtf8("InMemoryToken-" + (++numTokensAssigned));
+    DigestStore<ObjectIdP> registrations =
+        (digestType == DigestSerializationType.SUM_BASED)
+            ? new IncrementalRegistrationStore(new ObjectIdDigestUtils.Sha1DigestFunction())
+            : new SimpleRegistrationStore(new ObjectIdDigestUtils.Sha1DigestFunction());
+    ClientState client = new ClientState(token, registrations);
+    clients.put(token, client);
+    return client;
+  }
+
+  /** Returns a server header for {@code token} with the optional {@code summary}. */
+  private ServerHeader newServerHeader(ByteString token, RegistrationSummary summary) {
+    return CommonProtos2.newServerHeader(token, scheduler.getCurrentTimeMs(), summary, null)
+        .toBuilder().addAcceptedCompression(CompressedBodyP.Compression.DEFLATE).build();
+  }
+
+  /**
+   * Returns {@code message} serialized, counting it as sent. Its body is compressed if it is large
+   * enough, the client that sent {@code clientHeader} accepts compressed bodies, and compression
+   * makes it smaller.
+   */
+  private byte[] serialize(ServerToClientMessage message, ClientHeader clientHeader) {
+    if (clientHeader.getAcceptedCompressionList().contains(CompressedBodyP.Compression.DEFLATE)) {
+      byte[] body = message.toBuilder().clearHeader().build().toByteArray();
+      if (body.length >= MIN_COMPRESSED_BODY_SIZE_BYTES) {
+        CompressedBodyP compressedBody = compressor.compress(body, 0, body.length);
+        if (compressedBody != null) {
+          message = ServerToClientMessage.newBuilder()
+              .setHeader(message.getHeader())
+              .setCompressedBody(compressedBody)
+              .build();
+        }
+      }
+    }
+    byte[] bytes = message.toByteArray();
+    bytesSent += bytes.length;
+    return bytes;
+  }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.ipc.invalidation.ticl;
+
+import com.google.common.base.Preconditions;
+import com.google.ipc.invalidation.external.client.SystemResources.Logger;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+
+/**
+ * Stand-in invalidation server listening on a loopback TCP port, which serves an
+ * {@link InMemoryInvalidationServer} to clients connecting with {@link NioNetworkChannel}s, for
+ * exercising them without a backend. Messages are framed as by {@link MessageFramer}, and each
+ * message is handled on the server's own I/O thread.
+ * <p>
+ * {@link #dropConnections} closes all client connections, so as to exercise reconnection.
+ * <p>
+ * This class is thread-safe.
+ *
+ */
+public class LoopbackInvalidationServer {
+
+  /** Connection with a single client. */
+  private static class Connection {
+    final SocketChannel socketChannel;
+
+    /** Splitter of the bytes read from the client into messages. */
+    final MessageFramer framer;
+
+    /** Framed replies to be written to the client, oldest first. */
+    final LinkedList<ByteBuffer> pendingReplies = new LinkedList<ByteBuffer>();
+
+    Connection(SocketChannel socketChannel, int maxMessageSizeBytes) {
+      this.socketChannel = socketChannel;
+      this.framer = new MessageFramer(maxMessageSizeBytes);
+    }
+  }
+
+  /** Largest message accepted from a client. */
+  private static final int MAX_MESSAGE_SIZE_BYTES = 4 * 1024 * 1024;
+
+  /** The server handling the messages of the clients. */
+  private final InMemoryInvalidationServer server;
+
+  private final Logger logger;
+
+  /** Selector of the I/O thread, or {@code null} if not started. */
+  private Selector selector;
+
+  /** Socket on which clients connect, or {@code null} if not started. */
+  private ServerSocketChannel serverSocketChannel;
+
+  /** Whether the server has been stopped. */
+  private boolean isStopped = false;
+
+  /** Whether the I/O thread should close all client connections. */
+  private boolean shouldDropConnections = false;
+
+  /**
+   * Constructs a server.
+   *
+   * @param server server handling the messages of the clients
+   * @param logger logger for the server
+   */
+  public LoopbackInvalidationServer(InMemoryInvalidationServer server, Logger logger) {
+    this.server = Preconditions.checkNotNull(server);
+    this.logger = Preconditions.checkNotNull(logger);
+  }
+
+  /**
+   * Starts listening on an ephemeral loopback port (see {@link #getAddress}).
+   * <p>
+   * REQUIRES: the server has not been started.
+   */
+  public synchronized void start() throws IOException {
+    Preconditions.checkState(!isStopped && (selector == null), "Already started");
+    selector = Selector.open();
+    serverSocketChannel = ServerSocketChannel.open();
+    serverSocketChannel.configureBlocking(false);
+    serverSocketChannel.socket().bind(new InetSocketAddress("127.0.0.1", 0));
+    serverSocketChannel.register(selector, SelectionKey.OP_ACCEPT);
+    Thread ioThread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        runIoLoop();
+      }
+    }, "LoopbackInvalidationServer");
+    ioThread.setDaemon(true);
+    ioThread.start();
+    logger.info("Listening on %s", getAddress());
+  }
+
+  /** Returns the address on which the server listens. REQUIRES: the server has been started. */
+  public synchronized InetSocketAddress getAddress() {
+    Preconditions.checkState(serverSocketChannel != null, "Not started");
+    return (InetSocketAddress) serverSocketChannel.socket().getLocalSocketAddress();
+  }
+
+  /** Closes all client connections; clients may connect again. */
+  public synchronized void dropConnections() {
+    shouldDropConnections = true;
+    if (selector != null) {
+      selector.wakeup();
+    }
+  }
+
+  /** Stops the server, closing the listening socket and all client connections. */
+  public synchronized void stop() {
+    isStopped = true;
+    if (selector != null) {
+      selector.wakeup();
+    }
+  }
+
+  /** Returns whether the server has been stopped. */
+  private synchronized boolean isStopped() {
+    return isStopped;
+  }
+
+  /** Returns whether connections must be dropped, and clears the request. */
+  private synchronized boolean takeShouldDropConnections() {
+    boolean result = shouldDropConnections;
+    shouldDropConnections = false;
+    return result;
+  }
+
+  /** Runs the I/O thread until the server is stopped. */
+  private void runIoLoop() {
+    while (!isStopped()) {
+      if (takeShouldDropConnections()) {
+        logger.info("Dropping all client connections");
+        closeConnections();
+      }
+      try {
+        selector.select();
+      } catch (IOException exception) {
+        logger.severe("Selector failed: %s", exception);
+        break;
+      }
+      Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+      while (keys.hasNext()) {
+        SelectionKey key = keys.next();
+        keys.remove();
+        try {
+          if (key.isValid() && key.isAcceptable()) {
+            acceptConnection();
+          }
+          if (key.isValid() && key.isReadable()) {
+            readMessages(key);
+          }
+          if (key.isValid() && key.isWritable()) {
+            writeReplies(key);
+          }
+        } catch (IOException exception) {
+          logger.info("Closing client connection: %s", exception);
+          closeConnection(key);
+        }
+      }
+    }
+    closeConnections();
+    try {
+      serverSocketChannel.close();
+      selector.close();
+    } catch (IOException exception) {
+      logger.warning("Failed to close server socket: %s", exception);
+    }
+    logger.info("Stopped");
+  }
+
+  /** Accepts a pending client connection, if any. */
+  private void acceptConnection() throws IOException {
+    SocketChannel socketChannel = serverSocketChannel.accept();
+    if (socketChannel == null) {
+      return;
+    }
+    socketChannel.configureBlocking(false);
+    socketChannel.socket().setTcpNoDelay(true);
+    socketChannel.register(selector, SelectionKey.OP_READ,
+        new Connection(socketChannel, MAX_MESSAGE_SIZE_BYTES));
+  }
+
+  /**
+   * Reads the bytes available on the connection of {@code key}, handles the messages completed by
+   * them and writes the replies.
+   */
+  private void readMessages(SelectionKey key) throws IOException {
+    Connection connection = (Connection) key.attachment();
+    int numBytesRead;
+    while ((numBytesRead = connection.socketChannel.read(connection.framer.getReadBuffer())) > 0) {
+      byte[] message;
+      while ((message = connection.framer.nextMessage()) != null) {
+        byte[] reply = server.handleClientMessage(message, 0, message.length);
+        if (reply != null) {
+          connection.pendingReplies.add(MessageFramer.frame(reply));
+        }
+      }
+    }
+    writeReplies(key);
+    if (numBytesRead < 0) {
+      throw new EOFException("Connection closed by client");
+    }
+  }
+
+  /**
+   * Writes as many pending replies as the connection of {@code key} accepts without blocking, and
+   * asks to be told when it can accept more if some remain.
+   */
+  private void writeReplies(SelectionKey key) throws IOException {
+    Connection connection = (Connection) key.attachment();
+    while (!connection.pendingReplies.isEmpty()) {
+      ByteBuffer reply = connection.pendingReplies.getFirst();
+      connection.socketChannel.write(reply);
+      if (reply.hasRemaining()) {
+        key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        return;
+      }
+      connection.pendingReplies.removeFirst();
+    }
+    key.interestOps(SelectionKey.OP_READ);
+  }
+
+  /** Closes the client connections. */
+  private void closeConnections() {
+    List<SelectionKey> keys = new ArrayList<SelectionKey>(selector.keys());
+    for (SelectionKey key : keys) {
+      if (key.attachment() instanceof Connection) {
+        closeConnection(key);
+      }
+    }
+  }
+
+  /** Closes the client connection of {@code key}. */
+  private void closeConnection(SelectionKey key) {
+    key.cancel();
+    try {
+      key.channel().close();
+    } catch (IOException exception) {
+      logger.warning("Failed to close client connection: %s", exception);
+    }
+  }
+}
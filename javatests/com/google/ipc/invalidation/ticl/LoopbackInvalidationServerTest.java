@@ -0,0 +1,247 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.ipc.invalidation.ticl;
+
+import com.google.ipc.invalidation.common.CommonInvalidationConstants2;
+import com.google.ipc.invalidation.common.CommonProtos2;
+import com.google.ipc.invalidation.external.client.SystemResources;
+import com.google.ipc.invalidation.external.client.SystemResources.NetworkChannel.NetworkListener;
+import com.google.ipc.invalidation.external.client.SystemResources.Scheduler;
+import com.google.ipc.invalidation.external.client.types.Callback;
+import com.google.ipc.invalidation.external.client.types.Status;
+import com.google.protobuf.ByteString;
+import com.google.protos.ipc.invalidation.ClientProtocol.ClientHeader;
+import com.google.protos.ipc.invalidation.ClientProtocol.ClientToServerMessage;
+import com.google.protos.ipc.invalidation.ClientProtocol.InitializeMessage.DigestSerializationType;
+import com.google.protos.ipc.invalidation.ClientProtocol.ServerToClientMessage;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Tests a {@link NioNetworkChannel} against a {@link LoopbackInvalidationServer}: messages are
+ * exchanged, each send is completed, and the channel reconnects after the server drops its
+ * connections or after failing to connect to an unresolved address.
+ *
+ */
+public class LoopbackInvalidationServerTest extends TestCase {
+
+  /** Longest time to wait for an event, in seconds. */
+  private static final int TIMEOUT_SECS = 10;
+
+  /** Initial delay before the channel reconnects. */
+  private static final int RECONNECT_DELAY_MS = 50;
+
+  /** Scheduler running tasks on a single thread of its own, in real time. */
+  private static class ExecutorScheduler implements Scheduler {
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+    /** The thread of the executor, set by its first task. */
+    private volatile Thread thread;
+
+    ExecutorScheduler() {
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          thread = Thread.currentThread();
+        }
+      });
+    }
+
+    @Override
+    public void schedule(int delayMs, Runnable runnable) {
+      try {
+        executor.schedule(runnable, delayMs, TimeUnit.MILLISECONDS);
+      } catch (RejectedExecutionException exception) {
+        // The test is over, e.g., the channel reports going offline as it stops.
+      }
+    }
+
+    @Override
+    public boolean isRunningOnThread() {
+      return Thread.currentThread() == thread;
+    }
+
+    @Override
+    public long getCurrentTimeMs() {
+      return System.currentTimeMillis();
+    }
+
+    @Override
+    public void setSystemResources(SystemResources resources) {
+    }
+
+    void shutdown() {
+      executor.shutdownNow();
+    }
+  }
+
+  private final ExecutorScheduler scheduler = new ExecutorScheduler();
+
+  private final TestLogger logger = new TestLogger("LoopbackInvalidationServerTest");
+
+  /** Messages received by the client, in order. */
+  private final BlockingQueue<byte[]> receivedMessages = new LinkedBlockingQueue<byte[]>();
+
+  /** Online statuses reported to the client, in order. */
+  private final BlockingQueue<Boolean> onlineStatuses = new LinkedBlockingQueue<Boolean>();
+
+  private LoopbackInvalidationServer server;
+
+  private NioNetworkChannel channel;
+
+  @Override
+  protected void setUp() throws Exception {
+    server = new LoopbackInvalidationServer(
+        new InMemoryInvalidationServer(new TestLogger("Server"), scheduler), logger);
+    server.start();
+
+    channel = startChannel(server.getAddress(), logger);
+  }
+
+  @Override
+  protected void tearDown() {
+    channel.stop();
+    server.stop();
+    scheduler.shutdown();
+  }
+
+  /**
+   * Returns a started channel to {@code serverAddress} logging to {@code channelLogger}, whose
+   * messages and online statuses are added to {@link #receivedMessages} and
+   * {@link #onlineStatuses}.
+   */
+  private NioNetworkChannel startChannel(SocketAddress serverAddress, TestLogger channelLogger)
+      throws IOException {
+    NioNetworkChannel newChannel =
+        new NioNetworkChannel(serverAddress, RECONNECT_DELAY_MS, 1024 * 1024);
+    SystemResources resources = new BasicSystemResources(channelLogger, scheduler, scheduler,
+        newChannel, new MemoryStorageImpl(), "Test");
+    resources.start();
+    newChannel.setListener(new NetworkListener() {
+      @Override
+      public void onMessageReceived(byte[] message) {
+        receivedMessages.add(message);
+      }
+
+      @Override
+      public void onOnlineStatusChange(boolean isOnline) {
+        onlineStatuses.add(isOnline);
+      }
+
+      @Override
+      public void onAddressChange() {
+      }
+    });
+    newChannel.start();
+    return newChannel;
+  }
+
+  public void testSendAndReceive() throws Exception {
+    assertEquals(Boolean.TRUE, onlineStatuses.poll(TIMEOUT_SECS, TimeUnit.SECONDS));
+    checkTokenIsAssigned("nonce-1");
+  }
+
+  public void testReconnectAfterDropConnections() throws Exception {
+    assertEquals(Boolean.TRUE, onlineStatuses.poll(TIMEOUT_SECS, TimeUnit.SECONDS));
+    server.dropConnections();
+    assertEquals(Boolean.FALSE, onlineStatuses.poll(TIMEOUT_SECS, TimeUnit.SECONDS));
+    assertEquals(Boolean.TRUE, onlineStatuses.poll(TIMEOUT_SECS, TimeUnit.SECONDS));
+    checkTokenIsAssigned("nonce-2");
+  }
+
+  public void testSendAfterStopFails() throws Exception {
+    channel.stop();
+    BlockingQueue<Status> completions = new LinkedBlockingQueue<Status>();
+    sendInitializeMessage(channel, "nonce-3", completions);
+    assertFalse(completions.poll(TIMEOUT_SECS, TimeUnit.SECONDS).isSuccess());
+  }
+
+  public void testUnresolvedAddressIsRetried() throws Exception {
+    TestLogger channelLogger = new TestLogger("UnresolvedChannel");
+    NioNetworkChannel unresolvedChannel =
+        startChannel(InetSocketAddress.createUnresolved("unresolved.invalid", 1), channelLogger);
+    BlockingQueue<Status> completions = new LinkedBlockingQueue<Status>();
+    sendInitializeMessage(unresolvedChannel, "nonce-4", completions);
+
+    // Each failure to connect is logged, and the I/O thread tries again after a delay.
+    long deadlineMs = System.currentTimeMillis() + TIMEOUT_SECS * 1000;
+    while ((channelLogger.getNumWarnings() < 2) && (System.currentTimeMillis() < deadlineMs)) {
+      Thread.sleep(RECONNECT_DELAY_MS);
+    }
+    assertTrue(channelLogger.getNumWarnings() >= 2);
+
+    // Only a running I/O thread fails the pending message when the channel stops.
+    unresolvedChannel.stop();
+    assertFalse(completions.poll(TIMEOUT_SECS, TimeUnit.SECONDS).isSuccess());
+  }
+
+  /**
+   * Sends an initialize message with {@code nonce}, and checks that its sending completes and that
+   * the server replies with a token for it.
+   */
+  private void checkTokenIsAssigned(String nonce) throws Exception {
+    BlockingQueue<Status> completions = new LinkedBlockingQueue<Status>();
+    sendInitializeMessage(channel, nonce, completions);
+    assertTrue(completions.poll(TIMEOUT_SECS, TimeUnit.SECONDS).isSuccess());
+
+    byte[] reply = receivedMessages.poll(TIMEOUT_SECS, TimeUnit.SECONDS);
+    assertNotNull(reply);
+    ServerToClientMessage message = ServerToClientMessage.parseFrom(reply);
+    assertEquals(ByteString.copyFromUtf8(nonce), message.getHeader().getClientToken());
+    assertTrue(message.getTokenControlMessage().hasNewToken());
+  }
+
+  /**
+   * Sends an initialize message with {@code nonce} on {@code sendingChannel}, adding the status of
+   * its sending to {@code completions}.
+   */
+  private void sendInitializeMessage(NioNetworkChannel sendingChannel, String nonce,
+      final BlockingQueue<Status> completions) {
+    ClientHeader header = ClientHeader.newBuilder()
+        .setProtocolVersion(CommonInvalidationConstants2.PROTOCOL_VERSION)
+        .setClientTimeMs(scheduler.getCurrentTimeMs())
+        .setMessageId("1")
+        .setMaxKnownServerTimeMs(0)
+        .setRegistrationSummary(CommonProtos2.newRegistrationSummary(0, new byte[20]))
+        .setClientType(TiclTestEnvironment.CLIENT_TYPE)
+        .build();
+    ClientToServerMessage message = ClientToServerMessage.newBuilder()
+        .setHeader(header)
+        .setInitializeMessage(CommonProtos2.newInitializeMessage(TiclTestEnvironment.CLIENT_TYPE,
+            CommonProtos2.newApplicationClientIdP(TiclTestEnvironment.CLIENT_TYPE,
+                ByteString.copyFromUtf8("client")),
+            ByteString.copyFromUtf8(nonce), DigestSerializationType.BYTE_BASED))
+        .build();
+    sendingChannel.sendMessage(message.toByteArray(), new Callback<Status>() {
+      @Override
+      public void accept(Status status) {
+        completions.add(status);
+      }
+    });
+  }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.ipc.invalidation.ticl;
+
+import com.google.ipc.invalidation.external.client.SystemResources;
+import com.google.ipc.invalidation.external.client.SystemResources.NetworkChannel;
+import com.google.ipc.invalidation.external.client.SystemResources.NetworkChannel.NetworkListener;
+import com.google.ipc.invalidation.ticl.MultiplexingNetworkChannel.ClientChannel;
+import com.google.protobuf.ByteString;
+import com.google.protos.ipc.invalidation.ChannelCommon.AddressedMessage;
+import com.google.protos.ipc.invalidation.ChannelCommon.AddressedMessageBatch;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Tests that {@link MultiplexingNetworkChannel} stops relaying to and from closed client channels,
+ * and drops deliveries to clients that have not yet given their channel their resources.
+ *
+ */
+public class MultiplexingNetworkChannelTest extends TestCase {
+
+  /** Flush delay of the multiplexing channel. */
+  private static final int FLUSH_DELAY_MS = 10;
+
+  /** Network channel that records the messages sent and the listener set on it. */
+  private static class RecordingNetworkChannel implements NetworkChannel {
+    final List<byte[]> sentMessages = new ArrayList<byte[]>();
+    NetworkListener listener;
+
+    @Override
+    public void sendMessage(byte[] outgoingMessage) {
+      sentMessages.add(outgoingMessage);
+    }
+
+    @Override
+    public void setListener(NetworkListener listener) {
+      this.listener = listener;
+    }
+
+    @Override
+    public void setSystemResources(SystemResources resources) {
+    }
+  }
+
+  private final DeterministicScheduler scheduler = new DeterministicScheduler(1000 * 1000);
+
+  private final TestLogger logger = new TestLogger("MultiplexingNetworkChannelTest");
+
+  private final RecordingNetworkChannel sharedChannel = new RecordingNetworkChannel();
+
+  private SystemResources resources;
+
+  private MultiplexingNetworkChannel multiplexer;
+
+  @Override
+  protected void setUp() {
+    resources = new BasicSystemResources(logger, scheduler, scheduler,
+        new RecordingNetworkChannel(), new MemoryStorageImpl(), "Test");
+    resources.start();
+    multiplexer = new MultiplexingNetworkChannel(resources, sharedChannel, FLUSH_DELAY_MS);
+  }
+
+  public void testClosedChannelIsRemoved() {
+    ClientChannel closedChannel = multiplexer.newChannel();
+    List<String> closedClientEvents = connect(closedChannel);
+    ClientChannel openChannel = multiplexer.newChannel();
+    connect(openChannel);
+    assertEquals(2, multiplexer.getNumChannels());
+
+    closedChannel.close();
+    assertEquals(1, multiplexer.getNumChannels());
+
+    // Messages from the closed client are dropped, and messages to it (key 0, the first client's)
+    // are not delivered.
+    closedChannel.sendMessage(new byte[] {1});
+    openChannel.sendMessage(new byte[] {2});
+    scheduler.runFor(2 * FLUSH_DELAY_MS);
+    assertEquals(1, sharedChannel.sentMessages.size());
+    assertEquals(1, multiplexer.getNumMessagesSent());
+
+    sharedChannel.listener.onMessageReceived(newBatch(0).toByteArray());
+    sharedChannel.listener.onOnlineStatusChange(false);
+    scheduler.runFor(1);
+    assertTrue(closedClientEvents.isEmpty());
+  }
+
+  public void testDeliveryBeforeSetSystemResourcesIsDropped() {
+    multiplexer.newChannel();
+    sharedChannel.listener.onMessageReceived(newBatch(0).toByteArray());
+    sharedChannel.listener.onAddressChange();
+    scheduler.runFor(1);
+    assertEquals(2, logger.getNumWarnings());
+  }
+
+  /**
+   * Gives {@code channel} the resources of a client and a listener for it, and returns the list to
+   * which the listener adds the names of the events delivered to the client.
+   */
+  private List<String> connect(ClientChannel channel) {
+    final List<String> events = new ArrayList<String>();
+    channel.setSystemResources(resources);
+    channel.setListener(new NetworkListener() {
+      @Override
+      public void onMessageReceived(byte[] message) {
+        events.add("message");
+      }
+
+      @Override
+      public void onOnlineStatusChange(boolean isOnline) {
+        events.add("online status");
+      }
+
+      @Override
+      public void onAddressChange() {
+        events.add("address change");
+      }
+    });
+    return events;
+  }
+
+  /** Returns a batch holding one message for the client with key {@code clientKey}. */
+  private static AddressedMessageBatch newBatch(int clientKey) {
+    return AddressedMessageBatch.newBuilder()
+        .addAddressedMessage(AddressedMessage.newBuilder()
+            .setClientKey(clientKey)
+            .setMessage(ByteString.copyFromUtf8("message")))
+        .build();
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.ipc.invalidation.ticl;
+
+import com.google.ipc.invalidation.common.ObjectIdDigestUtils;
+import com.google.ipc.invalidation.common.ObjectIdDigestUtils.Sha1DigestFunction;
+import com.google.ipc.invalidation.util.Bytes;
+import com.google.protos.ipc.invalidation.ClientProtocol.ObjectIdP;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Tests {@link ObjectIdInterner}: canonical handles live in the table exactly while some component
+ * holds them.
+ *
+ */
+public class ObjectIdInternerTest extends TestCase {
+
+  private ObjectIdInterner interner;
+
+  @Override
+  protected void setUp() {
+    interner = new ObjectIdInterner(new Sha1DigestFunction());
+  }
+
+  public void testHandleIsCanonicalWhileHeld() {
+    ObjectIdP objectId =
+        ProtoConverter.convertToObjectIdProto(TiclTestEnvironment.newObjectIds(1, 1).get(0));
+    ObjectIdHandle handle = interner.intern(objectId);
+    assertNull("Not canonical until acquired", interner.find(objectId));
+
+    assertSame(handle, interner.acquire(handle, ObjectIdInterner.DESIRED_REGISTRATION));
+    assertSame(handle, interner.find(objectId));
+    assertSame(handle, interner.intern(objectId));
+
+    // A second holder gets the same handle, and the handle stays until both let go.
+    assertSame(handle,
+        interner.acquire(interner.intern(objectId), ObjectIdInterner.PENDING_OPERATION));
+    interner.release(handle, ObjectIdInterner.DESIRED_REGISTRATION);
+    assertSame(handle, interner.find(objectId));
+    interner.release(handle, ObjectIdInterner.PENDING_OPERATION);
+    assertNull(interner.find(objectId));
+    assertEquals(0, interner.size());
+  }
+
+  public void testAcquireKeepsDigestOfNewHandle() {
+    ObjectIdP objectId =
+        ProtoConverter.convertToObjectIdProto(TiclTestEnvironment.newObjectIds(1, 1).get(0));
+    ObjectIdHandle canonicalHandle = interner.acquire(interner.intern(objectId),
+        ObjectIdInterner.DESIRED_REGISTRATION);
+    Bytes digest = ObjectIdDigestUtils.getDigest(objectId, interner.getDigestFunction());
+
+    // A handle digested elsewhere hands its digest over to the canonical handle.
+    assertSame(canonicalHandle, interner.acquire(new ObjectIdHandle(objectId, digest),
+        ObjectIdInterner.PENDING_OPERATION));
+    assertSame(digest, interner.getDigest(objectId));
+    assertSame(digest, interner.getDigest(canonicalHandle));
+  }
+
+  public void testManyHandles() {
+    int numObjects = 10 * 1000;
+    List<ObjectIdHandle> handles = new ArrayList<ObjectIdHandle>(numObjects);
+    for (ObjectIdP objectId : ProtoConverter.convertToObjectIdProtoList(
+        TiclTestEnvironment.newObjectIds(0, numObjects))) {
+      handles.add(interner.acquire(interner.intern(objectId),
+          ObjectIdInterner.PENDING_REGISTRATION));
+    }
+    assertEquals(numObjects, interner.size());
+
+    // Look the handles up by equal, but distinct, object ids.
+    List<ObjectIdP> objectIds =
+        ProtoConverter.convertToObjectIdProtoList(TiclTestEnvironment.newObjectIds(0, numObjects));
+    for (int i = 0; i < numObjects; i++) {
+      assertSame(handles.get(i), interner.find(objectIds.get(i)));
+    }
+    for (int i = 0; i < numObjects; i += 2) {
+      interner.release(handles.get(i), ObjectIdInterner.PENDING_REGISTRATION);
+    }
+    assertEquals(numObjects / 2, interner.size());
+    for (int i = 0; i < numObjects; i++) {
+      assertEquals(i % 2 != 0, interner.find(objectIds.get(i)) != null);
+    }
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.ipc.invalidation.ticl;
+
+import com.google.ipc.invalidation.common.CommonProtos2;
+import com.google.ipc.invalidation.common.ObjectIdDigestUtils.Sha1DigestFunction;
+import com.google.protobuf.ByteString;
+import com.google.protos.ipc.invalidation.ClientProtocol.ObjectIdP;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Benchmark of {@link PackedRegistrationStore} against {@link SimpleRegistrationStore} at a million
+ * registrations: the heap retained per registration, and the time per object of adding all objects
+ * one at a time and then removing a tenth of them one at a time.
+ * <p>
+ * Run with a fixed, large heap (e.g. {@code -Xms2g -Xmx2g}). Usage:
+ * {@code PackedRegistrationStoreBenchmark [numObjects]}.
+ *
+ */
+public class PackedRegistrationStoreBenchmark {
+
+  public static void main(String[] args) throws InterruptedException {
+    int numObjects = (args.length > 0) ? Integer.parseInt(args[0]) : 1000 * 1000;
+    List<ObjectIdP> objectIds = new ArrayList<ObjectIdP>(numObjects);
+    for (int i = 0; i < numObjects; i++) {
+      objectIds.add(CommonProtos2.newObjectIdP(TiclTestEnvironment.CLIENT_TYPE,
+          ByteString.copyFromUtf8("object-" + i)));
+    }
+    measure(new SimpleRegistrationStore(new Sha1DigestFunction()), objectIds);
+    measure(new PackedRegistrationStore(new Sha1DigestFunction()), objectIds);
+  }
+
+  /** Fills the empty {@code store} with {@code objectIds} and prints the measurements. */
+  private static void measure(DigestStore<ObjectIdP> store, List<ObjectIdP> objectIds)
+      throws InterruptedException {
+    long baselineBytes = getUsedHeapBytes();
+
+    // The objects are copied so that the store does not share protos with the input.
+    long startNs = System.nanoTime();
+    for (ObjectIdP objectId : objectIds) {
+      store.add(CommonProtos2.newObjectIdP(objectId.getSource(), objectId.getName()));
+    }
+    store.getDigest();
+    long addNs = System.nanoTime() - startNs;
+    long retainedBytes = getUsedHeapBytes() - baselineBytes;
+
+    int numRemoved = objectIds.size() / 10;
+    startNs = System.nanoTime();
+    for (int i = 0; i < numRemoved; i++) {
+      store.remove(objectIds.get(i * 10));
+    }
+    store.getDigest();
+    long removeNs = System.nanoTime() - startNs;
+
+    System.out.println(store.getClass().getSimpleName() + ": " + objectIds.size() +
+        " registrations, " + (retainedBytes / objectIds.size()) + " bytes each; " +
+        (addNs / objectIds.size()) + " ns per add, " + (removeNs / numRemoved) +
+        " ns per remove; " + store.size() + " left");
+  }
+
+  /** Returns the number of bytes of heap in use after garbage collection. */
+  private static long getUsedHeapBytes() throws InterruptedException {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 8; i++) {
+      System.gc();
+      Thread.sleep(50);
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  private PackedRegistrationStoreBenchmark() {  // To prevent instantiation.
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.ipc.invalidation.ticl;
+
+import com.google.ipc.invalidation.common.ObjectIdDigestUtils.Sha1DigestFunction;
+import com.google.protos.ipc.invalidation.ClientProtocol.ObjectIdP;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+
+/**
+ * Tests that {@link PackedRegistrationStore}, whose mutations are buffered, stays equivalent to a
+ * {@link SimpleRegistrationStore} under single and batched additions and removals.
+ *
+ */
+public class PackedRegistrationStoreTest extends TestCase {
+
+  /** Number of distinct objects the mutations draw from. */
+  private static final int NUM_OBJECTS = 2000;
+
+  /** The objects the mutations draw from. */
+  private final List<ObjectIdP> objectIds =
+      ProtoConverter.convertToObjectIdProtoList(TiclTestEnvironment.newObjectIds(0, NUM_OBJECTS));
+
+  private final Random random = new Random(1);
+
+  private final PackedRegistrationStore packedStore =
+      new PackedRegistrationStore(new Sha1DigestFunction());
+
+  private final SimpleRegistrationStore simpleStore =
+      new SimpleRegistrationStore(new Sha1DigestFunction());
+
+  public void testSingleMutations() {
+    for (int i = 0; i < 20 * NUM_OBJECTS; i++) {
+      ObjectIdP objectId = objectIds.get(random.nextInt(NUM_OBJECTS));
+      if (random.nextInt(3) != 0) {
+        assertEquals(simpleStore.add(objectId), packedStore.add(objectId));
+      } else {
+        assertEquals(simpleStore.remove(objectId), packedStore.remove(objectId));
+      }
+      assertEquals(simpleStore.size(), packedStore.size());
+      assertEquals(simpleStore.contains(objectId), packedStore.contains(objectId));
+      if (i % 1000 == 0) {
+        checkStoresEqual();
+      }
+    }
+    checkStoresEqual();
+  }
+
+  public void testBatchedMutations() {
+    for (int i = 0; i < 200; i++) {
+      List<ObjectIdP> batch = new ArrayList<ObjectIdP>();
+      int batchSize = random.nextInt(200);
+      for (int j = 0; j < batchSize; j++) {
+        batch.add(objectIds.get(random.nextInt(NUM_OBJECTS)));
+      }
+      if (random.nextInt(3) != 0) {
+        assertEquals(simpleStore.add(batch).size(), packedStore.add(batch).size());
+      } else {
+        assertEquals(simpleStore.remove(batch).size(), packedStore.remove(batch).size());
+      }
+      assertEquals(simpleStore.size(), packedStore.size());
+    }
+    checkStoresEqual();
+    assertEquals(simpleStore.removeAll().size(), packedStore.removeAll().size());
+    checkStoresEqual();
+  }
+
+  /** Checks that the stores agree on their digests and contents, in whole and by prefix. */
+  private void checkStoresEqual() {
+    assertEquals(simpleStore.size(), packedStore.size());
+    assertTrue(Arrays.equals(simpleStore.getDigest(), packedStore.getDigest()));
+    for (int prefixLen = 1; prefixLen <= 4; prefixLen++) {
+      byte[] prefix = new byte[] {(byte) random.nextInt(256)};
+      assertEquals(simpleStore.size(prefix, prefixLen), packedStore.size(prefix, prefixLen));
+      assertTrue(Arrays.equals(simpleStore.getDigest(prefix, prefixLen),
+          packedStore.getDigest(prefix, prefixLen)));
+    }
+    assertEquals(toSet(simpleStore.getElements(RegistrationManager.EMPTY_PREFIX, 0)),
+        toSet(packedStore.getElements(RegistrationManager.EMPTY_PREFIX, 0)));
+  }
+
+  private static Set<ProtoWrapper<ObjectIdP>> toSet(Collection<ObjectIdP> objectIds) {
+    Set<ProtoWrapper<ObjectIdP>> result = new HashSet<ProtoWrapper<ObjectIdP>>();
+    for (ObjectIdP objectId : objectIds) {
+      result.add(ProtoWrapper.of(objectId));
+    }
+    return result;
+  }
+}
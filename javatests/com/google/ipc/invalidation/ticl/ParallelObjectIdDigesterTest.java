@@ -0,0 +1,69 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.ipc.invalidation.ticl;
+
+import com.google.ipc.invalidation.common.ObjectIdDigestUtils;
+import com.google.ipc.invalidation.common.ObjectIdDigestUtils.Sha1DigestFunction;
+import com.google.ipc.invalidation.external.client.types.ObjectId;
+import com.google.protos.ipc.invalidation.ClientProtocol.ObjectIdP;
+
+import junit.framework.TestCase;
+
+import java.util.List;
+
+
+/**
+ * Tests {@link ParallelObjectIdDigester}: the handles match those digested sequentially, and the
+ * digesters of many clients share one bounded pool of threads.
+ *
+ */
+public class ParallelObjectIdDigesterTest extends TestCase {
+
+  public void testMatchesSequentialDigests() {
+    List<ObjectId> objectIds = TiclTestEnvironment.newObjectIds(0, 5000);
+    List<ObjectIdHandle> handles = new ParallelObjectIdDigester(4).convertAndDigest(objectIds);
+    assertEquals(objectIds.size(), handles.size());
+    for (int i = 0; i < objectIds.size(); i++) {
+      ObjectIdP objectId = ProtoConverter.convertToObjectIdProto(objectIds.get(i));
+      assertEquals(ProtoWrapper.of(objectId), ProtoWrapper.of(handles.get(i).getProto()));
+      assertEquals(ObjectIdDigestUtils.getDigest(objectId, new Sha1DigestFunction()),
+          handles.get(i).digest);
+    }
+  }
+
+  public void testDigestersSharePool() {
+    List<ObjectId> objectIds = TiclTestEnvironment.newObjectIds(0, 5000);
+    for (int i = 0; i < 50; i++) {
+      assertEquals(objectIds.size(),
+          new ParallelObjectIdDigester(8).convertAndDigest(objectIds).size());
+    }
+    assertTrue(countDigesterThreads() <= Runtime.getRuntime().availableProcessors());
+  }
+
+  /** Returns the number of live worker threads of the digesters. */
+  private static int countDigesterThreads() {
+    Thread[] threads = new Thread[2 * Thread.activeCount() + 16];
+    int numThreads = Thread.enumerate(threads);
+    int numDigesterThreads = 0;
+    for (int i = 0; i < numThreads; i++) {
+      if (threads[i].getName().startsWith("ObjectIdDigester-")) {
+        numDigesterThreads++;
+      }
+    }
+    return numDigesterThreads;
+  }
+}
@@ -0,0 +1,309 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.ipc.invalidation.ticl;
+
+import com.google.ipc.invalidation.common.CommonProtos2;
+import com.google.ipc.invalidation.common.ObjectIdDigestUtils.Sha1DigestFunction;
+import com.google.ipc.invalidation.common.TiclMessageValidator2;
+import com.google.ipc.invalidation.common.TrickleState;
+import com.google.ipc.invalidation.external.client.SystemResources;
+import com.google.ipc.invalidation.external.client.SystemResources.AsyncNetworkChannel;
+import com.google.ipc.invalidation.external.client.SystemResources.NetworkChannel;
+import com.google.ipc.invalidation.external.client.types.Callback;
+import com.google.ipc.invalidation.external.client.types.SimplePair;
+import com.google.ipc.invalidation.external.client.types.Status;
+import com.google.ipc.invalidation.ticl.InvalidationClientCore.BatchingTask;
+import com.google.ipc.invalidation.util.NamedRunnable;
+import com.google.ipc.invalidation.util.Smearer;
+import com.google.protobuf.ByteString;
+import com.google.protos.ipc.invalidation.ClientProtocol.ErrorMessage;
+import com.google.protos.ipc.invalidation.ClientProtocol.InvalidationP;
+import com.google.protos.ipc.invalidation.ClientProtocol.ProtocolHandlerConfigP;
+import com.google.protos.ipc.invalidation.ClientProtocol.ServerToClientMessage;
+import com.google.protos.ipc.invalidation.JavaClient.BatcherState;
+import com.google.protos.ipc.invalidation.JavaClient.ProtocolHandlerState;
+
+import junit.framework.TestCase;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+
+/**
+ * Tests that {@link ProtocolHandler} defers the batching task until a message may be sent, rather
+ * than retrying it after every batching delay, while a rate limit or a quiet period holds, that it
+ * applies a quiet period only from a valid message, that urgent acks are capped at about one
+ * message per batching delay, and that a busy network resumes sending when a message completes or
+ * the network goes offline.
+ *
+ */
+public class ProtocolHandlerTest extends TestCase {
+
+  /** Batching delay of the tests. */
+  private static final int BATCHING_DELAY_MS = 100;
+
+  /** Window of the rate limit of the tests, in which one message may be sent. */
+  private static final int RATE_LIMIT_WINDOW_MS = 10 * 1000;
+
+  /** Urgent batching delay of the tests that enable it. */
+  private static final int URGENT_BATCHING_DELAY_MS = 10;
+
+  /** Quiet period requested by the server in the tests. */
+  private static final int QUIET_PERIOD_MS = 30 * 1000;
+
+  private final DeterministicScheduler scheduler = new DeterministicScheduler(1000 * 1000);
+
+  private final TestLogger logger = new TestLogger("ProtocolHandlerTest");
+
+  /** Number of messages sent to the network. */
+  private int numMessagesSent = 0;
+
+  private SystemResources resources;
+
+  @Override
+  protected void setUp() {
+    NetworkChannel network = new NetworkChannel() {
+      @Override
+      public void sendMessage(byte[] outgoingMessage) {
+        numMessagesSent++;
+      }
+
+      @Override
+      public void setListener(NetworkListener listener) {
+      }
+
+      @Override
+      public void setSystemResources(SystemResources resources) {
+      }
+    };
+    resources = new BasicSystemResources(logger, scheduler, scheduler, network,
+        new MemoryStorageImpl(), "Test");
+    resources.start();
+  }
+
+  public void testRateLimitedSendIsDeferredUntilLimitExpires() {
+    ProtocolHandlerConfigP config = ProtocolHandler.createConfigForTest()
+        .addRateLimit(CommonProtos2.newRateLimitP(RATE_LIMIT_WINDOW_MS, 1))
+        .build();
+    ProtocolHandler protocolHandler = newProtocolHandler(config, null);
+    BatchingTask batchingTask = newBatchingTask(protocolHandler);
+
+    sendInfoMessage(protocolHandler, batchingTask);
+    scheduler.runFor(2 * BATCHING_DELAY_MS);
+    assertEquals(1, numMessagesSent);
+
+    // The next message waits for the rate limit, without the batching task spinning meanwhile.
+    sendInfoMessage(protocolHandler, batchingTask);
+    long numTasksRunBefore = scheduler.getNumTasksRun();
+    scheduler.runFor(RATE_LIMIT_WINDOW_MS / 2);
+    assertEquals(1, numMessagesSent);
+    scheduler.runFor(RATE_LIMIT_WINDOW_MS);
+    assertEquals(2, numMessagesSent);
+    assertTrue(scheduler.getNumTasksRun() - numTasksRunBefore < 5);
+  }
+
+  public void testQuietPeriodDefersSendWithoutWarnings() {
+    ProtocolHandlerState state = ProtocolHandlerState.newBuilder()
+        .setNextMessageSendTimeMs(scheduler.getCurrentTimeMs() + QUIET_PERIOD_MS)
+        .setBatcherState(BatcherState.getDefaultInstance())
+        .build();
+    ProtocolHandler protocolHandler =
+        newProtocolHandler(ProtocolHandler.createConfigForTest().build(), state);
+    BatchingTask batchingTask = newBatchingTask(protocolHandler);
+
+    sendInfoMessage(protocolHandler, batchingTask);
+    long numTasksRunBefore = scheduler.getNumTasksRun();
+    scheduler.runFor(QUIET_PERIOD_MS - 5 * 1000);
+    assertEquals(0, numMessagesSent);
+    scheduler.runFor(10 * 1000);
+    assertEquals(1, numMessagesSent);
+    assertTrue(scheduler.getNumTasksRun() - numTasksRunBefore < 5);
+    assertEquals(0, logger.getNumWarnings());
+  }
+
+  public void testUrgentAcksAreCappedAtBatchingDelay() {
+    ProtocolHandler protocolHandler =
+        newProtocolHandler(ProtocolHandler.createConfigForTest().build(), null);
+    final BatchingTask batchingTask = new BatchingTask(protocolHandler, resources,
+        new Smearer(new Random(1), 20), BATCHING_DELAY_MS, URGENT_BATCHING_DELAY_MS);
+
+    // A lone ack goes out after the urgent batching delay.
+    sendInvalidationAck(protocolHandler, batchingTask, "lone-object");
+    scheduler.runFor(2 * URGENT_BATCHING_DELAY_MS);
+    assertEquals(1, numMessagesSent);
+    scheduler.runFor(10 * BATCHING_DELAY_MS);
+    assertEquals(1, numMessagesSent);
+
+    // A stream of acks, one per urgent batching delay, goes out in about one message per batching
+    // delay rather than one per ack.
+    int numAcks = 100;
+    for (int i = 0; i < numAcks; i++) {
+      sendInvalidationAck(protocolHandler, batchingTask, "object-" + i);
+      scheduler.runFor(URGENT_BATCHING_DELAY_MS);
+    }
+    scheduler.runFor(2 * BATCHING_DELAY_MS);
+    int numStreamMessages = numMessagesSent - 1;
+    int streamDurationMs = numAcks * URGENT_BATCHING_DELAY_MS;
+    assertTrue("Sent " + numStreamMessages + " messages",
+        numStreamMessages >= streamDurationMs / (2 * BATCHING_DELAY_MS));
+    assertTrue("Sent " + numStreamMessages + " messages",
+        numStreamMessages <= streamDurationMs / BATCHING_DELAY_MS + 3);
+  }
+
+  public void testBusyNetworkResumesOnCompletionOrOffline() {
+    final List<Callback<Status>> completions = new ArrayList<Callback<Status>>();
+    AsyncNetworkChannel network = new AsyncNetworkChannel() {
+      @Override
+      public void sendMessage(byte[] outgoingMessage, Callback<Status> done) {
+        numMessagesSent++;
+        completions.add(done);
+      }
+
+      @Override
+      public void sendMessage(byte[] outgoingMessage) {
+        numMessagesSent++;
+      }
+
+      @Override
+      public void setListener(NetworkListener listener) {
+      }
+
+      @Override
+      public void setSystemResources(SystemResources resources) {
+      }
+    };
+    resources = new BasicSystemResources(logger, scheduler, scheduler, network,
+        new MemoryStorageImpl(), "Test");
+    resources.start();
+    ProtocolHandler protocolHandler = newProtocolHandler(
+        ProtocolHandler.createConfigForTest().setMaxMessagesInFlight(1).build(), null);
+    BatchingTask batchingTask = newBatchingTask(protocolHandler);
+
+    sendInfoMessage(protocolHandler, batchingTask);
+    scheduler.runFor(2 * BATCHING_DELAY_MS);
+    assertEquals(1, numMessagesSent);
+
+    // The next message waits for the first to be sent, without the batching task spinning.
+    sendInfoMessage(protocolHandler, batchingTask);
+    long numTasksRunBefore = scheduler.getNumTasksRun();
+    scheduler.runFor(100 * BATCHING_DELAY_MS);
+    assertEquals(1, numMessagesSent);
+    assertTrue(scheduler.getNumTasksRun() - numTasksRunBefore < 5);
+    completions.get(0).accept(Status.newInstance(Status.Code.SUCCESS, ""));
+    scheduler.runFor(2 * BATCHING_DELAY_MS);
+    assertEquals(2, numMessagesSent);
+
+    // The network going offline releases the message it holds.
+    sendInfoMessage(protocolHandler, batchingTask);
+    scheduler.runFor(100 * BATCHING_DELAY_MS);
+    assertEquals(2, numMessagesSent);
+    handleNetworkStatusChange(protocolHandler, false);
+    scheduler.runFor(2 * BATCHING_DELAY_MS);
+    assertEquals(3, numMessagesSent);
+  }
+
+  public void testConfigChangeIsAppliedOnlyIfWholeMessageIsValid() {
+    ProtocolHandler protocolHandler =
+        newProtocolHandler(ProtocolHandler.createConfigForTest().build(), null);
+    long initialNextSendTimeMs = protocolHandler.getNextMessageSendTimeMsForTest();
+    ServerToClientMessage.Builder message = CommonProtos2.newServerToClientMessage(
+        CommonProtos2.newServerHeader(TiclTestEnvironment.CLIENT_TOKEN,
+            scheduler.getCurrentTimeMs(), null, null),
+        CommonProtos2.newConfigChangeMessage(QUIET_PERIOD_MS)).toBuilder();
+
+    // An error message without a description is invalid, so the whole message is dropped.
+    handleIncomingMessage(protocolHandler, message.clone()
+        .setErrorMessage(ErrorMessage.newBuilder().setCode(ErrorMessage.Code.UNKNOWN_FAILURE))
+        .build());
+    assertEquals(initialNextSendTimeMs, protocolHandler.getNextMessageSendTimeMsForTest());
+
+    handleIncomingMessage(protocolHandler, message.build());
+    assertEquals(scheduler.getCurrentTimeMs() + QUIET_PERIOD_MS,
+        protocolHandler.getNextMessageSendTimeMsForTest());
+  }
+
+  /** Has {@code protocolHandler} handle {@code message} from the server, on the internal thread. */
+  private void handleIncomingMessage(final ProtocolHandler protocolHandler,
+      final ServerToClientMessage message) {
+    scheduler.schedule(0, new NamedRunnable("ProtocolHandlerTest.handleIncomingMessage") {
+      @Override
+      public void run() {
+        protocolHandler.handleIncomingMessage(ByteBuffer.wrap(message.toByteArray()));
+      }
+    });
+    scheduler.runReadyTasks();
+  }
+
+  /** Informs {@code protocolHandler} that the network is online if {@code isOnline}. */
+  private void handleNetworkStatusChange(final ProtocolHandler protocolHandler,
+      final boolean isOnline) {
+    scheduler.schedule(0, new NamedRunnable("ProtocolHandlerTest.handleNetworkStatusChange") {
+      @Override
+      public void run() {
+        protocolHandler.handleNetworkStatusChange(isOnline);
+      }
+    });
+    scheduler.runReadyTasks();
+  }
+
+  /** Returns a protocol handler with {@code config} and {@code state}, if not {@code null}. */
+  private ProtocolHandler newProtocolHandler(ProtocolHandlerConfigP config,
+      ProtocolHandlerState state) {
+    return new ProtocolHandler(config, resources, new Smearer(new Random(1), 20),
+        new Statistics(), new ObjectIdInterner(new Sha1DigestFunction()),
+        TiclTestEnvironment.CLIENT_TYPE, "ProtocolHandlerTest",
+        new TiclTestEnvironment.StubProtocolListener(),
+        new TiclMessageValidator2(logger), state);
+  }
+
+  /** Returns a batching task for {@code protocolHandler}, without urgent batching. */
+  private BatchingTask newBatchingTask(ProtocolHandler protocolHandler) {
+    return new BatchingTask(protocolHandler, resources, new Smearer(new Random(1), 20),
+        BATCHING_DELAY_MS, 0);
+  }
+
+  /** Has {@code protocolHandler} send an info message, on the internal thread. */
+  private void sendInfoMessage(final ProtocolHandler protocolHandler,
+      final BatchingTask batchingTask) {
+    scheduler.schedule(0, new NamedRunnable("ProtocolHandlerTest.sendInfoMessage") {
+      @Override
+      public void run() {
+        List<SimplePair<String, Integer>> performanceCounters = Collections.emptyList();
+        protocolHandler.sendInfoMessage(performanceCounters, null, false, batchingTask);
+      }
+    });
+    scheduler.runReadyTasks();
+  }
+
+  /** Has {@code protocolHandler} send an ack for an invalidation of {@code name}. */
+  private void sendInvalidationAck(final ProtocolHandler protocolHandler,
+      final BatchingTask batchingTask, String name) {
+    final InvalidationP invalidation = CommonProtos2.newInvalidationP(
+        CommonProtos2.newObjectIdP(TiclTestEnvironment.CLIENT_TYPE, ByteString.copyFromUtf8(name)),
+        1, TrickleState.RESTART);
+    scheduler.schedule(0, new NamedRunnable("ProtocolHandlerTest.sendInvalidationAck") {
+      @Override
+      public void run() {
+        protocolHandler.sendInvalidationAck(invalidation, batchingTask);
+      }
+    });
+    scheduler.runReadyTasks();
+  }
+}
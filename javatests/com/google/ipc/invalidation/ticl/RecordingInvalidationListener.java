@@ -0,0 +1,109 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.ipc.invalidation.ticl;
+
+import com.google.ipc.invalidation.external.client.InvalidationClient;
+import com.google.ipc.invalidation.external.client.InvalidationListener;
+import com.google.ipc.invalidation.external.client.types.AckHandle;
+import com.google.ipc.invalidation.external.client.types.ErrorInfo;
+import com.google.ipc.invalidation.external.client.types.Invalidation;
+import com.google.ipc.invalidation.external.client.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Listener recording the upcalls it receives, for tests. Invalidations are acknowledged as soon
+ * as they are received.
+ * <p>
+ * This class is not thread-safe.
+ *
+ */
+class RecordingInvalidationListener implements InvalidationListener {
+
+  /** Whether {@link #ready} has been called. */
+  boolean isReady = false;
+
+  /** Objects of the {@code informRegistrationStatus} upcalls, in order. */
+  final List<ObjectId> registrationStatusObjects = new ArrayList<ObjectId>();
+
+  /** States of the {@code informRegistrationStatus} upcalls, in order. */
+  final List<RegistrationState> registrationStatusStates = new ArrayList<RegistrationState>();
+
+  /** Objects of the {@code informRegistrationFailure} upcalls, in order. */
+  final List<ObjectId> registrationFailureObjects = new ArrayList<ObjectId>();
+
+  /** Invalidations received, in order. */
+  final List<Invalidation> invalidations = new ArrayList<Invalidation>();
+
+  /** Number of {@code reissueRegistrations} upcalls. */
+  int numReissueRegistrations = 0;
+
+  @Override
+  public void ready(InvalidationClient client) {
+    isReady = true;
+  }
+
+  @Override
+  public void invalidate(InvalidationClient client, Invalidation invalidation,
+      AckHandle ackHandle) {
+    invalidations.add(invalidation);
+    client.acknowledge(ackHandle);
+  }
+
+  @Override
+  public void invalidateUnknownVersion(InvalidationClient client, ObjectId objectId,
+      AckHandle ackHandle) {
+    client.acknowledge(ackHandle);
+  }
+
+  @Override
+  public void invalidateAll(InvalidationClient client, AckHandle ackHandle) {
+    client.acknowledge(ackHandle);
+  }
+
+  @Override
+  public void informRegistrationStatus(InvalidationClient client, ObjectId objectId,
+      RegistrationState regState) {
+    registrationStatusObjects.add(objectId);
+    registrationStatusStates.add(regState);
+  }
+
+  @Override
+  public void informRegistrationFailure(InvalidationClient client, ObjectId objectId,
+      boolean isTransient, String errorMessage) {
+    registrationFailureObjects.add(objectId);
+  }
+
+  @Override
+  public void reissueRegistrations(InvalidationClient client, byte[] prefix, int prefixLength) {
+    numReissueRegistrations++;
+  }
+
+  @Override
+  public void informError(InvalidationClient client, ErrorInfo errorInfo) {
+    // Nothing to record.
+  }
+
+  /** Forgets all registration status and failure upcalls received so far. */
+  void clearRegistrationUpcalls() {
+    registrationStatusObjects.clear();
+    registrationStatusStates.clear();
+    registrationFailureObjects.clear();
+  }
+}
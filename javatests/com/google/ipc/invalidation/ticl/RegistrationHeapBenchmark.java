@@ -0,0 +1,93 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.ipc.invalidation.ticl;
+
+import com.google.ipc.invalidation.common.ObjectIdDigestUtils.Sha1DigestFunction;
+import com.google.ipc.invalidation.external.client.types.ObjectId;
+import com.google.protos.ipc.invalidation.ClientProtocol.InitializeMessage.DigestSerializationType;
+import com.google.protos.ipc.invalidation.ClientProtocol.RegistrationP.OpType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Measures the heap retained per registration by a {@link RegistrationManager} and the
+ * {@link ObjectIdInterner} it shares with the rest of the client, for each kind of registration
+ * store: once the registrations are requested and pending, and once the server has confirmed them.
+ * <p>
+ * Run with a fixed heap size (e.g. {@code -Xms1g -Xmx1g}) for stable figures. Usage:
+ * {@code RegistrationHeapBenchmark [numObjects]}.
+ *
+ */
+public class RegistrationHeapBenchmark {
+
+  public static void main(String[] args) throws InterruptedException {
+    int numObjects = (args.length > 0) ? Integer.parseInt(args[0]) : 100 * 1000;
+    measure("BYTE_BASED", DigestSerializationType.BYTE_BASED, false, numObjects);
+    measure("BYTE_BASED (compact)", DigestSerializationType.BYTE_BASED, true, numObjects);
+    measure("SUM_BASED", DigestSerializationType.SUM_BASED, false, numObjects);
+  }
+
+  /**
+   * Prints the heap retained per registration by a manager with digests of type
+   * {@code digestType}, compact if {@code useCompactStore}, registering {@code numObjects}
+   * objects.
+   */
+  private static void measure(String description, DigestSerializationType digestType,
+      boolean useCompactStore, int numObjects) throws InterruptedException {
+    List<ObjectId> objectIds = TiclTestEnvironment.newObjectIds(0, numObjects);
+    long baselineBytes = getUsedHeapBytes();
+
+    ObjectIdInterner interner = new ObjectIdInterner(new Sha1DigestFunction());
+    RegistrationManager manager =
+        new RegistrationManager(new TestLogger("Benchmark"), new Statistics(), interner, null);
+    manager.setDigestSerializationType(digestType);
+    manager.setUseCompactStore(useCompactStore);
+    List<ObjectIdHandle> handles = new ArrayList<ObjectIdHandle>(numObjects);
+    for (ObjectId objectId : objectIds) {
+      handles.add(interner.intern(ProtoConverter.convertToObjectIdProto(objectId)));
+    }
+    manager.performOperations(handles, OpType.REGISTER);
+    handles = null;
+    long pendingBytes = getUsedHeapBytes() - baselineBytes;
+
+    // The server confirms the registrations, so they are no longer pending.
+    manager.informServerRegistrationSummary(manager.getRegistrationSummary());
+    long confirmedBytes = getUsedHeapBytes() - baselineBytes;
+
+    // Keep the application's object ids, counted in the baseline, reachable until here.
+    System.out.println(description + ": " + objectIds.size() + " objects, " +
+        manager.getRegistrationSummary().getNumRegistrations() + " registrations, " +
+        (pendingBytes / numObjects) + " bytes each while pending, " +
+        (confirmedBytes / numObjects) + " bytes each once confirmed; " + interner.size() +
+        " interned");
+  }
+
+  /** Returns the number of bytes of heap in use after garbage collection. */
+  private static long getUsedHeapBytes() throws InterruptedException {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 8; i++) {
+      System.gc();
+      Thread.sleep(50);
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  private RegistrationHeapBenchmark() {  // To prevent instantiation.
+  }
+}
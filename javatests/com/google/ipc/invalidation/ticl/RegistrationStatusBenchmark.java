@@ -0,0 +1,91 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.ipc.invalidation.ticl;
+
+import com.google.ipc.invalidation.common.CommonProtos2;
+import com.google.ipc.invalidation.common.DigestFunction;
+import com.google.ipc.invalidation.common.ObjectIdDigestUtils;
+import com.google.ipc.invalidation.common.ObjectIdDigestUtils.Sha1DigestFunction;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protos.ipc.invalidation.ClientProtocol.ObjectIdP;
+import com.google.protos.ipc.invalidation.ClientProtocol.RegistrationP.OpType;
+import com.google.protos.ipc.invalidation.ClientProtocol.RegistrationStatus;
+import com.google.protos.ipc.invalidation.ClientProtocol.RegistrationStatusMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Microbenchmark of a registration-status storm: the server confirming every registration of a
+ * large set at once, as after a registration sync. Compares the cost per status of
+ * {@link RegistrationManager#handleRegistrationStatus}, whose store lookups reuse the digests kept
+ * with the interned object ids, with that of recomputing the digest of each object alone.
+ * <p>
+ * Usage: {@code RegistrationStatusBenchmark [numObjects [numRounds]]}.
+ *
+ */
+public class RegistrationStatusBenchmark {
+
+  public static void main(String[] args) throws InvalidProtocolBufferException {
+    int numObjects = (args.length > 0) ? Integer.parseInt(args[0]) : 100 * 1000;
+    int numRounds = (args.length > 1) ? Integer.parseInt(args[1]) : 5;
+    List<ObjectIdP> objectIds = ProtoConverter.convertToObjectIdProtoList(
+        TiclTestEnvironment.newObjectIds(0, numObjects));
+
+    // The statuses are parsed, as from the wire, so they share no proto instances with the client.
+    List<RegistrationStatus> statuses = new ArrayList<RegistrationStatus>(numObjects);
+    for (ObjectIdP objectId : objectIds) {
+      statuses.add(CommonProtos2.newSuccessRegistrationStatus(
+          CommonProtos2.newRegistrationP(objectId, true)));
+    }
+    byte[] statusMessage =
+        CommonProtos2.newRegistrationStatusMessage(statuses).toByteArray();
+
+    for (int round = 1; round <= numRounds; round++) {
+      DigestFunction digestFunction = new Sha1DigestFunction();
+      ObjectIdInterner interner = new ObjectIdInterner(digestFunction);
+      RegistrationManager manager = new RegistrationManager(new TestLogger("Benchmark"),
+          new Statistics(), interner, null);
+      List<ObjectIdHandle> handles = new ArrayList<ObjectIdHandle>(numObjects);
+      for (ObjectIdP objectId : objectIds) {
+        handles.add(interner.intern(objectId));
+      }
+      manager.performOperations(handles, OpType.REGISTER);
+      List<RegistrationStatus> receivedStatuses =
+          RegistrationStatusMessage.parseFrom(statusMessage).getRegistrationStatusList();
+
+      long startNs = System.nanoTime();
+      manager.handleRegistrationStatus(receivedStatuses);
+      long handleNs = System.nanoTime() - startNs;
+
+      // What each lookup cost when the digest of the object was recomputed for it.
+      startNs = System.nanoTime();
+      for (RegistrationStatus status : receivedStatuses) {
+        ObjectIdDigestUtils.getDigest(status.getRegistration().getObjectId(), digestFunction);
+      }
+      long digestNs = System.nanoTime() - startNs;
+
+      System.out.println("Round " + round + ": handleRegistrationStatus " +
+          (handleNs / numObjects) + " ns/status; digest recomputation alone " +
+          (digestNs / numObjects) + " ns/status");
+    }
+  }
+
+  private RegistrationStatusBenchmark() {  // To prevent instantiation.
+  }
+}
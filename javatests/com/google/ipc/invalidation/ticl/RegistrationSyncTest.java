@@ -0,0 +1,148 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.ipc.invalidation.ticl;
+
+import com.google.ipc.invalidation.common.CommonProtos2;
+import com.google.ipc.invalidation.common.ObjectIdDigestUtils.Sha1DigestFunction;
+import com.google.ipc.invalidation.external.client.types.ObjectId;
+import com.google.ipc.invalidation.ticl.TiclTestEnvironment.TestClient;
+import com.google.protobuf.ByteString;
+import com.google.protos.ipc.invalidation.ClientProtocol.InitializeMessage.DigestSerializationType;
+import com.google.protos.ipc.invalidation.ClientProtocol.ObjectIdP;
+import com.google.protos.ipc.invalidation.ClientProtocol.RegistrationSubtree;
+import com.google.protos.ipc.invalidation.JavaClient.RegistrationManagerStateP;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+
+/**
+ * Tests that registration sync between a client and an {@link InMemoryInvalidationServer} that
+ * disagree about a few registrations converges by bisecting the digest prefixes, without sending
+ * all of the registrations, and that registrations too large for one message are split into
+ * subtrees that each fit.
+ *
+ */
+public class RegistrationSyncTest extends TestCase {
+
+  /** Number of objects registered by the client. */
+  private static final int NUM_OBJECTS = 2000;
+
+  /** Simulated time allowed for registration and sync to complete. */
+  private static final int SETTLE_TIME_MS = 60 * 1000;
+
+  private TiclTestEnvironment env;
+
+  @Override
+  protected void setUp() {
+    env = new TiclTestEnvironment();
+  }
+
+  public void testByteBasedSyncConverges() {
+    checkSyncConverges(DigestSerializationType.BYTE_BASED);
+  }
+
+  public void testSumBasedSyncConverges() {
+    checkSyncConverges(DigestSerializationType.SUM_BASED);
+  }
+
+  public void testOversizedSubtreeIsSplit() {
+    int maxSubtreeSizeBytes = 4 * 1024;
+    List<ObjectIdP> objectIds = ProtoConverter.convertToObjectIdProtoList(
+        TiclTestEnvironment.newObjectIds(0, NUM_OBJECTS));
+    RegistrationManager registrationManager = new RegistrationManager(
+        new TestLogger("RegistrationSyncTest"), new Statistics(),
+        new ObjectIdInterner(new Sha1DigestFunction()),
+        RegistrationManagerStateP.newBuilder()
+            .addAllRegistrations(objectIds)
+            .setLastKnownServerSummary(CommonProtos2.newRegistrationSummary(0, new byte[20]))
+            .build());
+
+    List<RegistrationSubtree> subtrees =
+        registrationManager.getRegistrationSubtrees(new byte[0], 0, maxSubtreeSizeBytes);
+    List<ObjectIdP> subtreeObjectIds = new ArrayList<ObjectIdP>();
+    for (RegistrationSubtree subtree : subtrees) {
+      assertTrue(subtree.getSerializedSize() <= maxSubtreeSizeBytes);
+      subtreeObjectIds.addAll(subtree.getRegisteredObjectList());
+    }
+    assertEquals(objectIds.size(), subtreeObjectIds.size());
+    assertEquals(toSet(objectIds), toSet(subtreeObjectIds));
+
+    // Splitting by the mean object size yields subtrees that are mostly well filled.
+    int totalSizeBytes = registrationManager.getRegistrations(new byte[0], 0).getSerializedSize();
+    assertTrue(subtrees.size() < 4 * totalSizeBytes / maxSubtreeSizeBytes);
+  }
+
+  /**
+   * Makes the server lose a few of the registrations of a client using digests of type
+   * {@code digestType}, and checks that sync restores them at a fraction of the cost of sending
+   * all registrations.
+   */
+  private void checkSyncConverges(DigestSerializationType digestType) {
+    TestClient client = env.newReadyClient("client",
+        TiclTestEnvironment.createConfig().setDigestSerializationType(digestType).build());
+    List<ObjectId> objectIds = TiclTestEnvironment.newObjectIds(0, NUM_OBJECTS);
+    long bytesBeforeRegistration = getBytesExchanged();
+    client.client.register(objectIds);
+    env.scheduler.runFor(SETTLE_TIME_MS);
+    long registrationBytes = getBytesExchanged() - bytesBeforeRegistration;
+
+    ByteString token = client.client.getClientTokenForTest();
+    assertEquals(toObjectIdSet(objectIds), toSet(env.server.getRegistrationsForTest(token)));
+
+    // Make the server diverge from the client in a few objects spread over the digest space.
+    List<ObjectIdP> lostObjectIds = new ArrayList<ObjectIdP>();
+    for (int i = 0; i < NUM_OBJECTS; i += NUM_OBJECTS / 4) {
+      lostObjectIds.add(ProtoConverter.convertToObjectIdProto(objectIds.get(i)));
+    }
+    env.server.removeRegistrationsForTest(token, lostObjectIds);
+    assertEquals(NUM_OBJECTS - lostObjectIds.size(),
+        env.server.getRegistrationsForTest(token).size());
+
+    // The next heartbeat reveals the divergence, and sync repairs it.
+    long bytesBeforeSync = getBytesExchanged();
+    env.scheduler.runFor(SETTLE_TIME_MS);
+    long syncBytes = getBytesExchanged() - bytesBeforeSync;
+
+    assertEquals(toObjectIdSet(objectIds), toSet(env.server.getRegistrationsForTest(token)));
+    assertTrue("Sync cost " + syncBytes + " bytes, registration " + registrationBytes,
+        syncBytes < registrationBytes / 4);
+    assertTrue(client.listener.registrationFailureObjects.isEmpty());
+  }
+
+  /** Returns the number of bytes exchanged between the clients and the server so far. */
+  private long getBytesExchanged() {
+    return env.server.getBytesReceived() + env.server.getBytesSent();
+  }
+
+  private static Set<ProtoWrapper<ObjectIdP>> toObjectIdSet(Collection<ObjectId> objectIds) {
+    return toSet(ProtoConverter.convertToObjectIdProtoList(objectIds));
+  }
+
+  private static Set<ProtoWrapper<ObjectIdP>> toSet(Collection<ObjectIdP> objectIds) {
+    Set<ProtoWrapper<ObjectIdP>> result = new HashSet<ProtoWrapper<ObjectIdP>>();
+    for (ObjectIdP objectId : objectIds) {
+      result.add(ProtoWrapper.of(objectId));
+    }
+    return result;
+  }
+}
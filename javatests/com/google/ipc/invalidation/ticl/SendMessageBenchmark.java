@@ -0,0 +1,173 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.ipc.invalidation.ticl;
+
+import com.google.ipc.invalidation.common.CommonProtos2;
+import com.google.ipc.invalidation.common.ObjectIdDigestUtils.Sha1DigestFunction;
+import com.google.ipc.invalidation.common.TiclMessageValidator2;
+import com.google.ipc.invalidation.external.client.SystemResources;
+import com.google.ipc.invalidation.external.client.SystemResources.NetworkChannel;
+import com.google.ipc.invalidation.external.client.types.ObjectId;
+import com.google.ipc.invalidation.external.client.types.SimplePair;
+import com.google.ipc.invalidation.ticl.InvalidationClientCore.BatchingTask;
+import com.google.ipc.invalidation.ticl.ProtocolHandler.ProtocolListener;
+import com.google.ipc.invalidation.util.Smearer;
+import com.google.protos.ipc.invalidation.ClientProtocol.ObjectIdP;
+import com.google.protos.ipc.invalidation.ClientProtocol.RegistrationP.OpType;
+import com.google.protos.ipc.invalidation.ClientProtocol.RegistrationSummary;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+
+/**
+ * Measures the bytes allocated and the time taken by {@link ProtocolHandler#sendMessageToServer}
+ * per message, with the client header's registration summary memoized by the
+ * {@link RegistrationManager} and, for comparison, rebuilt from the registration store on every
+ * call as before it was memoized. Each message carries a small info message, so that the header
+ * dominates.
+ * <p>
+ * Allocation is measured with the per-thread allocation counter of HotSpot-based JVMs; elsewhere,
+ * only times are printed. Usage: {@code SendMessageBenchmark [numObjects [numMessages]]}.
+ *
+ */
+public class SendMessageBenchmark {
+
+  /** Number of rounds measuring each way of getting the summary. */
+  private static final int NUM_ROUNDS = 4;
+
+  /** Source of the per-thread allocation counters. */
+  private static final ThreadMXBean THREAD_BEAN = ManagementFactory.getThreadMXBean();
+
+  public static void main(String[] args) {
+    int numObjects = (args.length > 0) ? Integer.parseInt(args[0]) : 100 * 1000;
+    int numMessages = (args.length > 1) ? Integer.parseInt(args[1]) : 200 * 1000;
+    List<ObjectId> objectIds = TiclTestEnvironment.newObjectIds(0, numObjects);
+
+    // The registrations as the manager keeps them, and as a store for the rebuilt summaries.
+    ObjectIdInterner interner = new ObjectIdInterner(new Sha1DigestFunction());
+    final RegistrationManager manager =
+        new RegistrationManager(new TestLogger("Benchmark"), new Statistics(), interner, null);
+    final SimpleRegistrationStore store = new SimpleRegistrationStore(new Sha1DigestFunction());
+    List<ObjectIdHandle> handles = new ArrayList<ObjectIdHandle>(numObjects);
+    for (ObjectId objectId : objectIds) {
+      ObjectIdP objectIdP = ProtoConverter.convertToObjectIdProto(objectId);
+      handles.add(interner.intern(objectIdP));
+      store.add(objectIdP);
+    }
+    manager.performOperations(handles, OpType.REGISTER);
+    manager.informServerRegistrationSummary(manager.getRegistrationSummary());
+
+    ProtocolListener memoizedListener = new TiclTestEnvironment.StubProtocolListener() {
+      @Override
+      public RegistrationSummary getRegistrationSummary() {
+        return manager.getRegistrationSummary();
+      }
+    };
+    ProtocolListener rebuiltListener = new TiclTestEnvironment.StubProtocolListener() {
+      @Override
+      public RegistrationSummary getRegistrationSummary() {
+        return CommonProtos2.newRegistrationSummary(store.size(), store.getDigest());
+      }
+    };
+
+    // Alternate the two paths over several rounds; the first rounds include the JIT warm-up.
+    for (int round = 1; round <= NUM_ROUNDS; round++) {
+      measure("Round " + round + ", summary memoized", memoizedListener, interner, numMessages);
+      measure("Round " + round + ", summary rebuilt per message", rebuiltListener, interner,
+          numMessages);
+    }
+  }
+
+  /**
+   * Sends {@code numMessages} messages through a new protocol handler with {@code listener} and
+   * prints the bytes allocated and the time taken per message.
+   */
+  private static void measure(final String description, ProtocolListener listener,
+      ObjectIdInterner interner, final int numMessages) {
+    DeterministicScheduler scheduler = new DeterministicScheduler(0);
+    SystemResources resources = new BasicSystemResources(new TestLogger("Benchmark"), scheduler,
+        scheduler, new DiscardingNetworkChannel(), new MemoryStorageImpl(), "Benchmark");
+    resources.start();
+
+    // No rate limits and no sampled validation, so that every call sends the pending message.
+    Random random = new Random(1);
+    Smearer smearer = new Smearer(random, 20);
+    final ProtocolHandler protocolHandler = new ProtocolHandler(ProtocolHandler.createConfig()
+        .clearRateLimit().setOutgoingMessageValidationPeriod(0).build(), resources, smearer,
+        new Statistics(), interner, TiclTestEnvironment.CLIENT_TYPE, "Benchmark", listener,
+        new TiclMessageValidator2(resources.getLogger()), null);
+    final BatchingTask batchingTask =
+        new BatchingTask(protocolHandler, resources, smearer, 1000, 0);
+    final List<SimplePair<String, Integer>> performanceCounters = Collections.emptyList();
+
+    // The protocol handler must be called on the internal thread.
+    scheduler.schedule(0, new Runnable() {
+      @Override
+      public void run() {
+        long allocatedBytes = 0;
+        long elapsedNs = 0;
+        for (int i = 0; i < numMessages; i++) {
+          protocolHandler.sendInfoMessage(performanceCounters, null, false, batchingTask);
+          long startBytes = getAllocatedBytes();
+          long startNs = System.nanoTime();
+          protocolHandler.sendMessageToServer();
+          elapsedNs += System.nanoTime() - startNs;
+          allocatedBytes += getAllocatedBytes() - startBytes;
+        }
+        System.out.println(description + ": " + numMessages + " messages, " +
+            ((allocatedBytes < 0) ? "?" : Long.toString(allocatedBytes / numMessages)) +
+            " bytes allocated and " + (elapsedNs / numMessages) + " ns each");
+      }
+    });
+    scheduler.runReadyTasks();
+  }
+
+  /**
+   * Returns the number of bytes allocated so far by the current thread, or a negative value if the
+   * JVM does not count them.
+   */
+  private static long getAllocatedBytes() {
+    if (!(THREAD_BEAN instanceof com.sun.management.ThreadMXBean)) {
+      return -1;
+    }
+    return ((com.sun.management.ThreadMXBean) THREAD_BEAN).getThreadAllocatedBytes(
+        Thread.currentThread().getId());
+  }
+
+  /** Network channel dropping every outgoing message. */
+  private static class DiscardingNetworkChannel implements NetworkChannel {
+    @Override
+    public void sendMessage(byte[] outgoingMessage) {
+    }
+
+    @Override
+    public void setListener(NetworkListener listener) {
+    }
+
+    @Override
+    public void setSystemResources(SystemResources resources) {
+    }
+  }
+
+  private SendMessageBenchmark() {  // To prevent instantiation.
+  }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.ipc.invalidation.ticl;
+
+import com.google.ipc.invalidation.external.client.SystemResources;
+import com.google.ipc.invalidation.external.client.SystemResources.NetworkChannel;
+import com.google.ipc.invalidation.external.client.types.ObjectId;
+import com.google.ipc.invalidation.ticl.TiclTestEnvironment.TestClient;
+import com.google.ipc.invalidation.util.NamedRunnable;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+
+/**
+ * Tests that {@code setRegistrations} sends and reports only the difference between the current
+ * and the new desired registrations, and that undoing an operation cancels it only if it has not
+ * been sent.
+ *
+ */
+public class SetRegistrationsTest extends TestCase {
+
+  /** Simulated time allowed for registrations to complete. */
+  private static final int SETTLE_TIME_MS = 60 * 1000;
+
+  /** Latency of the network of the tests that delay messages to the server. */
+  private static final int NETWORK_LATENCY_MS = 2 * 1000;
+
+  /** Network channel that passes messages to the server after {@link #NETWORK_LATENCY_MS}. */
+  private class DelayingNetworkChannel implements NetworkChannel {
+    private final NetworkChannel delegate = env.server.newChannel();
+
+    @Override
+    public void sendMessage(final byte[] outgoingMessage) {
+      env.scheduler.schedule(NETWORK_LATENCY_MS,
+          new NamedRunnable("SetRegistrationsTest.sendMessage") {
+        @Override
+        public void run() {
+          delegate.sendMessage(outgoingMessage);
+        }
+      });
+    }
+
+    @Override
+    public void setListener(NetworkListener listener) {
+      delegate.setListener(listener);
+    }
+
+    @Override
+    public void setSystemResources(SystemResources resources) {
+      delegate.setSystemResources(resources);
+    }
+  }
+
+  private TiclTestEnvironment env;
+
+  private TestClient client;
+
+  @Override
+  protected void setUp() {
+    env = new TiclTestEnvironment();
+    client = env.newReadyClient("client", TiclTestEnvironment.createConfig().build());
+  }
+
+  public void testOnlyDeltaIsSentAndReported() {
+    client.client.register(TiclTestEnvironment.newObjectIds(0, 100));
+    env.scheduler.runFor(SETTLE_TIME_MS);
+    client.listener.clearRegistrationUpcalls();
+    int numOpsBefore = env.server.getNumRegistrationOpsReceivedForTest();
+
+    // Keep half of the objects and replace the other half.
+    List<ObjectId> newObjectIds = TiclTestEnvironment.newObjectIds(50, 100);
+    client.client.setRegistrations(newObjectIds);
+    env.scheduler.runFor(SETTLE_TIME_MS);
+
+    assertEquals(100, env.server.getNumRegistrationOpsReceivedForTest() - numOpsBefore);
+    // The server's status for each operation and its summary may both report it, but only the
+    // changed objects are reported.
+    assertEquals(100, new HashSet<ObjectId>(client.listener.registrationStatusObjects).size());
+    assertEquals(newObjectIds.size(),
+        env.server.getRegistrationsForTest(client.client.getClientTokenForTest()).size());
+
+    // Setting the same registrations again changes nothing.
+    client.listener.clearRegistrationUpcalls();
+    client.client.setRegistrations(new ArrayList<ObjectId>(newObjectIds));
+    env.scheduler.runFor(SETTLE_TIME_MS);
+    assertEquals(100, env.server.getNumRegistrationOpsReceivedForTest() - numOpsBefore);
+    assertTrue(client.listener.registrationStatusObjects.isEmpty());
+  }
+
+  public void testUnsentRegistrationIsCancelled() {
+    int numOpsBefore = env.server.getNumRegistrationOpsReceivedForTest();
+
+    // Undo a registration before the batching task sends it.
+    client.client.register(TiclTestEnvironment.newObjectIds(0, 1).get(0));
+    client.client.setRegistrations(Collections.<ObjectId>emptyList());
+    env.scheduler.runFor(SETTLE_TIME_MS);
+
+    assertEquals(numOpsBefore, env.server.getNumRegistrationOpsReceivedForTest());
+    assertTrue(
+        env.server.getRegistrationsForTest(client.client.getClientTokenForTest()).isEmpty());
+    assertTrue(client.listener.registrationFailureObjects.isEmpty());
+  }
+
+  public void testUndoingSentRegistrationReachesServer() {
+    TestClient slowClient = env.newReadyClient("slow", TiclTestEnvironment.createConfig().build(),
+        new DelayingNetworkChannel());
+    int numOpsBefore = env.server.getNumRegistrationOpsReceivedForTest();
+
+    // Unregister while the registration is on its way to the server.
+    ObjectId objectId = TiclTestEnvironment.newObjectIds(0, 1).get(0);
+    slowClient.client.register(objectId);
+    env.scheduler.runFor(NETWORK_LATENCY_MS / 2);
+    assertEquals(numOpsBefore, env.server.getNumRegistrationOpsReceivedForTest());
+    slowClient.client.unregister(objectId);
+    env.scheduler.runFor(3 * NETWORK_LATENCY_MS);
+
+    assertEquals(numOpsBefore + 2, env.server.getNumRegistrationOpsReceivedForTest());
+    assertTrue(
+        env.server.getRegistrationsForTest(slowClient.client.getClientTokenForTest()).isEmpty());
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.ipc.invalidation.ticl;
+
+import com.google.ipc.invalidation.external.client.SystemResources;
+import com.google.ipc.invalidation.external.client.SystemResources.Logger;
+import com.google.ipc.invalidation.util.Formatter;
+
+import java.util.logging.Level;
+
+
+/**
+ * Logger for tests, which prints messages at or above a minimum level to standard error and counts
+ * the warnings and severe messages logged.
+ * <p>
+ * This class is thread-safe.
+ *
+ */
+class TestLogger implements Logger {
+
+  /** Prefix of the printed messages. */
+  private final String prefix;
+
+  /** Minimum level of the printed messages. */
+  private final Level minPrintedLevel;
+
+  /** Number of messages logged at {@code WARNING} or above. */
+  private int numWarnings = 0;
+
+  /**
+   * Constructs a logger printing messages of at least {@code minPrintedLevel}, prefixed with
+   * {@code prefix}.
+   */
+  TestLogger(String prefix, Level minPrintedLevel) {
+    this.prefix = prefix;
+    this.minPrintedLevel = minPrintedLevel;
+  }
+
+  /** Constructs a logger printing only warnings and severe messages. */
+  TestLogger(String prefix) {
+    this(prefix, Level.WARNING);
+  }
+
+  @Override
+  public synchronized void log(Level level, String template, Object... args) {
+    if (level.intValue() >= Level.WARNING.intValue()) {
+      numWarnings++;
+    }
+    if (isLoggable(level)) {
+      System.err.println("[" + prefix + "] " + level + ": " + Formatter.format(template, args));
+    }
+  }
+
+  @Override
+  public boolean isLoggable(Level level) {
+    return level.intValue() >= minPrintedLevel.intValue();
+  }
+
+  @Override
+  public void severe(String template, Object... args) {
+    log(Level.SEVERE, template, args);
+  }
+
+  @Override
+  public void warning(String template, Object... args) {
+    log(Level.WARNING, template, args);
+  }
+
+  @Override
+  public void info(String template, Object... args) {
+    log(Level.INFO, template, args);
+  }
+
+  @Override
+  public void fine(String template, Object... args) {
+    log(Level.FINE, template, args);
+  }
+
+  @Override
+  public void setSystemResources(SystemResources resources) {
+    // No-op.
+  }
+
+  /** Returns the number of messages logged at {@code WARNING} or above. */
+  synchronized int getNumWarnings() {
+    return numWarnings;
+  }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.ipc.invalidation.ticl;
+
+import com.google.ipc.invalidation.common.CommonProtos2;
+import com.google.ipc.invalidation.external.client.SystemResources;
+import com.google.ipc.invalidation.external.client.SystemResources.NetworkChannel;
+import com.google.ipc.invalidation.external.client.types.ObjectId;
+import com.google.ipc.invalidation.ticl.ProtocolHandler.ProtocolListener;
+import com.google.protobuf.ByteString;
+import com.google.protos.ipc.invalidation.ClientProtocol.ClientConfigP;
+import com.google.protos.ipc.invalidation.ClientProtocol.RegistrationSummary;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+
+/**
+ * Clients connected to an {@link InMemoryInvalidationServer}, all running on one
+ * {@link DeterministicScheduler}, for tests of the client-server protocol.
+ *
+ */
+class TiclTestEnvironment {
+
+  /** Client type of the clients. */
+  static final int CLIENT_TYPE = 4;
+
+  /** Client token of the {@link StubProtocolListener}. */
+  static final ByteString CLIENT_TOKEN = ByteString.copyFromUtf8("token");
+
+  /**
+   * Listener for a {@link ProtocolHandler} driven directly, without a client: it has the token
+   * {@link #CLIENT_TOKEN} and a fixed registration summary, and ignores sent messages.
+   */
+  static class StubProtocolListener implements ProtocolListener {
+    private final RegistrationSummary summary =
+        CommonProtos2.newRegistrationSummary(0, new byte[] {1, 2, 3, 4});
+
+    @Override
+    public void handleMessageSent() {
+    }
+
+    @Override
+    public RegistrationSummary getRegistrationSummary() {
+      return summary;
+    }
+
+    @Override
+    public ByteString getClientToken() {
+      return CLIENT_TOKEN;
+    }
+  }
+
+  /** A client and the resources and listener it runs with. */
+  static class TestClient {
+    final InvalidationClientImpl client;
+    final SystemResources resources;
+    final RecordingInvalidationListener listener;
+    final TestLogger logger;
+
+    TestClient(InvalidationClientImpl client, SystemResources resources,
+        RecordingInvalidationListener listener, TestLogger logger) {
+      this.client = client;
+      this.resources = resources;
+      this.listener = listener;
+      this.logger = logger;
+    }
+  }
+
+  final DeterministicScheduler scheduler = new DeterministicScheduler(1000 * 1000);
+
+  final TestLogger serverLogger = new TestLogger("Server");
+
+  final InMemoryInvalidationServer server =
+      new InMemoryInvalidationServer(serverLogger, scheduler);
+
+  /** Source of randomness of the clients, seeded for repeatability. */
+  private final Random random = new Random(1);
+
+  /** Returns a test configuration for clients. */
+  static ClientConfigP.Builder createConfig() {
+    return InvalidationClientCore.createConfigForTest();
+  }
+
+  /**
+   * Returns a new, started client named {@code name} using {@code config}, connected to the server
+   * through {@code network}. The client has not necessarily obtained a token yet.
+   */
+  TestClient newClient(String name, ClientConfigP config, NetworkChannel network) {
+    TestLogger logger = new TestLogger(name);
+    SystemResources resources = new BasicSystemResources(logger, scheduler, scheduler, network,
+        new MemoryStorageImpl(), "Test");
+    RecordingInvalidationListener listener = new RecordingInvalidationListener();
+    InvalidationClientImpl client = new InvalidationClientImpl(resources, random, CLIENT_TYPE,
+        name.getBytes(), config, "TiclTestEnvironment", listener);
+    resources.start();
+    client.start();
+    return new TestClient(client, resources, listener, logger);
+  }
+
+  /** Returns a new, started client named {@code name} connected directly to the server. */
+  TestClient newClient(String name, ClientConfigP config) {
+    return newClient(name, config, server.newChannel());
+  }
+
+  /**
+   * Returns a new client named {@code name} connected directly to the server, once it has obtained
+   * a token and told its listener it is ready.
+   */
+  TestClient newReadyClient(String name, ClientConfigP config) {
+    return newReadyClient(name, config, server.newChannel());
+  }
+
+  /**
+   * Returns a new client named {@code name} connected to the server through {@code network}, once
+   * it has obtained a token and told its listener it is ready.
+   */
+  TestClient newReadyClient(String name, ClientConfigP config, NetworkChannel network) {
+    TestClient client = newClient(name, config, network);
+    for (int i = 0; (i < 100) && !client.listener.isReady; i++) {
+      scheduler.runFor(100);
+    }
+    if (!client.listener.isReady) {
+      throw new IllegalStateException("Client did not become ready: " + name);
+    }
+    return client;
+  }
+
+  /** Returns {@code numObjects} distinct object ids, numbered from {@code first}. */
+  static List<ObjectId> newObjectIds(int first, int numObjects) {
+    List<ObjectId> objectIds = new ArrayList<ObjectId>(numObjects);
+    for (int i = first; i < first + numObjects; i++) {
+      objectIds.add(ObjectId.newInstance(CLIENT_TYPE, ("object-" + i).getBytes()));
+    }
+    return objectIds;
+  }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.ipc.invalidation.ticl;
+
+import com.google.ipc.invalidation.common.CommonInvalidationConstants2;
+import com.google.ipc.invalidation.common.CommonProtos2;
+import com.google.ipc.invalidation.common.TiclMessageValidator2;
+import com.google.ipc.invalidation.common.TrickleState;
+import com.google.protobuf.ByteString;
+import com.google.protos.ipc.invalidation.ClientProtocol.ClientHeader;
+import com.google.protos.ipc.invalidation.ClientProtocol.ClientToServerMessage;
+import com.google.protos.ipc.invalidation.ClientProtocol.InvalidationP;
+import com.google.protos.ipc.invalidation.ClientProtocol.ObjectIdP;
+import com.google.protos.ipc.invalidation.ClientProtocol.RegistrationP;
+import com.google.protos.ipc.invalidation.ClientProtocol.RegistrationStatus;
+import com.google.protos.ipc.invalidation.ClientProtocol.RegistrationSummary;
+import com.google.protos.ipc.invalidation.ClientProtocol.ServerToClientMessage;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Measures the time taken and the bytes allocated by {@link TiclMessageValidator2} per message, for
+ * a client message with registrations and acks and a server message with registration statuses and
+ * invalidations, as the client and server exchange them during a bulk registration.
+ * <p>
+ * Allocation is measured with the per-thread allocation counter of HotSpot-based JVMs; elsewhere,
+ * only times are printed. Usage: {@code ValidationBenchmark [numObjects [numValidations]]}.
+ *
+ */
+public class ValidationBenchmark {
+
+  /** Number of rounds validating each message; the first rounds include the JIT warm-up. */
+  private static final int NUM_ROUNDS = 4;
+
+  /** Source of the per-thread allocation counters. */
+  private static final ThreadMXBean THREAD_BEAN = ManagementFactory.getThreadMXBean();
+
+  /** A validation of one message. */
+  private interface Validation {
+    /** Validates the message and returns whether it is valid. */
+    boolean isValid();
+  }
+
+  public static void main(String[] args) {
+    int numObjects = (args.length > 0) ? Integer.parseInt(args[0]) : 100;
+    int numValidations = (args.length > 1) ? Integer.parseInt(args[1]) : 20 * 1000;
+
+    List<RegistrationP> registrations = new ArrayList<RegistrationP>(numObjects);
+    List<RegistrationStatus> statuses = new ArrayList<RegistrationStatus>(numObjects);
+    List<InvalidationP> invalidations = new ArrayList<InvalidationP>(numObjects);
+    for (int i = 0; i < numObjects; i++) {
+      ObjectIdP objectId = CommonProtos2.newObjectIdP(TiclTestEnvironment.CLIENT_TYPE,
+          ByteString.copyFromUtf8("object-" + i));
+      RegistrationP registration = CommonProtos2.newRegistrationP(objectId, true);
+      registrations.add(registration);
+      statuses.add(CommonProtos2.newSuccessRegistrationStatus(registration));
+      invalidations.add(CommonProtos2.newInvalidationP(objectId, 1000 + i, TrickleState.RESTART));
+    }
+    ByteString token = ByteString.copyFromUtf8("benchmark-token");
+    RegistrationSummary summary =
+        CommonProtos2.newRegistrationSummary(numObjects, new byte[20]);
+
+    ClientHeader clientHeader = ClientHeader.newBuilder()
+        .setProtocolVersion(CommonInvalidationConstants2.PROTOCOL_VERSION)
+        .setClientToken(token)
+        .setRegistrationSummary(summary)
+        .setClientTimeMs(1000)
+        .setMaxKnownServerTimeMs(1000)
+        .setMessageId("1")
+        .setClientType(TiclTestEnvironment.CLIENT_TYPE)
+        .build();
+    final ClientToServerMessage clientMessage = ClientToServerMessage.newBuilder()
+        .setHeader(clientHeader)
+        .setRegistrationMessage(CommonProtos2.newRegistrationMessage(registrations))
+        .setInvalidationAckMessage(CommonProtos2.newInvalidationMessage(invalidations))
+        .build();
+    final ServerToClientMessage serverMessage = ServerToClientMessage.newBuilder()
+        .setHeader(CommonProtos2.newServerHeader(token, 1000, summary, null))
+        .setRegistrationStatusMessage(CommonProtos2.newRegistrationStatusMessage(statuses))
+        .setInvalidationMessage(CommonProtos2.newInvalidationMessage(invalidations))
+        .build();
+
+    final TiclMessageValidator2 validator = new TiclMessageValidator2(new TestLogger("Benchmark"));
+    Validation clientValidation = new Validation() {
+      @Override
+      public boolean isValid() {
+        return validator.isValid(clientMessage);
+      }
+    };
+    Validation serverValidation = new Validation() {
+      @Override
+      public boolean isValid() {
+        return validator.isValid(serverMessage);
+      }
+    };
+    if (!clientValidation.isValid() || !serverValidation.isValid()) {
+      throw new IllegalStateException("Benchmark messages are invalid");
+    }
+    for (int round = 1; round <= NUM_ROUNDS; round++) {
+      measure("Round " + round + ", client message", clientValidation, numValidations);
+      measure("Round " + round + ", server message", serverValidation, numValidations);
+    }
+  }
+
+  /** Runs {@code validation} {@code numValidations} times and prints the measurements. */
+  private static void measure(String description, Validation validation, int numValidations) {
+    long startBytes = getAllocatedBytes();
+    long startNs = System.nanoTime();
+    int numValid = 0;
+    for (int i = 0; i < numValidations; i++) {
+      if (validation.isValid()) {
+        numValid++;
+      }
+    }
+    print(description, numValidations, numValid, System.nanoTime() - startNs,
+        getAllocatedBytes() - startBytes);
+  }
+
+  /** Prints the time and allocation per validation. */
+  private static void print(String description, int numValidations, int numValid, long elapsedNs,
+      long allocatedBytes) {
+    System.out.println(description + ": " + numValid + "/" + numValidations + " valid, " +
+        (elapsedNs / numValidations) + " ns and " +
+        ((allocatedBytes < 0) ? "?" : Long.toString(allocatedBytes / numValidations)) +
+        " bytes allocated each");
+  }
+
+  /**
+   * Returns the number of bytes allocated so far by the current thread, or a negative value if the
+   * JVM does not count them.
+   */
+  private static long getAllocatedBytes() {
+    if (!(THREAD_BEAN instanceof com.sun.management.ThreadMXBean)) {
+      return -1;
+    }
+    return ((com.sun.management.ThreadMXBean) THREAD_BEAN).getThreadAllocatedBytes(
+        Thread.currentThread().getId());
+  }
+
+  private ValidationBenchmark() {  // To prevent instantiation.
+  }
+}